@@ -461,10 +461,14 @@ public class FlinkPd {
     public WikiDocumentOutput outDocFromText(FlinkPdCommandConfig config, String input) throws Exception {
         final TextAnnotatorMapper textAnnotatorMapper = new TextAnnotatorMapper(config);
         textAnnotatorMapper.open(null);
-        final CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
+        try {
+            final CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
 
-        final ParsedWikiDocument parsedWikiDocument = textAnnotatorMapper.parse(input);
-        return candidatesMapper.map(parsedWikiDocument);
+            final ParsedWikiDocument parsedWikiDocument = textAnnotatorMapper.parse(input);
+            return candidatesMapper.map(parsedWikiDocument);
+        } finally {
+            textAnnotatorMapper.close();
+        }
     }
 
     public String runFromText(FlinkPdCommandConfig config, String input) throws Exception {
@@ -18,6 +18,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.flink.api.common.JobExecutionResult;
 import org.apache.flink.api.common.functions.GroupReduceFunction;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.java.DataSet;
@@ -25,6 +26,7 @@ import org.apache.flink.api.java.ExecutionEnvironment;
 import org.apache.flink.api.java.io.TextInputFormat;
 import org.apache.flink.api.java.operators.DataSource;
 import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple5;
 import org.apache.flink.core.fs.FileSystem.WriteMode;
 import org.apache.flink.core.fs.Path;
 import org.apache.flink.util.Collector;
@@ -36,13 +38,19 @@ import com.formulasearchengine.mathosphere.mlp.cli.EvalCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapper;
 import com.formulasearchengine.mathosphere.mlp.contracts.JsonSerializerMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.MathPrefilter;
+import com.formulasearchengine.mathosphere.mlp.contracts.MultistreamWikiDumpInputFormat;
 import com.formulasearchengine.mathosphere.mlp.contracts.PatternMatcherMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.RevisionManifest;
 import com.formulasearchengine.mathosphere.mlp.contracts.TextAnnotatorMapper;
 import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.WikiDumpInputFormat;
 import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
 import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
+import com.formulasearchengine.mathosphere.mlp.text.MathConverter;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils;
 import com.formulasearchengine.mathosphere.utils.Util;
 import com.google.common.collect.HashMultiset;
@@ -60,22 +68,59 @@ public class FlinkMlpRelationFinder {
     public static void run(FlinkMlpCommandConfig config) throws Exception {
         ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
 
-        DataSource<String> source = readWikiDump(config, env);
-        DataSet<ParsedWikiDocument> documents =
-                source.flatMap(new TextExtractorMapper())
-                        .map(new TextAnnotatorMapper(config));
+        DataSet<RawWikiDocument> source = readWikiDocuments(config, env);
+        DataSet<String> previousOutput = null;
+        if (config.isIncremental()) {
+            final String fingerprint = RevisionManifest.configFingerprint(config);
+            source.map(new RevisionManifest.EntryMapper(fingerprint))
+                    .writeAsCsv(RevisionManifest.manifestPath(config.getOutputDir()), "\n",
+                            RevisionManifest.FIELD_DELIMITER, WriteMode.OVERWRITE);
+            if (config.getPreviousOutputDir() != null) {
+                DataSet<Tuple5<Long, Long, String, String, String>> previousManifest =
+                        env.readCsvFile(RevisionManifest.manifestPath(config.getPreviousOutputDir()))
+                                .fieldDelimiter(RevisionManifest.FIELD_DELIMITER)
+                                // rows without a configuration fingerprint are skipped, their pages are processed again
+                                .ignoreInvalidLines()
+                                .types(Long.class, Long.class, String.class, String.class, String.class);
+                DataSet<Tuple2<String, String>> previousOutputByTitle =
+                        env.readTextFile(config.getPreviousOutputDir()).map(new RevisionManifest.OutputTitleMapper());
+                DataSet<RawWikiDocument> unchanged = source.join(previousManifest)
+                        .where("pageId").equalTo(0)
+                        .with(new RevisionManifest.UnchangedPageFilter(fingerprint));
+                previousOutput = unchanged.join(previousOutputByTitle)
+                        .where("title").equalTo(0)
+                        .with(new RevisionManifest.PreviousOutputSelector());
+                DataSet<RawWikiDocument> withoutOutput = unchanged.leftOuterJoin(previousOutputByTitle)
+                        .where("title").equalTo(0)
+                        .with(new RevisionManifest.MissingOutputFilter());
+                source = source.leftOuterJoin(previousManifest)
+                        .where("pageId").equalTo(0)
+                        .with(new RevisionManifest.ChangedPageFilter(fingerprint))
+                        .union(withoutOutput);
+            }
+        }
+        DataSet<ParsedWikiDocument> documents = source.map(new TextAnnotatorMapper(config));
 
         DataSet<WikiDocumentOutput> result = documents.map(new CreateCandidatesMapper(config));
 
-        result.map(new JsonSerializerMapper<>())
-                .writeAsText(config.getOutputDir(), WriteMode.OVERWRITE);
+        DataSet<String> output = result.map(new JsonSerializerMapper<>());
+        if (previousOutput != null) {
+            output = output.union(previousOutput);
+        }
+        output.writeAsText(config.getOutputDir(), WriteMode.OVERWRITE);
         //int cores = Runtime.getRuntime().availableProcessors();
         //env.setParallelism(1); // rounds down
         final int parallelism = config.getParallelism();
         if (parallelism > 0) {
             env.setParallelism(parallelism);
         }
-        env.execute("Relation Finder");
+        final JobExecutionResult jobResult = env.execute("Relation Finder");
+        if (config.getMathPrefilter()) {
+            LOGGER.info("skipped {} pages without math", jobResult.<Long>getAccumulatorResult(MathPrefilter.SKIPPED_PAGES_ACCUMULATOR));
+        }
+        if (config.getUseTeXIdentifiers()) {
+            LOGGER.info("{} pages exceeded the parse budget", jobResult.<Long>getAccumulatorResult(MathConverter.OVER_BUDGET_ACCUMULATOR));
+        }
     }
 
     public static DataSource<String> readWikiDump(FlinkMlpCommandConfig config, ExecutionEnvironment env) {
@@ -86,6 +131,29 @@ public class FlinkMlpRelationFinder {
         return env.readFile(inp, config.getDataset());
     }
 
+    /**
+     * Reads the wikidump page by page and skips the intermediate page String that
+     * {@link #readWikiDump(FlinkMlpCommandConfig, ExecutionEnvironment)} produces.
+     * If a multistream index is configured, the dataset is read as bz2 multistream dump
+     * that is decompressed in parallel.
+     *
+     * @param config the config that specifies the dataset
+     * @param env    the execution environment
+     * @return the pages of namespace 0 with unescaped wikitext
+     */
+    public static DataSource<RawWikiDocument> readWikiDocuments(FlinkMlpCommandConfig config, ExecutionEnvironment env) {
+        Path filePath = new Path(config.getDataset());
+        if (config.getMultistreamIndex() != null) {
+            MultistreamWikiDumpInputFormat inp = new MultistreamWikiDumpInputFormat(filePath,
+                    new Path(config.getMultistreamIndex()), config.getStreamsPerSplit());
+            inp.setMathPrefilter(config.getMathPrefilter());
+            return env.readFile(inp, config.getDataset());
+        }
+        WikiDumpInputFormat inp = new WikiDumpInputFormat(filePath);
+        inp.setMathPrefilter(config.getMathPrefilter());
+        return env.readFile(inp, config.getDataset());
+    }
+
     public static void evaluate(EvalCommandConfig config) throws Exception {
         ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
         DataSource<String> source = readWikiDump(config, env);
@@ -298,9 +366,13 @@ public class FlinkMlpRelationFinder {
     public WikiDocumentOutput outDocFromText(FlinkMlpCommandConfig config, String input) throws Exception {
         final TextAnnotatorMapper textAnnotatorMapper = new TextAnnotatorMapper(config);
         textAnnotatorMapper.open(null);
-        final CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
+        try {
+            final CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
 
-        final ParsedWikiDocument parsedWikiDocument = textAnnotatorMapper.parse(input);
-        return candidatesMapper.map(parsedWikiDocument);
+            final ParsedWikiDocument parsedWikiDocument = textAnnotatorMapper.parse(input);
+            return candidatesMapper.map(parsedWikiDocument);
+        } finally {
+            textAnnotatorMapper.close();
+        }
     }
 }
@@ -3,10 +3,10 @@ package com.formulasearchengine.mathosphere.mlp;
 import com.formulasearchengine.mathosphere.mlp.cli.MachineLearningDefinienExtractionConfig;
 import com.formulasearchengine.mathosphere.mlp.contracts.JsonSerializerMapper;
 import com.formulasearchengine.mathosphere.mlp.contracts.TextAnnotatorMapper;
-import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
 import com.formulasearchengine.mathosphere.mlp.pojos.EvaluationResult;
 import com.formulasearchengine.mathosphere.mlp.ml.WekaLearner;
 import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
 import com.formulasearchengine.mathosphere.mlp.text.SimpleFeatureExtractorMapper;
 import com.formulasearchengine.mlp.evaluation.Evaluator;
@@ -31,9 +31,8 @@ public class MachineLearningModelGenerator {
       //parse wikipedia (subset) and process afterwards
       ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
       env.setParallelism(config.getParallelism());
-      DataSource<String> source = FlinkMlpRelationFinder.readWikiDump(config, env);
-      DataSet<ParsedWikiDocument> documents = source.flatMap(new TextExtractorMapper())
-        .map(new TextAnnotatorMapper(config));
+      DataSource<RawWikiDocument> source = FlinkMlpRelationFinder.readWikiDocuments(config, env);
+      DataSet<ParsedWikiDocument> documents = source.map(new TextAnnotatorMapper(config));
       ArrayList<GoldEntry> gold = (new Evaluator()).readGoldEntries(new File(config.getGoldFile()));
       DataSet<WikiDocumentOutput> instances = documents.map(new SimpleFeatureExtractorMapper(config, gold));
       //process parsed wikipedia
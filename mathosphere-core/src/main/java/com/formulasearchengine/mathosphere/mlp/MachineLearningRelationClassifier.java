@@ -38,7 +38,7 @@ public class MachineLearningRelationClassifier {
       .map(new TextAnnotatorMapper(config));
     DataSet<WikiDocumentOutput> instances = documents.map(new SimpleFeatureExtractorMapper(config, null));
     //process parsed wikipedia
-    DataSet<WikiDocumentOutput> result = instances.map(new WekaClassifier(config));
+    DataSet<WikiDocumentOutput> result = instances.mapPartition(new WekaClassifier(config));
     ObjectMapper mapper = new ObjectMapper();
     if (config.getNamespace()) {
       File ndFile = new File(config.getNdFile());
@@ -7,7 +7,6 @@ import com.formulasearchengine.mathosphere.mlp.cli.MlpCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapper;
 import com.formulasearchengine.mathosphere.mlp.contracts.JsonSerializerMapper;
 import com.formulasearchengine.mathosphere.mlp.contracts.TextAnnotatorMapper;
-import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
 import com.formulasearchengine.mathosphere.mlp.ml.WekaLearner;
 import com.formulasearchengine.mathosphere.mlp.pojos.*;
 import com.formulasearchengine.mathosphere.mlp.text.SimpleFeatureExtractorMapper;
@@ -65,37 +64,39 @@ public class MachineLearningRelationExtractor {
         flinkEnv.setParallelism( config.getParallelism() );
 
         LOG.debug("Read wikidump via flink");
-        DataSource<String> dataSource = FlinkMlpRelationFinder.readWikiDump( config, flinkEnv );
-
-        LOG.debug("Parse documents via flink");
-        FlatMapOperator<String, RawWikiDocument> mapOperator = dataSource.flatMap(new TextExtractorMapper());
+        DataSource<RawWikiDocument> mapOperator = FlinkMlpRelationFinder.readWikiDocuments( config, flinkEnv );
 
         LOG.debug("Open text annotator mapper");
         TextAnnotatorMapper annotatorMapper = new TextAnnotatorMapper(config);
         // ML approach doesn't create PosTagger here ... strange, so I will use it now.
         annotatorMapper.open(null);
-        DataSet<ParsedWikiDocument> parsedDocuments = mapOperator.map( annotatorMapper );
+        try {
+            DataSet<ParsedWikiDocument> parsedDocuments = mapOperator.map( annotatorMapper );
 
-        LOG.debug("Create feature Extractor without Gouldi");
-        CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
-        DataSet<WikiDocumentOutput> outputDataSet = parsedDocuments.map( candidatesMapper );
+            LOG.debug("Create feature Extractor without Gouldi");
+            CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(config);
+            DataSet<WikiDocumentOutput> outputDataSet = parsedDocuments.map( candidatesMapper );
 
-        LOG.debug("Map to output format.");
-        RelationMapper outputMapper = new RelationMapper();
-        DataSet<LinkedList<String[]>> outputs = outputDataSet.map(outputMapper);
+            LOG.debug("Map to output format.");
+            RelationMapper outputMapper = new RelationMapper();
+            DataSet<LinkedList<String[]>> outputs = outputDataSet.map(outputMapper);
 
-        Path outputPath = Paths.get(config.getOutputDir(), OUTPUT_FILE_NAME);
-        LOG.info("Write output file " + outputPath.toString() );
-        outputs.writeAsFormattedText(
-            outputPath.toString(),
-            FileSystem.WriteMode.OVERWRITE,
-            new OutputFormatter()
-        ).setParallelism(1);
+            Path outputPath = Paths.get(config.getOutputDir(), OUTPUT_FILE_NAME);
+            LOG.info("Write output file " + outputPath.toString() );
+            outputs.writeAsFormattedText(
+                outputPath.toString(),
+                FileSystem.WriteMode.OVERWRITE,
+                new OutputFormatter()
+            ).setParallelism(1);
 
-        try {
-            flinkEnv.execute();
-        } catch (Exception e) {
-            LOG.error("Error due execution of flink process.", e);
+            try {
+                flinkEnv.execute();
+            } catch (Exception e) {
+                LOG.error("Error due execution of flink process.", e);
+            }
+        } finally {
+            // the tasks open and close their own copies, this one only holds the POS model
+            annotatorMapper.close();
         }
     }
 
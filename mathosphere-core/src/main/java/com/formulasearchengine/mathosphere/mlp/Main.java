@@ -2,8 +2,11 @@ package com.formulasearchengine.mathosphere.mlp;
 
 import com.formulasearchengine.mathosphere.mathpd.FlinkPd;
 import com.formulasearchengine.mathosphere.mlp.cli.CliParams;
+import com.formulasearchengine.mathosphere.mlp.text.TexInfoCache;
 import com.formulasearchengine.mathosphere.mlp.text.TokenCounter;
 
+import java.nio.file.Paths;
+
 /**
  * Created by Moritz on 27.09.2015.
  */
@@ -43,6 +46,10 @@ public class Main {
             case CliParams.TAGS:
                 WikiTagExtractor.run(params.getTagsCommandConfig());
                 break;
+            case CliParams.COMPACT:
+                TexInfoCache.compact(Paths.get(params.getCompactCommandConfig().getInput()),
+                        Paths.get(params.getCompactCommandConfig().getOutput()));
+                break;
             case CliParams.HELP:
             default:
                 params.printHelp();
@@ -48,14 +48,17 @@ public class RelationExtractor {
   private static WikiDocumentOutput getWikiDocumentOutput(MlpCommandConfig config) throws Exception {
     TextAnnotatorMapper annotator = new TextAnnotatorMapper(config);
     annotator.open(null);
+    try {
+      String filePath = config.getInput();
+      String text = FileUtils.readFileToString(new File(filePath), "UTF-8");
+      RawWikiDocument doc = new RawWikiDocument(filePath, 0, text);
+      ParsedWikiDocument parsedDocument = annotator.map(doc);
 
-    String filePath = config.getInput();
-    String text = FileUtils.readFileToString(new File(filePath), "UTF-8");
-    RawWikiDocument doc = new RawWikiDocument(filePath, 0, text);
-    ParsedWikiDocument parsedDocument = annotator.map(doc);
-
-    CreateCandidatesMapper mlp = new CreateCandidatesMapper(config);
-    return mlp.map(parsedDocument);
+      CreateCandidatesMapper mlp = new CreateCandidatesMapper(config);
+      return mlp.map(parsedDocument);
+    } finally {
+      annotator.close();
+    }
   }
 
   public static PrintWriter createPrinter(MlpCommandConfig config) throws FileNotFoundException {
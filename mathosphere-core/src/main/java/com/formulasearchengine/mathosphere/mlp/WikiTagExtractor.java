@@ -3,8 +3,8 @@ package com.formulasearchengine.mathosphere.mlp;
 import com.formulasearchengine.mathosphere.mlp.cli.TagsCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.contracts.JsonArrayOutputFormat;
 import com.formulasearchengine.mathosphere.mlp.contracts.TagExtractionMapper;
-import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
 import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
 import org.apache.flink.api.java.ExecutionEnvironment;
 import org.apache.flink.api.java.operators.DataSource;
 import org.apache.flink.core.fs.Path;
@@ -14,9 +14,8 @@ public class WikiTagExtractor {
 
     public static void run(TagsCommandConfig config) throws Exception {
         ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
-        final DataSource<String> dump = FlinkMlpRelationFinder.readWikiDump(config, env);
+        final DataSource<RawWikiDocument> dump = FlinkMlpRelationFinder.readWikiDocuments(config, env);
         dump
-                .flatMap(new TextExtractorMapper())
                 .flatMap(new TagExtractionMapper(config))
                 .distinct(MathTag::getContentHash)
                 .map(MathTag::toJson)
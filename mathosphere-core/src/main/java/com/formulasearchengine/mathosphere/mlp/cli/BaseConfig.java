@@ -2,6 +2,7 @@ package com.formulasearchengine.mathosphere.mlp.cli;
 
 
 import com.beust.jcommander.Parameter;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierCache;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -11,6 +12,12 @@ import java.util.Properties;
 public class BaseConfig implements Serializable {
     protected static final String DEFAULT_POS_MODEL =
     "edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger";
+
+  /**
+   * default size of the memo of the formulas converted to MathML in characters
+   */
+  public static final long DEFAULT_MATHML_CACHE_CHARS = 32L * 1024 * 1024;
+
   @Parameter(names = {"-pos", "--posModel"}, description = "POS model to use")
   protected String model = DEFAULT_POS_MODEL;
 
@@ -29,6 +36,10 @@ public class BaseConfig implements Serializable {
   @Parameter(names = {"-t", "--threshold"})
   protected double threshold = 0.4;
 
+  @Parameter(names = {"--maxCandidates"}, description = "maximal number of definiens candidates above the threshold "
+      + "that are kept for an identifier, the ones with the highest scores are kept, 0 for no limit")
+  protected int maxCandidates = 0;
+
   @Parameter(names = {"-w", "--wikiDataList"})
   protected String wikiDataFile = null;
 
@@ -38,9 +49,66 @@ public class BaseConfig implements Serializable {
   @Parameter(names = {"--texvcinfo"})
   protected String texvcinfoUrl = "https://en.wikipedia.org/api/rest_v1/media/math/check/tex";
 
+  @Parameter(names = {"--localTexIdentifiers"}, description = "extract the TeX identifiers in process instead of asking texvcinfo")
+  protected boolean useLocalTexIdentifiers = false;
+
+  @Parameter(names = {"--texvcinfoCache"}, description = "path to a persistent cache of the texvcinfo responses, "
+      + "the file is created if it does not exist")
+  protected String texvcinfoCache = null;
+
+  @Parameter(names = {"--texvcinfoConcurrency"}, description = "maximal number of concurrent texvcinfo requests, "
+      + "0 to request the formulas one after another as before")
+  protected int texvcinfoConcurrency = 0;
+
+  @Parameter(names = {"--mathmlCacheSize"}, description = "maximal number of characters of the formulas "
+      + "converted to MathML that are kept in memory, 0 to convert every formula, "
+      + "the memo is shared by the JVM and sized by the first task that opens it")
+  protected long mathmlCacheSize = DEFAULT_MATHML_CACHE_CHARS;
+
+  @Parameter(names = {"--identifierCacheSize"}, description = "maximal number of characters of the identifiers "
+      + "that are kept in memory for the formulas, 0 to extract the identifiers of every formula, "
+      + "the cache is shared by the JVM and sized by the first task that opens it")
+  protected long identifierCacheSize = IdentifierCache.DEFAULT_MAXIMUM_CHARS;
+
+  @Parameter(names = {"--posTaggingBatchSize"}, description = "number of sentences of a document that are POS tagged "
+      + "together, the batches are tagged in parallel, 0 to tag the sentences of a document one after another")
+  protected int posTaggingBatchSize = 0;
+
+  @Parameter(names = {"--posTaggingWindow"}, description = "POS tag only the sentences with a formula or a known "
+      + "identifier and this number of sentences before and after them, -1 to tag all sentences")
+  protected int posTaggingWindow = -1;
+
+  @Parameter(names = {"--sentenceCacheSize"}, description = "maximal number of POS tagged sentences that are kept "
+      + "for the following documents of a task, 0 to tag every sentence; with the cache the formula and link "
+      + "placeholders are tagged without their hashes")
+  protected long sentenceCacheSize = 0;
+
   @Parameter(names = {"--definitionMerging"}, description = "apply definition merging algorithm")
   protected Boolean definitionMerging = false;
 
+  @Parameter(names = {"--fastStripper"}, description = "strip the wikitext with a single pass tokenizer instead of the Sweble parser")
+  protected boolean useFastStripper = false;
+
+  @Parameter(names = {"--parseTimeout"}, description = "time budget in milliseconds to parse the wikitext of a page, "
+      + "including the postprocess step, which is not interrupted but charged to the budget, 0 for no limit")
+  protected long parseTimeout = 0;
+
+  @Parameter(names = {"--maxParseChars"}, description = "pages with more characters are not parsed with the wikitext parser, 0 for no limit")
+  protected int maxParseChars = 0;
+
+  @Parameter(names = {"--dependencyCache"}, description = "path to a file the dependency trees of the machine learning "
+      + "features are loaded from and saved to, the file is created if it does not exist, tasks that save to the "
+      + "same file take turns by locking <file>.lock")
+  protected String dependencyCache = null;
+
+  @Parameter(names = {"--dependencyCacheSize"}, description = "maximal number of dependency trees that are kept "
+      + "for the following documents of a task and saved to --dependencyCache, 0 to parse every sentence")
+  protected long dependencyCacheSize = 10000;
+
+  @Parameter(names = {"--dependencyParserThreads"}, description = "number of sentences of a document that are "
+      + "dependency parsed in parallel, 1 to parse them one after another, every thread loads its own parser model")
+  protected int dependencyParserThreads = 1;
+
   public BaseConfig() {
     Properties prop = new Properties();
     String propFileName = "mathosphere.properties";
@@ -101,6 +169,15 @@ public class BaseConfig implements Serializable {
     return threshold;
   }
 
+  public int getMaxCandidates() {
+    return maxCandidates;
+  }
+
+  public BaseConfig setMaxCandidates(int maxCandidates) {
+    this.maxCandidates = maxCandidates;
+    return this;
+  }
+
   public String getLanguage() {
     return language;
   }
@@ -125,4 +202,135 @@ public class BaseConfig implements Serializable {
   public String getTexvcinfoUrl() {
     return texvcinfoUrl;
   }
+
+  public BaseConfig setTexvcinfoUrl(String texvcinfoUrl) {
+    this.texvcinfoUrl = texvcinfoUrl;
+    return this;
+  }
+
+  public boolean getUseLocalTexIdentifiers() {
+    return useLocalTexIdentifiers;
+  }
+
+  public BaseConfig setUseLocalTexIdentifiers(boolean useLocalTexIdentifiers) {
+    this.useLocalTexIdentifiers = useLocalTexIdentifiers;
+    return this;
+  }
+
+  public String getTexvcinfoCache() {
+    return texvcinfoCache;
+  }
+
+  public BaseConfig setTexvcinfoCache(String texvcinfoCache) {
+    this.texvcinfoCache = texvcinfoCache;
+    return this;
+  }
+
+  public int getTexvcinfoConcurrency() {
+    return texvcinfoConcurrency;
+  }
+
+  public BaseConfig setTexvcinfoConcurrency(int texvcinfoConcurrency) {
+    this.texvcinfoConcurrency = texvcinfoConcurrency;
+    return this;
+  }
+
+  public long getMathmlCacheSize() {
+    return mathmlCacheSize;
+  }
+
+  public BaseConfig setMathmlCacheSize(long mathmlCacheSize) {
+    this.mathmlCacheSize = mathmlCacheSize;
+    return this;
+  }
+
+  public long getIdentifierCacheSize() {
+    return identifierCacheSize;
+  }
+
+  public BaseConfig setIdentifierCacheSize(long identifierCacheSize) {
+    this.identifierCacheSize = identifierCacheSize;
+    return this;
+  }
+
+  public int getPosTaggingBatchSize() {
+    return posTaggingBatchSize;
+  }
+
+  public BaseConfig setPosTaggingBatchSize(int posTaggingBatchSize) {
+    this.posTaggingBatchSize = posTaggingBatchSize;
+    return this;
+  }
+
+  public int getPosTaggingWindow() {
+    return posTaggingWindow;
+  }
+
+  public BaseConfig setPosTaggingWindow(int posTaggingWindow) {
+    this.posTaggingWindow = posTaggingWindow;
+    return this;
+  }
+
+  public long getSentenceCacheSize() {
+    return sentenceCacheSize;
+  }
+
+  public BaseConfig setSentenceCacheSize(long sentenceCacheSize) {
+    this.sentenceCacheSize = sentenceCacheSize;
+    return this;
+  }
+
+  public long getParseTimeout() {
+    return parseTimeout;
+  }
+
+  public BaseConfig setParseTimeout(long parseTimeout) {
+    this.parseTimeout = parseTimeout;
+    return this;
+  }
+
+  public int getMaxParseChars() {
+    return maxParseChars;
+  }
+
+  public BaseConfig setMaxParseChars(int maxParseChars) {
+    this.maxParseChars = maxParseChars;
+    return this;
+  }
+
+  public boolean getUseFastStripper() {
+    return useFastStripper;
+  }
+
+  public BaseConfig setUseFastStripper(boolean useFastStripper) {
+    this.useFastStripper = useFastStripper;
+    return this;
+  }
+
+  public String getDependencyCache() {
+    return dependencyCache;
+  }
+
+  public BaseConfig setDependencyCache(String dependencyCache) {
+    this.dependencyCache = dependencyCache;
+    return this;
+  }
+
+  public long getDependencyCacheSize() {
+    return dependencyCacheSize;
+  }
+
+  public BaseConfig setDependencyCacheSize(long dependencyCacheSize) {
+    this.dependencyCacheSize = dependencyCacheSize;
+    return this;
+  }
+
+  public int getDependencyParserThreads() {
+    return dependencyParserThreads;
+  }
+
+  public BaseConfig setDependencyParserThreads(int dependencyParserThreads) {
+    this.dependencyParserThreads = dependencyParserThreads;
+    return this;
+  }
 }
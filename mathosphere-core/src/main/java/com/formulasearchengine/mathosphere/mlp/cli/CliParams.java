@@ -20,6 +20,7 @@ public class CliParams implements Serializable {
     public static final String PD = "pd";
     public static final String HELP = "help";
     public static final String TAGS = "tags";
+    public static final String COMPACT = "compact";
     private EvalCommandConfig evalCommand;
     private JCommander jc;
     private CountCommandConfig countCommand;
@@ -31,6 +32,7 @@ public class CliParams implements Serializable {
     private MachineLearningDefinienClassifierConfig classifyCommand;
     private FlinkPdCommandConfig pdCommand;
     private TagsCommandConfig tagsCommandConfig;
+    private CompactCommandConfig compactCommand;
     private String command;
 
     private CliParams() {
@@ -50,6 +52,7 @@ public class CliParams implements Serializable {
         params.pdCommand = new FlinkPdCommandConfig();
         params.tagsCommandConfig = new TagsCommandConfig();
         params.mlListCommand = new MachineLearningDefinienListConfig();
+        params.compactCommand = new CompactCommandConfig();
 
         jc.addCommand(COUNT, params.countCommand);
         jc.addCommand(LIST, params.listCommand);
@@ -62,6 +65,7 @@ public class CliParams implements Serializable {
         jc.addCommand(PD, params.pdCommand);
         jc.addCommand(HELP, new HelpCommand());
         jc.addCommand(TAGS, params.tagsCommandConfig);
+        jc.addCommand(COMPACT, params.compactCommand);
 
         jc.parse(args);
 
@@ -114,6 +118,10 @@ public class CliParams implements Serializable {
         return mlListCommand;
     }
 
+    public CompactCommandConfig getCompactCommandConfig() {
+        return compactCommand;
+    }
+
     public void printHelp() {
         jc.usage();
     }
@@ -0,0 +1,25 @@
+package com.formulasearchengine.mathosphere.mlp.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import java.io.Serializable;
+
+@Parameters(commandDescription = "Compacts a texvcinfo cache file, only the last entry of every formula is kept")
+public class CompactCommandConfig implements Serializable {
+
+  @Parameter(names = {"-in", "--inputFile"}, description = "path to the texvcinfo cache", required = true)
+  private String input;
+
+  @Parameter(names = {"-out", "--outputFile"}, description = "path to the compacted texvcinfo cache", required = true)
+  private String output;
+
+  public String getInput() {
+    return input;
+  }
+
+  public String getOutput() {
+    return output;
+  }
+
+}
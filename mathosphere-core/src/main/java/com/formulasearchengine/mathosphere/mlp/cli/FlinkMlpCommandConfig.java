@@ -18,6 +18,23 @@ public class FlinkMlpCommandConfig extends BaseConfig implements Serializable {
   @Parameter(names = {"--threads"}, description = "how many parallel threads should be used")
   protected int parallelism = 1;
 
+  @Parameter(names = {"--multistreamIndex"}, description = "path to the index file of a bz2 multistream wikidump, "
+      + "enables parallel decompression of the dump")
+  protected String multistreamIndex = null;
+
+  @Parameter(names = {"--streamsPerSplit"}, description = "maximal number of bz2 streams of a multistream wikidump per input split")
+  protected int streamsPerSplit = 10;
+
+  @Parameter(names = {"--mathPrefilter"}, description = "drop pages without math markup before they are parsed")
+  protected boolean mathPrefilter = false;
+
+  @Parameter(names = {"--incremental"}, description = "write a manifest of the page revisions next to the output")
+  protected boolean incremental = false;
+
+  @Parameter(names = {"--previousOutputDir"}, description = "output directory of a previous incremental run, "
+      + "only pages that changed since then are processed again, implies --incremental")
+  protected String previousOutputDir = null;
+
   public FlinkMlpCommandConfig() {
   }
 
@@ -65,4 +82,47 @@ public class FlinkMlpCommandConfig extends BaseConfig implements Serializable {
   public int getParallelism() {
     return parallelism;
   }
+
+  public String getMultistreamIndex() {
+    return multistreamIndex;
+  }
+
+  public FlinkMlpCommandConfig setMultistreamIndex(String multistreamIndex) {
+    this.multistreamIndex = multistreamIndex;
+    return this;
+  }
+
+  public int getStreamsPerSplit() {
+    return streamsPerSplit;
+  }
+
+  /**
+   * @return true if a manifest is written, which is implied by {@link #getPreviousOutputDir()}
+   */
+  public boolean isIncremental() {
+    return incremental || previousOutputDir != null;
+  }
+
+  public FlinkMlpCommandConfig setIncremental(boolean incremental) {
+    this.incremental = incremental;
+    return this;
+  }
+
+  public String getPreviousOutputDir() {
+    return previousOutputDir;
+  }
+
+  public FlinkMlpCommandConfig setPreviousOutputDir(String previousOutputDir) {
+    this.previousOutputDir = previousOutputDir;
+    return this;
+  }
+
+  public boolean getMathPrefilter() {
+    return mathPrefilter;
+  }
+
+  public FlinkMlpCommandConfig setMathPrefilter(boolean mathPrefilter) {
+    this.mathPrefilter = mathPrefilter;
+    return this;
+  }
 }
@@ -26,6 +26,9 @@ public class MachineLearningDefinienClassifierConfig extends EvalCommandConfig {
   @Parameter(names = {"--dependencyParserModel"}, description = "Location of the model for the dependency parser.")
   protected String dependencyParserModel = "edu/stanford/nlp/models/parser/nndep/english_UD.gz";
 
+  @Parameter(names = {"--classifierBatchSize"}, description = "Number of documents whose relations are classified together.")
+  protected int classifierBatchSize = 1;
+
   public static MachineLearningDefinienClassifierConfig test() {
     MachineLearningDefinienClassifierConfig test = new MachineLearningDefinienClassifierConfig();
     test.dataset = "c:/tmp/mlp/input/eval_dataset.xml";
@@ -64,6 +67,14 @@ public class MachineLearningDefinienClassifierConfig extends EvalCommandConfig {
     return stringToWordVectorFilter;
   }
 
+  public int getClassifierBatchSize() {
+    return classifierBatchSize;
+  }
+
+  public void setClassifierBatchSize(int classifierBatchSize) {
+    this.classifierBatchSize = classifierBatchSize;
+  }
+
   public boolean isEvaluate() {
     return evaluate;
   }
@@ -0,0 +1,157 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import java.util.Arrays;
+
+/**
+ * Bounded heap of the scored definiens candidates of an identifier, kept in primitive arrays.
+ * <p>
+ * A candidate is its score, the index of its sentence and the position of its word. When the heap
+ * is full, a new candidate replaces the lowest one if its score is higher. Of candidates with
+ * equal scores, the ones added first are kept.
+ */
+final class CandidateHeap {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int capacity;
+
+  private double[] scores;
+
+  private int[] sentences;
+
+  private int[] positions;
+
+  /**
+   * number of the candidate in the order in which the candidates were added
+   */
+  private int[] order;
+
+  private int size;
+
+  private int added;
+
+  /**
+   * @param capacity maximal number of candidates
+   */
+  CandidateHeap(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity must be positive.");
+    }
+    this.capacity = capacity;
+    final int initial = Math.min(capacity, INITIAL_CAPACITY);
+    scores = new double[initial];
+    sentences = new int[initial];
+    positions = new int[initial];
+    order = new int[initial];
+  }
+
+  void clear() {
+    size = 0;
+    added = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void add(double score, int sentence, int position) {
+    final int number = added++;
+    if (size < capacity) {
+      if (size == scores.length) {
+        final int grown = (int) Math.min(capacity, 2L * size);
+        scores = Arrays.copyOf(scores, grown);
+        sentences = Arrays.copyOf(sentences, grown);
+        positions = Arrays.copyOf(positions, grown);
+        order = Arrays.copyOf(order, grown);
+      }
+      set(size, score, sentence, position, number);
+      siftUp(size++);
+    } else if (Double.compare(score, scores[0]) > 0) {
+      set(0, score, sentence, position, number);
+      siftDown(0, size);
+    }
+  }
+
+  /**
+   * Sorts the candidates from the highest to the lowest score, candidates with equal scores in the
+   * order in which they were added. Afterwards only the getters may be used until the heap is
+   * cleared.
+   */
+  void sort() {
+    for (int end = size - 1; end > 0; end--) {
+      swap(0, end);
+      siftDown(0, end);
+    }
+  }
+
+  double getScore(int i) {
+    return scores[i];
+  }
+
+  int getSentence(int i) {
+    return sentences[i];
+  }
+
+  int getPosition(int i) {
+    return positions[i];
+  }
+
+  private void set(int i, double score, int sentence, int position, int number) {
+    scores[i] = score;
+    sentences[i] = sentence;
+    positions[i] = position;
+    order[i] = number;
+  }
+
+  /**
+   * @return true if candidate i is lower than candidate j
+   */
+  private boolean lower(int i, int j) {
+    final int cmp = Double.compare(scores[i], scores[j]);
+    return cmp < 0 || (cmp == 0 && order[i] > order[j]);
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (!lower(i, parent)) {
+        return;
+      }
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i, int end) {
+    while (true) {
+      final int left = 2 * i + 1;
+      if (left >= end) {
+        return;
+      }
+      int lowest = left;
+      if (left + 1 < end && lower(left + 1, left)) {
+        lowest = left + 1;
+      }
+      if (!lower(lowest, i)) {
+        return;
+      }
+      swap(i, lowest);
+      i = lowest;
+    }
+  }
+
+  private void swap(int i, int j) {
+    final double score = scores[i];
+    scores[i] = scores[j];
+    scores[j] = score;
+    int tmp = sentences[i];
+    sentences[i] = sentences[j];
+    sentences[j] = tmp;
+    tmp = positions[i];
+    positions[i] = positions[j];
+    positions[j] = tmp;
+    tmp = order[i];
+    order[i] = order[j];
+    order[j] = tmp;
+  }
+}
@@ -1,16 +1,16 @@
 package com.formulasearchengine.mathosphere.mlp.contracts;
 
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Multiset.Entry;
 
+import com.alexeygrigorev.rseq.XMatcher;
 import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
 import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
 import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierIndex;
+import com.formulasearchengine.mathosphere.mlp.text.WordMatchers;
 
 import org.apache.flink.api.common.functions.MapFunction;
 
@@ -22,6 +22,23 @@ import java.util.*;
  */
 public class CreateCandidatesMapper implements MapFunction<ParsedWikiDocument, WikiDocumentOutput> {
 
+  /**
+   * POS tags of the definiens candidates
+   */
+  private static final XMatcher<Word> DEFINIENS_POS = WordMatchers.posRegExp("NN[PS]{0,2}|NP\\+?|NN\\+|LNK");
+
+  private static final double DISTANCE_STD = Math.sqrt(Math.pow(5d, 2d) / (2d * Math.log(2)));
+
+  private static final double SENTENCE_STD = Math.sqrt(Math.pow(3d, 2d) / (2d * Math.log(2)));
+
+  /**
+   * Gaussian weights of the distances and sentence indexes that are smaller than the size of the
+   * tables, larger ones are calculated
+   */
+  private static final double[] DISTANCE_WEIGHTS = gaussianTable(64, DISTANCE_STD);
+
+  private static final double[] SENTENCE_WEIGHTS = gaussianTable(32, SENTENCE_STD);
+
   private final BaseConfig config;
   private double alpha;
   private double beta;
@@ -39,102 +56,120 @@ public class CreateCandidatesMapper implements MapFunction<ParsedWikiDocument, W
   public WikiDocumentOutput map(ParsedWikiDocument doc) {
     Set<String> identifiers = doc.getIdentifiers().elementSet();
     List<Relation> relations = Lists.newArrayList();
+    IdentifierIndex index = new IdentifierIndex(doc.getSentences(), CreateCandidatesMapper::isGood);
+    int[] frequencies = new int[index.getTermCount()];
+    int maxCandidates = config.getMaxCandidates() > 0 ? config.getMaxCandidates() : Integer.MAX_VALUE;
+    CandidateHeap heap = new CandidateHeap(maxCandidates);
     for (String identifier : identifiers) {
-      List<Relation> candidates = generateCandidates(doc, identifier);
-      if(config.getDefinitionMerging()){
-        selfMerge(candidates);
-      } else {
-        Collections.sort(candidates);
-        Collections.reverse(candidates);
+      IdentifierIndex.Postings postings = index.getPostings(identifier);
+      if (postings == null) {
+        continue;
       }
-      for (Relation rel : candidates) {
-        if (rel.getScore() >= config.getThreshold()) {
-          relations.add(rel);
+      if (config.getDefinitionMerging()) {
+        // merging sums up the scores of all candidates with the same definiens
+        List<Relation> candidates = Lists.newArrayList();
+        scoreCandidates(index, frequencies, postings, (score, posting, wordIdx) ->
+          candidates.add(toRelation(doc, index, postings, identifier, score, posting, wordIdx)));
+        DefinitionMerger.merge(candidates);
+        // the merged candidates are sorted from the highest score
+        int kept = 0;
+        for (Relation rel : candidates) {
+          if (rel.getScore() >= config.getThreshold() && kept++ < maxCandidates) {
+            relations.add(rel);
+          }
+        }
+      } else {
+        heap.clear();
+        scoreCandidates(index, frequencies, postings, (score, posting, wordIdx) -> {
+          if (score >= config.getThreshold()) {
+            heap.add(score, posting, wordIdx);
+          }
+        });
+        heap.sort();
+        // ascending scores, as the candidates have always been listed
+        for (int i = heap.size() - 1; i >= 0; i--) {
+          relations.add(toRelation(doc, index, postings, identifier, heap.getScore(i), heap.getSentence(i),
+            heap.getPosition(i)));
         }
       }
     }
     return new WikiDocumentOutput(doc.getTitle(), relations, doc.getIdentifiers());
   }
 
-  private void selfMerge(List<Relation> candidates) {
-    Collections.sort(candidates,Relation::compareNameScore);
-    final Iterator<Relation> iterator = candidates.iterator();
-    Relation lastLower = null;
-    Relation lastElement = null;
-    double decayFactor;
-    int multiplicity = 1;
-    while (iterator.hasNext()) {
-      final Relation relation = iterator.next();
-      Relation lower = new Relation(relation.getIdentifier(), relation.getDefinition().toLowerCase());
-      if (lastLower != null && lower.compareToName(lastLower) == 0) {
-        multiplicity++;
-        decayFactor = Math.pow(2, -1.3*multiplicity);
-        lastElement.setScore(lastElement.getScore() + relation.getScore() * decayFactor);
-        iterator.remove();
-      } else {
-        multiplicity = 1;
-        relation.setScore(.722 * relation.getScore());
-        lastElement = relation;
-        lastLower = lower;
-      }
-    }
-    candidates.sort(Relation::compareTo);
+  /**
+   * Receives the scored definiens candidates of an identifier.
+   */
+  private interface CandidateConsumer {
+
+    /**
+     * @param score   score of the candidate
+     * @param posting index of the sentence in the postings of the identifier
+     * @param wordIdx position of the candidate in the sentence
+     */
+    void accept(double score, int posting, int wordIdx);
   }
 
   /**
-   * Find a list of possible definitions for an identifier. As described in section 2 step 4 of
+   * Scores the possible definitions for an identifier. As described in section 2 step 4 of
    * https://www.google.co.jp/url?sa=t&rct=j&q=&esrc=s&source=web&cd=4&cad=rja&uact=8&ved=0ahUKEwjbo8bF5J3PAhWMcT4KHesdCRMQFgg0MAM&url=https%3A%2F%2Fwww.gipp.com%2Fwp-content%2Fpapercite-data%2Fpdf%2Fschubotz16.pdf&usg=AFQjCNG8WcokDbLBSdzddbijH-bJh4w5sA&sig2=ofIftBvBlsOdwikq2d1fag
    *
-   * @param doc        Where to search for definitions
-   * @param identifier What to define.
-   * @return {@link List<Relation>} with ranked definitions for the identifier.
+   * @param index       The index of the sentences of the document.
+   * @param frequencies Term frequencies, all zero. They are reset before the method returns.
+   * @param postings    The sentences that contain the identifier.
+   * @param consumer    Receives the candidates in the order of the sentences and words.
    */
-  private List<Relation> generateCandidates(ParsedWikiDocument doc, String identifier) {
-    List<Sentence> sentences = findSentencesWithIdentifier(doc.getSentences(), identifier);
-    if (sentences.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    List<Relation> result = Lists.newArrayList();
-    Multiset<String> frequencies = calcFrequencies(sentences);
-    if (frequencies.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    int maxFrequency = calculateMax(frequencies);
+  private void scoreCandidates(IdentifierIndex index, int[] frequencies, IdentifierIndex.Postings postings,
+                               CandidateConsumer consumer) {
+    int maxFrequency = countFrequencies(index, frequencies, postings);
 
-    for (int sentenceIdx = 0; sentenceIdx < sentences.size(); sentenceIdx++) {
-      Sentence sentence = sentences.get(sentenceIdx);
-      List<Word> words = sentence.getWords();
-      List<Integer> positions = identifierPositions(words, identifier);
+    for (int sentenceIdx = 0; sentenceIdx < postings.size(); sentenceIdx++) {
+      int[] positions = postings.getPositions(sentenceIdx);
+      int[] candidatePositions = index.getCandidatePositions(postings.getSentence(sentenceIdx));
+      int[] candidateTerms = index.getCandidateTerms(postings.getSentence(sentenceIdx));
 
-      for (int wordIdx = 0; wordIdx < words.size(); wordIdx++) {
+      for (int candidate = 0; candidate < candidatePositions.length; candidate++) {
         //Definiendum
-        Word word = words.get(wordIdx);
-        if (!isGood(word)) {
-          continue;
-        }
-
-        int identifierPosition = closestIdentifierPosition(positions, wordIdx);
-        int distance = Math.abs(identifierPosition - wordIdx);
-
-        int freq = frequencies.count(word.toLowerCase());
-        double score = calculateScore(distance, freq, maxFrequency, sentenceIdx);
+        int wordIdx = candidatePositions[candidate];
+        int distance = Math.abs(closestIdentifierPosition(positions, wordIdx) - wordIdx);
+        int freq = frequencies[candidateTerms[candidate]];
+        consumer.accept(calculateScore(distance, freq, maxFrequency, sentenceIdx), sentenceIdx, wordIdx);
+      }
+    }
 
-        Relation relation = new Relation();
-        relation.setIdentifier(identifier);
-        relation.setIdentifierPosition(identifierPosition);
-        relation.setDefinition(word, doc);
-        relation.setWordPosition(wordIdx);
-        relation.setScore(score);
-        relation.setSentence(sentence);
-        // relation.setSentence(sentence);
+    for (int i = 0; i < postings.size(); i++) {
+      for (int term : index.getCandidateTerms(postings.getSentence(i))) {
+        frequencies[term] = 0;
+      }
+    }
+  }
 
-        result.add(relation);
+  /**
+   * Counts the candidate terms of the sentences that contain an identifier.
+   *
+   * @param frequencies Term frequencies, all zero. They are incremented by the counts.
+   * @return the highest frequency, 0 if the sentences have no candidates
+   */
+  static int countFrequencies(IdentifierIndex index, int[] frequencies, IdentifierIndex.Postings postings) {
+    int maxFrequency = 0;
+    for (int i = 0; i < postings.size(); i++) {
+      for (int term : index.getCandidateTerms(postings.getSentence(i))) {
+        maxFrequency = Math.max(maxFrequency, ++frequencies[term]);
       }
     }
+    return maxFrequency;
+  }
 
-    return result;
+  private static Relation toRelation(ParsedWikiDocument doc, IdentifierIndex index, IdentifierIndex.Postings postings,
+                                     String identifier, double score, int posting, int wordIdx) {
+    Sentence sentence = index.getSentence(postings.getSentence(posting));
+    Relation relation = new Relation();
+    relation.setIdentifier(identifier);
+    relation.setIdentifierPosition(closestIdentifierPosition(postings.getPositions(posting), wordIdx));
+    relation.setDefinition(sentence.getWords().get(wordIdx), doc);
+    relation.setWordPosition(wordIdx);
+    relation.setScore(score);
+    relation.setSentence(sentence);
+    return relation;
   }
 
   /**
@@ -148,11 +183,13 @@ public class CreateCandidatesMapper implements MapFunction<ParsedWikiDocument, W
    * @return Score how likely the definiendum is the correct definition for the identifier.
    */
   private double calculateScore(int distance, int frequency, int maxFrequency, int sentenceIdx) {
-    double std1 = Math.sqrt(Math.pow(5d, 2d) / (2d * Math.log(2)));
-    double dist = gaussian(distance, std1);
+    double dist = distance < DISTANCE_WEIGHTS.length
+      ? DISTANCE_WEIGHTS[distance]
+      : gaussian(distance, DISTANCE_STD);
 
-    double std2 = Math.sqrt(Math.pow(3d, 2d) / (2d * Math.log(2)));
-    double seq = gaussian(sentenceIdx, std2);
+    double seq = sentenceIdx < SENTENCE_WEIGHTS.length
+      ? SENTENCE_WEIGHTS[sentenceIdx]
+      : gaussian(sentenceIdx, SENTENCE_STD);
 
     double relativeFrequency = (double) frequency / (double) maxFrequency;
     return (alpha * dist + beta * seq + gamma * relativeFrequency) / (alpha + beta + gamma);
@@ -162,63 +199,36 @@ public class CreateCandidatesMapper implements MapFunction<ParsedWikiDocument, W
     return Math.exp(-x * x / (2 * std * std));
   }
 
-  /**
-   * Find all occurrences of the identifier in the sentence.
-   */
-  public static List<Integer> identifierPositions(List<Word> sentence, String identifier) {
-    List<Integer> result = Lists.newArrayList();
-
-    for (int wordIdx = 0; wordIdx < sentence.size(); wordIdx++) {
-      Word word = sentence.get(wordIdx);
-      if (Objects.equals(identifier, word.getWord())) {
-        result.add(wordIdx);
-      }
+  private static double[] gaussianTable(int size, double std) {
+    double[] table = new double[size];
+    for (int x = 0; x < size; x++) {
+      table[x] = gaussian(x, std);
     }
-
-    return result;
+    return table;
   }
 
-  public static int closestIdentifierPosition(List<Integer> positions, int wordIdx) {
-    if (positions.isEmpty()) {
+  /**
+   * @param positions positions of the identifier, in any order
+   * @return the position that is closest to the word, the first one of equally close positions,
+   * -1 if there is no position
+   */
+  public static int closestIdentifierPosition(int[] positions, int wordIdx) {
+    if (positions.length == 0) {
       return -1;
     }
-    Iterator<Integer> it = positions.iterator();
-    int bestPos = it.next();
+    int bestPos = positions[0];
     int bestDist = Math.abs(wordIdx - bestPos);
-
-    while (it.hasNext()) {
-      int pos = it.next();
-      int dist = Math.abs(wordIdx - pos);
+    for (int i = 1; i < positions.length; i++) {
+      int dist = Math.abs(wordIdx - positions[i]);
       if (dist < bestDist) {
         bestDist = dist;
-        bestPos = pos;
+        bestPos = positions[i];
       }
     }
-
     return bestPos;
   }
 
-  public static int calculateMax(Multiset<String> frequencies) {
-    Entry<String> max = Collections.max(frequencies.entrySet(),
-      (e1, e2) -> Integer.compare(e1.getCount(), e2.getCount()));
-    return max.getCount();
-  }
-
-  private Multiset<String> calcFrequencies(List<Sentence> sentences) {
-    Multiset<String> counts = HashMultiset.create();
-
-    for (Sentence sentence : sentences) {
-      for (Word word : sentence.getWords()) {
-        if (isGood(word)) {
-          counts.add(word.getWord().toLowerCase());
-        }
-      }
-    }
-
-    return counts;
-  }
-
-  private boolean isGood(Word in) {
+  private static boolean isGood(Word in) {
     String word = in.getWord();
     String posTag = in.getPosTag();
 
@@ -238,24 +248,7 @@ public class CreateCandidatesMapper implements MapFunction<ParsedWikiDocument, W
       return false;
     }
     // we're only interested in nouns, entities and links
-    return posTag.matches("NN[PS]{0,2}|NP\\+?|NN\\+|LNK");
-
-  }
-
-  /**
-   * Find all sentences with the given identifier.
-   *
-   * @return {@link ArrayList} with the sentences containing the identifier.
-   */
-  public static List<Sentence> findSentencesWithIdentifier(List<Sentence> sentences, String identifier) {
-    List<Sentence> result = Lists.newArrayList();
-
-    for (Sentence sentence : sentences) {
-      if (sentence.contains(identifier)) {
-        result.add(sentence);
-      }
-    }
+    return DEFINIENS_POS.match(in);
 
-    return result;
   }
 }
@@ -0,0 +1,220 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Definition merging of the definiens candidates of an identifier.
+ * <p>
+ * Candidates whose definitions only differ in case are merged into the one with the highest
+ * score. Its score is weighted with 0.722 and the scores of the other candidates are added with a
+ * weight of 2^(-1.3 * m), where m is the rank of the candidate in the merged group, starting with
+ * 2. The groups are collected in an open addressing hash table keyed by the case folded
+ * definitions, so the candidates do not have to be sorted by their definitions.
+ */
+final class DefinitionMerger {
+
+  private static final double FIRST_WEIGHT = .722;
+
+  /**
+   * decay factors by multiplicity, larger multiplicities are calculated
+   */
+  private static final double[] DECAY = new double[64];
+
+  static {
+    for (int multiplicity = 0; multiplicity < DECAY.length; multiplicity++) {
+      DECAY[multiplicity] = Math.pow(2, -1.3 * multiplicity);
+    }
+  }
+
+  private DefinitionMerger() {
+  }
+
+  /**
+   * Merges the candidates and sorts the remaining ones from the highest score. Candidates with
+   * equal scores are sorted by identifier and definition, ignoring case.
+   *
+   * @param candidates the candidates, replaced by the merged ones
+   */
+  static void merge(List<Relation> candidates) {
+    final int size = candidates.size();
+    final double[] scores = new double[size];
+    final int[] groupOf = new int[size];
+    final int[] groupFirst = new int[size];
+    final int[] slots = new int[Integer.highestOneBit(Math.max(1, size)) * 4];
+    final int mask = slots.length - 1;
+    Arrays.fill(slots, -1);
+    int groups = 0;
+    for (int i = 0; i < size; i++) {
+      final Relation relation = candidates.get(i);
+      scores[i] = relation.getScore();
+      int slot = hash(relation) & mask;
+      while (slots[slot] >= 0 && !sameGroup(relation, candidates.get(groupFirst[slots[slot]]))) {
+        slot = (slot + 1) & mask;
+      }
+      if (slots[slot] < 0) {
+        slots[slot] = groups;
+        groupFirst[groups++] = i;
+      }
+      groupOf[i] = slots[slot];
+    }
+
+    // the candidates of each group in the order of the input
+    final int[] start = new int[groups + 1];
+    for (int i = 0; i < size; i++) {
+      start[groupOf[i] + 1]++;
+    }
+    for (int g = 0; g < groups; g++) {
+      start[g + 1] += start[g];
+    }
+    final int[] members = new int[size];
+    final int[] next = Arrays.copyOf(start, groups);
+    for (int i = 0; i < size; i++) {
+      members[next[groupOf[i]]++] = i;
+    }
+
+    final int[] buffer = new int[size];
+    final List<Relation> merged = new ArrayList<>(groups);
+    for (int g = 0; g < groups; g++) {
+      sortByScore(members, buffer, start[g], start[g + 1], scores);
+      Relation first = null;
+      double score = 0;
+      int multiplicity = 1;
+      for (int k = start[g]; k < start[g + 1]; k++) {
+        final Relation relation = candidates.get(members[k]);
+        if (first != null && sameLowerCase(first, relation)) {
+          multiplicity++;
+          score += scores[members[k]] * decay(multiplicity);
+        } else {
+          if (first != null) {
+            first.setScore(score);
+            merged.add(first);
+          }
+          first = relation;
+          multiplicity = 1;
+          score = FIRST_WEIGHT * scores[members[k]];
+        }
+      }
+      first.setScore(score);
+      merged.add(first);
+    }
+
+    merged.sort(DefinitionMerger::compare);
+    candidates.clear();
+    candidates.addAll(merged);
+  }
+
+  private static double decay(int multiplicity) {
+    return multiplicity < DECAY.length ? DECAY[multiplicity] : Math.pow(2, -1.3 * multiplicity);
+  }
+
+  private static int compare(Relation r1, Relation r2) {
+    int res = Double.compare(r2.getScore(), r1.getScore());
+    if (res == 0) {
+      res = r1.getIdentifier().compareTo(r2.getIdentifier());
+    }
+    if (res == 0) {
+      res = r1.getDefinition().compareToIgnoreCase(r2.getDefinition());
+    }
+    return res;
+  }
+
+  /**
+   * The case folding of {@link String#compareToIgnoreCase(String)}.
+   */
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private static int hash(Relation relation) {
+    int h = relation.getIdentifier().hashCode();
+    final String definition = relation.getDefinition();
+    for (int i = 0; i < definition.length(); i++) {
+      h = 31 * h + fold(definition.charAt(i));
+    }
+    // spread the bits, the table is indexed by the lowest ones
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return true if the identifiers are equal and the definitions are equal ignoring case
+   */
+  private static boolean sameGroup(Relation r1, Relation r2) {
+    final String d1 = r1.getDefinition();
+    final String d2 = r2.getDefinition();
+    if (!r1.getIdentifier().equals(r2.getIdentifier()) || d1.length() != d2.length()) {
+      return false;
+    }
+    for (int i = 0; i < d1.length(); i++) {
+      final char c1 = d1.charAt(i);
+      final char c2 = d2.charAt(i);
+      if (c1 != c2 && fold(c1) != fold(c2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares two candidates of a group like the lower cased definitions were compared when the
+   * candidates were merged after sorting them. For ASCII definitions this is the same as being in
+   * the same group, other definitions are lower cased.
+   */
+  private static boolean sameLowerCase(Relation r1, Relation r2) {
+    final String d1 = r1.getDefinition();
+    final String d2 = r2.getDefinition();
+    if (d1.equals(d2) || (isAscii(d1) && isAscii(d2))) {
+      return true;
+    }
+    final String lower1 = d1.toLowerCase();
+    final String lower2 = d2.toLowerCase();
+    return lower1.compareToIgnoreCase(lower2) == 0 && countUpperCase(lower1) == countUpperCase(lower2);
+  }
+
+  private static boolean isAscii(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) > 127) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int countUpperCase(String s) {
+    int upperCase = 0;
+    for (int i = 0; i < s.length(); i++) {
+      if (Character.isUpperCase(s.charAt(i))) {
+        upperCase++;
+      }
+    }
+    return upperCase;
+  }
+
+  /**
+   * Stable merge sort of the candidates members[from..to) from the highest score.
+   */
+  private static void sortByScore(int[] members, int[] buffer, int from, int to, double[] scores) {
+    if (to - from < 2) {
+      return;
+    }
+    final int middle = (from + to) >>> 1;
+    sortByScore(members, buffer, from, middle, scores);
+    sortByScore(members, buffer, middle, to, scores);
+    if (Double.compare(scores[members[middle - 1]], scores[members[middle]]) >= 0) {
+      return;
+    }
+    System.arraycopy(members, from, buffer, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int k = from; k < to; k++) {
+      if (right >= to || (left < middle && Double.compare(scores[buffer[left]], scores[buffer[right]]) >= 0)) {
+        members[k] = buffer[left++];
+      } else {
+        members[k] = buffer[right++];
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import org.apache.flink.api.common.accumulators.LongCounter;
+import org.apache.flink.api.common.functions.RuntimeContext;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Drops pages without math markup before they are decoded, unescaped and parsed.
+ * <p>
+ * The raw (still XML escaped) page bytes are scanned for {@code &lt;math}, {@code <math},
+ * {@code {{math}, {@code {{mvar}, {@code &lt;ce&gt;}, {@code <ce>} and {@code chem} tags.
+ * The markers are compared ASCII case-insensitively. The number of dropped pages is counted
+ * in the accumulator {@link #SKIPPED_PAGES_ACCUMULATOR}.
+ * <p>
+ * Note that formulas that are only hidden in italic wikitext (see
+ * {@link com.formulasearchengine.mathosphere.mlp.text.MathConverter}) do not have a marker.
+ */
+public class MathPrefilter implements Serializable {
+
+  public static final String SKIPPED_PAGES_ACCUMULATOR = "pages-without-math";
+
+  private static final byte[][] MARKERS = {
+      ascii("&lt;math"),
+      ascii("<math"),
+      ascii("{{math"),
+      ascii("{{mvar"),
+      ascii("&lt;ce&gt;"),
+      ascii("<ce>"),
+      ascii("&lt;chem"),
+      ascii("<chem")
+  };
+
+  private final boolean enabled;
+
+  private transient LongCounter skippedPages;
+
+  public MathPrefilter(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  private static byte[] ascii(String marker) {
+    return marker.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Registers the accumulator. Without a runtime context, e.g. in tests, skipped pages are not counted.
+   *
+   * @param context the runtime context of the input format
+   */
+  public void open(RuntimeContext context) {
+    if (enabled) {
+      skippedPages = context.getLongCounter(SKIPPED_PAGES_ACCUMULATOR);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return true if the filter is disabled or the page contains a math marker
+   */
+  public boolean accept(byte[] bytes, int offset, int numBytes) {
+    if (!enabled || containsMath(bytes, offset, numBytes)) {
+      return true;
+    }
+    if (skippedPages != null) {
+      skippedPages.add(1L);
+    }
+    return false;
+  }
+
+  /**
+   * Searches the raw page for any of the math markers.
+   *
+   * @param bytes    the buffer that holds the raw page
+   * @param offset   start of the page in the buffer
+   * @param numBytes length of the page
+   * @return true if a marker was found
+   */
+  public static boolean containsMath(byte[] bytes, int offset, int numBytes) {
+    final int end = offset + numBytes;
+    for (int i = offset; i < end; i++) {
+      final byte b = bytes[i];
+      // all markers start with one of these characters
+      if (b != '<' && b != '&' && b != '{') {
+        continue;
+      }
+      for (byte[] marker : MARKERS) {
+        if (marker[0] == b && regionMatchesIgnoreCase(bytes, i, end, marker)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean regionMatchesIgnoreCase(byte[] bytes, int start, int end, byte[] marker) {
+    if (end - start < marker.length) {
+      return false;
+    }
+    for (int j = 1; j < marker.length; j++) {
+      byte b = bytes[start + j];
+      if (b >= 'A' && b <= 'Z') {
+        // markers are lower case ASCII
+        b += 'a' - 'A';
+      }
+      if (b != marker[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
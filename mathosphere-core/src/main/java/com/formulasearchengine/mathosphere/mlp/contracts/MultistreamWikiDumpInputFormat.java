@@ -0,0 +1,250 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.flink.api.common.io.FileInputFormat;
+import org.apache.flink.core.fs.BlockLocation;
+import org.apache.flink.core.fs.FSDataInputStream;
+import org.apache.flink.core.fs.FileInputSplit;
+import org.apache.flink.core.fs.FileStatus;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a {@code pages-articles-multistream.xml.bz2} dump without decompressing it first.
+ * <p>
+ * The multistream dump consists of independent bz2 streams of (usually) 100 pages each. The
+ * offsets of these streams are listed in the accompanying {@code multistream-index.txt(.bz2)}
+ * file, one {@code offset:pageId:title} line per page. Every input split covers one or more
+ * complete streams, so each split can be decompressed and parsed on its own. The pages are
+ * parsed in the same way as in {@link WikiDumpInputFormat}.
+ */
+public class MultistreamWikiDumpInputFormat extends FileInputFormat<RawWikiDocument> {
+
+  private static final Logger LOGGER = LogManager.getLogger(MultistreamWikiDumpInputFormat.class.getName());
+
+  private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+  private final Path indexPath;
+
+  private final int streamsPerSplit;
+
+  private MathPrefilter mathPrefilter = new MathPrefilter(false);
+
+  private transient XMLInputFactory xmlInputFactory;
+
+  private transient InputStream decompressed;
+
+  private transient byte[] buffer;
+
+  /**
+   * start of the unconsumed data in the buffer
+   */
+  private transient int start;
+
+  /**
+   * end of the valid data in the buffer
+   */
+  private transient int limit;
+
+  private transient boolean exhausted;
+
+  private transient boolean end;
+
+  /**
+   * @param filePath        path to the multistream dump
+   * @param indexPath       path to the multistream index, plain or bz2 compressed
+   * @param streamsPerSplit upper bound for the number of bz2 streams that are grouped to one split
+   */
+  public MultistreamWikiDumpInputFormat(Path filePath, Path indexPath, int streamsPerSplit) {
+    super(filePath);
+    this.indexPath = indexPath;
+    this.streamsPerSplit = Math.max(1, streamsPerSplit);
+  }
+
+  @Override
+  public FileInputSplit[] createInputSplits(int minNumSplits) throws IOException {
+    final Path file = getFilePath();
+    final FileSystem fs = file.getFileSystem();
+    final FileStatus status = fs.getFileStatus(file);
+    final List<Long> offsets = readStreamOffsets(indexPath);
+    if (offsets.isEmpty()) {
+      throw new IOException("Multistream index " + indexPath + " does not contain any stream offset.");
+    }
+    int groupSize = streamsPerSplit;
+    if (minNumSplits > 1) {
+      // create at least minNumSplits splits if there are enough streams
+      groupSize = Math.min(groupSize, (offsets.size() + minNumSplits - 1) / minNumSplits);
+    }
+    final List<FileInputSplit> splits = new ArrayList<>();
+    for (int i = 0; i < offsets.size(); i += groupSize) {
+      final long splitStart = offsets.get(i);
+      final int next = i + groupSize;
+      // the last split also covers the closing stream of the dump
+      final long splitEnd = next < offsets.size() ? offsets.get(next) : status.getLen();
+      final BlockLocation[] blocks = fs.getFileBlockLocations(status, splitStart, splitEnd - splitStart);
+      final String[] hosts = blocks.length > 0 ? blocks[0].getHosts() : new String[0];
+      splits.add(new FileInputSplit(splits.size(), file, splitStart, splitEnd - splitStart, hosts));
+    }
+    LOGGER.info("created {} splits from {} bz2 streams", splits.size(), offsets.size());
+    return splits.toArray(new FileInputSplit[splits.size()]);
+  }
+
+  /**
+   * Reads the distinct stream offsets in ascending order from a multistream index.
+   *
+   * @param indexPath path to the index, files ending in .bz2 are decompressed
+   * @return the offsets of all bz2 streams that contain pages
+   */
+  static List<Long> readStreamOffsets(Path indexPath) throws IOException {
+    final List<Long> offsets = new ArrayList<>();
+    InputStream in = indexPath.getFileSystem().open(indexPath);
+    if (indexPath.getName().endsWith(".bz2")) {
+      in = new BZip2CompressorInputStream(in, true);
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      long last = -1;
+      while ((line = reader.readLine()) != null) {
+        final int colon = line.indexOf(':');
+        if (colon <= 0) {
+          continue;
+        }
+        final long offset = Long.parseLong(line.substring(0, colon));
+        if (offset > last) {
+          offsets.add(offset);
+          last = offset;
+        }
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * @param enabled drop pages without math markup before they are parsed, see {@link MathPrefilter}
+   */
+  public void setMathPrefilter(boolean enabled) {
+    this.mathPrefilter = new MathPrefilter(enabled);
+  }
+
+  @Override
+  public void openInputFormat() throws IOException {
+    super.openInputFormat();
+    mathPrefilter.open(getRuntimeContext());
+  }
+
+  @Override
+  public void open(FileInputSplit split) throws IOException {
+    this.splitStart = split.getStart();
+    this.splitLength = split.getLength();
+    final FileSystem fs = split.getPath().getFileSystem();
+    final FSDataInputStream in = fs.open(split.getPath());
+    in.seek(splitStart);
+    this.stream = in;
+    final BoundedInputStream compressed = new BoundedInputStream(in, splitLength);
+    // the underlying stream is closed by the super class
+    compressed.setPropagateClose(false);
+    this.decompressed = new BZip2CompressorInputStream(compressed, true);
+    if (xmlInputFactory == null) {
+      xmlInputFactory = WikiDumpInputFormat.createXmlInputFactory();
+    }
+    if (buffer == null) {
+      buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+    start = 0;
+    limit = 0;
+    exhausted = false;
+    end = false;
+  }
+
+  @Override
+  public boolean reachedEnd() throws IOException {
+    return end;
+  }
+
+  @Override
+  public RawWikiDocument nextRecord(RawWikiDocument reuse) throws IOException {
+    while (!end) {
+      final int recordEnd = nextRecordEnd();
+      if (recordEnd < 0) {
+        end = true;
+        return null;
+      }
+      RawWikiDocument doc = null;
+      if (mathPrefilter.accept(buffer, start, recordEnd - start)) {
+        doc = WikiDumpInputFormat.readPage(xmlInputFactory, reuse, buffer, start, recordEnd - start);
+      }
+      start = Math.min(limit, recordEnd + WikiDumpInputFormat.PAGE_END_BYTES.length);
+      if (doc != null) {
+        return doc;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the end of the next record, i.e. the position of the next {@code </page>} or the end of
+   * the decompressed split. Moves and grows the buffer as required.
+   *
+   * @return the exclusive end of the record that starts at {@link #start} or -1 if no data is left
+   */
+  private int nextRecordEnd() throws IOException {
+    final byte[] delimiter = WikiDumpInputFormat.PAGE_END_BYTES;
+    // number of bytes after start that were already searched without a match
+    int searched = 0;
+    while (true) {
+      final int found = WikiDumpInputFormat.indexOf(buffer, start + searched, limit, delimiter);
+      if (found >= 0) {
+        return found;
+      }
+      if (exhausted) {
+        return limit > start ? limit : -1;
+      }
+      // the delimiter may begin in the last delimiter.length - 1 bytes
+      searched = Math.max(0, limit - start - delimiter.length + 1);
+      fill();
+    }
+  }
+
+  private void fill() throws IOException {
+    if (start > 0) {
+      System.arraycopy(buffer, start, buffer, 0, limit - start);
+      limit -= start;
+      start = 0;
+    }
+    if (limit == buffer.length) {
+      final byte[] grown = new byte[buffer.length * 2];
+      System.arraycopy(buffer, 0, grown, 0, limit);
+      buffer = grown;
+    }
+    final int read = decompressed.read(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      exhausted = true;
+    } else {
+      limit += read;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (decompressed != null) {
+      decompressed.close();
+      decompressed = null;
+    }
+    super.close();
+  }
+}
@@ -0,0 +1,211 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.beust.jcommander.Parameter;
+import com.fasterxml.jackson.jr.ob.JSON;
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.apache.flink.api.common.functions.FlatJoinFunction;
+import org.apache.flink.api.common.functions.JoinFunction;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple5;
+import org.apache.flink.util.Collector;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Functions for incremental MLP runs.
+ * <p>
+ * Every incremental run records a manifest of (page id, revision id, sha1, title, configuration)
+ * tuples next to its output, the configuration is the fingerprint of the options that can change
+ * the output, see {@link #configFingerprint(BaseConfig)}. The next run compares the pages of the
+ * new dump with this manifest. Only pages with the same sha1, title and configuration are copied
+ * from the output of the previous run, all other pages are annotated again. So are unchanged
+ * pages without output in the previous run.
+ */
+public final class RevisionManifest {
+
+  private static final Logger LOGGER = LogManager.getLogger(RevisionManifest.class.getName());
+
+  public static final String FIELD_DELIMITER = "\t";
+
+  /**
+   * options that only select the input, the output location or the resources of a run
+   */
+  private static final Set<String> RUN_OPTIONS = ImmutableSet.of("dataset", "outputdir", "parallelism",
+      "multistreamIndex", "streamsPerSplit", "incremental", "previousOutputDir");
+
+  private RevisionManifest() {
+  }
+
+  /**
+   * Fingerprint of the configuration of a run. It covers all command line options except the ones
+   * that select the input, the output location or the parallelism of the run. Options that only
+   * size caches are covered too, so changing them reprocesses all pages, which is safe.
+   *
+   * @return md5 of the names and values of the options, as hex string
+   */
+  public static String configFingerprint(BaseConfig config) {
+    final List<Field> fields = new ArrayList<>();
+    for (Class<?> type = config.getClass(); type != null; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (field.isAnnotationPresent(Parameter.class) && !RUN_OPTIONS.contains(field.getName())) {
+          fields.add(field);
+        }
+      }
+    }
+    fields.sort(Comparator.comparing(Field::getName));
+    final Hasher hasher = Hashing.md5().newHasher();
+    for (Field field : fields) {
+      field.setAccessible(true);
+      final Object value;
+      try {
+        value = field.get(config);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot read option " + field.getName(), e);
+      }
+      final String text = value instanceof Object[] ? Arrays.toString((Object[]) value) : String.valueOf(value);
+      hasher.putString(field.getName(), StandardCharsets.UTF_8).putChar('=')
+          .putString(text, StandardCharsets.UTF_8).putChar('\0');
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @param outputDir the output directory of a run
+   * @return the location of the manifest of that run
+   */
+  public static String manifestPath(String outputDir) {
+    String dir = outputDir;
+    while (dir.length() > 1 && dir.endsWith("/")) {
+      dir = dir.substring(0, dir.length() - 1);
+    }
+    return dir + ".manifest";
+  }
+
+  private static boolean isUnchanged(RawWikiDocument doc, Tuple5<Long, Long, String, String, String> previous,
+                                     String fingerprint) {
+    return previous != null
+        && doc.sha1 != null
+        && !doc.sha1.isEmpty()
+        && doc.sha1.equals(previous.f2)
+        && doc.title.equals(previous.f3)
+        && fingerprint.equals(previous.f4);
+  }
+
+  /**
+   * Creates the manifest entry of a page.
+   */
+  public static class EntryMapper implements MapFunction<RawWikiDocument, Tuple5<Long, Long, String, String, String>> {
+
+    private final String fingerprint;
+
+    /**
+     * @param fingerprint fingerprint of the configuration of this run
+     */
+    public EntryMapper(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public Tuple5<Long, Long, String, String, String> map(RawWikiDocument doc) {
+      return new Tuple5<>(doc.pageId, doc.revisionId, doc.sha1 == null ? "" : doc.sha1, doc.title, fingerprint);
+    }
+  }
+
+  /**
+   * Emits the pages that are new or changed since the previous run or that were processed with
+   * another configuration. Used as left outer join of the pages with the previous manifest.
+   */
+  public static class ChangedPageFilter
+      implements FlatJoinFunction<RawWikiDocument, Tuple5<Long, Long, String, String, String>, RawWikiDocument> {
+
+    private final String fingerprint;
+
+    public ChangedPageFilter(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public void join(RawWikiDocument doc, Tuple5<Long, Long, String, String, String> previous,
+                     Collector<RawWikiDocument> out) {
+      if (!isUnchanged(doc, previous, fingerprint)) {
+        out.collect(doc);
+      }
+    }
+  }
+
+  /**
+   * Emits the pages that did not change since the previous run. Used as join of the pages with
+   * the previous manifest.
+   */
+  public static class UnchangedPageFilter
+      implements FlatJoinFunction<RawWikiDocument, Tuple5<Long, Long, String, String, String>, RawWikiDocument> {
+
+    private final String fingerprint;
+
+    public UnchangedPageFilter(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public void join(RawWikiDocument doc, Tuple5<Long, Long, String, String, String> previous,
+                     Collector<RawWikiDocument> out) {
+      if (isUnchanged(doc, previous, fingerprint)) {
+        out.collect(doc);
+      }
+    }
+  }
+
+  /**
+   * Keys a serialized {@link com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput} by its title.
+   */
+  public static class OutputTitleMapper implements MapFunction<String, Tuple2<String, String>> {
+    @Override
+    public Tuple2<String, String> map(String json) throws Exception {
+      final Map<?, ?> output = JSON.std.mapFrom(json);
+      return new Tuple2<>((String) output.get("title"), json);
+    }
+  }
+
+  /**
+   * Returns the previous output of an unchanged page.
+   */
+  public static class PreviousOutputSelector
+      implements JoinFunction<RawWikiDocument, Tuple2<String, String>, String> {
+    @Override
+    public String join(RawWikiDocument unchanged, Tuple2<String, String> previousOutput) {
+      return previousOutput.f1;
+    }
+  }
+
+  /**
+   * Emits the unchanged pages that have no output in the previous run, e.g. because that output
+   * was deleted, so that they are processed again. Used as left outer join of the unchanged pages
+   * with the previous output.
+   */
+  public static class MissingOutputFilter
+      implements FlatJoinFunction<RawWikiDocument, Tuple2<String, String>, RawWikiDocument> {
+    @Override
+    public void join(RawWikiDocument unchanged, Tuple2<String, String> previousOutput,
+                     Collector<RawWikiDocument> out) {
+      if (previousOutput == null) {
+        LOGGER.debug("no previous output of unchanged page {}, processing it again", unchanged.title);
+        out.collect(unchanged);
+      }
+    }
+  }
+}
@@ -4,25 +4,37 @@ import com.formulasearchengine.mathosphere.mlp.cli.TagsCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
 import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.text.MathConverter;
-import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.accumulators.LongCounter;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.configuration.Configuration;
 import org.apache.flink.util.Collector;
 
 /**
  * Created by Moritz on 04.08.2017.
  */
-public class TagExtractionMapper implements FlatMapFunction<RawWikiDocument, MathTag> {
+public class TagExtractionMapper extends RichFlatMapFunction<RawWikiDocument, MathTag> {
 
     private final TagsCommandConfig config;
 
+    private transient LongCounter pagesOverBudget;
+
     public TagExtractionMapper(TagsCommandConfig c) {
         config = c;
     }
 
+    @Override
+    public void open(Configuration parameters) {
+        pagesOverBudget = MathConverter.registerOverBudgetCounter(this);
+    }
+
     @Override
     public void flatMap(RawWikiDocument rawWikiDocument, Collector<MathTag> collector) throws Exception {
         final MathConverter converter = new MathConverter(rawWikiDocument.text, rawWikiDocument.title, config);
         converter.setSkipHiddenMath(true);
         converter.processTags();
+        if (converter.isOverBudget() && pagesOverBudget != null) {
+            pagesOverBudget.add(1L);
+        }
         for (MathTag tag : converter.getMathTags()) {
             collector.collect(tag);
         }
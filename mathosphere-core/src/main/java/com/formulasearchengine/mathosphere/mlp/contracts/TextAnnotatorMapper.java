@@ -1,5 +1,6 @@
 package com.formulasearchengine.mathosphere.mlp.contracts;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 
@@ -9,17 +10,29 @@ import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
 import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikidataLink;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierCache;
 import com.formulasearchengine.mathosphere.mlp.text.MathConverter;
+import com.formulasearchengine.mathosphere.mlp.text.MathMLUtils;
 import com.formulasearchengine.mathosphere.mlp.text.PosTagger;
+import com.formulasearchengine.mathosphere.mlp.text.SentenceCache;
+import com.formulasearchengine.mathosphere.mlp.text.TexInfoCache;
+import com.formulasearchengine.mathosphere.mlp.text.TexInfoClient;
+import com.formulasearchengine.mathosphere.mlp.text.TexToMathMLCache;
+import com.formulasearchengine.mathosphere.mlp.text.WikiTextConverter;
+import com.formulasearchengine.mathosphere.mlp.text.WikiTextStripper;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils;
 
+import org.apache.flink.api.common.accumulators.LongCounter;
 import org.apache.flink.api.common.functions.RichMapFunction;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class TextAnnotatorMapper extends RichMapFunction<RawWikiDocument, ParsedWikiDocument> {
 
@@ -30,6 +43,12 @@ public class TextAnnotatorMapper extends RichMapFunction<RawWikiDocument, Parsed
 
   private transient PosTagger posTagger;
 
+  private transient LongCounter pagesOverBudget;
+
+  private transient TexInfoClient texInfoClient;
+
+  private transient TexInfoCache texInfoCache;
+
   public TextAnnotatorMapper(BaseConfig config) {
     this.config = config;
   }
@@ -37,6 +56,95 @@ public class TextAnnotatorMapper extends RichMapFunction<RawWikiDocument, Parsed
   @Override
   public void open(Configuration cfg) {
     posTagger = PosTagger.create(config);
+    pagesOverBudget = MathConverter.registerOverBudgetCounter(this);
+    MathMLUtils.initTexToMathMLCache(config.getMathmlCacheSize());
+    IdentifierCache.initShared(config.getIdentifierCacheSize());
+    registerMathMLCacheMetrics();
+    registerPosTaggingMetrics();
+    // the formulas look the cache up through the config, it is opened here to fail early
+    texInfoCache = MathMLUtils.getTexInfoCache(config);
+    if (config.getUseTeXIdentifiers() && !config.getUseLocalTexIdentifiers() && config.getTexvcinfoConcurrency() > 0) {
+      texInfoClient = TexInfoClient.shared(config.getTexvcinfoUrl(), config.getTexvcinfoConcurrency(), texInfoCache);
+    }
+  }
+
+  /**
+   * Exports the statistics of the memo of converted formulas. The memo is shared by all task slots
+   * of the JVM, so are the values.
+   */
+  private void registerMathMLCacheMetrics() {
+    final MetricGroup group;
+    try {
+      group = getRuntimeContext().getMetricGroup().addGroup("texToMathML");
+    } catch (IllegalStateException noRuntimeContext) {
+      return;
+    }
+    group.gauge("hitRatio", (Gauge<Double>) () -> MathMLUtils.getTexToMathMLCache().getHitRatio());
+    group.gauge("conversions", (Gauge<Long>) () -> MathMLUtils.getTexToMathMLCache().getConversions());
+    group.gauge("meanConversionMicros",
+        (Gauge<Double>) () -> MathMLUtils.getTexToMathMLCache().getMeanConversionMicros());
+    group.gauge("cachedFormulas", (Gauge<Long>) () -> MathMLUtils.getTexToMathMLCache().getSize());
+    group.gauge("cacheBytes", (Gauge<Long>) () -> MathMLUtils.getTexToMathMLCache().getEstimatedBytes());
+  }
+
+  /**
+   * Exports the number of POS tagged sentences of this task, the fraction of the sentences that
+   * were skipped, see {@link BaseConfig#getPosTaggingWindow()}, and the statistics of the cache of
+   * tagged sentences.
+   */
+  private void registerPosTaggingMetrics() {
+    final MetricGroup group;
+    try {
+      group = getRuntimeContext().getMetricGroup().addGroup("posTagging");
+    } catch (IllegalStateException noRuntimeContext) {
+      return;
+    }
+    group.gauge("taggedSentences", (Gauge<Long>) () -> posTagger.getTaggedSentences());
+    group.gauge("skippedSentenceRatio", (Gauge<Double>) () -> posTagger.getSkippedSentenceRatio());
+    final SentenceCache sentenceCache = posTagger.getSentenceCache();
+    if (sentenceCache != null) {
+      group.gauge("sentenceCacheHits", (Gauge<Long>) () -> sentenceCache.getStats().hitCount());
+      group.gauge("sentenceCacheMisses", (Gauge<Long>) () -> sentenceCache.getStats().missCount());
+      group.gauge("sentenceCacheEvictions", (Gauge<Long>) () -> sentenceCache.getStats().evictionCount());
+    }
+  }
+
+  /**
+   * @return the POS tagger of this task, null before {@link #open(Configuration)}
+   */
+  public PosTagger getPosTagger() {
+    return posTagger;
+  }
+
+  @Override
+  public void close() {
+    if (posTagger != null) {
+      LOGGER.info("POS tagging: {} sentences tagged, {} skipped ({} of all sentences)",
+          posTagger.getTaggedSentences(), posTagger.getSkippedSentences(), posTagger.getSkippedSentenceRatio());
+      final SentenceCache sentenceCache = posTagger.getSentenceCache();
+      if (sentenceCache != null) {
+        final CacheStats sentenceStats = sentenceCache.getStats();
+        LOGGER.info("sentence cache: {} sentences, {} hits, {} misses, {} evictions", sentenceCache.getSize(),
+            sentenceStats.hitCount(), sentenceStats.missCount(), sentenceStats.evictionCount());
+      }
+      posTagger.close();
+    }
+    final TexToMathMLCache mathMLCache = MathMLUtils.getTexToMathMLCache();
+    LOGGER.info("MathML conversions: {} conversions in {} us on average, hit ratio {}, {} formulas in {} bytes",
+        mathMLCache.getConversions(), mathMLCache.getMeanConversionMicros(), mathMLCache.getHitRatio(),
+        mathMLCache.getSize(), mathMLCache.getEstimatedBytes());
+    final CacheStats identifierStats = IdentifierCache.getShared().getStats();
+    LOGGER.info("identifier cache: {} formulas, {} hits, {} misses", IdentifierCache.getShared().getSize(),
+        identifierStats.hitCount(), identifierStats.missCount());
+    if (texInfoCache != null) {
+      // the cache is shared by all task slots of the JVM, so are the counts
+      LOGGER.info("texvcinfo cache {}: {} hits, {} misses", texInfoCache.getPath(), texInfoCache.getHits(),
+          texInfoCache.getMisses());
+    }
+    if (texInfoClient != null) {
+      LOGGER.info("texvcinfo client: {} requests, {} coalesced lookups", texInfoClient.getRequests(),
+          texInfoClient.getCoalesced());
+    }
   }
 
   @Override
@@ -56,16 +164,25 @@ public class TextAnnotatorMapper extends RichMapFunction<RawWikiDocument, Parsed
     try {
       String cleanText;
       if (config.getUseTeXIdentifiers()) {
-        MathConverter c = new MathConverter(wikitext, title, config);
+        final WikiTextConverter c = config.getUseFastStripper()
+            ? new WikiTextStripper(wikitext, title, config)
+            : new MathConverter(wikitext, title, config);
         cleanText = c.getStrippedOutput();
         mathTags = c.getMathTags();
         links = c.getLinks();
+        if (c instanceof MathConverter && ((MathConverter) c).isOverBudget() && pagesOverBudget != null) {
+          pagesOverBudget.add(1L);
+        }
       } else {
         mathTags = WikiTextUtils.findMathTags(wikitext);
         String newText = WikiTextUtils.replaceAllFormulas(wikitext, mathTags);
         cleanText = WikiTextUtils.extractPlainText(newText);
       }
       //formulas = toFormulas(mathTags, config.getUseTeXIdentifiers(),config.getTexvcinfoUrl());
+      if (texInfoClient != null) {
+        // before the tagger asks every formula for its identifiers one request at a time
+        resolveIdentifiers(mathTags);
+      }
       sentences = posTagger.process(cleanText, mathTags);
     } catch (Exception e) {
       LOGGER.warn("Problem with text processing", title, e);
@@ -81,6 +198,30 @@ public class TextAnnotatorMapper extends RichMapFunction<RawWikiDocument, Parsed
     return new ParsedWikiDocument(title, allIdentifiers, mathTags, sentences, links);
   }
 
+  /**
+   * Requests the identifiers of all TeX formulas of a document together.
+   */
+  private void resolveIdentifiers(List<MathTag> mathTags) {
+    final List<MathTag> texTags = new ArrayList<>();
+    final List<String> texs = new ArrayList<>();
+    for (MathTag tag : mathTags) {
+      if (tag.getMarkUpType() != WikiTextUtils.MathMarkUpType.MATHML) {
+        texTags.add(tag);
+        texs.add(tag.getTagContent());
+      }
+    }
+    if (texs.isEmpty()) {
+      return;
+    }
+    final Map<String, List<String>> resolved = texInfoClient.resolve(texs);
+    for (int i = 0; i < texTags.size(); i++) {
+      final List<String> identifiers = resolved.get(texs.get(i));
+      if (identifiers != null) {
+        texTags.get(i).setIdentifiers(MathMLUtils.filterTexIdentifiers(HashMultiset.create(identifiers)));
+      }
+    }
+  }
+
   public ParsedWikiDocument parse(String wikitext) {
     return parse(wikitext, "no title specified");
   }
@@ -1,11 +1,8 @@
 package com.formulasearchengine.mathosphere.mlp.contracts;
 
 import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+import com.formulasearchengine.mathosphere.mlp.text.EntityUnescaper;
 
-import org.apache.commons.lang3.text.translate.AggregateTranslator;
-import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
-import org.apache.commons.lang3.text.translate.EntityArrays;
-import org.apache.commons.lang3.text.translate.LookupTranslator;
 import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.util.Collector;
 import org.apache.logging.log4j.Logger;
@@ -23,11 +20,6 @@ public class TextExtractorMapper implements FlatMapFunction<String, RawWikiDocum
   private static final Pattern TEXT_PATTERN = Pattern.compile("(?:<text.*?>)(.*?)(?:</text>)",
       Pattern.DOTALL);
 
-  private static final CharSequenceTranslator TRANSLATOR = new AggregateTranslator(
-      new LookupTranslator(EntityArrays.ISO8859_1_UNESCAPE()),
-      new LookupTranslator(EntityArrays.BASIC_UNESCAPE()),
-      new LookupTranslator(EntityArrays.HTML40_EXTENDED_UNESCAPE()));
-
   @Override
   public void flatMap(String content, Collector<RawWikiDocument> out) throws Exception {
     Matcher titleMatcher = TITLE_PATTERN.matcher(content);
@@ -68,9 +60,10 @@ public class TextExtractorMapper implements FlatMapFunction<String, RawWikiDocum
    *
    * @param text the text that will be unescaped
    * @return the unescaped version of the string text
+   * @see EntityUnescaper
    */
   public static String unescape(String text) {
-    return TRANSLATOR.translate(text);
+    return EntityUnescaper.unescape(text);
   }
 
 }
@@ -0,0 +1,259 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+import com.formulasearchengine.wikitext.PageType;
+import com.formulasearchengine.wikitext.RevisionType;
+import com.formulasearchengine.wikitext.TextType;
+
+import org.apache.flink.api.common.io.DelimitedInputFormat;
+import org.apache.flink.core.fs.FileInputSplit;
+import org.apache.flink.core.fs.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a MediaWiki XML export and emits one {@link RawWikiDocument} per page of namespace 0.
+ * <p>
+ * The file is split on {@code </page>}, so every split after the first one resynchronizes on the
+ * next page boundary. Parsing starts at the {@code <page>} tag of each record, so the siteinfo header
+ * of the first split is never parsed. Each page is pull-parsed with StAX directly from the split buffer into the
+ * {@link PageType}, {@link RevisionType} and {@link TextType} model. Neither the raw page nor the
+ * escaped text is materialized as a String and no regular expressions are involved.
+ * Replaces the combination of a {@code TextInputFormat} and the {@link TextExtractorMapper}.
+ */
+public class WikiDumpInputFormat extends DelimitedInputFormat<RawWikiDocument> {
+
+  private static final Logger LOGGER = LogManager.getLogger(WikiDumpInputFormat.class.getName());
+
+  static final String PAGE_START = "<page>";
+
+  static final String PAGE_END = "</page>";
+
+  static final byte[] PAGE_START_BYTES = PAGE_START.getBytes(StandardCharsets.UTF_8);
+
+  static final byte[] PAGE_END_BYTES = PAGE_END.getBytes(StandardCharsets.UTF_8);
+
+  private MathPrefilter mathPrefilter = new MathPrefilter(false);
+
+  private transient XMLInputFactory xmlInputFactory;
+
+  public WikiDumpInputFormat(Path filePath) {
+    super(filePath, null);
+    setDelimiter(PAGE_END);
+  }
+
+  /**
+   * @param enabled drop pages without math markup before they are parsed, see {@link MathPrefilter}
+   */
+  public void setMathPrefilter(boolean enabled) {
+    this.mathPrefilter = new MathPrefilter(enabled);
+  }
+
+  @Override
+  public void openInputFormat() throws IOException {
+    super.openInputFormat();
+    mathPrefilter.open(getRuntimeContext());
+  }
+
+  @Override
+  public void open(FileInputSplit split) throws IOException {
+    super.open(split);
+    if (xmlInputFactory == null) {
+      xmlInputFactory = createXmlInputFactory();
+    }
+  }
+
+  @Override
+  public RawWikiDocument readRecord(RawWikiDocument reuse, byte[] bytes, int offset, int numBytes) throws IOException {
+    if (xmlInputFactory == null) {
+      xmlInputFactory = createXmlInputFactory();
+    }
+    if (!mathPrefilter.accept(bytes, offset, numBytes)) {
+      return null;
+    }
+    return readPage(xmlInputFactory, reuse, bytes, offset, numBytes);
+  }
+
+  /**
+   * Parses one record that was delimited by (and does not contain) {@code </page>}.
+   *
+   * @param factory   the factory to create the pull parser
+   * @param reuse     the document that will be filled
+   * @param bytes     the buffer that holds the record
+   * @param offset    the offset of the record in the buffer
+   * @param numBytes  the length of the record
+   * @return the filled document or null if the record is not a valid page of namespace 0
+   */
+  static RawWikiDocument readPage(XMLInputFactory factory, RawWikiDocument reuse, byte[] bytes, int offset,
+                                  int numBytes) {
+    // skip the header of the dump, it is not needed and its comment is not always well formed xml
+    final int pageStart = indexOf(bytes, offset, offset + numBytes, PAGE_START_BYTES);
+    if (pageStart < 0) {
+      // the tail of the dump (e.g. </mediawiki>) is no page
+      return null;
+    }
+    // the delimiter is not part of the record, thus the closing tag is appended again
+    InputStream page = new SequenceInputStream(
+        new ByteArrayInputStream(bytes, pageStart, offset + numBytes - pageStart),
+        new ByteArrayInputStream(PAGE_END_BYTES));
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.createXMLStreamReader(page, StandardCharsets.UTF_8.name());
+      return readPage(reader, reuse);
+    } catch (XMLStreamException e) {
+      LOGGER.warn("skipping malformed page", e);
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          LOGGER.warn("could not close xml reader", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Pulls the next page from the reader. Only the most recent revision is kept, see
+   * {@link PageType#getLastRevision()}.
+   *
+   * @param reader the reader positioned in front of a page element
+   * @param reuse  the document that will be filled
+   * @return the filled document or null if the page is not a valid page of namespace 0
+   */
+  static RawWikiDocument readPage(XMLStreamReader reader, RawWikiDocument reuse) throws XMLStreamException {
+    PageType page = null;
+    RevisionType revision = null;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT && "page".equals(reader.getLocalName())) {
+        break;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      final String name = reader.getLocalName();
+      if ("page".equals(name)) {
+        page = new PageType();
+        continue;
+      }
+      if (page == null) {
+        // content in front of the page element
+        continue;
+      }
+      switch (name) {
+        case "title":
+          page.setTitle(reader.getElementText());
+          break;
+        case "ns":
+          page.setNs(new BigInteger(reader.getElementText().trim()));
+          if (page.getNs().signum() != 0) {
+            // skip docs from namespaces other than 0
+            return null;
+          }
+          break;
+        case "id":
+          final BigInteger id = new BigInteger(reader.getElementText().trim());
+          if (revision == null) {
+            page.setId(id);
+          } else {
+            revision.setId(id);
+          }
+          break;
+        case "revision":
+          revision = new RevisionType();
+          break;
+        case "text":
+          if (revision != null) {
+            final TextType text = new TextType();
+            text.setValue(reader.getElementText());
+            revision.setText(text);
+          }
+          break;
+        case "sha1":
+          if (revision != null) {
+            revision.setSha1(reader.getElementText());
+          }
+          break;
+        case "contributor":
+        case "upload":
+        case "discussionthreadinginfo":
+          skipElement(reader);
+          break;
+        default:
+          break;
+      }
+    }
+    if (page == null || page.getTitle() == null || page.getNs() == null) {
+      return null;
+    }
+    if (revision == null || revision.getText() == null) {
+      return null;
+    }
+    page.getRevisionOrUpload().add(revision);
+    return toRawWikiDocument(page, reuse);
+  }
+
+  private static RawWikiDocument toRawWikiDocument(PageType page, RawWikiDocument reuse) {
+    final RawWikiDocument doc = reuse == null ? new RawWikiDocument() : reuse;
+    doc.title = page.getTitle();
+    doc.namespace = page.getNs().intValue();
+    final RevisionType revision = page.getLastRevision();
+    doc.text = revision.getText().getValue();
+    doc.pageId = page.getId() == null ? 0 : page.getId().longValue();
+    doc.revisionId = revision.getId() == null ? 0 : revision.getId().longValue();
+    doc.sha1 = revision.getSha1();
+    LOGGER.info("processing document '{}'...", doc.title);
+    return doc;
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * @return the position of the first occurrence of the pattern in {@code data[from, to)} or -1
+   */
+  static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+    outer:
+    for (int i = from; i <= to - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    return factory;
+  }
+}
@@ -0,0 +1,228 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the dependency trees of sentences, so that a sentence is parsed once for all documents
+ * of a task and, if the cache is saved, for the following runs of the machine learning commands.
+ * <p>
+ * The trees are cached by the md5 of the surface texts and POS tags of the words, which are the
+ * input of the dependency parser. The size of the cache is bounded by the number of sentences,
+ * the least recently used sentences are evicted first. The cache file is a header followed by
+ * {@code [md5][tree]} records, see {@link DependencyTree#write(java.io.DataOutput)}. The trees
+ * depend on the parser model, so one file should only be used with one model.
+ */
+public class DependencyParseCache {
+
+  private static final Logger LOGGER = LogManager.getLogger(DependencyParseCache.class.getName());
+
+  private static final int MAGIC = 0x44657054;
+
+  private static final int VERSION = 1;
+
+  private static final int MD5_BYTES = 16;
+
+  private static final HashFunction HASHER = Hashing.md5();
+
+  private final long maximumSentences;
+
+  private final Cache<HashCode, DependencyTree> cache;
+
+  /**
+   * @param maximumSentences maximal number of cached sentences
+   */
+  public DependencyParseCache(long maximumSentences) {
+    if (maximumSentences <= 0) {
+      throw new IllegalArgumentException("The size of the cache must be positive.");
+    }
+    this.maximumSentences = maximumSentences;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSentences)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param words the words of a sentence
+   * @return the tree of the sentence, null if the sentence is not cached
+   */
+  public DependencyTree get(List<Word> words) {
+    final DependencyTree cached = cache.getIfPresent(key(words));
+    return cached != null && cached.size() == words.size() ? cached : null;
+  }
+
+  /**
+   * @param words the words of a sentence
+   * @param tree  the tree of the sentence
+   */
+  public void put(List<Word> words, DependencyTree tree) {
+    if (tree.size() != words.size()) {
+      throw new IllegalArgumentException("The tree needs exactly one node per word.");
+    }
+    cache.put(key(words), tree);
+  }
+
+  static HashCode key(List<Word> words) {
+    final Hasher hasher = HASHER.newHasher();
+    for (Word word : words) {
+      hasher.putString(word.getWord(), StandardCharsets.UTF_8).putChar('\0')
+          .putString(word.getPosTag(), StandardCharsets.UTF_8).putChar('\0');
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Adds the trees of a cache file to the cache. Nothing is added if the file does not exist. A
+   * truncated record at the end of the file is ignored.
+   *
+   * @param path location of the cache file
+   * @return number of trees read
+   */
+  public int load(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    final Map<HashCode, DependencyTree> trees = read(path);
+    cache.putAll(trees);
+    LOGGER.info("loaded {} dependency trees from {}", trees.size(), path);
+    return trees.size();
+  }
+
+  /**
+   * Writes the cached trees and, up to the size of the cache, the trees already in the file, so
+   * that tasks that save to the same file keep the trees of each other, but the file does not grow
+   * beyond what a cache can load. Trees of the file that do not fit are dropped, the ones that were
+   * written first go first. The file is replaced atomically, so it can be loaded while it is saved.
+   * <p>
+   * Tasks that save to the same file do so one after another, so that no task overwrites the trees
+   * another one has just written: the tasks of a JVM are synchronized and the JVMs lock the file
+   * {@code <file>.lock} next to the cache file. The lock file is kept. File locks of a shared file
+   * system, e.g. NFS, may not be supported or may not be respected by all hosts, tasks of several
+   * hosts should use different files there.
+   *
+   * @param path location of the cache file
+   * @return number of trees written
+   */
+  public int save(Path path) throws IOException {
+    synchronized (DependencyParseCache.class) {
+      try (FileChannel channel = FileChannel.open(lockFile(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+           FileLock ignored = channel.lock()) {
+        return write(path);
+      }
+    }
+  }
+
+  /**
+   * @return the file that is locked while the cache file is saved
+   */
+  static Path lockFile(Path path) {
+    return path.resolveSibling(path.getFileName() + ".lock");
+  }
+
+  private int write(Path path) throws IOException {
+    final Map<HashCode, DependencyTree> cached = new LinkedHashMap<>(cache.asMap());
+    final List<Map.Entry<HashCode, DependencyTree>> fromFile = new ArrayList<>();
+    if (Files.exists(path)) {
+      for (Map.Entry<HashCode, DependencyTree> entry : read(path).entrySet()) {
+        if (!cached.containsKey(entry.getKey())) {
+          fromFile.add(entry);
+        }
+      }
+    }
+    // the file lists the trees in the order they were written, so the newest are at the end
+    final int kept = (int) Math.min(fromFile.size(), Math.max(0, maximumSentences - cached.size()));
+    final Map<HashCode, DependencyTree> trees = new LinkedHashMap<>();
+    for (Map.Entry<HashCode, DependencyTree> entry : fromFile.subList(fromFile.size() - kept, fromFile.size())) {
+      trees.put(entry.getKey(), entry.getValue());
+    }
+    trees.putAll(cached);
+    final Path directory = path.toAbsolutePath().getParent();
+    final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (Map.Entry<HashCode, DependencyTree> entry : trees.entrySet()) {
+          out.write(entry.getKey().asBytes());
+          entry.getValue().write(out);
+        }
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    LOGGER.info("saved {} dependency trees to {}", trees.size(), path);
+    return trees.size();
+  }
+
+  private static Map<HashCode, DependencyTree> read(Path path) throws IOException {
+    final Map<HashCode, DependencyTree> trees = new LinkedHashMap<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a dependency tree cache.");
+      }
+      final int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " of dependency tree cache " + path + ".");
+      }
+      final byte[] md5 = new byte[MD5_BYTES];
+      while (true) {
+        try {
+          in.readFully(md5);
+        } catch (EOFException end) {
+          break;
+        }
+        try {
+          trees.put(HashCode.fromBytes(md5), DependencyTree.read(in));
+        } catch (EOFException truncated) {
+          LOGGER.warn("ignoring truncated record at the end of dependency tree cache {}", path);
+          break;
+        }
+      }
+    }
+    return trees;
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  /**
+   * @return the hits, misses and evictions of the cache
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -0,0 +1,170 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.TypedDependency;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact form of the basic dependencies of a sentence, as parsed by the dependency parser.
+ * <p>
+ * The words of the sentence are numbered from 1 like the nodes of a {@link GrammaticalStructure},
+ * the tree is the head of every word: 0 for a root and -1 for a word without a head. The labels
+ * of the dependencies are not kept, the features of {@link WekaUtils} only use the structure.
+ */
+public final class DependencyTree {
+
+  private static final int ROOT = 0;
+
+  private static final int NO_HEAD = -1;
+
+  /**
+   * head of word i + 1
+   */
+  private final int[] heads;
+
+  private DependencyTree(int[] heads) {
+    this.heads = heads;
+  }
+
+  /**
+   * @param heads head of every word, see {@link #getHead(int)}
+   */
+  public static DependencyTree of(int[] heads) {
+    for (int head : heads) {
+      if (head < NO_HEAD || head > heads.length) {
+        throw new IllegalArgumentException("Head " + head + " is not a word of the sentence.");
+      }
+    }
+    return new DependencyTree(heads.clone());
+  }
+
+  /**
+   * @param size         number of words of the sentence
+   * @param dependencies the basic dependencies of the sentence
+   */
+  public static DependencyTree of(int size, Collection<TypedDependency> dependencies) {
+    final int[] heads = new int[size];
+    Arrays.fill(heads, NO_HEAD);
+    for (TypedDependency dependency : dependencies) {
+      final int dependent = dependency.dep().index();
+      final int governor = dependency.gov().index();
+      if (dependent >= 1 && dependent <= size && governor >= ROOT && governor <= size) {
+        heads[dependent - 1] = governor;
+      }
+    }
+    return new DependencyTree(heads);
+  }
+
+  public static DependencyTree of(int size, GrammaticalStructure structure) {
+    return of(size, structure.typedDependencies());
+  }
+
+  /**
+   * @return number of words of the sentence
+   */
+  public int size() {
+    return heads.length;
+  }
+
+  /**
+   * @param word number of the word, from 1 to {@link #size()}
+   * @return number of the head of the word, 0 if the word is a root, -1 if it has no head
+   */
+  public int getHead(int word) {
+    return heads[word - 1];
+  }
+
+  /**
+   * Finds the path between two words, ignoring the direction of the dependencies. In a tree the
+   * path is unique, hence it is the shortest one.
+   *
+   * @param from number of the first word
+   * @param to   number of the last word
+   * @return the numbers of the words on the path from the first to the last one, null if the words
+   * are not connected
+   */
+  public int[] getPath(int from, int to) {
+    final int[] fromAncestors = ancestors(from);
+    final int[] toAncestors = ancestors(to);
+    // position of each word in the ancestors of the first word
+    final int[] positions = new int[heads.length + 1];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < fromAncestors.length; i++) {
+      positions[fromAncestors[i]] = i;
+    }
+    for (int j = 0; j < toAncestors.length; j++) {
+      final int i = positions[toAncestors[j]];
+      if (i >= 0) {
+        // lowest common ancestor found, go up from the first word and down to the last one
+        final int[] path = Arrays.copyOf(fromAncestors, i + 1 + j);
+        for (int k = 0; k < j; k++) {
+          path[i + 1 + k] = toAncestors[j - 1 - k];
+        }
+        return path;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the word and its ancestors up to the root, without the root node 0
+   */
+  private int[] ancestors(int word) {
+    if (word < 1 || word > heads.length) {
+      throw new IndexOutOfBoundsException("Word " + word + " is not a word of the sentence.");
+    }
+    int[] ancestors = new int[8];
+    int size = 0;
+    // a path has at most one node per word, which also stops at a cycle
+    for (int current = word; current > ROOT && size < heads.length; current = heads[current - 1]) {
+      if (size == ancestors.length) {
+        ancestors = Arrays.copyOf(ancestors, size * 2);
+      }
+      ancestors[size++] = current;
+    }
+    return Arrays.copyOf(ancestors, size);
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(heads.length);
+    for (int head : heads) {
+      out.writeInt(head);
+    }
+  }
+
+  public static DependencyTree read(DataInput in) throws IOException {
+    final int size = in.readInt();
+    if (size < 0) {
+      throw new IOException("Invalid number of words " + size + ".");
+    }
+    final int[] heads = new int[size];
+    for (int i = 0; i < size; i++) {
+      heads[i] = in.readInt();
+    }
+    try {
+      return of(heads);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof DependencyTree && Arrays.equals(heads, ((DependencyTree) o).heads));
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(heads);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(heads);
+  }
+}
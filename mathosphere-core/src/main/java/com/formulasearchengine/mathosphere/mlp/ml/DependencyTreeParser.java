@@ -0,0 +1,256 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.google.common.hash.HashCode;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Parses the dependency trees of sentences for the features of {@link WekaUtils}.
+ * <p>
+ * The trees are looked up in a {@link DependencyParseCache} first, which is shared by all
+ * documents parsed with this parser and which is loaded from and saved to
+ * {@link BaseConfig#getDependencyCache()} if that is set. The sentences that are not cached are
+ * parsed in parallel on a pool of {@link BaseConfig#getDependencyParserThreads()} threads.
+ * <p>
+ * A {@link DependencyParser} is not meant to be shared by threads, so every parsing thread takes
+ * its own instance of the parser. The instances are loaded from the model when they are needed
+ * first, at most one per thread, and each one keeps its own copy of the model in memory.
+ */
+public class DependencyTreeParser implements Closeable {
+
+  private static final Logger LOGGER = LogManager.getLogger(DependencyTreeParser.class.getName());
+
+  /**
+   * loads another instance of the dependency parser
+   */
+  private final Supplier<DependencyParser> loader;
+
+  /**
+   * instances of the dependency parser that are not used by a thread right now
+   */
+  private final BlockingQueue<DependencyParser> idleParsers = new LinkedBlockingQueue<>();
+
+  /**
+   * maximal number of instances of the dependency parser, one per parsing thread
+   */
+  private final int maxParsers;
+
+  /**
+   * number of instances of the dependency parser loaded so far, guarded by {@link #idleParsers}
+   */
+  private int loadedParsers;
+
+  /**
+   * trees of all documents of this parser, null if trees are not cached
+   */
+  private final DependencyParseCache cache;
+
+  /**
+   * file the cache is loaded from and saved to, null if the cache is not persisted
+   */
+  private final Path cacheFile;
+
+  /**
+   * pool of the parsing threads, null if the sentences are parsed on the calling thread
+   */
+  private final ForkJoinPool pool;
+
+  private final AtomicLong parsedSentences = new AtomicLong();
+
+  /**
+   * @param loader    loads an instance of the dependency parser, the first one is loaded right away
+   * @param cache     cache of the trees, may be null
+   * @param cacheFile file the cache is saved to on {@link #close()}, may be null
+   * @param threads   maximal number of sentences that are parsed in parallel
+   */
+  public DependencyTreeParser(Supplier<DependencyParser> loader, DependencyParseCache cache, Path cacheFile, int threads) {
+    this.loader = loader;
+    this.cache = cache;
+    this.cacheFile = cache != null ? cacheFile : null;
+    this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    this.maxParsers = Math.max(1, threads);
+    this.loadedParsers = 1;
+    idleParsers.add(loader.get());
+  }
+
+  /**
+   * Loads the dependency parser model of the configuration and the cache file, if one is set.
+   */
+  public static DependencyTreeParser create(BaseConfig config, String model) throws IOException {
+    DependencyParseCache cache = null;
+    Path cacheFile = null;
+    if (config.getDependencyCacheSize() > 0) {
+      cache = new DependencyParseCache(config.getDependencyCacheSize());
+      if (config.getDependencyCache() != null) {
+        cacheFile = Paths.get(config.getDependencyCache());
+        cache.load(cacheFile);
+      }
+    }
+    return new DependencyTreeParser(() -> DependencyParser.loadFromModelFile(model), cache, cacheFile,
+      config.getDependencyParserThreads());
+  }
+
+  /**
+   * @return the tree of the sentence
+   */
+  public DependencyTree parse(Sentence sentence) {
+    final List<Word> words = sentence.getWords();
+    DependencyTree tree = cache != null ? cache.get(words) : null;
+    if (tree == null) {
+      tree = predict(words);
+      if (cache != null) {
+        cache.put(words, tree);
+      }
+    }
+    return tree;
+  }
+
+  /**
+   * Parses the sentences of a document. The sentences that are not cached are parsed in parallel,
+   * sentences with the same words are parsed once.
+   *
+   * @param sentences the sentences, e.g. of the relations of a document
+   * @return the tree of every sentence by identity of the sentence
+   */
+  public Map<Sentence, DependencyTree> parseAll(Collection<Sentence> sentences) {
+    final Map<Sentence, DependencyTree> trees = new IdentityHashMap<>();
+    final Map<HashCode, List<Sentence>> missing = new HashMap<>();
+    for (Sentence sentence : sentences) {
+      if (trees.containsKey(sentence)) {
+        continue;
+      }
+      final DependencyTree tree = cache != null ? cache.get(sentence.getWords()) : null;
+      trees.put(sentence, tree);
+      if (tree == null) {
+        missing.computeIfAbsent(DependencyParseCache.key(sentence.getWords()), k -> new ArrayList<>()).add(sentence);
+      }
+    }
+    if (missing.isEmpty()) {
+      return trees;
+    }
+    if (pool == null || missing.size() == 1) {
+      for (List<Sentence> same : missing.values()) {
+        put(trees, same, predict(same.get(0).getWords()));
+      }
+      return trees;
+    }
+    final List<List<Sentence>> groups = new ArrayList<>(missing.values());
+    final List<ForkJoinTask<DependencyTree>> tasks = new ArrayList<>(groups.size());
+    for (List<Sentence> same : groups) {
+      tasks.add(pool.submit(() -> predict(same.get(0).getWords())));
+    }
+    for (int i = 0; i < groups.size(); i++) {
+      put(trees, groups.get(i), tasks.get(i).join());
+    }
+    return trees;
+  }
+
+  private void put(Map<Sentence, DependencyTree> trees, List<Sentence> same, DependencyTree tree) {
+    for (Sentence sentence : same) {
+      trees.put(sentence, tree);
+    }
+    if (cache != null) {
+      cache.put(same.get(0).getWords(), tree);
+    }
+  }
+
+  private DependencyTree predict(List<Word> words) {
+    final List<TaggedWord> taggedSentence = new ArrayList<>(words.size());
+    for (Word word : words) {
+      taggedSentence.add(new TaggedWord(word.getWord(), word.getPosTag()));
+    }
+    parsedSentences.incrementAndGet();
+    final DependencyParser parser = takeParser();
+    try {
+      return DependencyTree.of(words.size(), parser.predict(taggedSentence));
+    } finally {
+      idleParsers.add(parser);
+    }
+  }
+
+  /**
+   * @return an instance of the dependency parser that no other thread uses, a new one if all are
+   * in use and there are less than one per thread, otherwise the next one that is put back
+   */
+  private DependencyParser takeParser() {
+    final DependencyParser idle = idleParsers.poll();
+    if (idle != null) {
+      return idle;
+    }
+    final int loaded;
+    synchronized (idleParsers) {
+      loaded = loadedParsers < maxParsers ? ++loadedParsers : 0;
+    }
+    if (loaded == 0) {
+      try {
+        return idleParsers.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a dependency parser.", e);
+      }
+    }
+    try {
+      LOGGER.info("loading dependency parser {} of {}", loaded, maxParsers);
+      return loader.get();
+    } catch (RuntimeException e) {
+      synchronized (idleParsers) {
+        loadedParsers--;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return the cache of trees, null if {@link BaseConfig#getDependencyCacheSize()} is 0
+   */
+  public DependencyParseCache getCache() {
+    return cache;
+  }
+
+  /**
+   * @return number of sentences that were parsed, not found in the cache
+   */
+  public long getParsedSentences() {
+    return parsedSentences.get();
+  }
+
+  /**
+   * Saves the cache to its file, if it has one, and stops the parsing threads. The parser must
+   * not be used afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    if (pool != null) {
+      pool.shutdown();
+    }
+    if (cache != null) {
+      LOGGER.info("dependency parsing: {} sentences parsed, cache of {} sentences, {} hits, {} misses",
+        parsedSentences.get(), cache.getSize(), cache.getStats().hitCount(), cache.getStats().missCount());
+      if (cacheFile != null) {
+        cache.save(cacheFile);
+      }
+    }
+  }
+}
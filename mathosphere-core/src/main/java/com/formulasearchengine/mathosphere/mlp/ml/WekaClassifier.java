@@ -2,13 +2,15 @@ package com.formulasearchengine.mathosphere.mlp.ml;
 
 import com.formulasearchengine.mathosphere.mlp.cli.MachineLearningDefinienClassifierConfig;
 import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
-import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
 import com.formulasearchengine.mlp.evaluation.pojo.IdentifierDefinition;
-import edu.stanford.nlp.parser.nndep.DependencyParser;
-import edu.stanford.nlp.trees.GrammaticalStructure;
-import org.apache.flink.api.common.functions.RichMapFunction;
+import org.apache.flink.api.common.functions.RichMapPartitionFunction;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.util.Collector;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import weka.classifiers.meta.FilteredClassifier;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -24,14 +26,27 @@ import static com.formulasearchengine.mathosphere.mlp.ml.WekaUtils.*;
  * Created by Leo on 23.12.2016.
  * Classifies extracted relations with the provided machine learning model.
  * Retains only the highest ranking, positive relations.
+ * <p>
+ * The relations of a micro batch of documents (see {@link MachineLearningDefinienClassifierConfig#getClassifierBatchSize()})
+ * are converted to instances first, then the strings of all instances are replaced in one pass of the
+ * {@link StringToWordVector} filter and the instances are classified one after another. The sentences of a
+ * document are dependency parsed together by a {@link DependencyTreeParser}, whose cache is shared by all documents
+ * of the task.
  */
-public class WekaClassifier extends RichMapFunction<WikiDocumentOutput, WikiDocumentOutput> {
+public class WekaClassifier extends RichMapPartitionFunction<WikiDocumentOutput, WikiDocumentOutput> {
+
+  private static final Logger LOGGER = LogManager.getLogger(WekaClassifier.class.getName());
 
   public final MachineLearningDefinienClassifierConfig config;
   private FilteredClassifier svm;
-  private DependencyParser parser;
+  private DependencyTreeParser parser;
   private StringToWordVector stringToWordVector;
 
+  private transient long classifiedDocuments;
+  private transient long classifiedRelations;
+  private transient long classificationNanos;
+  private transient double lastDocumentLatencyMillis;
+
   public WekaClassifier(MachineLearningDefinienClassifierConfig config) throws IOException {
     this.config = config;
   }
@@ -40,45 +55,130 @@ public class WekaClassifier extends RichMapFunction<WikiDocumentOutput, WikiDocu
   public void open(Configuration parameters) throws Exception {
     svm = (FilteredClassifier) weka.core.SerializationHelper.read(config.getSvmModel());
     stringToWordVector = (StringToWordVector) weka.core.SerializationHelper.read(config.getStringToWordVectorFilter());
-    parser = DependencyParser.loadFromModelFile(config.dependencyParserModel());
+    parser = DependencyTreeParser.create(config, config.dependencyParserModel());
+    registerMetrics();
+  }
+
+  /**
+   * Exports the number of classified documents and relations and the latency of the classification
+   * per document. The latency of a document is the time to classify its micro batch divided by the
+   * number of documents in the batch. Also exports the number of dependency parsed sentences and the
+   * statistics of the cache of dependency trees.
+   */
+  private void registerMetrics() {
+    final MetricGroup group;
+    try {
+      group = getRuntimeContext().getMetricGroup().addGroup("classifier");
+    } catch (IllegalStateException noRuntimeContext) {
+      return;
+    }
+    group.gauge("classifiedDocuments", (Gauge<Long>) () -> classifiedDocuments);
+    group.gauge("classifiedRelations", (Gauge<Long>) () -> classifiedRelations);
+    group.gauge("documentLatencyMillis", (Gauge<Double>) () -> lastDocumentLatencyMillis);
+    group.gauge("meanDocumentLatencyMillis", (Gauge<Double>) this::getMeanDocumentLatencyMillis);
+    group.gauge("parsedSentences", (Gauge<Long>) () -> parser.getParsedSentences());
+    final DependencyParseCache cache = parser.getCache();
+    if (cache != null) {
+      group.gauge("dependencyCacheHits", (Gauge<Long>) () -> cache.getStats().hitCount());
+      group.gauge("dependencyCacheMisses", (Gauge<Long>) () -> cache.getStats().missCount());
+      group.gauge("dependencyCacheEvictions", (Gauge<Long>) () -> cache.getStats().evictionCount());
+    }
   }
 
   @Override
-  public WikiDocumentOutput map(WikiDocumentOutput doc) throws Exception {
-    System.out.println("Classifying " + doc.getTitle());
-    Instances instances;
+  public void mapPartition(Iterable<WikiDocumentOutput> docs, Collector<WikiDocumentOutput> out) throws Exception {
+    final int batchSize = Math.max(1, config.getClassifierBatchSize());
+    List<WikiDocumentOutput> batch = new ArrayList<>(batchSize);
+    for (WikiDocumentOutput doc : docs) {
+      batch.add(doc);
+      if (batch.size() == batchSize) {
+        classify(batch).forEach(out::collect);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      classify(batch).forEach(out::collect);
+    }
+  }
+
+  /**
+   * Classifies the relations of the documents together and replaces the relations of each document
+   * with its positive ones.
+   *
+   * @param docs the documents of a micro batch
+   * @return the documents
+   */
+  public List<WikiDocumentOutput> classify(List<WikiDocumentOutput> docs) throws Exception {
+    final long start = System.nanoTime();
     WekaUtils wekaUtils = new WekaUtils();
-    instances = wekaUtils.createInstances("AllRelations");
-    Map<Sentence, GrammaticalStructure> precomputedGraphStore = wekaUtils.getPrecomputedGraphStore();
-    Map<IdentifierDefinition, Relation> positiveClassifications = new HashMap<>();
-    for (int i = 0; i < doc.getRelations().size(); i++) {
-      Relation relation = doc.getRelations().get(i);
-      wekaUtils.addRelationToInstances(parser, precomputedGraphStore, doc.getTitle(), doc.getqId(), instances, doc.getMaxSentenceLength(), relation);
-      Instances toStringReplace = new Instances(instances, 1);
-      toStringReplace.add(instances.get(i));
-      Instances stringReplaced = Filter.useFilter(toStringReplace, stringToWordVector);
-      Instance instance = stringReplaced.get(0);
-      double[] distribution = svm.distributionForInstance(instance);
-      String predictedClass = instances.classAttribute().value((int) svm.classifyInstance(instance));
-      if (predictedClass.equals(MATCH)) {
-        relation.setScore(distribution[instances.classAttribute().indexOfValue(MATCH)]);
-        IdentifierDefinition extraction = new IdentifierDefinition(
-          instance.stringValue(instance.attribute(instances.attribute(IDENTIFIER).index())),
-          instance.stringValue(instance.attribute(instances.attribute(DEFINIEN).index())));
-        //put in hashmap to deal with duplicates and preserve highest score.
-        if (!positiveClassifications.containsKey(extraction)) {
-          positiveClassifications.put(extraction, relation);
-        } else {
-          if (positiveClassifications.get(extraction).getScore() < relation.getScore()) {
+    Instances instances = wekaUtils.createInstances("AllRelations");
+    for (WikiDocumentOutput doc : docs) {
+      wekaUtils.addRelationsToInstances(parser, doc.getRelations(), doc.getTitle(), doc.getqId(), instances,
+        doc.getMaxSentenceLength());
+    }
+    Instances stringReplaced = Filter.useFilter(instances, stringToWordVector);
+
+    final int matchIndex = instances.classAttribute().indexOfValue(MATCH);
+    int row = 0;
+    for (WikiDocumentOutput doc : docs) {
+      Map<IdentifierDefinition, Relation> positiveClassifications = new HashMap<>();
+      for (Relation relation : doc.getRelations()) {
+        Instance instance = stringReplaced.get(row++);
+        double[] distribution = svm.distributionForInstance(instance);
+        if (predictedClass(distribution) == matchIndex) {
+          relation.setScore(distribution[matchIndex]);
+          IdentifierDefinition extraction = new IdentifierDefinition(
+            instance.stringValue(instance.attribute(instances.attribute(IDENTIFIER).index())),
+            instance.stringValue(instance.attribute(instances.attribute(DEFINIEN).index())));
+          //put in hashmap to deal with duplicates and preserve highest score.
+          if (!positiveClassifications.containsKey(extraction)) {
             positiveClassifications.put(extraction, relation);
+          } else {
+            if (positiveClassifications.get(extraction).getScore() < relation.getScore()) {
+              positiveClassifications.put(extraction, relation);
+            }
           }
         }
       }
+      LOGGER.debug("classified {}, considered {} definiens", doc.getTitle(), doc.getRelations().size());
+      //replace relations with positive ones
+      doc.setRelations(new ArrayList<>(positiveClassifications.values()));
     }
-    //replace relations with positive ones
-    doc.setRelations(new ArrayList<>(positiveClassifications.values()));
-    System.out.println("Classifying done " + doc.getTitle() + " considered  " + instances.size() + " definiens");
-    return doc;
+
+    final long elapsed = System.nanoTime() - start;
+    classificationNanos += elapsed;
+    classifiedDocuments += docs.size();
+    classifiedRelations += instances.size();
+    lastDocumentLatencyMillis = elapsed / 1e6 / docs.size();
+    return docs;
+  }
+
+  /**
+   * The class that {@link weka.classifiers.AbstractClassifier#classifyInstance(Instance)} predicts from the
+   * distribution: the first class with the highest probability, the first class if no probability is positive.
+   */
+  private static int predictedClass(double[] distribution) {
+    double max = 0;
+    int predicted = 0;
+    for (int i = 0; i < distribution.length; i++) {
+      if (distribution[i] > max) {
+        max = distribution[i];
+        predicted = i;
+      }
+    }
+    return predicted;
   }
-}
 
+  public double getMeanDocumentLatencyMillis() {
+    return classifiedDocuments == 0 ? 0 : classificationNanos / 1e6 / classifiedDocuments;
+  }
+
+  @Override
+  public void close() throws IOException {
+    LOGGER.info("classified {} relations of {} documents, {} ms per document on average", classifiedRelations,
+      classifiedDocuments, getMeanDocumentLatencyMillis());
+    if (parser != null) {
+      parser.close();
+    }
+  }
+}
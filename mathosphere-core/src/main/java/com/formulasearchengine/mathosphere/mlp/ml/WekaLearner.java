@@ -5,7 +5,6 @@ import com.formulasearchengine.mathosphere.mlp.pojos.EvaluationResult;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
 import com.formulasearchengine.mlp.evaluation.Evaluator;
 import com.formulasearchengine.mlp.evaluation.pojo.GoldEntry;
-import edu.stanford.nlp.parser.nndep.DependencyParser;
 import org.apache.commons.io.FileUtils;
 import org.apache.flink.api.common.functions.GroupReduceFunction;
 import org.apache.flink.api.common.functions.util.ListCollector;
@@ -153,11 +152,12 @@ public class WekaLearner implements GroupReduceFunction<WikiDocumentOutput, Eval
   @Override
   public void reduce(Iterable<WikiDocumentOutput> values, Collector<EvaluationResult> out) throws Exception {
     Instances instances;
-    DependencyParser parser = DependencyParser.loadFromModelFile(config.dependencyParserModel());
     WekaUtils wekaUtils = new WekaUtils();
     instances = wekaUtils.createInstances("AllRelations");
-    for (WikiDocumentOutput value : values) {
-      wekaUtils.addRelationsToInstances(parser, value.getRelations(), value.getTitle(), value.getqId(), instances, value.getMaxSentenceLength());
+    try (DependencyTreeParser parser = DependencyTreeParser.create(config, config.dependencyParserModel())) {
+      for (WikiDocumentOutput value : values) {
+        wekaUtils.addRelationsToInstances(parser, value.getRelations(), value.getTitle(), value.getqId(), instances, value.getMaxSentenceLength());
+      }
     }
     if (config.isWriteInstances()) {
       File instancesFile = new File(config.getOutputDir() + INSTANCES_ARFF_FILE_NAME);
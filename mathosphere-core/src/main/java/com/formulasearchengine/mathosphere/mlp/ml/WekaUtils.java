@@ -6,12 +6,10 @@ import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
 import com.formulasearchengine.mathosphere.mlp.text.MachineLearningPatternMatcher;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.IndexedWord;
-import edu.stanford.nlp.ling.TaggedWord;
-import edu.stanford.nlp.parser.nndep.DependencyParser;
-import edu.stanford.nlp.semgraph.SemanticGraph;
-import edu.stanford.nlp.semgraph.SemanticGraphEdge;
-import edu.stanford.nlp.trees.GrammaticalStructure;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import weka.core.*;
 
 import java.util.*;
@@ -22,6 +20,8 @@ import java.util.stream.Collectors;
  * Source [1]: Extracting Textual Descriptions of Mathematical Expressions in Scientific Papers;Giovanni Yoko Kristianto, Goran Topić, Akiko Aizawa
  */
 public class WekaUtils {
+  private static final Logger LOGGER = LogManager.getLogger(WekaUtils.class.getName());
+
   public static final String MATCH = "match";
   public static final String NO_MATCH = "no match";
   public static final String DEFINIEN = "definiens";
@@ -86,8 +86,8 @@ public class WekaUtils {
 
   //String constants
   public static final String CLASSIFICATION = "classification";
-  private static final String DEFINIENS_TEXT = "definiens_candidate";
-  private static final String IDENTIFIER_TEXT = "identifier_candidate";
+  static final String DEFINIENS_TEXT = "definiens_candidate";
+  static final String IDENTIFIER_TEXT = "identifier_candidate";
   /**
    * Assumed length of the longest possible word (30) times three to accommodate for noun phrases. For normalisation.
    */
@@ -153,7 +153,7 @@ public class WekaUtils {
   /**
    * Extract the features from the relations and add them to the instances.
    *
-   * @param parser            for dependency graph features.
+   * @param parser            for dependency graph features, the sentences of the relations are parsed together.
    * @param relations         the relations to process
    * @param title             title of the document
    * @param qId               qid of the document
@@ -161,15 +161,63 @@ public class WekaUtils {
    * @param maxSentenceLength length of the longest sentence in the document, for normalisation.
    * @return Instances where all provided relations have been added
    */
-  public Instances addRelationsToInstances(DependencyParser parser, List<Relation> relations, String title, String qId, Instances instances, double maxSentenceLength) {
+  public Instances addRelationsToInstances(DependencyTreeParser parser, List<Relation> relations, String title, String qId, Instances instances, double maxSentenceLength) {
+    Map<Sentence, DependencyTree> trees = parseSentences(parser, relations);
+    Map<Relation, double[]> patternMatches = matchPatterns(relations);
     for (Relation relation : relations) {
-      addRelationToInstances(parser, getPrecomputedGraphStore(), title, qId, instances, maxSentenceLength, relation);
+      addRelationToInstances(trees.get(relation.getSentence()), title, qId, instances, maxSentenceLength, relation, patternMatches.get(relation));
     }
     return instances;
   }
 
-  public void addRelationToInstances(DependencyParser parser, Map<Sentence, GrammaticalStructure> precomputedGraphs, String title, String qId, Instances instances, double maxSentenceLength, Relation relation) {
+  /**
+   * Parses the sentences of the relations for the dependency graph features.
+   *
+   * @param parser    the parser.
+   * @param relations the relations to parse the sentences of.
+   * @return the trees by sentence, empty if the dependency graph features are not used.
+   */
+  public Map<Sentence, DependencyTree> parseSentences(DependencyTreeParser parser, List<Relation> relations) {
+    if (NO_DEP) {
+      return Collections.emptyMap();
+    }
+    return parser.parseAll(relations.stream().map(Relation::getSentence).collect(Collectors.toList()));
+  }
+
+  /**
+   * Matches the patterns of {@link MachineLearningPatternMatcher} for all relations, the relations of a sentence
+   * together in one pass over the sentence.
+   *
+   * @param relations the relations to match.
+   * @return the pattern features by relation.
+   */
+  public Map<Relation, double[]> matchPatterns(List<Relation> relations) {
+    Map<Sentence, List<Relation>> bySentence = new IdentityHashMap<>();
+    for (Relation relation : relations) {
+      bySentence.computeIfAbsent(relation.getSentence(), s -> new ArrayList<>()).add(relation);
+    }
+    MachineLearningPatternMatcher matcher = new MachineLearningPatternMatcher();
+    Map<Relation, double[]> result = new IdentityHashMap<>();
+    for (Map.Entry<Sentence, List<Relation>> sentence : bySentence.entrySet()) {
+      List<double[]> matches = matcher.match(sentence.getKey(), sentence.getValue());
+      for (int i = 0; i < matches.size(); i++) {
+        result.put(sentence.getValue().get(i), matches.get(i));
+      }
+    }
+    return result;
+  }
+
+  public void addRelationToInstances(DependencyTreeParser parser, String title, String qId, Instances instances, double maxSentenceLength, Relation relation) {
     double[] patternMatches = new MachineLearningPatternMatcher().match(relation.getSentence(), relation.getIdentifier(), relation.getDefinition(), relation.getIdentifierPosition(), relation.getWordPosition());
+    DependencyTree tree = NO_DEP ? null : parser.parse(relation.getSentence());
+    addRelationToInstances(tree, title, qId, instances, maxSentenceLength, relation, patternMatches);
+  }
+
+  /**
+   * @param tree           the dependency tree of the sentence of the relation, see {@link #parseSentences(DependencyTreeParser, List)}.
+   * @param patternMatches the features of the relation as returned by {@link MachineLearningPatternMatcher}.
+   */
+  public void addRelationToInstances(DependencyTree tree, String title, String qId, Instances instances, double maxSentenceLength, Relation relation, double[] patternMatches) {
     double[] values = new double[instances.numAttributes()];
     addStringValue(values, instances, TITLE, title);
     addStringValue(values, instances, Q_ID, qId);
@@ -195,7 +243,7 @@ public class WekaUtils {
 
     addStringFeatures(values, instances, relation);
 
-    addDependencyTreeFeatures(parser, precomputedGraphs, values, instances, relation, maxSentenceLength);
+    addDependencyTreeFeatures(tree, values, instances, relation, maxSentenceLength);
 
     values[instances.attribute(DISTANCE_FROM_FIRST_OCCURRENCE).index()] = relation.getDistanceFromFirstIdentifierOccurence();
 
@@ -265,42 +313,28 @@ public class WekaUtils {
    * Adds {@link #SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_DEFINIEN}, {@link #SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER}, {@link #INCOMING_TO_DEFINIEN} and
    * {@link #INCOMING_TO_IDENTIFIER} to values.
    *
+   * @param tree      the dependency tree of the sentence of the relation.
    * @param values    values object.
-   * @param graphs    map to store graphs that were computed previously. may be null.
    * @param instances instances where the values will be added.
    * @param relation  the relation from which to extract the features.
    */
-  private void addDependencyTreeFeatures(DependencyParser parser, Map<Sentence, GrammaticalStructure> graphs, double[] values, Instances instances, Relation relation, double maxSentenceLength) {
-    if (NO_DEP) {
+  private void addDependencyTreeFeatures(DependencyTree tree, double[] values, Instances instances, Relation relation, double maxSentenceLength) {
+    int[] path = NO_DEP ? null : getPath(tree, relation);
+    if (path == null) {
+      //dependency features disabled or no path between identifier and definiens, see getPath
       addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER, "");
       addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_DEFINIEN, "");
       values[instances.attribute(GRAPH_DISTANCE).index()] = 0;
       values[instances.attribute(INCOMING_TO_IDENTIFIER).index()] = 0;
       values[instances.attribute(INCOMING_TO_DEFINIEN).index()] = 0;
     } else {
-      GrammaticalStructure dependencyTree;
-      if (graphs != null && graphs.containsKey(relation.getSentence())) {
-        dependencyTree = graphs.get(relation.getSentence());
-      } else {
-        List<TaggedWord> taggedSentence = new ArrayList<>();
-        for (Word word : relation.getSentence().getWords()) {
-          taggedSentence.add(new TaggedWord(word.getWord(), word.getPosTag()));
-        }
-        //create dependency graph
-        dependencyTree = parser.predict(taggedSentence);
-        //store to avoid recomputation
-        if (graphs != null)
-          graphs.put(relation.getSentence(), dependencyTree);
-      }
-      SemanticGraph semanticGraph = new SemanticGraph(dependencyTree.typedDependencies());
-      IndexedWord identifier = semanticGraph.getNodeByIndex(relation.getIdentifierPosition() + 1);
-      IndexedWord definiens = semanticGraph.getNodeByIndex(relation.getWordPosition() + 1);
-      //shortest edge path for distance
-      List<SemanticGraphEdge> edgesOnPath = semanticGraph.getShortestUndirectedPathEdges(identifier, definiens);
-      int distance = edgesOnPath.size();
+      //the path in the tree is the shortest one, its number of edges is the distance
+      int distance = path.length - 1;
       values[instances.attribute(GRAPH_DISTANCE).index()] = (double) distance / maxSentenceLength;
-      //shortest node path for dependencies
-      List<IndexedWord> fromIdentifier = semanticGraph.getShortestUndirectedPathNodes(identifier, definiens);
+      //node path for dependencies
+      List<IndexedWord> fromIdentifier = toIndexedWords(relation.getSentence(), path);
+      IndexedWord identifier = fromIdentifier.get(0);
+      IndexedWord definiens = fromIdentifier.get(fromIdentifier.size() - 1);
       removeUnwanted(fromIdentifier);
       List<IndexedWord> fromDefinien = new ArrayList<>(fromIdentifier);
       Collections.reverse(fromDefinien);
@@ -316,9 +350,10 @@ public class WekaUtils {
 
       addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_DEFINIEN, wordListToSimpleString(threeFromDefinien));
 
-      values[instances.attribute(INCOMING_TO_IDENTIFIER).index()] = edgesOnPath.get(0).getDependent().equals(identifier) ? 1 : 0;
+      //the dependent of the first edge is the identifier if the next word on the path is its head
+      values[instances.attribute(INCOMING_TO_IDENTIFIER).index()] = tree.getHead(path[0]) == path[1] ? 1 : 0;
 
-      values[instances.attribute(INCOMING_TO_DEFINIEN).index()] = edgesOnPath.get(edgesOnPath.size() - 1).getDependent().equals(definiens) ? 1 : 0;
+      values[instances.attribute(INCOMING_TO_DEFINIEN).index()] = tree.getHead(path[path.length - 1]) == path[path.length - 2] ? 1 : 0;
     }
     if (NO_STRING) {
       addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER, "");
@@ -326,6 +361,52 @@ public class WekaUtils {
     }
   }
 
+  /**
+   * Finds the path between the identifier and the definiens of the relation. There is no path if the words are not
+   * connected in the tree or are the same word. Both cases are logged with their own message and the relation gets no
+   * dependency features.
+   *
+   * @param tree     the dependency tree of the sentence of the relation.
+   * @param relation the relation.
+   * @return the numbers of the words on the path from the identifier to the definiens, null if there is no such path.
+   */
+  private int[] getPath(DependencyTree tree, Relation relation) {
+    int identifier = relation.getIdentifierPosition() + 1;
+    int definiens = relation.getWordPosition() + 1;
+    if (identifier == definiens) {
+      LOGGER.warn("identifier {} and definiens {} are the same word {} of sentence {}", relation.getIdentifier(),
+        relation.getDefinition(), identifier, relation.getSentence());
+      return null;
+    }
+    int[] path = tree.getPath(identifier, definiens);
+    if (path == null) {
+      LOGGER.warn("no dependency path between identifier {} at word {} and definiens {} at word {} of sentence {}, tree {}",
+        relation.getIdentifier(), identifier, relation.getDefinition(), definiens, relation.getSentence(), tree);
+    }
+    return path;
+  }
+
+  /**
+   * Creates the nodes of a path in the dependency tree, with the surface text and POS tag of the words of the sentence.
+   *
+   * @param sentence the sentence of the tree.
+   * @param path     the numbers of the words on the path, starting from 1.
+   * @return new nodes that may be changed, e.g. by {@link #replaceWord(int, List, String)}.
+   */
+  private List<IndexedWord> toIndexedWords(Sentence sentence, int[] path) {
+    List<IndexedWord> nodes = new ArrayList<>(path.length);
+    for (int index : path) {
+      Word word = sentence.getWords().get(index - 1);
+      CoreLabel label = new CoreLabel();
+      label.setWord(word.getWord());
+      label.setValue(word.getWord());
+      label.setTag(word.getPosTag());
+      label.setIndex(index);
+      nodes.add(new IndexedWord(label));
+    }
+    return nodes;
+  }
+
   /**
    * Get a list of three words, beginning from the second word. Converts {@link IndexedWord} to {@link Word}
    *
@@ -413,7 +494,7 @@ public class WekaUtils {
     return stringBuilder.toString();
   }
 
-  private void removeUnwanted(List<IndexedWord> words) {
+  void removeUnwanted(List<IndexedWord> words) {
     Iterator i = words.iterator();
     while (i.hasNext()) {
       IndexedWord w = (IndexedWord) i.next();
@@ -436,8 +517,4 @@ public class WekaUtils {
   public static double average(double[] doubles) {
     return Arrays.stream(doubles).sum() / doubles.length;
   }
-
-  public Map<Sentence, GrammaticalStructure> getPrecomputedGraphStore() {
-    return new HashMap<Sentence, GrammaticalStructure>();
-  }
 }
@@ -5,7 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierCache;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils.MathMarkUpType;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -17,7 +19,6 @@ import org.apache.logging.log4j.Logger;
 import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
-import static com.formulasearchengine.mathosphere.mlp.text.MathMLUtils.extractIdentifiers;
 import static com.formulasearchengine.mathosphere.mlp.text.MathMLUtils.extractIdentifiersFromMathML;
 
 
@@ -31,6 +32,11 @@ public class MathTag {
     private final String content;
     private final MathMarkUpType markUpType;
     private Multiset<String> indentifiers = null;
+    /**
+     * true if the identifiers are final, e.g. because they were resolved in advance or the
+     * extraction does not depend on texvcinfo, an empty set is not extracted again then
+     */
+    private transient boolean identifiersResolved = false;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     public MathTag(int position, String content, MathMarkUpType markUp) {
@@ -60,12 +66,22 @@ public class MathTag {
     }
 
     public Multiset<String> getIdentifiers(BaseConfig config) {
-        if (indentifiers == null || indentifiers.size() == 0) {
-            indentifiers = extractIdentifiers(this, config.getUseTeXIdentifiers(), config.getTexvcinfoUrl());
+        if (indentifiers == null || (indentifiers.size() == 0 && !identifiersResolved)) {
+            // the cached set is immutable, which neither Kryo nor the callers that modify it support
+            indentifiers = HashMultiset.create(IdentifierCache.getShared().getIdentifiers(this, config));
+            identifiersResolved = indentifiers.size() > 0 || IdentifierCache.isDeterministic(this, config);
         }
         return indentifiers;
     }
 
+    /**
+     * Sets identifiers that were resolved in advance, e.g. for all formulas of a document together.
+     */
+    public void setIdentifiers(Multiset<String> identifiers) {
+        this.indentifiers = identifiers;
+        this.identifiersResolved = true;
+    }
+
     @JsonIgnore
     public String getKey() {
         return placeholder();
@@ -7,6 +7,12 @@ public class RawWikiDocument {
   public String title;
   public int namespace;
   public String text;
+  /**
+   * page id, revision id and sha1 of the revision text, only known if the document was read by a dump input format
+   */
+  public long pageId;
+  public long revisionId;
+  public String sha1;
 
   public RawWikiDocument() {
   }
@@ -1,6 +1,7 @@
 package com.formulasearchengine.mathosphere.mlp.pojos;
 
 import com.formulasearchengine.mathosphere.mlp.text.PosTag;
+import com.formulasearchengine.mathosphere.mlp.text.WordMatchers;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 
@@ -11,6 +12,12 @@ public class Word {
   private String word;
   private String posTag;
 
+  /**
+   * id of the POS tag plus 2, 0 if it was not looked up yet, so that deserialized words need no
+   * initializer, see {@link #posTagId()}
+   */
+  private transient int posTagKey;
+
   public Word() {
   }
 
@@ -32,6 +39,19 @@ public class Word {
     return posTag;
   }
 
+  /**
+   * @return the id of the POS tag, -1 for null, see {@link WordMatchers#tagId(String)}
+   */
+  public int posTagId() {
+    int key = posTagKey;
+    if (key == 0) {
+      // words do not change, so concurrent lookups store the same value
+      key = WordMatchers.tagId(posTag) + 2;
+      posTagKey = key;
+    }
+    return key - 2;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return EqualsBuilder.reflectionEquals(this, obj);
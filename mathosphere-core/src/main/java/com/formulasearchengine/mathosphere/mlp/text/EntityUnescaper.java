@@ -0,0 +1,142 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import org.apache.commons.lang3.text.translate.EntityArrays;
+
+/**
+ * Single pass decoder for named character entities like {@code &lt;} or {@code &auml;}.
+ * <p>
+ * Supports the ISO-8859-1, Basic and HTML4 entity sets and produces the same output as an
+ * {@code AggregateTranslator} of {@code LookupTranslator}s over these sets. The entity names are
+ * stored in a trie over {@code [A-Za-z0-9]}, so every entity is decoded in a single scan without
+ * creating substrings. The output is written into a reused per-thread buffer. Strings without
+ * {@code &} are returned unchanged.
+ */
+public final class EntityUnescaper {
+
+  /**
+   * number of symbols in the alphabet of the entity names
+   */
+  private static final int ALPHABET = 62;
+
+  private static final int NO_CHILD = 0;
+
+  /**
+   * children of the trie nodes, the children of node n are stored at n * ALPHABET
+   */
+  private static final int[] CHILDREN;
+
+  /**
+   * decoded character of each trie node, 0 if no entity name ends in the node
+   */
+  private static final char[] VALUES;
+
+  private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[1024]);
+
+  static {
+    final String[][][] sets = {
+        EntityArrays.ISO8859_1_UNESCAPE(),
+        EntityArrays.BASIC_UNESCAPE(),
+        EntityArrays.HTML40_EXTENDED_UNESCAPE()};
+    int nodes = 1;
+    for (String[][] set : sets) {
+      for (String[] entity : set) {
+        nodes += entity[0].length() - 2;
+      }
+    }
+    final int[] children = new int[nodes * ALPHABET];
+    final char[] values = new char[nodes];
+    int used = 1;
+    for (String[][] set : sets) {
+      for (String[] entity : set) {
+        final String name = entity[0];
+        int node = 0;
+        // skip the leading & and the trailing ;
+        for (int i = 1; i < name.length() - 1; i++) {
+          final int symbol = symbol(name.charAt(i));
+          final int slot = node * ALPHABET + symbol;
+          if (children[slot] == NO_CHILD) {
+            children[slot] = used++;
+          }
+          node = children[slot];
+        }
+        if (values[node] == 0) {
+          // the first set wins, like in an AggregateTranslator
+          values[node] = entity[1].charAt(0);
+        }
+      }
+    }
+    CHILDREN = children;
+    VALUES = values;
+  }
+
+  private EntityUnescaper() {
+  }
+
+  private static int symbol(char c) {
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a';
+    }
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A' + 26;
+    }
+    if (c >= '0' && c <= '9') {
+      return c - '0' + 52;
+    }
+    return -1;
+  }
+
+  /**
+   * Unescapes all ISO-8859-1, Basic and HTML4 entities of the text.
+   *
+   * @param text the text that will be unescaped
+   * @return the unescaped text, or text itself if it does not contain any entity
+   */
+  public static String unescape(String text) {
+    final int ampersand = text.indexOf('&');
+    if (ampersand < 0) {
+      return text;
+    }
+    final int length = text.length();
+    char[] out = BUFFER.get();
+    if (out.length < length) {
+      // entities never expand, so the output is at most as long as the input
+      out = new char[Math.max(length, out.length * 2)];
+      BUFFER.set(out);
+    }
+    text.getChars(0, ampersand, out, 0);
+    int written = ampersand;
+    int i = ampersand;
+    boolean changed = false;
+    while (i < length) {
+      final char c = text.charAt(i);
+      if (c != '&') {
+        out[written++] = c;
+        i++;
+        continue;
+      }
+      // walk the trie along the entity name
+      int node = 0;
+      int j = i + 1;
+      while (j < length) {
+        final int symbol = symbol(text.charAt(j));
+        if (symbol < 0) {
+          break;
+        }
+        node = CHILDREN[node * ALPHABET + symbol];
+        if (node == NO_CHILD) {
+          break;
+        }
+        j++;
+      }
+      if (node != NO_CHILD && j < length && text.charAt(j) == ';' && VALUES[node] != 0) {
+        out[written++] = VALUES[node];
+        i = j + 1;
+        changed = true;
+      } else {
+        out[written++] = c;
+        i++;
+      }
+    }
+    return changed ? new String(out, 0, written) : text;
+  }
+}
@@ -0,0 +1,199 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils.MathMarkUpType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Process wide cache of the identifiers of the formulas, shared by all {@link MathTag} instances
+ * and all task slots of a task manager.
+ * <p>
+ * The identifiers are cached by the md5 of the formula, its markup type and the configuration
+ * that selects the extractor, including the url of texvcinfo. Formulas without identifiers are cached as well. The only
+ * exception are empty results of texvcinfo requests, which can not be told apart from failed
+ * requests. The size of the cache is bounded by the number of characters of the cached
+ * identifiers, the least recently used formulas are evicted first.
+ */
+public class IdentifierCache {
+
+  private static final Logger LOGGER = LogManager.getLogger(IdentifierCache.class.getName());
+
+  /**
+   * default maximal number of characters of the cached identifiers
+   */
+  public static final long DEFAULT_MAXIMUM_CHARS = 16L * 1024 * 1024;
+
+  /**
+   * weight of an entry besides the characters of its identifiers, so that the bound also holds
+   * for formulas without identifiers
+   */
+  private static final int ENTRY_WEIGHT = 16;
+
+  private static final HashFunction HASHER = Hashing.md5();
+
+  private static volatile IdentifierCache shared = null;
+
+  private final long maximumChars;
+
+  private final Cache<Key, ImmutableMultiset<String>> cache;
+
+  /**
+   * @param maximumChars maximal number of characters of the cached identifiers, 0 disables the
+   *                     cache
+   */
+  public IdentifierCache(long maximumChars) {
+    if (maximumChars < 0) {
+      throw new IllegalArgumentException("The size of the cache must not be negative.");
+    }
+    this.maximumChars = maximumChars;
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+        .maximumWeight(maximumChars)
+        .<Key, ImmutableMultiset<String>>weigher((key, identifiers) -> weight(identifiers))
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @return the shared cache, with the default size if {@link #initShared(long)} was not called
+   * before
+   */
+  public static IdentifierCache getShared() {
+    final IdentifierCache cache = shared;
+    return cache != null ? cache : initShared(DEFAULT_MAXIMUM_CHARS);
+  }
+
+  /**
+   * Creates the shared cache with the given size. The shared cache is created once per JVM, the
+   * first call wins. Later calls with another size keep it and log a warning, so that task slots
+   * do not drop the identifiers that other task slots cached.
+   *
+   * @param maximumChars maximal number of characters of the cached identifiers, 0 disables the
+   *                     cache
+   * @return the shared cache
+   */
+  public static synchronized IdentifierCache initShared(long maximumChars) {
+    if (shared == null) {
+      shared = new IdentifierCache(maximumChars);
+    } else if (shared.getMaximumChars() != maximumChars) {
+      LOGGER.warn("the identifier cache already holds up to {} characters, the size {} is ignored",
+          shared.getMaximumChars(), maximumChars);
+    }
+    return shared;
+  }
+
+  private static int weight(Multiset<String> identifiers) {
+    long weight = ENTRY_WEIGHT;
+    for (Multiset.Entry<String> entry : identifiers.entrySet()) {
+      weight += entry.getElement().length();
+    }
+    return (int) Math.min(Integer.MAX_VALUE, weight);
+  }
+
+  /**
+   * @return true if the identifiers that are extracted for the formula do not change over time,
+   * i.e. they are not requested from texvcinfo
+   */
+  public static boolean isDeterministic(MathTag math, BaseConfig config) {
+    return !config.getUseTeXIdentifiers()
+        || config.getUseLocalTexIdentifiers()
+        || math.getMarkUpType() == MathMarkUpType.MATHML;
+  }
+
+  /**
+   * Looks up the identifiers of a formula and extracts them with
+   * {@link MathMLUtils#extractIdentifiers(MathTag, BaseConfig)} if they are not cached.
+   *
+   * @param math   formula
+   * @param config configuration that selects the extractor
+   * @return the identifiers, not modifiable
+   */
+  public ImmutableMultiset<String> getIdentifiers(MathTag math, BaseConfig config) {
+    final Key key = new Key(HASHER.hashString(math.getContent(), StandardCharsets.UTF_8), math.getMarkUpType(),
+        config.getUseTeXIdentifiers(), config.getUseLocalTexIdentifiers(), config.getTexvcinfoUrl());
+    final ImmutableMultiset<String> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    final ImmutableMultiset<String> identifiers = ImmutableMultiset.copyOf(MathMLUtils.extractIdentifiers(math, config));
+    if (!identifiers.isEmpty() || isDeterministic(math, config)) {
+      cache.put(key, identifiers);
+    }
+    return identifiers;
+  }
+
+  public long getMaximumChars() {
+    return maximumChars;
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  private static final class Key {
+
+    private final HashCode contentHash;
+
+    private final MathMarkUpType markUpType;
+
+    private final boolean useTeX;
+
+    private final boolean useLocalTeX;
+
+    /**
+     * url of texvcinfo, null if the identifiers are not requested from texvcinfo
+     */
+    private final String url;
+
+    Key(HashCode contentHash, MathMarkUpType markUpType, boolean useTeX, boolean useLocalTeX, String url) {
+      this.contentHash = contentHash;
+      this.markUpType = markUpType;
+      this.useTeX = useTeX;
+      this.useLocalTeX = useLocalTeX;
+      this.url = useTeX && !useLocalTeX && markUpType != MathMarkUpType.MATHML ? url : null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return useTeX == other.useTeX
+          && useLocalTeX == other.useLocalTeX
+          && markUpType == other.markUpType
+          && Objects.equals(url, other.url)
+          && contentHash.equals(other.contentHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(contentHash, markUpType, useTeX, useLocalTeX, url);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index of the sentences of a document, built in one pass over its words.
+ * <p>
+ * For every identifier, the index has the sentences that contain it (see
+ * {@link Sentence#contains(String)}) in document order and the positions of the words that are
+ * the identifier in each of them. For every sentence, the index has the positions of the words
+ * that are definiens candidates and the ids of their lower cased terms, so the frequencies of the
+ * candidates can be counted in an {@code int[]} of {@link #getTermCount()} entries.
+ */
+public class IdentifierIndex {
+
+  private static final int[] NO_POSITIONS = new int[0];
+
+  private final List<Sentence> sentences;
+
+  private final Map<String, Postings> postings;
+
+  private final int[][] candidatePositions;
+
+  private final int[][] candidateTerms;
+
+  private final int termCount;
+
+  /**
+   * @param sentences   the sentences of a document
+   * @param isCandidate selects the words that are definiens candidates
+   */
+  public IdentifierIndex(List<Sentence> sentences, Predicate<Word> isCandidate) {
+    this.sentences = sentences;
+    final int size = sentences.size();
+    final Map<String, Integer> terms = new HashMap<>();
+    final Map<String, PostingsBuilder> builders = new HashMap<>();
+    candidatePositions = new int[size][];
+    candidateTerms = new int[size][];
+    for (int sentenceIdx = 0; sentenceIdx < size; sentenceIdx++) {
+      final Sentence sentence = sentences.get(sentenceIdx);
+      final List<Word> words = sentence.getWords();
+      final Map<String, int[]> positions = new HashMap<>();
+      int[] sentencePositions = new int[words.size()];
+      int[] sentenceTerms = new int[words.size()];
+      int candidates = 0;
+      for (int wordIdx = 0; wordIdx < words.size(); wordIdx++) {
+        final Word word = words.get(wordIdx);
+        if (sentence.contains(word.getWord())) {
+          final int[] known = positions.getOrDefault(word.getWord(), NO_POSITIONS);
+          final int[] added = Arrays.copyOf(known, known.length + 1);
+          added[known.length] = wordIdx;
+          positions.put(word.getWord(), added);
+        }
+        if (isCandidate.test(word)) {
+          final String term = word.getWord().toLowerCase();
+          Integer termId = terms.get(term);
+          if (termId == null) {
+            termId = terms.size();
+            terms.put(term, termId);
+          }
+          sentencePositions[candidates] = wordIdx;
+          sentenceTerms[candidates] = termId;
+          candidates++;
+        }
+      }
+      candidatePositions[sentenceIdx] = Arrays.copyOf(sentencePositions, candidates);
+      candidateTerms[sentenceIdx] = Arrays.copyOf(sentenceTerms, candidates);
+      for (String identifier : sentence.getIdentifiers()) {
+        builders.computeIfAbsent(identifier, i -> new PostingsBuilder())
+            .add(sentenceIdx, positions.getOrDefault(identifier, NO_POSITIONS));
+      }
+    }
+    termCount = terms.size();
+    postings = new HashMap<>(builders.size() * 2);
+    builders.forEach((identifier, builder) -> postings.put(identifier, builder.build()));
+  }
+
+  /**
+   * @return the sentences that contain the identifier, null if no sentence contains it
+   */
+  public Postings getPostings(String identifier) {
+    return postings.get(identifier);
+  }
+
+  public Sentence getSentence(int sentenceIdx) {
+    return sentences.get(sentenceIdx);
+  }
+
+  /**
+   * @return the positions of the definiens candidates of a sentence in ascending order
+   */
+  public int[] getCandidatePositions(int sentenceIdx) {
+    return candidatePositions[sentenceIdx];
+  }
+
+  /**
+   * @return the term ids of the definiens candidates of a sentence, in the order of
+   * {@link #getCandidatePositions(int)}
+   */
+  public int[] getCandidateTerms(int sentenceIdx) {
+    return candidateTerms[sentenceIdx];
+  }
+
+  /**
+   * @return number of distinct lower cased terms of the definiens candidates, all term ids are
+   * smaller
+   */
+  public int getTermCount() {
+    return termCount;
+  }
+
+  /**
+   * The sentences that contain an identifier.
+   */
+  public static final class Postings {
+
+    private final int[] sentences;
+
+    private final int[][] positions;
+
+    private Postings(int[] sentences, int[][] positions) {
+      this.sentences = sentences;
+      this.positions = positions;
+    }
+
+    /**
+     * @return number of sentences that contain the identifier
+     */
+    public int size() {
+      return sentences.length;
+    }
+
+    /**
+     * @param i index of the posting, from 0 to {@link #size()} - 1
+     * @return index of the sentence in the document
+     */
+    public int getSentence(int i) {
+      return sentences[i];
+    }
+
+    /**
+     * @param i index of the posting, from 0 to {@link #size()} - 1
+     * @return positions of the identifier in the sentence in ascending order, empty if the
+     * identifier is not one of the words of the sentence
+     */
+    public int[] getPositions(int i) {
+      return positions[i];
+    }
+  }
+
+  private static final class PostingsBuilder {
+
+    private int[] sentences = new int[4];
+
+    private int[][] positions = new int[4][];
+
+    private int size;
+
+    private void add(int sentence, int[] sentencePositions) {
+      if (size == sentences.length) {
+        sentences = Arrays.copyOf(sentences, size * 2);
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      sentences[size] = sentence;
+      positions[size] = sentencePositions;
+      size++;
+    }
+
+    private Postings build() {
+      return new Postings(Arrays.copyOf(sentences, size), Arrays.copyOf(positions, size));
+    }
+  }
+}
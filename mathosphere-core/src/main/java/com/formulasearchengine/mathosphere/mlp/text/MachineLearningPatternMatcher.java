@@ -2,6 +2,7 @@ package com.formulasearchengine.mathosphere.mlp.text;
 
 import com.alexeygrigorev.rseq.*;
 import com.formulasearchengine.mathosphere.mlp.ml.WekaUtils;
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
 import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
 
@@ -30,6 +31,75 @@ public class MachineLearningPatternMatcher {
 
   public static final Matcher<Word> the = pos("DT");
 
+  /**
+   * matches the identifier of a candidate, bound to the identifier when the candidate is matched
+   */
+  private static final Matcher<Word> identifierSlot = WordMatchers.any();
+  /**
+   * matches the definiens of a candidate, bound to the definiens when the candidate is matched
+   */
+  private static final Matcher<Word> definitionSlot = WordMatchers.any();
+  private static final Matcher<Word> otherMathExpression = posRegExp("(ID|MATH)");
+
+  private static final int PATTERNS = 10;
+  private static final int COLON = 10;
+  private static final int COMMA = 11;
+  private static final int OTHER_MATH = 12;
+  private static final int OPENING_PARENTHESIS = 13;
+  private static final int CLOSING_PARENTHESIS = 14;
+
+  /**
+   * The pattern templates, compiled once. The identifier and the definiens are slots that match
+   * every word, a match is bound to a candidate by comparing the words at the slots.
+   */
+  private static final PatternAutomaton templates = PatternAutomaton.builder()
+    //1 not in pagel
+    .add(identifierSlot, definitionSlot)
+    //2 pagel 1
+    .add(definitionSlot, identifierSlot)
+    //3 pagel 2
+    .add(identifierSlot, isOrAre, definitionSlot)
+    //4 pagel 3
+    .add(identifierSlot, isOrAre, the, definitionSlot)
+    //5 pagel 4
+    .add(let, identifierSlot, be, denoted, by, definitionSlot)
+    //6 pagel 4
+    .add(let, identifierSlot, be, denoted, by, the, definitionSlot)
+    //7 pagel 5
+    .add(definitionSlot, isOrAre, denoted, by, identifierSlot)
+    //8 pagel 5
+    .add(definitionSlot, isOrAre, denoted, by, the, identifierSlot)
+    //9 pagel 6
+    .add(identifierSlot, denotes, definitionSlot)
+    //10 pagel 6
+    .add(identifierSlot, denotes, the, definitionSlot)
+    //11
+    //colon
+    .add(pos(":"))
+    //12
+    //comma
+    .add(pos(","))
+    //13
+    //othermath
+    .add(otherMathExpression)
+    //14
+    //definiens in parentheses, relative to identifier
+    .add(word("(").or(pos("-LRB-")))
+    //15
+    //identifier in parentheses, relative to definiens
+    .add(word(")").or(pos("-RRB-")))
+    .build();
+
+  private static final int[] identifierOffsets = new int[PATTERNS];
+  private static final int[] definitionOffsets = new int[PATTERNS];
+
+  static {
+    for (int i = 0; i < PATTERNS; i++) {
+      identifierOffsets[i] = templates.getOffset(i, identifierSlot);
+      definitionOffsets[i] = templates.getOffset(i, definitionSlot);
+    }
+  }
+
   /**
    * @param sentence
    * @param identifierText
@@ -39,127 +109,105 @@ public class MachineLearningPatternMatcher {
    * @return [pattern1, ... , pattern10, colon between, comma between, othermath between, definiens in parens, identifier in parens]
    */
   public double[] match(Sentence sentence, String identifierText, String definiens, int identifierPosition, int definiensPosition) {
-    Matcher<Word> identifier = BeanMatchers.eq(Word.class, "word", identifierText).captureAs(IDENTIFIER);
-    Matcher<Word> definition = BeanMatchers.eq(Word.class, "word", definiens).captureAs(DEFINITION);
-    Matcher<Word> otherMathExpression = posRegExp("(ID|MATH)").captureAs(OTHERMATH);
-
-    List<Pattern<Word>> patterns = Arrays.asList(
-      //1 not in pagel
-      Pattern.create(identifier, definition),
-      //2 pagel 1
-      Pattern.create(definition, identifier),
-      //3 pagel 2
-      Pattern.create(identifier, isOrAre, definition),
-      //4 pagel 3
-      Pattern.create(identifier, isOrAre, the, definition),
-      //5 pagel 4
-      Pattern.create(let, identifier, be, denoted, by, definition),
-      //6 pagel 4
-      Pattern.create(let, identifier, be, denoted, by, the, definition),
-      //7 pagel 5
-      Pattern.create(definition, isOrAre, denoted, by, identifier),
-      //8 pagel 5
-      Pattern.create(definition, isOrAre, denoted, by, the, identifier),
-      //9 pagel 6
-      Pattern.create(identifier, denotes, definition),
-      //10 pagel 6
-      Pattern.create(identifier, denotes, the, definition),
-      //11
-      //colon
-      Pattern.create(pos(":")),
-      //12
-      //comma
-      Pattern.create(pos(",")),
-      //13
-      //othermath
-      Pattern.create(otherMathExpression),
-      //14
-      //definiens in parentheses, relative to identifier
-      Pattern.create(word("(").or(pos("-LRB-"))),
-      //15
-      //identifier in parentheses, relative to definiens
-      Pattern.create(word(")").or(pos("-RRB-")))
-    );
-
-    double[] result = new double[patterns.size()];
-    long openingParentheses = 0;
-    for (int i = 0; i < patterns.size(); i++) {
-      Pattern<Word> pattern = patterns.get(i);
-      List<Match<Word>> matches = pattern.find(sentence.getWords());
-      switch (i) {
-        case 0:
-        case 1:
-        case 2:
-        case 3:
-        case 4:
-        case 5:
-        case 6:
-        case 7:
-        case 8:
-        case 9:
-          for (Match<Word> match : matches) {
-            //check that the positions match
-            //if (match.matchedFrom() + identifierPattern.find(match.getMatchedSubsequence()).get(0).matchedFrom() == identifierPosition &&
-            // match.matchedFrom() + definiensPattern.find(match.getMatchedSubsequence()).get(0).matchedFrom() == definiensPosition) {
-            Word matchedDefiniens = match.getVariable(DEFINITION);
-            if (matchedDefiniens != null && matchedDefiniens.getWord().equals(definiens))
-              result[i] = 1;
-            //}
-          }
-          break;
-        case 10:
-        case 11:
-        case 12:
-          for (Match<Word> match : matches) {
-            if (inRange(match.matchedFrom(), identifierPosition, definiensPosition))
-              result[i] = 1;
-          }
-          break;
-        case 13:
-          openingParentheses = matches.stream().filter(m -> inRange(m.matchedFrom(), identifierPosition, definiensPosition)).count();
-          break;
-        case 14:
+    Relation candidate = new Relation(identifierText, definiens);
+    candidate.setIdentifierPosition(identifierPosition);
+    candidate.setWordPosition(definiensPosition);
+    return match(sentence, Collections.singletonList(candidate)).get(0);
+  }
+
+  /**
+   * Matches all identifier-definiens candidates of a sentence in one pass over the sentence.
+   *
+   * @param sentence   the sentence
+   * @param candidates the candidates in the sentence, their identifiers, definitions, identifier
+   *                   positions and word positions are used
+   * @return the features of each candidate as returned by
+   * {@link #match(Sentence, String, String, int, int)}, in the order of the candidates
+   */
+  public List<double[]> match(Sentence sentence, List<Relation> candidates) {
+    List<Word> words = sentence.getWords();
+    PatternAutomaton.Matches matches = templates.findAll(words);
+    //the identifier and definiens words of the matches of each pattern
+    List<Set<List<String>>> boundSlots = new ArrayList<>(PATTERNS);
+    for (int i = 0; i < PATTERNS; i++) {
+      boundSlots.add(new HashSet<>());
+    }
+    //number of matches of the single word patterns before each position
+    int[][] before = new int[templates.getPatternCount()][words.size() + 1];
+    for (int k = 0; k < matches.size(); k++) {
+      int i = matches.getPattern(k);
+      int start = matches.getStart(k);
+      if (i < PATTERNS) {
+        boundSlots.get(i).add(Arrays.asList(
+          words.get(start + identifierOffsets[i]).getWord(),
+          words.get(start + definitionOffsets[i]).getWord()));
+      } else {
+        before[i][start + 1]++;
+      }
+    }
+    for (int i = PATTERNS; i < before.length; i++) {
+      for (int position = 0; position < words.size(); position++) {
+        before[i][position + 1] += before[i][position];
+      }
+    }
+
+    List<double[]> results = new ArrayList<>(candidates.size());
+    for (Relation candidate : candidates) {
+      double[] result = new double[templates.getPatternCount()];
+      List<String> slots = Arrays.asList(candidate.getIdentifier(), candidate.getDefinition());
+      for (int i = 0; i < PATTERNS; i++) {
+        if (boundSlots.get(i).contains(slots))
+          result[i] = 1;
+      }
+      int identifierPosition = candidate.getIdentifierPosition();
+      int definiensPosition = candidate.getWordPosition();
+      for (int i = COLON; i <= OTHER_MATH; i++) {
+        if (countBetween(before[i], identifierPosition, definiensPosition) > 0)
+          result[i] = 1;
+      }
+      long openingParentheses = countBetween(before[OPENING_PARENTHESIS], identifierPosition, definiensPosition);
+      long closingParentheses = countBetween(before[CLOSING_PARENTHESIS], identifierPosition, definiensPosition);
+      if (identifierPosition < definiensPosition) {
+        if (openingParentheses - closingParentheses > 0) {
+          //definiens in parentheses
+          result[13] = 1;
+        } else if (openingParentheses - closingParentheses < 0)
+          //identifier in parentheses
+          result[14] = 1;
+      }
+      if (identifierPosition > definiensPosition) {
+        if (openingParentheses - closingParentheses > 0) {
+          //identifier in parentheses
+          result[14] = 1;
+        } else if (openingParentheses - closingParentheses < 0)
           //definiens in parentheses
-          long closingParentheses = matches.stream().filter(m -> inRange(m.matchedFrom(), identifierPosition, definiensPosition)).count();
-          if (identifierPosition < definiensPosition) {
-            if (openingParentheses - closingParentheses > 0) {
-              //definiens in parentheses
-              result[13] = 1;
-            } else if (openingParentheses - closingParentheses < 0)
-              //identifier in parentheses
-              result[14] = 1;
-          }
-          if (identifierPosition > definiensPosition) {
-            if (openingParentheses - closingParentheses > 0) {
-              //identifier in parentheses
-              result[14] = 1;
-            } else if (openingParentheses - closingParentheses < 0)
-              //definiens in parentheses
-              result[13] = 1;
-          }
+          result[13] = 1;
       }
+      results.add(result);
     }
-    return result;
+    return results;
   }
 
   /**
-   * Checks if x lies between y and z
+   * Counts the matches that lie between y and z, excluding y and z.
    *
-   * @return
+   * @param before number of matches before each position
    */
-  private static boolean inRange(int x, int y, int z) {
-    return ((y < x && x < z) || (z < x && x < y));
+  private static int countBetween(int[] before, int y, int z) {
+    int from = Math.max(0, Math.min(y, z) + 1);
+    int to = Math.min(before.length - 1, Math.max(y, z));
+    return from < to ? before[to] - before[from] : 0;
   }
 
   protected static XMatcher<Word> word(String word) {
-    return BeanMatchers.eq(Word.class, "word", word);
+    return WordMatchers.word(word);
   }
 
   protected static XMatcher<Word> pos(String pos) {
-    return BeanMatchers.eq(Word.class, "posTag", pos);
+    return WordMatchers.pos(pos);
   }
 
   protected static XMatcher<Word> posRegExp(String regexp) {
-    return BeanMatchers.regex(Word.class, "posTag", regexp);
+    return WordMatchers.posRegExp(regexp);
   }
 }
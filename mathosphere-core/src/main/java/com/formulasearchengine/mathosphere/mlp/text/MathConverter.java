@@ -17,11 +17,12 @@ import com.formulasearchengine.mathosphere.utils.sweble.MlpConfigEnWpImpl;
 import com.google.common.collect.Multiset;
 import com.jcabi.log.Logger;
 import de.fau.cs.osr.ptk.common.AstVisitor;
+import org.apache.flink.api.common.accumulators.LongCounter;
+import org.apache.flink.api.common.functions.AbstractRichFunction;
 import org.sweble.wikitext.engine.EngineException;
 import org.sweble.wikitext.engine.PageId;
 import org.sweble.wikitext.engine.PageTitle;
 import org.sweble.wikitext.engine.WtEngineImpl;
-import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngPage;
 import org.sweble.wikitext.engine.nodes.EngProcessedPage;
 import org.sweble.wikitext.parser.nodes.WtBold;
@@ -67,6 +68,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import static de.fau.cs.osr.utils.StringTools.strrep;
@@ -86,17 +89,43 @@ import static de.fau.cs.osr.utils.StringTools.strrep;
  * values of the <code>visit()</code> calls in a list,</li> <li><code>mapInPlace(n)</code> - visit
  * the <b>children</b> of node <code>n</code> and replace each child node <code>c</code> with the
  * return value of the call to <code>visit(c)</code>.</li> </ul>
+ * <p>
+ * Every thread uses its own engine and wiki configuration, so converters may be created
+ * concurrently. The parsing of each page is bounded by the parse budget of the {@link BaseConfig}.
+ * Pages that are too long or take too long are converted with
+ * {@link WikiTextUtils#extractPlainText(String)} instead, see {@link #isOverBudget()}. The budget
+ * covers the Sweble postprocess step and the visitation, it is checked during the visitation. The
+ * postprocess step cannot be interrupted, only the character limit keeps long pages from it. By
+ * default there is no budget.
  */
 @SuppressWarnings("unused")
 public class MathConverter
         extends
-        AstVisitor<WtNode> {
+        AstVisitor<WtNode>
+        implements WikiTextConverter {
     private final static Pattern subMatch = Pattern.compile("[{<]sub[}>](.+?)[{<]/sub[}>]");
-    private final static WikiConfig config = MlpConfigEnWpImpl.generate();
-    private final static WtEngineImpl engine = new WtEngineImpl(config);
     private static final Pattern ws = Pattern.compile("\\s+");
-    private static int i = 0;
+    /**
+     * The engine and its configuration are not thread safe, thus each thread gets its own copy.
+     */
+    private static final ThreadLocal<WtEngineImpl> engines =
+            ThreadLocal.withInitial(() -> new WtEngineImpl(MlpConfigEnWpImpl.generate()));
+    private static final AtomicLong pagesOverBudget = new AtomicLong();
+    /**
+     * Name of the accumulator that counts the pages that exceeded the parse budget.
+     */
+    public static final String OVER_BUDGET_ACCUMULATOR = "pages-over-parse-budget";
+    private final String wikiText;
     private final EngProcessedPage page;
+    /**
+     * System.nanoTime() at the creation of the converter.
+     */
+    private final long startTime;
+    /**
+     * Time budget of the conversion in nanoseconds, 0 if there is no limit.
+     */
+    private final long timeoutNanos;
+    private boolean overBudget = false;
     private List<MathTag> mathTags = new ArrayList<>();
     private List<WikidataLink> links = new ArrayList<>();
     private StringBuilder sb;
@@ -127,10 +156,7 @@ public class MathConverter
 
 
     public MathConverter(String wikiText, String name) throws LinkTargetException, EngineException {
-        pageTitle = PageTitle.make(config, name);
-        PageId pageId = new PageId(pageTitle, -1);
-        page = engine.postprocess(pageId, wikiText, null);
-        texInfoUrl = (new BaseConfig()).getTexvcinfoUrl();
+        this(wikiText, name, new BaseConfig());
     }
 
     public MathConverter(String wikiText) throws LinkTargetException, EngineException {
@@ -138,7 +164,19 @@ public class MathConverter
     }
 
     public MathConverter(String wikitext, String title, BaseConfig config) throws LinkTargetException, EngineException {
-        this(wikitext, title);
+        startTime = System.nanoTime();
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getParseTimeout()));
+        wikiText = wikitext;
+        final WtEngineImpl engine = engines.get();
+        pageTitle = PageTitle.make(engine.getWikiConfig(), title);
+        final int maxChars = config.getMaxParseChars();
+        if (maxChars > 0 && wikitext.length() > maxChars) {
+            Logger.info(this, "Page %s has %d characters, skip parsing", title, wikitext.length());
+            exceedBudget();
+            page = null;
+        } else {
+            page = postprocess(engine, wikitext);
+        }
         if (config.getWikiDataFile() != null) {
             wl = new WikidataLinkMap(config.getWikiDataFile());
         } else {
@@ -147,6 +185,80 @@ public class MathConverter
         texInfoUrl = config.getTexvcinfoUrl();
     }
 
+    /**
+     * Runs the Sweble postprocess step on the calling thread. The step cannot be interrupted, its
+     * time is charged to the parse budget: a page whose postprocess step used up the budget is over
+     * budget at the first {@link #checkBudget()} of the visitation.
+     *
+     * @return the processed page
+     */
+    private EngProcessedPage postprocess(WtEngineImpl engine, String wikitext) throws EngineException {
+        final EngProcessedPage processed = engine.postprocess(new PageId(pageTitle, -1), wikitext, null);
+        if (timeoutNanos > 0 && System.nanoTime() - startTime > timeoutNanos) {
+            Logger.info(this, "Page %s exceeded the parse time budget in postprocess", pageTitle.getTitle());
+        }
+        return processed;
+    }
+
+    /**
+     * @return the number of pages that exceeded the parse budget in this JVM
+     */
+    public static long getPagesOverBudget() {
+        return pagesOverBudget.get();
+    }
+
+    /**
+     * Registers the {@link #OVER_BUDGET_ACCUMULATOR} of a function that creates converters.
+     *
+     * @param function the rich function
+     * @return the counter, or null if the function has no runtime context, e.g. in tests
+     */
+    public static LongCounter registerOverBudgetCounter(AbstractRichFunction function) {
+        try {
+            return function.getRuntimeContext().getLongCounter(OVER_BUDGET_ACCUMULATOR);
+        } catch (IllegalStateException noRuntimeContext) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the page exceeded the parse budget and was converted with
+     * {@link WikiTextUtils#extractPlainText(String)}. In that case no links are extracted and only
+     * the math tags found by {@link WikiTextUtils#findMathTags(String)} are returned.
+     */
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Aborts the visitation if the parse budget is exceeded. Once exceeded, every subsequent check
+     * fails as well, so the visitation is unwound even if a visit method catches the exception.
+     */
+    private void checkBudget() {
+        if (overBudget) {
+            throw new ParseBudgetExceededException();
+        }
+        if (timeoutNanos > 0 && System.nanoTime() - startTime > timeoutNanos) {
+            Logger.info(this, "Page %s exceeded the parse time budget", pageTitle.getTitle());
+            exceedBudget();
+            throw new ParseBudgetExceededException();
+        }
+    }
+
+    private void exceedBudget() {
+        overBudget = true;
+        pagesOverBudget.incrementAndGet();
+    }
+
+    private String fallback() {
+        links = new ArrayList<>();
+        mathTags = WikiTextUtils.findMathTags(wikiText);
+        if (suppressOutput) {
+            return "";
+        }
+        return WikiTextUtils.extractPlainText(WikiTextUtils.replaceAllFormulas(wikiText, mathTags));
+    }
+
     @Override
     protected Object after(WtNode node, Object result) {
         finishLine();
@@ -231,14 +343,17 @@ public class MathConverter
         line.setLength(0);
     }
 
+    @Override
     public List<WikidataLink> getLinks() {
         return links;
     }
 
+    @Override
     public List<MathTag> getMathTags() {
         return mathTags;
     }
 
+    @Override
     public String getOutput() {
         String output = getStrippedOutput();
         for (WikidataLink link : links) {
@@ -256,41 +371,64 @@ public class MathConverter
         return output;
     }
 
+    @Override
     public String getStrippedOutput() {
+        if (overBudget) {
+            return fallback();
+        }
+        String output;
         try {
-            return (String) this.go(page.getPage());
+            output = (String) this.go(page.getPage());
         } catch (Exception e) {
+            if (overBudget) {
+                return fallback();
+            }
             Logger.error(e, "Error parsing page " + this.pageTitle);
             return "";
         }
+        return overBudget ? fallback() : output;
     }
 
     private String getTex(WtNode i, boolean force) {
         if (i.get(0) instanceof WtText) {
-            String content = ((WtText) i.get(0)).getContent().trim();
-            content = TextExtractorMapper.unescape(content);
-            String tex = wiki2Tex(content);
-            if (tex.length() > 0 && (
-                    content.length() == 1
-                            || (content.length() < 100 && !content.equals(tex)))) {
-                Multiset<String> idents;
-                try {
-                    idents = TexInfo.getIdentifiers(tex, texInfoUrl);
-                } catch (XPathExpressionException | ParserConfigurationException | IOException
-                        | SAXException | TransformerException ignored) {
-                    return null;
-                }
-                if (idents.size() == 0 && !force) {
-                    return null;
-                }
-                if (i instanceof WtBold) {
-                    tex = "\\mathbf{" + tex + "}";
-                }
-                return tex;
+            return getTex(((WtText) i.get(0)).getContent(), i instanceof WtBold, force, texInfoUrl);
+        }
+        return null;
+    }
+
+    /**
+     * Converts wikitext that might be a formula hidden in bold or italic text into TeX.
+     *
+     * @param text       the text in the bold or italic node
+     * @param bold       true if the text is bold
+     * @param force      return the TeX even if the text contains no identifiers
+     * @param texInfoUrl the texvcinfo service that extracts the identifiers
+     * @return the TeX of the formula or null if the text does not look like a formula
+     */
+    static String getTex(String text, boolean bold, boolean force, String texInfoUrl) {
+        String content = text.trim();
+        content = TextExtractorMapper.unescape(content);
+        String tex = wiki2Tex(content);
+        if (tex.length() > 0 && (
+                content.length() == 1
+                        || (content.length() < 100 && !content.equals(tex)))) {
+            Multiset<String> idents;
+            try {
+                idents = TexInfo.getIdentifiers(tex, texInfoUrl);
+            } catch (XPathExpressionException | ParserConfigurationException | IOException
+                    | SAXException | TransformerException ignored) {
+                return null;
             }
-            if (force) {
-                return tex;
+            if (idents.size() == 0 && !force) {
+                return null;
             }
+            if (bold) {
+                tex = "\\mathbf{" + tex + "}";
+            }
+            return tex;
+        }
+        if (force) {
+            return tex;
         }
         return null;
     }
@@ -323,6 +461,7 @@ public class MathConverter
     }
 
     public void visit(WtNode n) {
+        checkBudget();
         // Fallback for all nodes that are not explicitly handled below
 //		System.out.println(n.getNodeName());
 //		write("<");
@@ -331,6 +470,7 @@ public class MathConverter
     }
 
     public void visit(WtNodeList n) {
+        checkBudget();
         iterate(n);
     }
 
@@ -432,6 +572,7 @@ public class MathConverter
     }
 
     public void visit(WtSection s) {
+        checkBudget();
         finishLine();
         StringBuilder saveSb = sb;
         boolean saveNoWrap = noWrap;
@@ -481,6 +622,7 @@ public class MathConverter
             // Don't care about errors
             iterate(s.getBody());
         } catch (Exception e) {
+            checkBudget();
             Logger.info(e, "Problem processing page ", pageTitle.getTitle());
             e.printStackTrace();
         }
@@ -493,6 +635,7 @@ public class MathConverter
     }
 
     public void visit(WtParagraph p) {
+        checkBudget();
         iterate(p);
         newline(2);
     }
@@ -538,6 +681,7 @@ public class MathConverter
     }
 
     public void visit(WtTableRow b) {
+        checkBudget();
         iterate(b);
     }
 
@@ -564,6 +708,7 @@ public class MathConverter
     // =========================================================================
 
     public void visit(WtTemplate n) {
+        checkBudget();
         try {
             WtTemplateArgument arg0;
             String content;
@@ -587,6 +732,7 @@ public class MathConverter
                     iterate(n.getArgs());
             }
         } catch (Exception e) {
+            checkBudget();
             Logger.info(e, "Problem prcessing page", pageTitle.getTitle());
         }
     }
@@ -601,6 +747,7 @@ public class MathConverter
     }
 
     public void visit(WtTagExtension n) {
+        checkBudget();
         boolean chem = false;
         switch (n.getName()) {
             case "ce":
@@ -647,7 +794,7 @@ public class MathConverter
         }
     }
 
-    String wiki2Tex(String content) {
+    static String wiki2Tex(String content) {
         content = subMatch.matcher(content).replaceAll("_{$1}")
                 .replaceAll("[{<]sup[}>](.+?)[{<]/sup[}>]", "^{$1}")
                 .replaceAll("'''(.+?)'''", "\\\\mathbf{$1}")
@@ -741,5 +888,10 @@ public class MathConverter
         this.getStrippedOutput();
         this.suppressOutput = false;
     }
-}
 
+    private static class ParseBudgetExceededException extends RuntimeException {
+        ParseBudgetExceededException() {
+            super("parse budget exceeded", null, false, false);
+        }
+    }
+}
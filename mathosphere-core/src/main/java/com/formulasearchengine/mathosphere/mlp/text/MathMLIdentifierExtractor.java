@@ -0,0 +1,144 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extracts the identifiers of a MathML formula in a single StAX pass.
+ * <p>
+ * Produces the same identifiers as {@link MathMLUtils#parseWithXpath}: every {@code msub} whose
+ * children contain exactly two text nodes yields an identifier with subscript, and every
+ * {@code mi} outside of an {@code msub} yields an identifier. Elements without namespace are
+ * treated as MathML elements. Instead of a DOM and XPath queries, the kinds of the open elements
+ * and the texts of the children of the open {@code msub} elements are kept on a stack.
+ */
+public final class MathMLIdentifierExtractor {
+
+  private static final Logger LOGGER = LogManager.getLogger(MathMLIdentifierExtractor.class.getName());
+
+  private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+
+  private static final byte OTHER = 0;
+
+  private static final byte MSUB = 1;
+
+  private static final byte MI = 2;
+
+  private static final XMLInputFactory FACTORY = createFactory();
+
+  private MathMLIdentifierExtractor() {
+  }
+
+  private static XMLInputFactory createFactory() {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * @param mathML       MathML formula
+   * @param useTeX       convert the identifiers to TeX
+   * @param useBlacklist drop the identifiers of {@link MathMLUtils#BLACKLIST}
+   * @return the identifiers of the formula
+   * @throws XMLStreamException if the formula is not well formed
+   */
+  public static Multiset<String> extract(String mathML, boolean useTeX, boolean useBlacklist)
+      throws XMLStreamException {
+    final Multiset<String> result = HashMultiset.create();
+    final XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(mathML));
+    try {
+      // kinds of the open elements by depth, the root element has depth 1
+      byte[] kinds = new byte[32];
+      // texts of the children of the open msub elements by depth
+      final List<List<String>> subTexts = new ArrayList<>();
+      int depth = 0;
+      int openMsubs = 0;
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            if (depth == kinds.length) {
+              kinds = Arrays.copyOf(kinds, kinds.length * 2);
+            }
+            kinds[depth] = kindOf(reader.getNamespaceURI(), reader.getLocalName());
+            if (kinds[depth] == MSUB) {
+              while (subTexts.size() <= depth) {
+                subTexts.add(null);
+              }
+              subTexts.set(depth, new ArrayList<>(2));
+              openMsubs++;
+            }
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            if (depth == 0) {
+              break;
+            }
+            final String text = reader.getText();
+            if (text.trim().isEmpty()) {
+              break;
+            }
+            if (depth > 1 && kinds[depth - 1] == MSUB) {
+              subTexts.get(depth - 1).add(text);
+            }
+            if (kinds[depth] == MI && openMsubs == 0) {
+              final String id = MathMLUtils.identifier(text, useTeX, useBlacklist);
+              if (id != null) {
+                result.add(id);
+              }
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (kinds[depth] == MSUB) {
+              openMsubs--;
+              final List<String> texts = subTexts.set(depth, null);
+              if (texts.size() == 2) {
+                final String id = MathMLUtils.subscriptedIdentifier(texts.get(0), texts.get(1), useTeX, useBlacklist);
+                if (id != null) {
+                  result.add(id);
+                }
+              } else {
+                LOGGER.debug("unexpected input: {} in msub", texts);
+              }
+            }
+            depth--;
+            break;
+          default:
+            break;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return result;
+  }
+
+  private static byte kindOf(String namespace, String localName) {
+    if (namespace != null && !namespace.isEmpty() && !namespace.equals(MATHML_NAMESPACE)) {
+      return OTHER;
+    }
+    if (localName.equals("msub")) {
+      return MSUB;
+    }
+    if (localName.equals("mi")) {
+      return MI;
+    }
+    return OTHER;
+  }
+}
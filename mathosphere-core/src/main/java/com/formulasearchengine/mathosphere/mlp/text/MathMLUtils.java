@@ -3,6 +3,7 @@ package com.formulasearchengine.mathosphere.mlp.text;
 import com.formulasearchengine.mathmltools.xmlhelper.NonWhitespaceNodeList;
 import com.formulasearchengine.mathmltools.xmlhelper.XMLHelper;
 import com.formulasearchengine.mathmltools.xmlhelper.XmlNamespaceTranslator;
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
 import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils.MathMarkUpType;
 import com.google.common.base.Throwables;
@@ -24,6 +25,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -33,6 +35,15 @@ public class MathMLUtils {
 
     private static final Logger LOGGER = LogManager.getLogger(MathMLUtils.class.getName());
     private static final SnuggleEngine SNUGGLE_ENGINE = new SnuggleEngine();
+    private static final ThreadLocal<SnuggleSession> SNUGGLE_SESSION =
+            ThreadLocal.withInitial(SNUGGLE_ENGINE::createSession);
+
+    private static final Pattern TEXT_BLOCK = Pattern.compile("\\\\(text|math(:?bb|bf|cal|frak|it|sf|tt))\\{.*?\\}");
+    private static final Pattern OPERATOR_NAME = Pattern.compile("\\\\operatorname\\{.*?\\}");
+    private static final Pattern UNPARSEABLE = Pattern.compile("\\\\(rang|left|right|rangle|langle)|\\|");
+    private static final Pattern DIM_LOG = Pattern.compile("\\\\(dim|log)_(\\w+)");
+    private static final Pattern ELEMENT_OF = Pattern.compile("^(.*?)\\\\in");
+    private static final Pattern INDEX = Pattern.compile("^([^\\s\\\\\\{\\}])_[^\\s\\\\\\{\\}]$");
 
     /**
      * list of false positive identifiers
@@ -40,6 +51,11 @@ public class MathMLUtils {
     public final static Set<String> BLACKLIST = prepareBlacklist();
     private static boolean summarizeSubscripts = false;
 
+    /**
+     * memo of the MathML of the formulas converted by SnuggleTeX
+     */
+    private static volatile TexToMathMLCache texToMathMLCache = null;
+
     public static String getEngine() {
         return engine;
     }
@@ -48,6 +64,48 @@ public class MathMLUtils {
         MathMLUtils.engine = engine;
     }
 
+    /**
+     * @return the persistent cache of the texvcinfo responses that is configured by
+     * {@link BaseConfig#getTexvcinfoCache()}, null if texvcinfo is asked for every formula
+     * @throws UncheckedIOException if the cache file can not be opened
+     */
+    public static TexInfoCache getTexInfoCache(BaseConfig config) {
+        if (!config.getUseTeXIdentifiers() || config.getTexvcinfoCache() == null) {
+            return null;
+        }
+        try {
+            return TexInfoCache.shared(config.getTexvcinfoCache());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the texvcinfo cache " + config.getTexvcinfoCache(), e);
+        }
+    }
+
+    /**
+     * @return the memo of converted formulas, with the default size if
+     * {@link #initTexToMathMLCache(long)} was not called before
+     */
+    public static TexToMathMLCache getTexToMathMLCache() {
+        final TexToMathMLCache cache = texToMathMLCache;
+        return cache != null ? cache : initTexToMathMLCache(BaseConfig.DEFAULT_MATHML_CACHE_CHARS);
+    }
+
+    /**
+     * Creates the memo of converted formulas with the given size. The memo is created once per
+     * JVM, the first call wins. Later calls with another size keep it and log a warning.
+     *
+     * @param maximumChars maximal number of characters of the memo, 0 disables it
+     * @return the memo
+     */
+    public static synchronized TexToMathMLCache initTexToMathMLCache(long maximumChars) {
+        if (texToMathMLCache == null) {
+            texToMathMLCache = new TexToMathMLCache(maximumChars);
+        } else if (texToMathMLCache.getMaximumChars() != maximumChars) {
+            LOGGER.warn("the MathML memo already holds up to {} characters, the size {} is ignored",
+                    texToMathMLCache.getMaximumChars(), maximumChars);
+        }
+        return texToMathMLCache;
+    }
+
     //@TODO: Make this configurable
     private static String engine = "snuggle";
 
@@ -119,38 +177,63 @@ public class MathMLUtils {
         return result;
     }
 
+    /**
+     * Extracts the identifiers of a formula as configured, TeX identifiers are extracted in
+     * process if {@link BaseConfig#getUseLocalTexIdentifiers()} is set.
+     */
+    public static Multiset<String> extractIdentifiers(MathTag math, BaseConfig config) {
+        if (config.getUseTeXIdentifiers() && config.getUseLocalTexIdentifiers()
+                && math.getMarkUpType() != MathMarkUpType.MATHML) {
+            return extractIdentifiersFromTexLocally(math.getTagContent());
+        }
+        return extractIdentifiers(math, config.getUseTeXIdentifiers(), config.getTexvcinfoUrl(), getTexInfoCache(config));
+    }
+
+    /**
+     * Extracts the identifiers of a TeX formula like texvcinfo, but without a request.
+     */
+    public static Multiset<String> extractIdentifiersFromTexLocally(String tex) {
+        return filterTexIdentifiers(HashMultiset.create(TexIdentifierExtractor.getIdentifiers(tex)));
+    }
+
     public static Multiset<String> extractIdentifiers(MathTag math, Boolean useTeXIdentifiers, String url) {
+        return extractIdentifiers(math, useTeXIdentifiers, url, null);
+    }
+
+    private static Multiset<String> extractIdentifiers(MathTag math, Boolean useTeXIdentifiers, String url,
+                                                       TexInfoCache cache) {
         try {
-            return tryExtractIdentifiers(math, useTeXIdentifiers, url);
+            return tryExtractIdentifiers(math, useTeXIdentifiers, url, cache);
         } catch (Exception e) {
             LOGGER.warn("exception occurred during 'extractIdentifiers'. Returning an empty set", e);
             return LinkedHashMultiset.create();
         }
     }
 
-    private static Multiset<String> tryExtractIdentifiers(MathTag math, Boolean useTeXIdentifiers, String url) {
+    private static Multiset<String> tryExtractIdentifiers(MathTag math, Boolean useTeXIdentifiers, String url,
+                                                          TexInfoCache cache) {
         if (math.getMarkUpType() != MathMarkUpType.MATHML) {
-            return extractIdentifiersFromTex(math.getTagContent(), useTeXIdentifiers, url);
+            return extractIdentifiersFromTex(math.getTagContent(), useTeXIdentifiers, url, cache);
         } else {
             return extractIdentifiersFromMathML(math.getContent(), useTeXIdentifiers, false);
         }
     }
 
     public static Multiset<String> extractIdentifiersFromTex(String tex, boolean useTeX, String url) {
+        return extractIdentifiersFromTex(tex, useTeX, url, null);
+    }
+
+    /**
+     * @param cache persistent cache of the texvcinfo responses, null to ask texvcinfo for every formula
+     */
+    public static Multiset<String> extractIdentifiersFromTex(String tex, boolean useTeX, String url,
+                                                             TexInfoCache cache) {
         if (useTeX) {
             try {
-                Multiset<String> identifiers = TexInfo.getIdentifiers(tex, url);
-                //TODO: Migrate to texvcinfo
-                identifiers.removeIf(x -> x.equals("\\infty") || x.startsWith("\\operatorname"));
-                if (summarizeSubscripts) {
-                    for (String identifier : identifiers.elementSet()) {
-                        if (identifier.matches("(.*?)_\\{[a-zA-Z0-9]\\}$")) {
-                            identifiers.remove(identifier, Integer.MAX_VALUE);
-                            identifiers.add(identifier.replaceAll("(.*?)_\\{[a-zA-Z0-9]\\}$", "$1_"));
-                        }
-                    }
-                }
-                return identifiers;
+                Multiset<String> identifiers = cache == null
+                        ? TexInfo.getIdentifiers(tex, url)
+                        : cache.getIdentifiers(tex, url);
+                return filterTexIdentifiers(identifiers);
 
             } catch (XPathExpressionException | ParserConfigurationException | IOException | SAXException | TransformerException e) {
                 e.printStackTrace();
@@ -162,17 +245,41 @@ public class MathMLUtils {
         return extractIdentifiersFromMathML(mathML, false, false);
     }
 
+    /**
+     * Removes the identifiers of a texvcinfo response that are no identifiers in the sense of MLP.
+     *
+     * @param identifiers the identifiers reported by texvcinfo, modified in place
+     * @return identifiers
+     */
+    public static Multiset<String> filterTexIdentifiers(Multiset<String> identifiers) {
+        //TODO: Migrate to texvcinfo
+        identifiers.removeIf(x -> x.equals("\\infty") || x.startsWith("\\operatorname"));
+        if (summarizeSubscripts) {
+            for (String identifier : identifiers.elementSet()) {
+                if (identifier.matches("(.*?)_\\{[a-zA-Z0-9]\\}$")) {
+                    identifiers.remove(identifier, Integer.MAX_VALUE);
+                    identifiers.add(identifier.replaceAll("(.*?)_\\{[a-zA-Z0-9]\\}$", "$1_"));
+                }
+            }
+        }
+        return identifiers;
+    }
+
     public static Multiset<String> extractIdentifiersFromMathML(String mathML, Boolean useTeXIdentifiers, boolean useBlacklist) {
         try {
-            return tryParseWithXpath(mathML, useTeXIdentifiers, useBlacklist);
+            return MathMLIdentifierExtractor.extract(mathML, useTeXIdentifiers, useBlacklist);
         } catch (Exception e) {
-            LOGGER.warn("exception occurred while trying to parse mathML with xpath... "
+            LOGGER.warn("exception occurred while trying to parse mathML... "
                     + "backing off to the regexp parser.", e);
             return parseWithRegex(mathML);
         }
     }
 
-    private static Multiset<String> tryParseWithXpath(String mathML, boolean useTeX, boolean useBlacklist) {
+    /**
+     * DOM and XPath based version of {@link MathMLIdentifierExtractor#extract}, kept as reference
+     * for tests and benchmarks.
+     */
+    public static Multiset<String> parseWithXpath(String mathML, boolean useTeX, boolean useBlacklist) {
         Document doc = XMLHelper.string2Doc(mathML, true);
 
         new XmlNamespaceTranslator()
@@ -195,31 +302,17 @@ public class MathMLUtils {
             for (Node msubNode : list) {
                 NonWhitespaceNodeList nodeList = new NonWhitespaceNodeList(XMLHelper.getElementsB(msubNode, xpath.compile("*[normalize-space()]/text()")));
 
-
-                List<String> text;
                 if (nodeList.getLength() != 2) {
                     String debugText = nodeList.toString().replaceAll("\\s+", " ");
                     String nmsubMathMl = msubNode.toString().replaceAll("\\s+", " ");
                     LOGGER.debug("unexpected input: {} for {}", debugText, nmsubMathMl);
                     continue;
                 }
-                String id;
-                String sub;
-                if (useTeX) {
-
-                    id = UnicodeMap.string2TeX(nodeList.item(0).getTextContent());
-                    sub = "{" + UnicodeMap.string2TeX(nodeList.item(1).getTextContent()) + "}";
-                } else {
-                    id = UnicodeUtils.normalizeString(nodeList.item(0).getTextContent());
-                    sub = UnicodeUtils.normalizeString(nodeList.item(1).getTextContent());
+                String id = subscriptedIdentifier(nodeList.item(0).getTextContent(),
+                        nodeList.item(1).getTextContent(), useTeX, useBlacklist);
+                if (id != null) {
+                    result.add(id);
                 }
-                if (useBlacklist && BLACKLIST.contains(id)) {
-                    continue;
-                }
-                if (isNumeric(id)) {
-                    continue;
-                }
-                result.add(id + "_" + sub);
             }
 
             NonWhitespaceNodeList allIdentifiers =
@@ -227,22 +320,10 @@ public class MathMLUtils {
 
             //List<String> allIdentifiers = xml.xpath("//m:mi[not(ancestor::m:msub)]/text()");
             for (Node identifierNode : allIdentifiers) {
-                String rawId = identifierNode.getTextContent();
-                String id;
-                if (useTeX) {
-                    id = UnicodeMap.string2TeX(rawId);
-                    id = id.replaceAll("^\\{(.*)\\}$", "$1");
-                } else {
-                    id = UnicodeUtils.normalizeString(rawId);
-                }
-                if (useBlacklist && BLACKLIST.contains(id)) {
-                    continue;
+                String id = identifier(identifierNode.getTextContent(), useTeX, useBlacklist);
+                if (id != null) {
+                    result.add(id);
                 }
-                if (isNumeric(id)) {
-                    continue;
-                }
-
-                result.add(id);
             }
 
             return result;
@@ -253,6 +334,51 @@ public class MathMLUtils {
         return null;
     }
 
+    /**
+     * @param rawId  text of the base of an msub element
+     * @param rawSub text of the subscript of an msub element
+     * @return the identifier of an msub element, or null if it is blacklisted or numeric
+     */
+    static String subscriptedIdentifier(String rawId, String rawSub, boolean useTeX, boolean useBlacklist) {
+        String id;
+        String sub;
+        if (useTeX) {
+            id = UnicodeMap.string2TeX(rawId);
+            sub = "{" + UnicodeMap.string2TeX(rawSub) + "}";
+        } else {
+            id = UnicodeUtils.normalizeString(rawId);
+            sub = UnicodeUtils.normalizeString(rawSub);
+        }
+        if (useBlacklist && BLACKLIST.contains(id)) {
+            return null;
+        }
+        if (isNumeric(id)) {
+            return null;
+        }
+        return id + "_" + sub;
+    }
+
+    /**
+     * @param rawId text of an mi element
+     * @return the identifier of an mi element, or null if it is blacklisted or numeric
+     */
+    static String identifier(String rawId, boolean useTeX, boolean useBlacklist) {
+        String id;
+        if (useTeX) {
+            id = UnicodeMap.string2TeX(rawId);
+            id = id.replaceAll("^\\{(.*)\\}$", "$1");
+        } else {
+            id = UnicodeUtils.normalizeString(rawId);
+        }
+        if (useBlacklist && BLACKLIST.contains(id)) {
+            return null;
+        }
+        if (isNumeric(id)) {
+            return null;
+        }
+        return id;
+    }
+
     public static boolean isNumeric(String id) {
         return id.matches("\\d+.?\\d*");
     }
@@ -271,38 +397,62 @@ public class MathMLUtils {
         return ids;
     }
 
+    /**
+     * Converts a TeX formula to MathML. The MathML produced by SnuggleTeX is memoized by the
+     * cleaned TeX string, see {@link #getTexToMathMLCache()}.
+     */
     public static String texToMathML(String tex) {
-
+        if (engine.equals("snuggle")) {
+            return getTexToMathMLCache().get(cleanTexString(tex), MathMLUtils::snuggleTexToMathML);
+        }
         try {
-            if (engine.equals("snuggle")) {
-                SnuggleSession session = SNUGGLE_ENGINE.createSession();
-                String cleanTexString = cleanTexString(tex);
-                session.parseInput(new SnuggleInput("$$ " + cleanTexString + " $$"));
-                String xmlString = session.buildXMLString();
-                return xmlString;
-            } else {
-                return TeX2MathML.TeX2MML(tex);
-            }
+            return TeX2MathML.TeX2MML(tex);
         } catch (Exception e) {
             throw Throwables.propagate(e);
         }
+    }
 
-
+    private static String snuggleTexToMathML(String cleanTex) {
+        // sessions are not thread safe, but can be reused after a reset
+        final SnuggleSession session = SNUGGLE_SESSION.get();
+        try {
+            session.parseInput(new SnuggleInput("$$ " + cleanTex + " $$"));
+            return session.buildXMLString();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        } finally {
+            session.reset();
+        }
     }
 
     public static String cleanTexString(String tex) {
-        // strip text blocks
-        tex = tex.replaceAll("\\\\(text|math(:?bb|bf|cal|frak|it|sf|tt))\\{.*?\\}", "");
-        // strip arbitrary operators
-        tex = tex.replaceAll("\\\\operatorname\\{.*?\\}", "");
-        // strip some unparseble stuff
-        tex = tex.replaceAll("\\\\(rang|left|right|rangle|langle)|\\|", "");
-        // strip dim/log
-        tex = tex.replaceAll("\\\\(dim|log)_(\\w+)", "$1");
-        // strip "is element of" definitions
-        tex = tex.replaceAll("^(.*?)\\\\in", "$1");
-        // strip indices
-        tex = tex.replaceAll("^([^\\s\\\\\\{\\}])_[^\\s\\\\\\{\\}]$", "$1");
+        final boolean hasCommand = tex.indexOf('\\') >= 0;
+        if (hasCommand || tex.indexOf('|') >= 0) {
+            if (tex.contains("\\text") || tex.contains("\\math")) {
+                // strip text blocks
+                tex = TEXT_BLOCK.matcher(tex).replaceAll("");
+            }
+            if (tex.contains("\\operatorname")) {
+                // strip arbitrary operators
+                tex = OPERATOR_NAME.matcher(tex).replaceAll("");
+            }
+            // strip some unparseble stuff
+            tex = UNPARSEABLE.matcher(tex).replaceAll("");
+        }
+        if (hasCommand) {
+            if (tex.indexOf('_') >= 0) {
+                // strip dim/log
+                tex = DIM_LOG.matcher(tex).replaceAll("$1");
+            }
+            if (tex.contains("\\in")) {
+                // strip "is element of" definitions
+                tex = ELEMENT_OF.matcher(tex).replaceFirst("$1");
+            }
+        }
+        if (tex.length() >= 3 && tex.charAt(1) == '_') {
+            // strip indices
+            tex = INDEX.matcher(tex).replaceAll("$1");
+        }
         return tex;
     }
 
@@ -20,7 +20,7 @@ public class MyPatternMatcher {
 
     Matcher<Word> the = pos("DT");
 
-    Matcher<Word> identifier = BeanMatchers.eq(Word.class, "word", identifierText).captureAs(IDENTIFIER);
+    Matcher<Word> identifier = WordMatchers.word(identifierText).captureAs(IDENTIFIER);
     Matcher<Word> definition = posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)").captureAs(DEFINITION);
     Matcher<Word> otherMathExpression = posRegExp("(ID|MATH)").captureAs("othermath");
 
@@ -119,18 +119,18 @@ public class MyPatternMatcher {
   }
 
   protected static XMatcher<Word> word(String word) {
-    return BeanMatchers.eq(Word.class, "word", word);
+    return WordMatchers.word(word);
   }
 
   protected static XMatcher<Word> pos(String pos) {
-    return BeanMatchers.eq(Word.class, "posTag", pos);
+    return WordMatchers.pos(pos);
   }
 
   protected static XMatcher<Word> posRegExp(String regexp) {
-    return BeanMatchers.regex(Word.class, "posTag", regexp);
+    return WordMatchers.posRegExp(regexp);
   }
 
   protected static XMatcher<Word> regExp(String regexp) {
-    return BeanMatchers.regex(Word.class, "word", regexp);
+    return WordMatchers.wordRegExp(regexp);
   }
 }
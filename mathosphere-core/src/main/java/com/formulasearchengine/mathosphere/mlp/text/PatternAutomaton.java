@@ -0,0 +1,257 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.alexeygrigorev.rseq.Matcher;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Automaton of several sequence patterns of words, which finds the matches of all patterns in one
+ * pass over a sentence.
+ * <p>
+ * A pattern is a sequence of matchers, each matching one word. The matches of a pattern are found
+ * like {@link com.alexeygrigorev.rseq.Pattern#find(List)} finds them: from left to right, without
+ * overlapping each other. The automaton is a bit parallel NFA (shift-and) in which every element
+ * of every pattern is one bit of a {@code long}, so the patterns may have at most 64 elements
+ * altogether. Every distinct matcher is evaluated once per word, matchers are distinguished by
+ * identity. A matcher that matches every word (see {@link WordMatchers#any()}) can be used as a
+ * slot, whose words are bound by the caller after the matches are found.
+ */
+public class PatternAutomaton {
+
+  private static final int MAX_ELEMENTS = Long.SIZE;
+
+  private final List<Matcher<Word>> matchers;
+
+  /**
+   * elements of each pattern as indexes into {@link #matchers}
+   */
+  private final int[][] patterns;
+
+  /**
+   * for every matcher, the bits of the elements that it matches
+   */
+  private final long[] matcherBits;
+
+  private final long firstBits;
+
+  private final long lastBits;
+
+  /**
+   * pattern of each bit that is the last element of a pattern
+   */
+  private final int[] patternOfBit;
+
+  private PatternAutomaton(List<Matcher<Word>> matchers, int[][] patterns) {
+    this.matchers = matchers;
+    this.patterns = patterns;
+    this.matcherBits = new long[matchers.size()];
+    this.patternOfBit = new int[MAX_ELEMENTS];
+    long first = 0;
+    long last = 0;
+    int bit = 0;
+    for (int p = 0; p < patterns.length; p++) {
+      first |= 1L << bit;
+      for (int matcher : patterns[p]) {
+        matcherBits[matcher] |= 1L << bit++;
+      }
+      last |= 1L << (bit - 1);
+      patternOfBit[bit - 1] = p;
+    }
+    this.firstBits = first;
+    this.lastBits = last;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getPatternCount() {
+    return patterns.length;
+  }
+
+  /**
+   * @return number of words that a match of the pattern spans
+   */
+  public int getLength(int pattern) {
+    return patterns[pattern].length;
+  }
+
+  /**
+   * @param pattern the index of the pattern
+   * @param element a matcher of the pattern
+   * @return position of the first element of the pattern that is the matcher, relative to the
+   * start of a match, -1 if the pattern does not contain the matcher
+   */
+  public int getOffset(int pattern, Matcher<Word> element) {
+    final int matcher = indexOf(matchers, element);
+    if (matcher < 0) {
+      return -1;
+    }
+    final int[] elements = patterns[pattern];
+    for (int i = 0; i < elements.length; i++) {
+      if (elements[i] == matcher) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the matches of all patterns in one pass over the words.
+   *
+   * @return the matches ordered by pattern, the matches of a pattern from left to right
+   */
+  public Matches find(List<Word> words) {
+    return find(words, false);
+  }
+
+  /**
+   * Finds all matches of all patterns in one pass over the words, including the ones that overlap
+   * other matches of the same pattern.
+   *
+   * @return the matches ordered by pattern, the matches of a pattern from left to right
+   */
+  public Matches findAll(List<Word> words) {
+    return find(words, true);
+  }
+
+  private Matches find(List<Word> words, boolean overlapping) {
+    final int[] nextStart = new int[patterns.length];
+    final int[] counts = new int[patterns.length];
+    int[] foundPatterns = new int[8];
+    int[] foundStarts = new int[8];
+    int found = 0;
+    long state = 0;
+    for (int i = 0; i < words.size(); i++) {
+      final Word word = words.get(i);
+      long accepted = 0;
+      for (int m = 0; m < matcherBits.length; m++) {
+        if (matchers.get(m).match(word)) {
+          accepted |= matcherBits[m];
+        }
+      }
+      state = (((state << 1) & ~firstBits) | firstBits) & accepted;
+      for (long ends = state & lastBits; ends != 0; ends &= ends - 1) {
+        final int pattern = patternOfBit[Long.numberOfTrailingZeros(ends)];
+        final int start = i - patterns[pattern].length + 1;
+        if (!overlapping && start < nextStart[pattern]) {
+          // overlaps the previous match of the pattern
+          continue;
+        }
+        nextStart[pattern] = i + 1;
+        if (found == foundPatterns.length) {
+          foundPatterns = Arrays.copyOf(foundPatterns, found * 2);
+          foundStarts = Arrays.copyOf(foundStarts, found * 2);
+        }
+        foundPatterns[found] = pattern;
+        foundStarts[found] = start;
+        found++;
+        counts[pattern]++;
+      }
+    }
+
+    // stable counting sort by pattern, the matches of each pattern were found from left to right
+    final int[] offsets = new int[patterns.length];
+    for (int p = 1; p < patterns.length; p++) {
+      offsets[p] = offsets[p - 1] + counts[p - 1];
+    }
+    final int[] sortedPatterns = new int[found];
+    final int[] sortedStarts = new int[found];
+    for (int k = 0; k < found; k++) {
+      final int target = offsets[foundPatterns[k]]++;
+      sortedPatterns[target] = foundPatterns[k];
+      sortedStarts[target] = foundStarts[k];
+    }
+    return new Matches(sortedPatterns, sortedStarts);
+  }
+
+  private static int indexOf(List<Matcher<Word>> matchers, Matcher<Word> matcher) {
+    for (int i = 0; i < matchers.size(); i++) {
+      if (matchers.get(i) == matcher) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The matches of the patterns in a sentence.
+   */
+  public static final class Matches {
+
+    private final int[] patterns;
+
+    private final int[] starts;
+
+    private Matches(int[] patterns, int[] starts) {
+      this.patterns = patterns;
+      this.starts = starts;
+    }
+
+    public int size() {
+      return patterns.length;
+    }
+
+    /**
+     * @param i index of the match, from 0 to {@link #size()} - 1
+     * @return index of the pattern that matched
+     */
+    public int getPattern(int i) {
+      return patterns[i];
+    }
+
+    /**
+     * @param i index of the match, from 0 to {@link #size()} - 1
+     * @return position of the first word of the match
+     */
+    public int getStart(int i) {
+      return starts[i];
+    }
+  }
+
+  public static class Builder {
+
+    private final List<Matcher<Word>> matchers = new ArrayList<>();
+
+    private final List<int[]> patterns = new ArrayList<>();
+
+    private int elements;
+
+    private Builder() {
+    }
+
+    /**
+     * Adds a pattern, its index is the number of patterns added before.
+     *
+     * @param elements the matchers of the consecutive words of a match
+     */
+    @SafeVarargs
+    public final Builder add(Matcher<Word>... elements) {
+      if (elements.length == 0) {
+        throw new IllegalArgumentException("A pattern needs at least one element.");
+      }
+      if (this.elements + elements.length > MAX_ELEMENTS) {
+        throw new IllegalArgumentException("The patterns may have at most " + MAX_ELEMENTS + " elements.");
+      }
+      final int[] pattern = new int[elements.length];
+      for (int i = 0; i < elements.length; i++) {
+        int matcher = indexOf(matchers, elements[i]);
+        if (matcher < 0) {
+          matcher = matchers.size();
+          matchers.add(elements[i]);
+        }
+        pattern[i] = matcher;
+      }
+      patterns.add(pattern);
+      this.elements += elements.length;
+      return this;
+    }
+
+    public PatternAutomaton build() {
+      return new PatternAutomaton(new ArrayList<>(matchers), patterns.toArray(new int[patterns.size()][]));
+    }
+  }
+}
@@ -1,36 +1,45 @@
 package com.formulasearchengine.mathosphere.mlp.text;
 
-import com.alexeygrigorev.rseq.*;
+import com.alexeygrigorev.rseq.Matcher;
+import com.alexeygrigorev.rseq.XMatcher;
 import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
-import com.formulasearchengine.mathosphere.mlp.pojos.WikidataLink;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
 
 import com.google.common.collect.Lists;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 import static com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils.deLinkify;
 
+/**
+ * Finds identifier-definiens candidates with word patterns. The patterns are compiled into one
+ * {@link PatternAutomaton}, so a sentence is scanned once for all of them.
+ */
 public class PatternMatcher {
-  private List<Pattern<Word>> patterns;
-
-  public PatternMatcher(List<Pattern<Word>> patterns) {
-    this.patterns = patterns;
+  private final PatternAutomaton automaton;
+  private final int[] identifierOffsets;
+  private final int[] definitionOffsets;
+
+  private PatternMatcher(PatternAutomaton automaton, Matcher<Word> identifier, Matcher<Word> definition) {
+    this.automaton = automaton;
+    this.identifierOffsets = new int[automaton.getPatternCount()];
+    this.definitionOffsets = new int[automaton.getPatternCount()];
+    for (int i = 0; i < automaton.getPatternCount(); i++) {
+      identifierOffsets[i] = automaton.getOffset(i, identifier);
+      definitionOffsets[i] = automaton.getOffset(i, definition);
+    }
   }
 
   public List<IdentifierMatch> match(List<Word> words, ParsedWikiDocument doc) {
     List<IdentifierMatch> result = Lists.newArrayList();
-    for (int i = 0; i < patterns.size(); i++) {
-      Pattern<Word> pattern = patterns.get(i);
-      List<Match<Word>> matches = pattern.find(words);
-      for (Match<Word> match : matches) {
-        String id = match.getVariable("identifier").getWord();
-        String def = deLinkify(match.getVariable("definition"), doc);
-        int position = i;
-        result.add(new IdentifierMatch(id, def, position));
-      }
+    PatternAutomaton.Matches matches = automaton.find(words);
+    for (int i = 0; i < matches.size(); i++) {
+      int pattern = matches.getPattern(i);
+      int start = matches.getStart(i);
+      String id = words.get(start + identifierOffsets[pattern]).getWord();
+      String def = deLinkify(words.get(start + definitionOffsets[pattern]), doc);
+      result.add(new IdentifierMatch(id, def, pattern));
     }
     return result;
   }
@@ -45,43 +54,42 @@ public class PatternMatcher {
 
     Matcher<Word> the = pos("DT");
 
-    Matcher<Word> identifier = BeanMatchers.in(Word.class, "word", identifiers).captureAs("identifier");
-    Matcher<Word> definition = posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)").captureAs("definition");
+    Matcher<Word> identifier = WordMatchers.wordIn(identifiers);
+    Matcher<Word> definition = posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)");
 
-    List<Pattern<Word>> patterns = Arrays.asList(
+    PatternAutomaton automaton = PatternAutomaton.builder()
       //0
-      Pattern.create(definition, identifier),
+      .add(definition, identifier)
       //1
-      Pattern.create(identifier, definition),
+      .add(identifier, definition)
       //2
-      Pattern.create(identifier, isOrAre, definition),
+      .add(identifier, isOrAre, definition)
       //3
-      Pattern.create(identifier, isOrAre, the, definition),
+      .add(identifier, isOrAre, the, definition)
       //4
-      Pattern.create(let, identifier, be, definition),
+      .add(let, identifier, be, definition)
       //5
-      Pattern.create(let, identifier, be, the, definition),
+      .add(let, identifier, be, the, definition)
       //6
-      Pattern.create(definition, isOrAre, denoted, by, identifier),
+      .add(definition, isOrAre, denoted, by, identifier)
       //7
-      Pattern.create(identifier, denotes, definition),
+      .add(identifier, denotes, definition)
       //8
-      Pattern.create(identifier, denotes, the, definition)
-    );
-    return new PatternMatcher(patterns);
-
+      .add(identifier, denotes, the, definition)
+      .build();
+    return new PatternMatcher(automaton, identifier, definition);
   }
 
   public static XMatcher<Word> word(String word) {
-    return BeanMatchers.eq(Word.class, "word", word);
+    return WordMatchers.word(word);
   }
 
   public static XMatcher<Word> pos(String pos) {
-    return BeanMatchers.eq(Word.class, "posTag", pos);
+    return WordMatchers.pos(pos);
   }
 
   public static XMatcher<Word> posRegExp(String regexp) {
-    return BeanMatchers.regex(Word.class, "posTag", regexp);
+    return WordMatchers.posRegExp(regexp);
   }
 
   public static class IdentifierMatch {
@@ -0,0 +1,146 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+/**
+ * Registry of the POS tagger models of the JVM, so that all task slots of a task manager share
+ * one copy of a model.
+ * <p>
+ * A model is loaded when the first handle for it is acquired and dropped when the last handle
+ * is closed. The {@link MaxentTagger} tags any number of sentences concurrently, so the
+ * annotator of a handle can be used by all threads.
+ */
+public final class PosModelRegistry {
+
+  private static final Logger LOGGER = LogManager.getLogger(PosModelRegistry.class.getName());
+
+  private static final Map<String, SharedModel> MODELS = new HashMap<>();
+
+  private static final AtomicLong LOADS = new AtomicLong();
+
+  private PosModelRegistry() {
+  }
+
+  /**
+   * Returns a handle for a model and loads the model if no handle for it is open.
+   *
+   * @param model path of the model, in the classpath or the file system
+   * @return handle that has to be closed when the model is not needed anymore
+   */
+  public static Handle acquire(String model) {
+    SharedModel shared;
+    synchronized (MODELS) {
+      shared = MODELS.get(model);
+      if (shared == null) {
+        shared = new SharedModel(model);
+        MODELS.put(model, shared);
+      }
+      shared.references++;
+    }
+    // loading takes seconds, other models can be acquired in the mean time
+    try {
+      return new Handle(shared, shared.getAnnotator());
+    } catch (RuntimeException | Error e) {
+      release(shared);
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of open handles of a model, 0 if the model is not loaded
+   */
+  public static int getReferences(String model) {
+    synchronized (MODELS) {
+      final SharedModel shared = MODELS.get(model);
+      return shared == null ? 0 : shared.references;
+    }
+  }
+
+  /**
+   * @return number of times a model was loaded since the JVM started
+   */
+  public static long getLoads() {
+    return LOADS.get();
+  }
+
+  private static void release(SharedModel shared) {
+    synchronized (MODELS) {
+      shared.references--;
+      if (shared.references == 0) {
+        MODELS.remove(shared.model, shared);
+        LOGGER.info("released POS model {}", shared.model);
+      }
+    }
+  }
+
+  private static final class SharedModel {
+
+    private final String model;
+
+    /**
+     * number of open handles, guarded by {@link #MODELS}
+     */
+    private int references;
+
+    private POSTaggerAnnotator annotator;
+
+    private SharedModel(String model) {
+      this.model = model;
+    }
+
+    private synchronized POSTaggerAnnotator getAnnotator() {
+      if (annotator == null) {
+        final long start = System.nanoTime();
+        annotator = new POSTaggerAnnotator(new MaxentTagger(model));
+        LOADS.incrementAndGet();
+        LOGGER.info("loaded POS model {} in {} ms", model, (System.nanoTime() - start) / 1000000);
+      }
+      return annotator;
+    }
+  }
+
+  /**
+   * Reference to a shared model.
+   */
+  public static final class Handle implements Closeable {
+
+    private final SharedModel shared;
+
+    private final POSTaggerAnnotator annotator;
+
+    private boolean closed = false;
+
+    private Handle(SharedModel shared, POSTaggerAnnotator annotator) {
+      this.shared = shared;
+      this.annotator = annotator;
+    }
+
+    /**
+     * @return the annotator of the model, thread safe
+     */
+    public POSTaggerAnnotator getAnnotator() {
+      return annotator;
+    }
+
+    /**
+     * Releases the model, the annotator must not be used afterwards. Closing a handle more than
+     * once has no effect.
+     */
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        release(shared);
+      }
+    }
+  }
+}
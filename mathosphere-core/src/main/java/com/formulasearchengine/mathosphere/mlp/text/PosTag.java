@@ -18,4 +18,9 @@ public class PosTag {
   public static final String NOUN_PHRASE = "NP";
 
   public static final String SUFFIX = "-SUF";
+
+  /**
+   * tag of the words of sentences that are not POS tagged
+   */
+  public static final String UNTAGGED = "-UNT";
 }
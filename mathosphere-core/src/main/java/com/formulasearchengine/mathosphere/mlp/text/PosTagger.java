@@ -8,7 +8,6 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 
-import com.alexeygrigorev.rseq.BeanMatchers;
 import com.alexeygrigorev.rseq.Match;
 import com.alexeygrigorev.rseq.Matchers;
 import com.alexeygrigorev.rseq.Pattern;
@@ -24,10 +23,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
@@ -36,12 +40,11 @@ import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
+import edu.stanford.nlp.pipeline.Annotator;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
 
-public class PosTagger {
-  private static BaseConfig config;
+public class PosTagger implements Closeable {
 
   private static final Logger LOGGER = LogManager.getLogger(PosTagger.class.getName());
 
@@ -52,7 +55,6 @@ public class PosTagger {
     .put("-RSB-", "]").build();
 
   public static PosTagger create(BaseConfig cfg) {
-    config = cfg;
     Properties props = new Properties();
     props.put("annotators", "tokenize, ssplit");
     props.put("tokenize.options", "untokenizable=firstKeep,strictTreebank3=true,"
@@ -62,21 +64,101 @@ public class PosTagger {
     StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
 
     if ("en".equals(cfg.getLanguage())) {
-      POSTaggerAnnotator modelBasedPosAnnotator = new POSTaggerAnnotator(config.getModel(), false);
-      pipeline.addAnnotator(modelBasedPosAnnotator);
+      // the model is shared by all taggers of the JVM
+      PosModelRegistry.Handle model = PosModelRegistry.acquire(cfg.getModel());
+      return new PosTagger(pipeline, model.getAnnotator(), model, cfg);
     } else if ("ru".equals(cfg.getLanguage())) {
-      pipeline.addAnnotator(new RusPosAnnotator());
+      return new PosTagger(pipeline, new RusPosAnnotator(), null, cfg);
     } else {
-      throw new IllegalArgumentException("Cannot deal with language " + config.getLanguage());
+      throw new IllegalArgumentException("Cannot deal with language " + cfg.getLanguage());
     }
-
-    return new PosTagger(pipeline);
   }
 
+  private final BaseConfig config;
+
   private final StanfordCoreNLP nlpPipeline;
 
-  public PosTagger(StanfordCoreNLP nlpPipeline) {
+  /**
+   * tags the sentences found by the pipeline, null if the pipeline tags them itself
+   */
+  private final Annotator posAnnotator;
+
+  /**
+   * shared POS model, null if the pipeline does not use one
+   */
+  private final PosModelRegistry.Handle model;
+
+  /**
+   * tagged sentences of all documents of this tagger, null if sentences are not cached
+   */
+  private final SentenceCache sentenceCache;
+
+  private final AtomicLong taggedSentences = new AtomicLong();
+
+  private final AtomicLong skippedSentences = new AtomicLong();
+
+  /**
+   * @param nlpPipeline pipeline that splits and POS tags the text
+   * @param config      configuration
+   */
+  public PosTagger(StanfordCoreNLP nlpPipeline, BaseConfig config) {
+    this(nlpPipeline, null, null, config);
+  }
+
+  private PosTagger(StanfordCoreNLP nlpPipeline, Annotator posAnnotator, PosModelRegistry.Handle model,
+                    BaseConfig config) {
     this.nlpPipeline = nlpPipeline;
+    this.posAnnotator = posAnnotator;
+    this.model = model;
+    this.config = config;
+    this.sentenceCache = config.getSentenceCacheSize() > 0 ? new SentenceCache(config.getSentenceCacheSize()) : null;
+  }
+
+  /**
+   * @return the annotator that tags the sentences, null if the pipeline tags them itself
+   */
+  Annotator getPosAnnotator() {
+    return posAnnotator;
+  }
+
+  /**
+   * Releases the shared POS model. The tagger must not be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (model != null) {
+      model.close();
+    }
+  }
+
+  /**
+   * @return the cache of tagged sentences, null if {@link BaseConfig#getSentenceCacheSize()} is 0
+   */
+  public SentenceCache getSentenceCache() {
+    return sentenceCache;
+  }
+
+  /**
+   * @return number of sentences that were POS tagged or found in the sentence cache
+   */
+  public long getTaggedSentences() {
+    return taggedSentences.get();
+  }
+
+  /**
+   * @return number of sentences that were not POS tagged, because they are too far away from formulas
+   */
+  public long getSkippedSentences() {
+    return skippedSentences.get();
+  }
+
+  /**
+   * @return fraction of the sentences that were not POS tagged, 0 if no sentence was processed
+   */
+  public double getSkippedSentenceRatio() {
+    final long skipped = skippedSentences.get();
+    final long total = skipped + taggedSentences.get();
+    return total == 0 ? 0 : (double) skipped / total;
   }
 
   public List<Sentence> process(String cleanText, List<MathTag> formulas) {
@@ -101,34 +183,173 @@ public class PosTagger {
                                    Set<String> allIdentifiers) {
     Annotation document = new Annotation(cleanText);
     nlpPipeline.annotate(document);
+    final List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+    final List<List<Word>> result = Lists.newArrayListWithCapacity(sentences.size());
+    if (posAnnotator == null) {
+      for (CoreMap sentence : sentences) {
+        result.add(toWords(sentence));
+      }
+      return result;
+    }
 
-    List<List<Word>> result = Lists.newArrayList();
-    for (CoreMap sentence : document.get(SentencesAnnotation.class)) {
-      List<Word> words = Lists.newArrayList();
-
-      final List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
-      for (CoreLabel token : coreLabels) {
-        String textToken = token.get(TextAnnotation.class);
-        String pos = token.get(PartOfSpeechAnnotation.class);
-        if (textToken.startsWith("FORMULA_")) {
-          words.add(new Word(textToken, PosTag.MATH));
-        } else if (SYMBOLS.contains(textToken)) {
-          words.add(new Word(textToken, PosTag.SYMBOL));
-        } else if (BRACKET_CODES.containsKey(textToken)) {
-          words.add(new Word(BRACKET_CODES.get(textToken), pos));
-        } else if (textToken.startsWith("LINK_")) {
-          words.add(new Word(textToken, PosTag.LINK));
-        } else {
-          words.add(new Word(textToken, pos));
+    final BitSet selected = selectSentences(sentences, allIdentifiers);
+    taggedSentences.addAndGet(selected.cardinality());
+    skippedSentences.addAndGet(sentences.size() - selected.cardinality());
+    final List<List<String>> tokens = Lists.newArrayListWithCapacity(sentences.size());
+    final List<CoreMap> toTag = Lists.newArrayList();
+    for (int i = 0; i < sentences.size(); i++) {
+      List<Word> cached = null;
+      if (selected.get(i) && sentenceCache != null) {
+        tokens.add(tokenTexts(sentences.get(i)));
+        cached = sentenceCache.get(tokens.get(i));
+      } else {
+        tokens.add(null);
+      }
+      if (cached == null && selected.get(i)) {
+        toTag.add(sentences.get(i));
+      }
+      result.add(cached);
+    }
+    if (sentenceCache != null) {
+      // the tagger sees the placeholders like the key of the cache, so a hit has the tags of a miss
+      for (CoreMap sentence : toTag) {
+        for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+          token.set(TextAnnotation.class, SentenceCache.mask(token.get(TextAnnotation.class)));
         }
       }
-      result.add(words);
     }
-
+    tag(document, sentences, toTag);
+    for (int i = 0; i < sentences.size(); i++) {
+      if (result.get(i) == null) {
+        if (tokens.get(i) != null) {
+          setTokenTexts(sentences.get(i), tokens.get(i));
+        }
+        final List<Word> words = toWords(sentences.get(i));
+        if (tokens.get(i) != null) {
+          sentenceCache.put(tokens.get(i), words);
+        }
+        result.set(i, words);
+      }
+    }
     return result;
   }
 
-  public static List<Sentence> postprocess(List<List<Word>> input, Map<String, MathTag> formulaIndex,
+  /**
+   * @return one word per token of the sentence, tokens without a POS tag get {@link PosTag#UNTAGGED}
+   */
+  private static List<Word> toWords(CoreMap sentence) {
+    final List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
+    final List<Word> words = Lists.newArrayListWithCapacity(coreLabels.size());
+    for (CoreLabel token : coreLabels) {
+      String textToken = token.get(TextAnnotation.class);
+      String pos = token.get(PartOfSpeechAnnotation.class);
+      if (pos == null) {
+        pos = PosTag.UNTAGGED;
+      }
+      if (textToken.startsWith("FORMULA_")) {
+        words.add(new Word(textToken, PosTag.MATH));
+      } else if (SYMBOLS.contains(textToken)) {
+        words.add(new Word(textToken, PosTag.SYMBOL));
+      } else if (BRACKET_CODES.containsKey(textToken)) {
+        words.add(new Word(BRACKET_CODES.get(textToken), pos));
+      } else if (textToken.startsWith("LINK_")) {
+        words.add(new Word(textToken, PosTag.LINK));
+      } else {
+        words.add(new Word(textToken, pos));
+      }
+    }
+    return words;
+  }
+
+  private static List<String> tokenTexts(CoreMap sentence) {
+    final List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
+    final List<String> texts = Lists.newArrayListWithCapacity(coreLabels.size());
+    for (CoreLabel token : coreLabels) {
+      texts.add(token.get(TextAnnotation.class));
+    }
+    return texts;
+  }
+
+  private static void setTokenTexts(CoreMap sentence, List<String> texts) {
+    final List<CoreLabel> coreLabels = sentence.get(TokensAnnotation.class);
+    for (int i = 0; i < coreLabels.size(); i++) {
+      coreLabels.get(i).set(TextAnnotation.class, texts.get(i));
+    }
+  }
+
+  /**
+   * Tags sentences of a split document. If {@link BaseConfig#getPosTaggingBatchSize()} is positive
+   * and more sentences are tagged, batches of sentences are tagged in parallel on the common fork
+   * join pool. The tags are set on the tokens of the document, so the order of the sentences is
+   * kept.
+   *
+   * @param document  the split document
+   * @param sentences all sentences of the document
+   * @param toTag     the sentences to tag in document order
+   */
+  private void tag(Annotation document, List<CoreMap> sentences, List<CoreMap> toTag) {
+    if (toTag.isEmpty()) {
+      return;
+    }
+    final int batchSize = config.getPosTaggingBatchSize();
+    if (batchSize <= 0 || toTag.size() <= batchSize) {
+      posAnnotator.annotate(toTag.size() == sentences.size() ? document : toAnnotation(toTag));
+      return;
+    }
+    final List<ForkJoinTask<?>> tasks = Lists.newArrayList();
+    for (List<CoreMap> batch : Lists.partition(toTag, batchSize)) {
+      tasks.add(ForkJoinTask.adapt(() -> posAnnotator.annotate(toAnnotation(batch))));
+    }
+    ForkJoinTask.invokeAll(tasks);
+  }
+
+  /**
+   * Selects the sentences that can define identifiers. If {@link BaseConfig#getPosTaggingWindow()}
+   * is not negative, these are the sentences with a formula placeholder or a known identifier and
+   * the window of sentences before and after them, otherwise all sentences. The tokens of the
+   * other sentences are not tagged.
+   *
+   * @return the indexes of the selected sentences
+   */
+  private BitSet selectSentences(List<CoreMap> sentences, Set<String> allIdentifiers) {
+    final int window = config.getPosTaggingWindow();
+    final int size = sentences.size();
+    final BitSet selected = new BitSet(size);
+    if (window < 0) {
+      selected.set(0, size);
+      return selected;
+    }
+    for (int i = 0; i < size; i++) {
+      if (containsMath(sentences.get(i), allIdentifiers)) {
+        selected.set(Math.max(0, i - window), (int) Math.min(size, (long) i + window + 1));
+      }
+    }
+    return selected;
+  }
+
+  private static boolean containsMath(CoreMap sentence, Set<String> allIdentifiers) {
+    for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
+      final String text = token.get(TextAnnotation.class);
+      if (text.startsWith("FORMULA_") || allIdentifiers.contains(text)
+        || allIdentifiers.contains("\\mathit{" + text + "}")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Annotation toAnnotation(List<CoreMap> sentences) {
+    final List<CoreLabel> tokens = Lists.newArrayList();
+    for (CoreMap sentence : sentences) {
+      tokens.addAll(sentence.get(TokensAnnotation.class));
+    }
+    final Annotation annotation = new Annotation("");
+    annotation.set(SentencesAnnotation.class, sentences);
+    annotation.set(TokensAnnotation.class, tokens);
+    return annotation;
+  }
+
+  public List<Sentence> postprocess(List<List<Word>> input, Map<String, MathTag> formulaIndex,
                                            Set<String> allIdentifiers) {
     List<Sentence> result = Lists.newArrayListWithCapacity(input.size());
 
@@ -140,7 +361,7 @@ public class PosTagger {
     return result;
   }
 
-  public static Sentence toSentence(List<Word> input, Map<String, MathTag> formulaIndex,
+  public Sentence toSentence(List<Word> input, Map<String, MathTag> formulaIndex,
                                     Set<String> allIdentifiers) {
     List<Word> words = Lists.newArrayListWithCapacity(input.size());
     Set<String> sentenceIdentifiers = Sets.newHashSet();
@@ -196,7 +417,7 @@ public class PosTagger {
     return new Sentence(words, sentenceIdentifiers, formulas);
   }
 
-  public static List<List<Word>> concatenateTags(List<List<Word>> sentences, Set<String> allIdentifiers) {
+  public List<List<Word>> concatenateTags(List<List<Word>> sentences, Set<String> allIdentifiers) {
     List<List<Word>> results = Lists.newArrayListWithCapacity(sentences.size());
 
     for (List<Word> sentence : sentences) {
@@ -207,24 +428,85 @@ public class PosTagger {
     return results;
   }
 
-  private static List<Word> postprocessSentence(List<Word> sentence, Set<String> allIdentifiers) {
-    // links
-    List<Word> result;
-    if (config.getUseTeXIdentifiers()) {
-      result = sentence;
-    } else {
-      result = concatenateLinks(sentence, allIdentifiers);
-    }
+  private List<Word> postprocessSentence(List<Word> sentence, Set<String> allIdentifiers) {
+    return concatenate(sentence, allIdentifiers, !config.getUseTeXIdentifiers());
+  }
 
-    // noun phrases
-    result = concatenateSuccessiveNounsToNounSequence(result);
+  /**
+   * Concatenates links, successive nouns and adjectives followed by nouns in one pass. The result
+   * is the same as applying {@link #concatenateLinks(List, Set)} (if {@code links} is true),
+   * {@link #concatenateSuccessiveNounsToNounSequence(List)} and
+   * {@link #contatenateSuccessive2Tags(List, String, String, String)} for JJ NN, JJ NNS and
+   * JJ NN+ one after another.
+   *
+   * @param sentence       the words of a sentence
+   * @param allIdentifiers the identifiers of the document
+   * @param links          true to concatenate the words between quotes to links
+   * @return the concatenated words
+   */
+  public static List<Word> concatenate(List<Word> sentence, Set<String> allIdentifiers, boolean links) {
+    final int size = sentence.size();
+    final List<Word> result = Lists.newArrayListWithCapacity(size);
+    int i = 0;
+    while (i < size) {
+      final Word word = sentence.get(i);
+      final String pos = word.getPosTag();
+      if (links && PosTag.QUOTE.equals(pos)) {
+        // the shortest non empty sequence of words up to an unquote
+        int end = i + 2;
+        while (end < size && !PosTag.UNQUOTE.equals(sentence.get(end).getPosTag())) {
+          end++;
+        }
+        if (end < size) {
+          final List<Word> link = sentence.subList(i + 1, end);
+          if (link.size() == 1 && allIdentifiers.contains("\\mathit{" + link.get(0).getWord() + "}")) {
+            result.add(new Word(joinWords(link), PosTag.IDENTIFIER));
+          } else {
+            result.add(new Word(joinWords(link), PosTag.LINK));
+          }
+          i = end + 1;
+          continue;
+        }
+      }
+      if (isNoun(pos)) {
+        int end = i + 1;
+        while (end < size && isNoun(sentence.get(end).getPosTag())) {
+          end++;
+        }
+        final Word noun = end - i == 1
+          ? word
+          : new Word(joinWords(sentence.subList(i, end)), PosTag.NOUN_SEQUENCE);
+        addAfterAdjective(result, noun);
+        i = end;
+        continue;
+      }
+      if (PosTag.NOUN_SEQUENCE.equals(pos)) {
+        addAfterAdjective(result, word);
+      } else {
+        result.add(word);
+      }
+      i++;
+    }
+    return result;
+  }
 
-    result = contatenateSuccessive2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN, PosTag.NOUN_PHRASE);
-    result = contatenateSuccessive2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN_PLURAL, PosTag.NOUN_PHRASE);
-    result = contatenateSuccessive2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN_SEQUENCE,
-      PosTag.NOUN_SEQUENCE_PHRASE);
+  private static boolean isNoun(String pos) {
+    return PosTag.NOUN.equals(pos) || PosTag.NOUN_PLURAL.equals(pos);
+  }
 
-    return result;
+  /**
+   * Adds a noun, plural noun or noun sequence and merges it with a preceding adjective.
+   */
+  private static void addAfterAdjective(List<Word> result, Word noun) {
+    final int last = result.size() - 1;
+    if (last >= 0 && PosTag.ADJECTIVE.equals(result.get(last).getPosTag())) {
+      final String tag = PosTag.NOUN_SEQUENCE.equals(noun.getPosTag())
+        ? PosTag.NOUN_SEQUENCE_PHRASE
+        : PosTag.NOUN_PHRASE;
+      result.set(last, new Word(joinWords(Arrays.asList(result.get(last), noun)), tag));
+    } else {
+      result.add(noun);
+    }
   }
 
   public static List<Word> concatenateLinks(List<Word> in, Set<String> allIdentifiers) {
@@ -275,11 +557,11 @@ public class PosTagger {
   }
 
   public static XMatcher<Word> pos(String tag) {
-    return BeanMatchers.eq(Word.class, "posTag", tag);
+    return WordMatchers.pos(tag);
   }
 
   public static XMatcher<Word> posIn(String... tags) {
-    return BeanMatchers.in(Word.class, "posTag", ImmutableSet.copyOf(tags));
+    return WordMatchers.posIn(tags);
   }
 
   public static XMatcher<Word> anyWord() {
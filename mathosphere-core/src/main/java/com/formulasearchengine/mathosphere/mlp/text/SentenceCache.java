@@ -0,0 +1,130 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Cache of POS tagged sentences, so that the sentences that many articles share word for word,
+ * e.g. the remains of templates, are tagged once.
+ * <p>
+ * The sentences are cached by the md5 of their tokens, in which the formula and link placeholders
+ * are masked. Hence sentences that only differ in their formulas or links share an entry. When a
+ * sentence is looked up, the placeholders of the cached words are bound to the placeholders of
+ * its tokens again. The size of the cache is bounded by the number of sentences, the least
+ * recently used sentences are evicted first.
+ * <p>
+ * The tagger would see the hashes of the placeholders otherwise, and they can change the tags of
+ * the neighbouring words. {@link PosTagger} therefore tags the masked tokens if the cache is
+ * enabled, so that a hit has the same tags as a miss. Compared with tagging without the cache,
+ * the words next to a placeholder may get other tags.
+ */
+public class SentenceCache {
+
+  private static final String FORMULA_PREFIX = "FORMULA_";
+
+  private static final String LINK_PREFIX = "LINK_";
+
+  /**
+   * length of a formula placeholder, characters after it are a suffix of the formula
+   */
+  private static final int FORMULA_PLACEHOLDER_LENGTH = 40;
+
+  private static final HashFunction HASHER = Hashing.md5();
+
+  private final Cache<HashCode, ImmutableList<Word>> cache;
+
+  /**
+   * @param maximumSentences maximal number of cached sentences
+   */
+  public SentenceCache(long maximumSentences) {
+    if (maximumSentences <= 0) {
+      throw new IllegalArgumentException("The size of the cache must be positive.");
+    }
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSentences)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param tokens the tokens of a sentence
+   * @return the tagged words of the sentence with the placeholders of the given tokens, null if
+   * the sentence is not cached
+   */
+  public List<Word> get(List<String> tokens) {
+    final ImmutableList<Word> cached = cache.getIfPresent(key(tokens));
+    if (cached == null || cached.size() != tokens.size()) {
+      return null;
+    }
+    final ImmutableList.Builder<Word> words = ImmutableList.builder();
+    for (int i = 0; i < cached.size(); i++) {
+      final String token = tokens.get(i);
+      final Word word = cached.get(i);
+      words.add(isPlaceholder(token) ? new Word(token, word.getPosTag()) : word);
+    }
+    return words.build();
+  }
+
+  /**
+   * @param tokens the tokens of a sentence
+   * @param words  the tagged words of the sentence, one per token
+   */
+  public void put(List<String> tokens, List<Word> words) {
+    if (tokens.size() != words.size()) {
+      throw new IllegalArgumentException("Every token of a sentence needs exactly one word.");
+    }
+    cache.put(key(tokens), ImmutableList.copyOf(words));
+  }
+
+  private static HashCode key(List<String> tokens) {
+    final Hasher hasher = HASHER.newHasher();
+    for (String token : tokens) {
+      hasher.putString(mask(token), StandardCharsets.UTF_8).putChar('\0');
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * @return the token without the hash of a formula or a link placeholder
+   */
+  static String mask(String token) {
+    if (token.startsWith(FORMULA_PREFIX)) {
+      return token.length() > FORMULA_PLACEHOLDER_LENGTH
+          ? FORMULA_PREFIX + token.substring(FORMULA_PLACEHOLDER_LENGTH)
+          : FORMULA_PREFIX;
+    }
+    if (token.startsWith(LINK_PREFIX)) {
+      return LINK_PREFIX;
+    }
+    return token;
+  }
+
+  private static boolean isPlaceholder(String token) {
+    return token.startsWith(FORMULA_PREFIX) || token.startsWith(LINK_PREFIX);
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  /**
+   * @return the hits, misses and evictions of the cache
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -11,10 +11,11 @@ import java.util.*;
 public class SimplePatternMatcher {
   public static final String IDENTIFIER = "identifier";
   public static final String DEFINITION = "definition";
-  private List<Pattern<Word>> patterns;
+  private static final int IDENTIFIER_PATTERN = 0;
+  private PatternAutomaton automaton;
 
-  private SimplePatternMatcher(List<Pattern<Word>> patterns) {
-    this.patterns = patterns;
+  private SimplePatternMatcher(PatternAutomaton automaton) {
+    this.automaton = automaton;
   }
 
   /**
@@ -26,25 +27,32 @@ public class SimplePatternMatcher {
    */
   public Collection<Relation> match(Sentence sentence, ParsedWikiDocument doc) {
     List<Relation> result = new ArrayList<>();
-    List<Match<Word>> identifierMatches = patterns.get(0).find(sentence.getWords());
-    if (identifierMatches.size() > 0) {
-      List<Match<Word>> definiensMatches = patterns.get(1).find(sentence.getWords());
-      if (definiensMatches.size() > 0) {
-        for (Match<Word> identifier : identifierMatches) {
-          for (Match<Word> definiens : definiensMatches) {
-            if (definiens.getVariable(DEFINITION).getWord().length() >= 3) {
-              Relation relation = new Relation();
-              relation.setIdentifier(identifier.getVariable(IDENTIFIER).getWord());
-              relation.setDefinition(definiens.getVariable(DEFINITION), doc);
-              //replace the definiens in the sentence with the word as it is stored in the relation.
-              Word definiensWord = sentence.getWords().remove(definiens.matchedFrom());
-              Word cleanDefiniensWord = new Word(relation.getDefinition(), definiensWord.getPosTag());
-              sentence.getWords().add(definiens.matchedFrom(), cleanDefiniensWord);
-              relation.setSentence(sentence);
-              relation.setIdentifierPosition(identifier.matchedFrom());
-              relation.setWordPosition(definiens.matchedFrom());
-              result.add(relation);
-            }
+    //the words as they were matched, the definientia are replaced in the sentence below
+    List<Word> words = new ArrayList<>(sentence.getWords());
+    PatternAutomaton.Matches matches = automaton.find(words);
+    //the matches are ordered by pattern, the identifiers come first
+    int identifierMatches = 0;
+    while (identifierMatches < matches.size() && matches.getPattern(identifierMatches) == IDENTIFIER_PATTERN) {
+      identifierMatches++;
+    }
+    if (identifierMatches > 0 && identifierMatches < matches.size()) {
+      for (int i = 0; i < identifierMatches; i++) {
+        int identifierPosition = matches.getStart(i);
+        for (int j = identifierMatches; j < matches.size(); j++) {
+          int definiensPosition = matches.getStart(j);
+          Word definiens = words.get(definiensPosition);
+          if (definiens.getWord().length() >= 3) {
+            Relation relation = new Relation();
+            relation.setIdentifier(words.get(identifierPosition).getWord());
+            relation.setDefinition(definiens, doc);
+            //replace the definiens in the sentence with the word as it is stored in the relation.
+            Word definiensWord = sentence.getWords().remove(definiensPosition);
+            Word cleanDefiniensWord = new Word(relation.getDefinition(), definiensWord.getPosTag());
+            sentence.getWords().add(definiensPosition, cleanDefiniensWord);
+            relation.setSentence(sentence);
+            relation.setIdentifierPosition(identifierPosition);
+            relation.setWordPosition(definiensPosition);
+            result.add(relation);
           }
         }
       }
@@ -54,16 +62,16 @@ public class SimplePatternMatcher {
 
   public static SimplePatternMatcher generatePatterns(Set<String> identifiers) {
 
-    Matcher<Word> identifier = BeanMatchers.in(Word.class, "word", identifiers).captureAs(IDENTIFIER);
-    Matcher<Word> definition = posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)").captureAs(DEFINITION);
+    Matcher<Word> identifier = WordMatchers.wordIn(identifiers);
+    Matcher<Word> definition = posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)");
 
-    List<Pattern<Word>> patterns = Arrays.asList(
-      Pattern.create(identifier),
-      Pattern.create(definition)
-    );
-    return new SimplePatternMatcher(patterns);
+    PatternAutomaton automaton = PatternAutomaton.builder()
+      .add(identifier)
+      .add(definition)
+      .build();
+    return new SimplePatternMatcher(automaton);
   }
   protected static XMatcher<Word> posRegExp(String regexp) {
-    return BeanMatchers.regex(Word.class, "posTag", regexp);
+    return WordMatchers.posRegExp(regexp);
   }
 }
@@ -0,0 +1,488 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts the identifiers of a TeX formula without a round trip to texvcinfo.
+ * <p>
+ * The formula is tokenized and parsed into groups and scripted atoms. The identifiers are reported
+ * in the same order and format as texvcinfo does for the texvc subset of TeX:
+ * <ul>
+ * <li>single letters, greek letters and letter-like symbols like {@code \ell} are identifiers,
+ * digits, operators, delimiters and named functions like {@code \sin} are not</li>
+ * <li>a base with one identifier and a subscript of letters and digits is combined to one
+ * identifier, {@code r_{ij}} becomes {@code r_{i,j}}; the subscript ends at the first other
+ * token, so {@code \theta_{k-1}} becomes {@code \theta_{k}}</li>
+ * <li>if there is a sub- and a superscript, the identifiers of base, subscript and superscript
+ * are reported one after another</li>
+ * <li>font and accent commands with a simple argument form one identifier like
+ * {@code \mathbf{m}}, {@code \hat{x}} or {@code \mathrm{REC}}</li>
+ * <li>primes are appended to the identifier of their base, e.g. {@code h'}</li>
+ * <li>text boxes like {@code \text{Ker}} report the command and the text</li>
+ * <li>the first {@code d} after an integral is the differential and no identifier, so
+ * {@code \int u\,dv} only reports {@code u} and {@code v}</li>
+ * </ul>
+ * {@code \infty} and {@code \operatorname} are reported like texvcinfo does, they are removed by
+ * {@link MathMLUtils#filterTexIdentifiers}.
+ */
+public final class TexIdentifierExtractor {
+
+  private static final Set<String> IDENTIFIER_COMMANDS = set(
+      "alpha", "beta", "gamma", "delta", "epsilon", "varepsilon", "zeta", "eta", "theta", "vartheta",
+      "iota", "kappa", "varkappa", "lambda", "mu", "nu", "xi", "omicron", "pi", "varpi", "rho", "varrho",
+      "sigma", "varsigma", "tau", "upsilon", "phi", "varphi", "chi", "psi", "omega", "digamma",
+      "Alpha", "Beta", "Gamma", "Delta", "Epsilon", "Zeta", "Eta", "Theta", "Iota", "Kappa", "Lambda",
+      "Mu", "Nu", "Xi", "Omicron", "Pi", "Rho", "Sigma", "Tau", "Upsilon", "Phi", "Chi", "Psi", "Omega",
+      "varGamma", "varDelta", "varTheta", "varLambda", "varXi", "varPi", "varSigma", "varUpsilon",
+      "varPhi", "varPsi", "varOmega",
+      "ell", "hbar", "imath", "jmath", "aleph", "beth", "gimel", "daleth", "wp", "infty");
+
+  private static final Set<String> FONT_COMMANDS = set(
+      "mathbf", "mathrm", "mathit", "mathcal", "mathbb", "mathfrak", "mathsf", "mathtt", "mathscr",
+      "boldsymbol", "bold", "bm", "pmb", "Bbb", "mathbold", "rm", "it", "bf", "cal",
+      "vec", "hat", "widehat", "bar", "overline", "tilde", "widetilde", "dot", "ddot", "check", "breve",
+      "acute", "grave", "mathring", "overrightarrow", "overleftarrow", "underline");
+
+  private static final Set<String> TEXT_COMMANDS = set(
+      "text", "mbox", "hbox", "vbox", "textrm", "textit", "textbf", "textsf", "texttt", "textnormal");
+
+  /**
+   * commands with an argument that does not contain math
+   */
+  private static final Set<String> RAW_ARGUMENT_COMMANDS = set(
+      "color", "pagecolor", "hspace", "vspace", "label", "begin", "end");
+
+  /**
+   * environments with a column specification after the name
+   */
+  private static final Set<String> COLUMN_ENVIRONMENTS = set("array", "tabular", "subarray");
+
+  private static final Set<String> SPACE_COMMANDS = set(",", ";", ":", "!", " ", "quad", "qquad");
+
+  private static final Set<String> INTEGRAL_COMMANDS = set("int", "iint", "iiint", "iiiint", "oint", "smallint");
+
+  private TexIdentifierExtractor() {
+  }
+
+  private static Set<String> set(String... values) {
+    return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+  }
+
+  /**
+   * @param tex TeX formula
+   * @return the identifiers in the order of their occurrence
+   */
+  public static List<String> getIdentifiers(String tex) {
+    final List<String> identifiers = new ArrayList<>();
+    new Parser(tex).parseSequence(false).identifiers(identifiers);
+    return identifiers;
+  }
+
+  /**
+   * Node of the parse tree.
+   */
+  private abstract static class Node {
+
+    abstract void identifiers(List<String> out);
+
+    /**
+     * @return the parts of a subscript that are joined to an identifier, or null if the node
+     * ends the subscript
+     */
+    abstract List<String> subscripts();
+  }
+
+  private static final class Identifier extends Node {
+    private final String name;
+
+    Identifier(String name) {
+      this.name = name;
+    }
+
+    @Override
+    void identifiers(List<String> out) {
+      out.add(name);
+    }
+
+    @Override
+    List<String> subscripts() {
+      return Collections.singletonList(name);
+    }
+  }
+
+  private static final class Digit extends Node {
+    private final String digit;
+
+    Digit(String digit) {
+      this.digit = digit;
+    }
+
+    @Override
+    void identifiers(List<String> out) {
+    }
+
+    @Override
+    List<String> subscripts() {
+      return Collections.singletonList(digit);
+    }
+  }
+
+  /**
+   * Operators, delimiters, named functions and all other tokens without identifiers.
+   */
+  private static final class Symbol extends Node {
+    static final Symbol INSTANCE = new Symbol();
+
+    @Override
+    void identifiers(List<String> out) {
+    }
+
+    @Override
+    List<String> subscripts() {
+      return null;
+    }
+  }
+
+  /**
+   * Spaces and separators that are ignored in subscripts.
+   */
+  private static final class Space extends Node {
+    static final Space INSTANCE = new Space();
+
+    @Override
+    void identifiers(List<String> out) {
+    }
+
+    @Override
+    List<String> subscripts() {
+      return Collections.emptyList();
+    }
+  }
+
+  private static final class TextBox extends Node {
+    private final List<String> parts;
+
+    TextBox(String command, String text) {
+      this.parts = Arrays.asList(command, text);
+    }
+
+    @Override
+    void identifiers(List<String> out) {
+      out.addAll(parts);
+    }
+
+    @Override
+    List<String> subscripts() {
+      return parts;
+    }
+  }
+
+  private static final class Group extends Node {
+    private final List<Node> children;
+
+    Group(List<Node> children) {
+      this.children = children;
+    }
+
+    @Override
+    void identifiers(List<String> out) {
+      for (Node child : children) {
+        child.identifiers(out);
+      }
+    }
+
+    @Override
+    List<String> subscripts() {
+      final List<String> subscripts = new ArrayList<>();
+      for (Node child : children) {
+        final List<String> childSubscripts = child.subscripts();
+        if (childSubscripts == null) {
+          break;
+        }
+        subscripts.addAll(childSubscripts);
+      }
+      return subscripts;
+    }
+
+    /**
+     * @return true if the group only consists of identifiers and digits and contains an identifier
+     */
+    boolean isSimple() {
+      boolean identifier = false;
+      for (Node child : children) {
+        if (child instanceof Identifier) {
+          identifier = true;
+        } else if (!(child instanceof Digit)) {
+          return false;
+        }
+      }
+      return identifier;
+    }
+  }
+
+  /**
+   * Base with sub- and superscript and primes.
+   */
+  private static final class Scripted extends Node {
+    private final Node base;
+    private final Node sub;
+    private final Node sup;
+    private final String primes;
+
+    Scripted(Node base, Node sub, Node sup, String primes) {
+      this.base = base;
+      this.sub = sub;
+      this.sup = sup;
+      this.primes = primes;
+    }
+
+    @Override
+    void identifiers(List<String> out) {
+      final int start = out.size();
+      final List<String> baseIdentifiers = new ArrayList<>();
+      base.identifiers(baseIdentifiers);
+      final List<String> subscripts = sub != null && sup == null ? sub.subscripts() : null;
+      if (baseIdentifiers.size() == 1 && subscripts != null && !subscripts.isEmpty()) {
+        out.add(baseIdentifiers.get(0) + "_{" + String.join(",", subscripts) + "}");
+      } else {
+        out.addAll(baseIdentifiers);
+        if (sub != null) {
+          sub.identifiers(out);
+        }
+        if (sup != null) {
+          sup.identifiers(out);
+        }
+      }
+      if (!primes.isEmpty() && !baseIdentifiers.isEmpty()) {
+        out.set(start, out.get(start) + primes);
+      }
+    }
+
+    @Override
+    List<String> subscripts() {
+      return sub == null && sup == null ? base.subscripts() : null;
+    }
+  }
+
+  private static final class Parser {
+    private final String tex;
+    private int pos = 0;
+
+    /**
+     * number of integrals whose differential has not been read yet
+     */
+    private int openIntegrals = 0;
+
+    Parser(String tex) {
+      this.tex = tex;
+    }
+
+    private boolean atEnd() {
+      return pos >= tex.length();
+    }
+
+    private void skipWhitespace() {
+      while (!atEnd() && Character.isWhitespace(tex.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    /**
+     * Parses atoms up to the end of the formula or, in a group, up to the closing brace.
+     */
+    Group parseSequence(boolean inGroup) {
+      final List<Node> children = new ArrayList<>();
+      while (true) {
+        skipWhitespace();
+        if (atEnd()) {
+          break;
+        }
+        if (tex.charAt(pos) == '}') {
+          pos++;
+          if (inGroup) {
+            break;
+          }
+          // unbalanced closing brace
+          continue;
+        }
+        children.add(parseAtom());
+      }
+      return new Group(children);
+    }
+
+    private Node parseAtom() {
+      final char c = tex.charAt(pos);
+      final Node base = c == '_' || c == '^' || c == '\'' ? Symbol.INSTANCE : parsePrimary();
+      Node sub = null;
+      Node sup = null;
+      final StringBuilder primes = new StringBuilder();
+      while (true) {
+        skipWhitespace();
+        if (atEnd()) {
+          break;
+        }
+        final char next = tex.charAt(pos);
+        if (next == '_') {
+          pos++;
+          sub = parseScriptArgument();
+        } else if (next == '^') {
+          pos++;
+          sup = parseScriptArgument();
+        } else if (next == '\'') {
+          pos++;
+          primes.append('\'');
+        } else {
+          break;
+        }
+      }
+      if (sub == null && sup == null && primes.length() == 0) {
+        return base;
+      }
+      return new Scripted(base, sub, sup, primes.toString());
+    }
+
+    private Node parseScriptArgument() {
+      skipWhitespace();
+      return parsePrimary();
+    }
+
+    private Node parsePrimary() {
+      if (atEnd()) {
+        return Symbol.INSTANCE;
+      }
+      final char c = tex.charAt(pos);
+      if (c == '}') {
+        // missing argument, the brace is consumed by the enclosing sequence
+        return Symbol.INSTANCE;
+      }
+      pos++;
+      if (c == '{') {
+        return parseSequence(true);
+      }
+      if (c == '\\') {
+        return parseCommand();
+      }
+      if (c == 'd' && openIntegrals > 0) {
+        openIntegrals--;
+        return Symbol.INSTANCE;
+      }
+      if (isLetter(c)) {
+        return new Identifier(String.valueOf(c));
+      }
+      if (c >= '0' && c <= '9') {
+        return new Digit(String.valueOf(c));
+      }
+      if (c == ',' || c == '~') {
+        return Space.INSTANCE;
+      }
+      return Symbol.INSTANCE;
+    }
+
+    private Node parseCommand() {
+      if (atEnd()) {
+        return Symbol.INSTANCE;
+      }
+      final String name;
+      if (isLetter(tex.charAt(pos))) {
+        final int start = pos;
+        while (!atEnd() && isLetter(tex.charAt(pos))) {
+          pos++;
+        }
+        name = tex.substring(start, pos);
+      } else {
+        name = String.valueOf(tex.charAt(pos++));
+      }
+      if (IDENTIFIER_COMMANDS.contains(name)) {
+        return new Identifier("\\" + name);
+      }
+      if (SPACE_COMMANDS.contains(name)) {
+        return Space.INSTANCE;
+      }
+      if (INTEGRAL_COMMANDS.contains(name)) {
+        openIntegrals++;
+        return Symbol.INSTANCE;
+      }
+      if (name.equals("operatorname")) {
+        String command = "\\operatorname";
+        if (!atEnd() && tex.charAt(pos) == '*') {
+          pos++;
+          command += "*";
+        }
+        return new Identifier(command + "{" + readArgument().trim() + "}");
+      }
+      if (FONT_COMMANDS.contains(name)) {
+        final String argument = readArgument();
+        final Group content = new Parser(argument).parseSequence(false);
+        if (content.isSimple()) {
+          return new Identifier("\\" + name + "{" + argument.trim() + "}");
+        }
+        return content;
+      }
+      if (TEXT_COMMANDS.contains(name)) {
+        return new TextBox("\\" + name, readArgument());
+      }
+      if (RAW_ARGUMENT_COMMANDS.contains(name)) {
+        final String argument = readArgument();
+        if (name.equals("begin") && COLUMN_ENVIRONMENTS.contains(argument.trim())) {
+          readArgument();
+        }
+      }
+      return Symbol.INSTANCE;
+    }
+
+    /**
+     * Reads the raw text of the next argument, i.e. of a braced group or a single token.
+     */
+    private String readArgument() {
+      skipWhitespace();
+      if (atEnd()) {
+        return "";
+      }
+      final char c = tex.charAt(pos);
+      if (c == '{') {
+        int depth = 0;
+        final int start = pos + 1;
+        while (!atEnd()) {
+          final char current = tex.charAt(pos++);
+          if (current == '\\') {
+            // escaped characters like \} do not change the depth
+            pos++;
+          } else if (current == '{') {
+            depth++;
+          } else if (current == '}') {
+            depth--;
+            if (depth == 0) {
+              return tex.substring(start, pos - 1);
+            }
+          }
+        }
+        return tex.substring(start, tex.length());
+      }
+      if (c == '\\') {
+        final int start = pos++;
+        if (!atEnd() && isLetter(tex.charAt(pos))) {
+          while (!atEnd() && isLetter(tex.charAt(pos))) {
+            pos++;
+          }
+        } else if (!atEnd()) {
+          pos++;
+        }
+        return tex.substring(start, pos);
+      }
+      if (c == '}') {
+        return "";
+      }
+      pos++;
+      return String.valueOf(c);
+    }
+
+    private static boolean isLetter(char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+  }
+}
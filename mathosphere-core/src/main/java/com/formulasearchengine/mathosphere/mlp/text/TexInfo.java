@@ -38,10 +38,9 @@ public class TexInfo {
 
   private static CloseableHttpClient cachingClient = null;
   private static HttpCacheContext context;
-  private static CacheResponseStatus cacheResponseStatus;
+  private static volatile CacheResponseStatus cacheResponseStatus;
   private static boolean USE_POST = false;
-  private static String makeRequest(String tex, String url)  {
-    HttpRequestBase post;
+  private static synchronized void initClient() {
     if (cachingClient == null || context == null) {
       CacheConfig cacheConfig = CacheConfig.custom()
               .setMaxCacheEntries(1000)
@@ -57,6 +56,24 @@ public class TexInfo {
               .build();
       context = HttpCacheContext.create();
     }
+  }
+
+  /**
+   * @return the url of the GET request for the identifiers of a TeX string
+   */
+  static String requestUrl(String tex, String url) {
+    String q = null;
+    try {
+      q = URLEncoder.encode(tex,"UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      q = tex;
+    }
+    return url.replace("texvcinfo", "get/texvcinfo") + "/tex/" + q;
+  }
+
+  private static String makeRequest(String tex, String url)  {
+    HttpRequestBase post;
+    initClient();
     if (USE_POST){
        post = new HttpPost(url);
       List<NameValuePair> nameValuePairs = new ArrayList<>(1);
@@ -67,14 +84,7 @@ public class TexInfo {
         e.printStackTrace();
       }
     } else {
-      String q = null;
-      try {
-        q = URLEncoder.encode(tex,"UTF-8").replace("+", "%20");
-      } catch (UnsupportedEncodingException e) {
-        q = tex;
-      }
-      url = url.replace("texvcinfo", "get/texvcinfo");
-      post = new HttpGet(url +"/tex/" + q);
+      post = new HttpGet(requestUrl(tex, url));
     }
 
     try {
@@ -105,22 +115,46 @@ public class TexInfo {
 
   public static Multiset<String> getIdentifiers(String tex, String url) throws XPathExpressionException, ParserConfigurationException, SAXException, IOException, TransformerException {
     final Multiset<String> strings = HashMultiset.create();
-    //long t0 = System.nanoTime();
-    String json = makeRequest(tex, url);
     if (tex.length() == 0) {
       return strings;
     }
+    final List<String> identifiers = fetchIdentifiers(tex, url);
+    if (identifiers != null) {
+      strings.addAll(identifiers);
+    }
+    return strings;
+  }
+
+  /**
+   * Requests the identifiers of a TeX string from texvcinfo.
+   *
+   * @return the identifiers or null if the request failed or the response could not be parsed
+   */
+  static List<String> fetchIdentifiers(String tex, String url) {
+    //long t0 = System.nanoTime();
+    String json = makeRequest(tex, url);
     //System.out.println((System.nanoTime()-t0)/1000000+"ms for "+tex);
+    return parseIdentifiers(tex, json);
+  }
+
+  /**
+   * @return the identifiers of a texvcinfo response or null if the response could not be parsed
+   */
+  static List<String> parseIdentifiers(String tex, String json) {
     try {
       JSONObject jsonObject = (JSONObject) JSONSerializer.toJSON(json);
       JSONArray identifiers = jsonObject.getJSONArray("identifiers");
-      strings.addAll(identifiers);
+      final List<String> strings = new ArrayList<>(identifiers.size());
+      for (Object identifier : identifiers) {
+        strings.add(String.valueOf(identifier));
+      }
+      return strings;
     } catch (Exception e) {
       System.out.println(tex + " Parsing problem");
       System.out.println("Retrieved: " + json);
       //e.printStackTrace();
+      return null;
     }
-    return strings;
   }
 
   public static CacheResponseStatus getCacheResponseStatus() {
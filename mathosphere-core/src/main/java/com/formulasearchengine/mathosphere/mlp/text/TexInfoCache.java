@@ -0,0 +1,430 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of the identifiers that texvcinfo reports for a TeX string.
+ * <p>
+ * The cache is an append-only file of {@code [md5][length][identifiers]} records. The key is the
+ * md5 of the TeX string, computed like {@link com.formulasearchengine.mathosphere.mlp.pojos.MathTag#getContentHash()},
+ * the identifiers are stored as UTF-8 text separated by newlines. On open, the file is memory
+ * mapped read-only and indexed by an open addressing hash table, so any number of threads and
+ * processes can read it concurrently. New entries are appended under a file lock and are served
+ * from memory until the file is opened again. If a key occurs more than once, the last record
+ * wins. {@link #compact(Path, Path)} drops the replaced records.
+ * <p>
+ * The cache does not know which texvcinfo service produced an entry, so one file should only be
+ * used with one service.
+ */
+public class TexInfoCache implements Closeable {
+
+  private static final Logger LOGGER = LogManager.getLogger(TexInfoCache.class.getName());
+
+  private static final int MAGIC = 0x54655843;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 8;
+
+  /**
+   * md5 of the TeX string followed by the length of the identifier list in bytes
+   */
+  private static final int RECORD_HEADER_BYTES = 20;
+
+  private static final char SEPARATOR = '\n';
+
+  private static final HashFunction HASHER = Hashing.md5();
+
+  private static final Map<Path, TexInfoCache> SHARED = new HashMap<>();
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer mapped;
+
+  private final Md5Index index;
+
+  /**
+   * entries that were appended since the file was mapped
+   */
+  private final Map<HashCode, List<String>> appended = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Opens a cache file, the file is created if it does not exist. A truncated record at the end
+   * of the file, e.g. after a crash while appending, is removed.
+   *
+   * @param path location of the cache file
+   */
+  public TexInfoCache(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      synchronized (TexInfoCache.class) {
+        try (FileLock ignored = channel.lock()) {
+          if (channel.size() == 0) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header, 0);
+          }
+          final long size = channel.size();
+          if (size > Integer.MAX_VALUE) {
+            throw new IOException("texvcinfo cache " + path + " is larger than 2 GB, compact it first.");
+          }
+          mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+          checkHeader(mapped, path);
+          index = new Md5Index(1024);
+          final int end = indexRecords(mapped, index);
+          if (end < size) {
+            LOGGER.warn("removing truncated record at the end of texvcinfo cache {}", path);
+            channel.truncate(end);
+          }
+        }
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    LOGGER.info("opened texvcinfo cache {} with {} entries", path, index.size());
+  }
+
+  /**
+   * Returns the cache for a file that is shared by all users in the JVM, e.g. by all task slots
+   * of a task manager. Shared caches stay open until they are closed explicitly.
+   *
+   * @param file location of the cache file
+   */
+  public static TexInfoCache shared(String file) throws IOException {
+    final Path key = Paths.get(file).toAbsolutePath().normalize();
+    synchronized (SHARED) {
+      TexInfoCache cache = SHARED.get(key);
+      if (cache == null) {
+        cache = new TexInfoCache(key);
+        SHARED.put(key, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Looks up the identifiers of a TeX string and asks texvcinfo on a cache miss. Successful
+   * responses are added to the cache, failed requests are not cached.
+   *
+   * @param tex TeX string
+   * @param url url of the texvcinfo service
+   * @return a new multiset with the identifiers, empty if texvcinfo could not be reached
+   */
+  public Multiset<String> getIdentifiers(String tex, String url) {
+    final Multiset<String> identifiers = HashMultiset.create();
+    if (tex.length() == 0) {
+      return identifiers;
+    }
+    List<String> cached = get(tex);
+    if (cached == null) {
+      cached = TexInfo.fetchIdentifiers(tex, url);
+      if (cached == null) {
+        return identifiers;
+      }
+      try {
+        put(tex, cached);
+      } catch (IOException e) {
+        LOGGER.warn("could not append to texvcinfo cache " + path, e);
+      }
+    }
+    identifiers.addAll(cached);
+    return identifiers;
+  }
+
+  /**
+   * @param tex TeX string
+   * @return the cached identifiers of the TeX string or null if it is not cached
+   */
+  public List<String> get(String tex) {
+    final HashCode hash = HASHER.hashString(tex, StandardCharsets.UTF_8);
+    List<String> identifiers = appended.get(hash);
+    if (identifiers == null) {
+      final byte[] key = hash.asBytes();
+      final int position = index.get(high(key), low(key));
+      if (position >= 0) {
+        identifiers = readIdentifiers(mapped, position);
+      }
+    }
+    if (identifiers == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return identifiers;
+  }
+
+  /**
+   * Appends the identifiers of a TeX string to the cache file.
+   *
+   * @param tex         TeX string
+   * @param identifiers identifiers of the TeX string
+   */
+  public void put(String tex, List<String> identifiers) throws IOException {
+    final HashCode hash = HASHER.hashString(tex, StandardCharsets.UTF_8);
+    final List<String> copy = Collections.unmodifiableList(new ArrayList<>(identifiers));
+    final byte[] payload = String.join(String.valueOf(SEPARATOR), copy).getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+    record.put(hash.asBytes()).putInt(payload.length).put(payload).flip();
+    synchronized (TexInfoCache.class) {
+      try (FileLock ignored = channel.lock()) {
+        // other processes may have appended since the last write, so the position is read under the lock
+        writeFully(channel, record, channel.size());
+      }
+    }
+    appended.put(hash, copy);
+  }
+
+  /**
+   * @return number of lookups that were answered from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups that were not answered from the cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (SHARED) {
+      SHARED.remove(path, this);
+    }
+    channel.close();
+  }
+
+  /**
+   * Writes a copy of a cache file that only contains the last record of every key.
+   *
+   * @param source the cache file to compact, it must not be written while it is compacted
+   * @param target location of the compacted cache file, an existing file is replaced
+   * @return the number of records in the compacted file
+   */
+  public static int compact(Path source, Path target) throws IOException {
+    if (source.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())) {
+      throw new IllegalArgumentException("The compacted cache must be written to another file.");
+    }
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      if (in.size() > Integer.MAX_VALUE) {
+        throw new IOException("texvcinfo cache " + source + " is larger than 2 GB.");
+      }
+      final MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+      checkHeader(records, source);
+      final Md5Index last = new Md5Index(1024);
+      final int end = indexRecords(records, last);
+      int kept = 0;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        final byte[] buffer = new byte[4096];
+        int position = HEADER_BYTES;
+        while (position < end) {
+          final int recordEnd = recordEnd(records, position, end);
+          if (last.get(records.getLong(position), records.getLong(position + 8)) == position) {
+            final ByteBuffer record = records.duplicate();
+            record.position(position);
+            int remaining = recordEnd - position;
+            while (remaining > 0) {
+              final int length = Math.min(remaining, buffer.length);
+              record.get(buffer, 0, length);
+              out.write(buffer, 0, length);
+              remaining -= length;
+            }
+            kept++;
+          }
+          position = recordEnd;
+        }
+      }
+      LOGGER.info("compacted texvcinfo cache {} to {} with {} entries", source, target, kept);
+      return kept;
+    }
+  }
+
+  private static void checkHeader(ByteBuffer records, Path path) throws IOException {
+    if (records.limit() < HEADER_BYTES || records.getInt(0) != MAGIC || records.getInt(4) != VERSION) {
+      throw new IOException(path + " is not a texvcinfo cache.");
+    }
+  }
+
+  /**
+   * Adds all complete records to the index, later records replace earlier ones.
+   *
+   * @return the end of the last complete record
+   */
+  private static int indexRecords(ByteBuffer records, Md5Index index) {
+    final int limit = records.limit();
+    int position = HEADER_BYTES;
+    while (position < limit) {
+      final int end = recordEnd(records, position, limit);
+      if (end < 0) {
+        break;
+      }
+      index.put(records.getLong(position), records.getLong(position + 8), position);
+      position = end;
+    }
+    return position;
+  }
+
+  /**
+   * @return the end of the record at position or -1 if the record is incomplete
+   */
+  private static int recordEnd(ByteBuffer records, int position, int limit) {
+    if (limit - position < RECORD_HEADER_BYTES) {
+      return -1;
+    }
+    final int length = records.getInt(position + 16);
+    if (length < 0 || length > limit - position - RECORD_HEADER_BYTES) {
+      return -1;
+    }
+    return position + RECORD_HEADER_BYTES + length;
+  }
+
+  private static List<String> readIdentifiers(ByteBuffer records, int position) {
+    final int length = records.getInt(position + 16);
+    if (length == 0) {
+      return Collections.emptyList();
+    }
+    final byte[] payload = new byte[length];
+    // the duplicate has its own position, so concurrent readers do not interfere
+    final ByteBuffer record = records.duplicate();
+    record.position(position + RECORD_HEADER_BYTES);
+    record.get(payload);
+    final String joined = new String(payload, StandardCharsets.UTF_8);
+    return Arrays.asList(joined.split(String.valueOf(SEPARATOR), -1));
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+    long offset = position;
+    while (data.hasRemaining()) {
+      offset += channel.write(data, offset);
+    }
+  }
+
+  private static long high(byte[] md5) {
+    return ByteBuffer.wrap(md5).getLong(0);
+  }
+
+  private static long low(byte[] md5) {
+    return ByteBuffer.wrap(md5).getLong(8);
+  }
+
+  /**
+   * Open addressing hash table from md5 hashes to record positions. Since md5 hashes are
+   * uniformly distributed, the lower bits of the hash are used as slot directly.
+   */
+  private static final class Md5Index {
+
+    private long[] high;
+
+    private long[] low;
+
+    /**
+     * record positions, 0 marks an empty slot since no record starts within the header
+     */
+    private int[] positions;
+
+    private int size;
+
+    Md5Index(int capacity) {
+      final int slots = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+      high = new long[slots];
+      low = new long[slots];
+      positions = new int[slots];
+    }
+
+    int size() {
+      return size;
+    }
+
+    void put(long hi, long lo, int position) {
+      if (2 * (size + 1) > positions.length) {
+        grow();
+      }
+      final int mask = positions.length - 1;
+      int slot = (int) lo & mask;
+      while (positions[slot] != 0) {
+        if (high[slot] == hi && low[slot] == lo) {
+          positions[slot] = position;
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      high[slot] = hi;
+      low[slot] = lo;
+      positions[slot] = position;
+      size++;
+    }
+
+    int get(long hi, long lo) {
+      final int mask = positions.length - 1;
+      int slot = (int) lo & mask;
+      while (positions[slot] != 0) {
+        if (high[slot] == hi && low[slot] == lo) {
+          return positions[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    private void grow() {
+      final long[] oldHigh = high;
+      final long[] oldLow = low;
+      final int[] oldPositions = positions;
+      high = new long[oldPositions.length * 2];
+      low = new long[oldPositions.length * 2];
+      positions = new int[oldPositions.length * 2];
+      size = 0;
+      for (int i = 0; i < oldPositions.length; i++) {
+        if (oldPositions[i] != 0) {
+          put(oldHigh[i], oldLow[i], oldPositions[i]);
+        }
+      }
+    }
+  }
+}
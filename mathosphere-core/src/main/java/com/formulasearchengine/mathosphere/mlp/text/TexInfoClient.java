@@ -0,0 +1,203 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous client for the texvcinfo service.
+ * <p>
+ * At most {@code maxInFlight} requests are sent at the same time, further formulas are queued.
+ * Lookups of a TeX string that is already requested share the pending request. If a
+ * {@link TexInfoCache} is given, it is consulted before a request is sent and successful
+ * responses are added to it. Unlike {@link TexInfo}, every client has its own connection pool and
+ * no mutable static state.
+ */
+public class TexInfoClient implements Closeable {
+
+  private static final Logger LOGGER = LogManager.getLogger(TexInfoClient.class.getName());
+
+  private static final int TIMEOUT_MILLIS = 30000;
+
+  private static final Map<String, TexInfoClient> SHARED = new HashMap<>();
+
+  private final String url;
+
+  private final TexInfoCache cache;
+
+  private final CloseableHttpClient client;
+
+  private final ExecutorService executor;
+
+  /**
+   * pending requests by TeX string
+   */
+  private final Map<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @param url         url of the texvcinfo service
+   * @param maxInFlight maximal number of concurrent requests
+   * @param cache       persistent cache of the responses, may be null
+   */
+  public TexInfoClient(String url, int maxInFlight, TexInfoCache cache) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("At least one request must be allowed in flight.");
+    }
+    this.url = url;
+    this.cache = cache;
+    final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+    connections.setMaxTotal(maxInFlight);
+    connections.setDefaultMaxPerRoute(maxInFlight);
+    final RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(TIMEOUT_MILLIS)
+        .setSocketTimeout(TIMEOUT_MILLIS)
+        .build();
+    this.client = HttpClients.custom()
+        .setConnectionManager(connections)
+        .setDefaultRequestConfig(requestConfig)
+        .build();
+    final AtomicInteger threads = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(maxInFlight, r -> {
+      final Thread thread = new Thread(r, "texvcinfo-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the client for a texvcinfo service that is shared by all users in the JVM, e.g. by
+   * all task slots of a task manager, so that the bound of concurrent requests holds for the whole
+   * JVM. The parameters of the first call for a url are used.
+   */
+  public static TexInfoClient shared(String url, int maxInFlight, TexInfoCache cache) {
+    synchronized (SHARED) {
+      TexInfoClient client = SHARED.get(url);
+      if (client == null) {
+        client = new TexInfoClient(url, maxInFlight, cache);
+        SHARED.put(url, client);
+      }
+      return client;
+    }
+  }
+
+  /**
+   * Looks up the identifiers of a TeX string.
+   *
+   * @param tex TeX string
+   * @return future of the identifiers, completed with null if the request failed
+   */
+  public CompletableFuture<List<String>> getIdentifiers(String tex) {
+    if (tex.length() == 0) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+    if (cache != null) {
+      final List<String> cached = cache.get(tex);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+    final CompletableFuture<List<String>> request = new CompletableFuture<>();
+    final CompletableFuture<List<String>> pending = inFlight.putIfAbsent(tex, request);
+    if (pending != null) {
+      coalesced.incrementAndGet();
+      return pending;
+    }
+    requests.incrementAndGet();
+    executor.execute(() -> {
+      List<String> identifiers = null;
+      try {
+        identifiers = fetch(tex);
+        if (identifiers != null && cache != null) {
+          cache.put(tex, identifiers);
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("texvcinfo request for " + tex + " failed", e);
+      } finally {
+        // the response is in the cache before the request is removed, so it is not requested again
+        inFlight.remove(tex, request);
+        request.complete(identifiers);
+      }
+    });
+    return request;
+  }
+
+  /**
+   * Looks up the identifiers of all TeX strings together and waits for the responses.
+   *
+   * @param texs TeX strings, duplicates are requested once
+   * @return the identifiers by TeX string, TeX strings whose request failed are missing
+   */
+  public Map<String, List<String>> resolve(Collection<String> texs) {
+    final Map<String, CompletableFuture<List<String>>> futures = new LinkedHashMap<>();
+    for (String tex : texs) {
+      if (!futures.containsKey(tex)) {
+        futures.put(tex, getIdentifiers(tex));
+      }
+    }
+    final Map<String, List<String>> identifiers = new LinkedHashMap<>();
+    for (Map.Entry<String, CompletableFuture<List<String>>> entry : futures.entrySet()) {
+      final List<String> result = entry.getValue().join();
+      if (result != null) {
+        identifiers.put(entry.getKey(), result);
+      }
+    }
+    return identifiers;
+  }
+
+  private List<String> fetch(String tex) throws IOException {
+    final HttpGet get = new HttpGet(TexInfo.requestUrl(tex, url));
+    try (CloseableHttpResponse response = client.execute(get)) {
+      final String json = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+      return TexInfo.parseIdentifiers(tex, json);
+    }
+  }
+
+  /**
+   * @return number of requests that were sent to texvcinfo
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return number of lookups that shared a pending request
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (SHARED) {
+      SHARED.remove(url, this);
+    }
+    executor.shutdownNow();
+    client.close();
+  }
+}
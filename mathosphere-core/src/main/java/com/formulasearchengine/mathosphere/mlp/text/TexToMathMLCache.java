@@ -0,0 +1,141 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory memo of the MathML that a converter produces for a TeX string.
+ * <p>
+ * The size of the memo is bounded by the number of characters of all keys and values, the least
+ * recently used entries are evicted first. Concurrent lookups of the same missing TeX string wait
+ * for one conversion. Failed conversions are not memoized.
+ */
+public class TexToMathMLCache {
+
+  /**
+   * estimated bytes of an entry besides the characters of key and value
+   */
+  static final int ENTRY_OVERHEAD_BYTES = 128;
+
+  private final long maximumChars;
+
+  private final Cache<String, String> cache;
+
+  /**
+   * characters of the keys and values of all entries
+   */
+  private final AtomicLong chars = new AtomicLong();
+
+  private final AtomicLong conversions = new AtomicLong();
+
+  private final AtomicLong conversionNanos = new AtomicLong();
+
+  /**
+   * @param maximumChars maximal number of characters of all keys and values, 0 disables the memo
+   */
+  public TexToMathMLCache(long maximumChars) {
+    if (maximumChars < 0) {
+      throw new IllegalArgumentException("The size of the cache must not be negative.");
+    }
+    this.maximumChars = maximumChars;
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+        .maximumWeight(maximumChars)
+        .<String, String>weigher((tex, mathML) -> weight(tex, mathML))
+        .<String, String>removalListener(n -> chars.addAndGet(-weight(n.getKey(), n.getValue())))
+        .recordStats()
+        .build();
+  }
+
+  private static int weight(String tex, String mathML) {
+    return (int) Math.min(Integer.MAX_VALUE, (long) tex.length() + mathML.length());
+  }
+
+  /**
+   * Returns the memoized MathML of a TeX string or converts it.
+   *
+   * @param tex       cleaned TeX string
+   * @param converter conversion of a TeX string that is not memoized
+   * @return MathML of the TeX string
+   */
+  public String get(String tex, Function<String, String> converter) {
+    try {
+      return cache.get(tex, () -> {
+        final String mathML = convert(tex, converter);
+        chars.addAndGet(weight(tex, mathML));
+        return mathML;
+      });
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private String convert(String tex, Function<String, String> converter) {
+    final long start = System.nanoTime();
+    try {
+      return converter.apply(tex);
+    } finally {
+      conversionNanos.addAndGet(System.nanoTime() - start);
+      conversions.incrementAndGet();
+    }
+  }
+
+  public long getMaximumChars() {
+    return maximumChars;
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return share of the lookups that were answered from memory, 1 if there was no lookup yet
+   */
+  public double getHitRatio() {
+    return cache.stats().hitRate();
+  }
+
+  /**
+   * @return number of conversions, including the failed ones
+   */
+  public long getConversions() {
+    return conversions.get();
+  }
+
+  /**
+   * @return mean duration of a conversion in microseconds, 0 if nothing was converted yet
+   */
+  public double getMeanConversionMicros() {
+    final long count = conversions.get();
+    return count == 0 ? 0 : conversionNanos.get() / 1000.0 / count;
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  /**
+   * @return estimated heap usage of the entries in bytes
+   */
+  public long getEstimatedBytes() {
+    return 2 * chars.get() + ENTRY_OVERHEAD_BYTES * cache.size();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -0,0 +1,33 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.pojos.WikidataLink;
+
+import java.util.List;
+
+/**
+ * Converts the wikitext of a page into plain text. Formulas and links are replaced by the
+ * placeholders of the corresponding {@link MathTag} and {@link WikidataLink}.
+ */
+public interface WikiTextConverter {
+
+  /**
+   * @return the plain text with placeholders for formulas and links
+   */
+  String getStrippedOutput();
+
+  /**
+   * @return the plain text with the original formulas and links
+   */
+  String getOutput();
+
+  /**
+   * @return the formulas of the page, available after the output has been generated
+   */
+  List<MathTag> getMathTags();
+
+  /**
+   * @return the links of the page, available after the output has been generated
+   */
+  List<WikidataLink> getLinks();
+}
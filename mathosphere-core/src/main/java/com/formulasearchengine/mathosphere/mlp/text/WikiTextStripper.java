@@ -0,0 +1,1207 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
+import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.pojos.WikidataLink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Converts wikitext into plain text in a single pass, without building the Sweble AST.
+ * <p>
+ * Handles the subset of wikitext that {@link MathConverter} evaluates: math, chem and ref tags,
+ * the math and mvar templates, internal, image and external links, bold and italic text, headings,
+ * lists, tables and comments. The output follows the conventions of {@link MathConverter},
+ * including the placeholders, the section numbering and the handling of template arguments, so
+ * both converters can be used interchangeably. Like in the Sweble AST, the values of template
+ * arguments are text, only templates, tag extensions and comments are parsed in them. Everything
+ * else is treated as text.
+ */
+public class WikiTextStripper implements WikiTextConverter {
+
+  private static final Pattern WS = Pattern.compile("\\s+");
+
+  /**
+   * Tags whose content is not wikitext, the tag extensions of the Sweble configuration. All other
+   * tags are removed while their content is kept.
+   */
+  private static final Set<String> TAG_EXTENSIONS = ImmutableSet.of(
+      "math", "chem", "ref", "nowiki", "pre");
+
+  private static final String[] URL_PROTOCOLS = {
+      "http://", "https://", "ftp://", "ftps://", "mailto:", "news:", "irc://", "ircs://", "//"};
+
+  private static final String[] IMAGE_NAMESPACES = {"file:", "image:"};
+
+  private static final Pattern IMAGE_OPTION = Pattern.compile(
+      "(?i)\\s*(thumb|thumbnail|frame|framed|frameless|border|left|right|center|centre|none"
+          + "|upright(\\s*=?\\s*[0-9.]*)?|baseline|middle|sub|super|text-top|text-bottom|top|bottom"
+          + "|[0-9]*(x[0-9]+)?\\s*px|(alt|link|page|class|lang)\\s*=.*)\\s*",
+      Pattern.DOTALL);
+
+  private static final Pattern PAGE_SWITCH = Pattern.compile("__[A-Z]+__");
+
+  /**
+   * Scan modes of {@link #inline(int, int, int)}.
+   */
+  private static final int RANGE = 0;
+  private static final int LINE = 1;
+  private static final int PARAGRAPH = 2;
+
+  private final String text;
+  private final WikidataLinkMap wl;
+  private final String texInfoUrl;
+  private boolean skipHiddenMath;
+
+  private List<MathTag> mathTags = new ArrayList<>();
+  private List<WikidataLink> links = new ArrayList<>();
+  private String strippedOutput;
+
+  private StringBuilder sb;
+  private StringBuilder line;
+  private int extLinkNum;
+  /**
+   * Becomes true if we are no long at the Beginning Of the whole Document.
+   */
+  private boolean pastBod;
+  private int needNewlines;
+  private boolean needSpace;
+  private LinkedList<Integer> sections;
+  private Deque<Integer> openSections;
+
+  private int lineCursor;
+  private int lineNumber;
+  /**
+   * Number of enclosing template arguments, their values are text.
+   */
+  private int templateDepth;
+
+  public WikiTextStripper(String wikiText) {
+    this(wikiText, "noname");
+  }
+
+  public WikiTextStripper(String wikiText, String title) {
+    this(wikiText, title, new BaseConfig());
+  }
+
+  public WikiTextStripper(String wikiText, String title, BaseConfig config) {
+    this.text = wikiText;
+    if (config.getWikiDataFile() != null) {
+      wl = new WikidataLinkMap(config.getWikiDataFile());
+    } else {
+      wl = null;
+    }
+    texInfoUrl = config.getTexvcinfoUrl();
+  }
+
+  public boolean isSkipHiddenMath() {
+    return skipHiddenMath;
+  }
+
+  public void setSkipHiddenMath(boolean skipHiddenMath) {
+    this.skipHiddenMath = skipHiddenMath;
+  }
+
+  @Override
+  public String getStrippedOutput() {
+    if (strippedOutput == null) {
+      convert();
+    }
+    return strippedOutput;
+  }
+
+  @Override
+  public String getOutput() {
+    String output = getStrippedOutput();
+    for (WikidataLink link : links) {
+      if (link.getTitle() == null) {
+        output = output.replace("LINK_" + link.getContentHash(), "[[" + link.getContent() + "]]");
+      } else {
+        output = output.replace(
+            "LINK_" + link.getContentHash(), "[[" + link.getContent() + "|" + link.getTitle() + "]]");
+      }
+    }
+    for (MathTag tag : mathTags) {
+      output = output.replace("FORMULA_" + tag.getContentHash(),
+          "<math>" + tag.getContent() + "</math>");
+    }
+    return output;
+  }
+
+  @Override
+  public List<MathTag> getMathTags() {
+    return mathTags;
+  }
+
+  @Override
+  public List<WikidataLink> getLinks() {
+    return links;
+  }
+
+  private void convert() {
+    sb = new StringBuilder(text.length());
+    line = new StringBuilder();
+    extLinkNum = 1;
+    pastBod = false;
+    needNewlines = 0;
+    needSpace = false;
+    sections = new LinkedList<>();
+    openSections = new ArrayDeque<>();
+    lineCursor = 0;
+    lineNumber = 1;
+    templateDepth = 0;
+    blocks(0, text.length());
+    while (!openSections.isEmpty()) {
+      endSection(openSections.pop());
+    }
+    finishLine();
+    strippedOutput = sb.toString();
+  }
+
+  // =========================================================================
+  // Block level elements
+
+  private void blocks(int from, int to) {
+    int pos = from;
+    while (pos < to) {
+      final int eol = lineEnd(pos, to);
+      final char c = text.charAt(pos);
+      if (isBlank(pos, eol)) {
+        pos = eol + 1;
+      } else if (c == '=' && heading(pos, eol)) {
+        pos = eol + 1;
+      } else if (c == '*' || c == '#' || c == ':' || c == ';') {
+        pos = listItem(pos, to);
+      } else if (text.startsWith("----", pos)) {
+        newline(1);
+        write(Strings.repeat("-", 10));
+        newline(2);
+        while (pos < eol && text.charAt(pos) == '-') {
+          pos++;
+        }
+      } else if (isTableStart(pos, eol)) {
+        pos = table(skipIndent(pos, eol), to);
+      } else {
+        pos = inline(pos, to, PARAGRAPH);
+        newline(2);
+      }
+    }
+  }
+
+  private boolean heading(int pos, int eol) {
+    int end = eol;
+    while (end > pos && Character.isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+    int open = 0;
+    while (pos + open < end && text.charAt(pos + open) == '=') {
+      open++;
+    }
+    int close = 0;
+    while (end - close > pos + open && text.charAt(end - close - 1) == '=') {
+      close++;
+    }
+    if (close == 0) {
+      return false;
+    }
+    final int level = Math.min(6, Math.min(open, close));
+    startSection(level, pos + level, end - level);
+    return true;
+  }
+
+  private void startSection(int level, int titleFrom, int titleTo) {
+    while (!openSections.isEmpty() && openSections.peek() >= level) {
+      endSection(openSections.pop());
+    }
+    finishLine();
+    StringBuilder saveSb = sb;
+    sb = new StringBuilder();
+    inline(titleFrom, titleTo, RANGE);
+    finishLine();
+    String title = sb.toString().trim();
+    sb = saveSb;
+
+    while (sections.size() > level) {
+      sections.removeLast();
+    }
+    while (sections.size() < level) {
+      sections.add(1);
+    }
+    StringBuilder sb2 = new StringBuilder();
+    for (int i = 1; i < sections.size(); ++i) {
+      sb2.append(sections.get(i));
+      sb2.append('.');
+    }
+    if (sb2.length() > 0) {
+      sb2.append(' ');
+    }
+    sb2.append(title);
+    title = sb2.toString();
+
+    newline(2);
+    write(title);
+    newline(1);
+    write(Strings.repeat("-", title.length()));
+    newline(2);
+    openSections.push(level);
+  }
+
+  private void endSection(int level) {
+    while (sections.size() > level) {
+      sections.removeLast();
+    }
+    sections.add(sections.removeLast() + 1);
+  }
+
+  private int listItem(int pos, int to) {
+    int start = pos;
+    while (start < to && "*#:;".indexOf(text.charAt(start)) >= 0) {
+      start++;
+    }
+    final char last = text.charAt(start - 1);
+    if (last == '*' || last == '#') {
+      writeNewlines(1);
+    }
+    final int end = inline(start, to, LINE);
+    wantSpace();
+    return end;
+  }
+
+  private boolean isTableStart(int pos, int eol) {
+    final int start = skipIndent(pos, eol);
+    return text.startsWith("{|", start);
+  }
+
+  private int skipIndent(int pos, int eol) {
+    while (pos < eol && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Writes the captions and cells of a table, the table markup and attributes are skipped.
+   *
+   * @param pos start of the {@code {|} line
+   * @return the position after the table
+   */
+  private int table(int pos, int to) {
+    int i = lineEnd(pos, to) + 1;
+    while (i < to) {
+      final int eol = lineEnd(i, to);
+      final int start = skipIndent(i, eol);
+      if (text.startsWith("|}", start)) {
+        return eol + 1;
+      } else if (text.startsWith("{|", start)) {
+        i = table(start, to);
+      } else if (text.startsWith("|-", start)) {
+        i = eol + 1;
+      } else if (text.startsWith("|+", start)) {
+        i = cells(start + 2, to, false);
+      } else if (start < eol && text.charAt(start) == '|') {
+        i = cells(start + 1, to, false);
+      } else if (start < eol && text.charAt(start) == '!') {
+        i = cells(start + 1, to, true);
+      } else {
+        int content = start;
+        while (content < eol && "*#:;".indexOf(text.charAt(content)) >= 0) {
+          content++;
+        }
+        i = inline(content, to, LINE) + 1;
+        wantSpace();
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Writes the cells of one table line, separated by {@code ||} or {@code !!} in header lines.
+   */
+  private int cells(int pos, int to, boolean header) {
+    int cellStart = pos;
+    while (true) {
+      int attributesEnd = -1;
+      int i = cellStart;
+      while (i < to) {
+        final char c = text.charAt(i);
+        if (c == '\n') {
+          break;
+        }
+        if (c == '|' || (header && c == '!')) {
+          if (i + 1 < to && text.charAt(i + 1) == c) {
+            break;
+          }
+          if (c == '|' && attributesEnd < 0) {
+            attributesEnd = i;
+          }
+          i++;
+          continue;
+        }
+        final int end = constructEnd(i, to);
+        i = end > i ? end : i + 1;
+      }
+      final int contentStart = attributesEnd >= 0 ? attributesEnd + 1 : cellStart;
+      inline(contentStart, i, RANGE);
+      if (i >= to || text.charAt(i) == '\n') {
+        wantSpace();
+        return i + 1;
+      }
+      cellStart = i + 2;
+    }
+  }
+
+  // =========================================================================
+  // Inline elements
+
+  /**
+   * Writes the inline content that starts at from.
+   *
+   * @param mode {@link #RANGE} to process everything up to to, {@link #LINE} to stop at the next
+   *             line break, {@link #PARAGRAPH} to stop at the end of the paragraph
+   * @return the position at which the scan stopped
+   */
+  private int inline(int from, int to, int mode) {
+    int i = from;
+    int textStart = from;
+    while (i < to) {
+      final char c = text.charAt(i);
+      if (c == '\n') {
+        if (mode == LINE || (mode == PARAGRAPH && endsParagraph(i + 1, to))) {
+          writeText(textStart, i);
+          return i;
+        }
+        i++;
+      } else if (c == '\'' && templateDepth == 0) {
+        final int n = run('\'', i, to);
+        if (n < 2) {
+          i++;
+        } else if (n == 4 || n > 5) {
+          // the leading apostrophes are text
+          i += n == 4 ? 1 : n - 5;
+        } else {
+          writeText(textStart, i);
+          i = formatted(i, n, to);
+          textStart = i;
+        }
+      } else if (c == '<' || c == '{' || c == '[' || c == '&' || c == '_') {
+        // the text before the markup has to be written first
+        writeText(textStart, i);
+        textStart = i;
+        final int end = markup(i, to);
+        if (end > i) {
+          i = end;
+          textStart = end;
+        } else {
+          i++;
+        }
+      } else {
+        i++;
+      }
+    }
+    writeText(textStart, to);
+    return to;
+  }
+
+  private boolean endsParagraph(int next, int to) {
+    if (next >= to) {
+      return true;
+    }
+    final int eol = lineEnd(next, to);
+    if (isBlank(next, eol)) {
+      return true;
+    }
+    final char c = text.charAt(next);
+    return "*#:;".indexOf(c) >= 0
+        || text.startsWith("----", next)
+        || isTableStart(next, eol)
+        || (c == '=' && isHeading(next, eol));
+  }
+
+  private boolean isHeading(int pos, int eol) {
+    int end = eol;
+    while (end > pos && Character.isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+    return end - pos > 1 && text.charAt(end - 1) == '=';
+  }
+
+  /**
+   * Processes the markup at position i.
+   *
+   * @return the end of the markup, or -1 if it is text
+   */
+  private int markup(int i, int to) {
+    final char c = text.charAt(i);
+    if (c == '<') {
+      return tag(i, to);
+    }
+    if (c == '{' && text.startsWith("{{", i)) {
+      return template(i, to);
+    }
+    if (templateDepth > 0) {
+      return -1;
+    }
+    if (c == '[') {
+      return text.startsWith("[[", i) ? link(i, to) : externalLink(i, to);
+    }
+    if (c == '&') {
+      return entity(i, to);
+    }
+    if (c == '_' && text.startsWith("__", i)) {
+      final int end = text.indexOf("__", i + 2);
+      if (end > 0 && end + 2 <= to && PAGE_SWITCH.matcher(text.substring(i, end + 2)).matches()) {
+        return end + 2;
+      }
+    }
+    return -1;
+  }
+
+  private int formatted(int i, int n, int to) {
+    final int lineEnd = Math.min(lineEnd(i, to), to);
+    if (n == 5) {
+      final int close = findApostrophes(i + 5, lineEnd, 5);
+      if (close >= 0) {
+        write("\"");
+        formattedContent(i + 5, close, false);
+        write("\"");
+        return close + 5;
+      }
+      // an italic text that starts with a bold one
+      n = 2;
+    }
+    final int close = findApostrophes(i + n, lineEnd, n);
+    final int contentEnd = close >= 0 ? close : lineEnd;
+    formattedContent(i + n, contentEnd, n == 3);
+    return close >= 0 ? close + n : lineEnd;
+  }
+
+  private void formattedContent(int from, int to, boolean bold) {
+    if (detectHiddenMath(from, to, bold)) {
+      return;
+    }
+    write("\"");
+    inline(from, to, RANGE);
+    write("\"");
+  }
+
+  /**
+   * Finds the closing apostrophes of a bold (n = 3) or italic (n = 2) text. Five apostrophes close
+   * both.
+   */
+  private int findApostrophes(int from, int to, int n) {
+    int i = from;
+    while (i < to) {
+      final char c = text.charAt(i);
+      if (c == '\'') {
+        final int m = run('\'', i, to);
+        if (m == n || m == 5) {
+          return i;
+        }
+        i += m;
+        continue;
+      }
+      final int end = constructEnd(i, to);
+      i = end > i ? end : i + 1;
+    }
+    return -1;
+  }
+
+  private boolean detectHiddenMath(int from, int to, boolean bold) {
+    if (skipHiddenMath || from >= to) {
+      return false;
+    }
+    final int textEnd = firstTextEnd(from, to);
+    if (textEnd == to) {
+      final String tex = MathConverter.getTex(text.substring(from, to), bold, false, texInfoUrl);
+      if (tex != null) {
+        addHiddenMath(from, tex);
+        return true;
+      }
+      return false;
+    }
+    if (textEnd > from && text.regionMatches(true, textEnd, "<sub>", 0, 5)) {
+      // discover hidden subscripts
+      final int subStart = textEnd + 5;
+      final int subEnd = indexOfIgnoreCase("</sub>", subStart, to);
+      if (subEnd > subStart && subEnd + 6 == to && firstTextEnd(subStart, subEnd) == subEnd) {
+        final String subTex = MathConverter.getTex(text.substring(subStart, subEnd), false, true, texInfoUrl);
+        final String mainTex = MathConverter.getTex(text.substring(from, textEnd), bold, true, texInfoUrl);
+        if (mainTex != null) {
+          addHiddenMath(from, mainTex + "_{" + subTex + "}");
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void addHiddenMath(int pos, String tex) {
+    MathTag tag = new MathTag(lineOf(pos), tex, WikiTextUtils.MathMarkUpType.MATH_TEMPLATE);
+    mathTags.add(tag);
+    needSpace = true;
+    writeWord(tag.placeholder());
+    needSpace = true;
+  }
+
+  private int tag(int i, int to) {
+    if (text.startsWith("<!--", i)) {
+      final int end = text.indexOf("-->", i + 4);
+      return end < 0 || end + 3 > to ? to : end + 3;
+    }
+    final Tag tag = Tag.parse(text, i, to);
+    if (tag == null) {
+      return -1;
+    }
+    final String name = tag.name.toLowerCase(Locale.ROOT);
+    if (!tag.closing && TAG_EXTENSIONS.contains(name)) {
+      if (tag.selfClosing) {
+        return tag.end;
+      }
+      final int close = indexOfIgnoreCase("</" + name, tag.end, to);
+      if (close < 0) {
+        return -1;
+      }
+      final int closeEnd = text.indexOf('>', close);
+      if (closeEnd < 0 || closeEnd >= to) {
+        return -1;
+      }
+      tagExtension(tag.name, i, text.substring(tag.end, close));
+      return closeEnd + 1;
+    }
+    if (templateDepth > 0) {
+      return -1;
+    }
+    if (name.equals("br")) {
+      newline(1);
+    } else if (name.equals("var") && !tag.closing && !tag.selfClosing) {
+      final int close = indexOfIgnoreCase("</var", tag.end, to);
+      final int closeEnd = close < 0 ? -1 : text.indexOf('>', close);
+      if (closeEnd > 0 && closeEnd < to) {
+        var(i, tag.end, close);
+        return closeEnd + 1;
+      }
+    }
+    return tag.end;
+  }
+
+  private void tagExtension(String name, int pos, String content) {
+    boolean chem = false;
+    switch (name) {
+      case "ce":
+      case "chem":
+        chem = true;
+      case "math":
+        WikiTextUtils.MathMarkUpType markUpType;
+        if (chem) {
+          markUpType = WikiTextUtils.MathMarkUpType.LATEXCE;
+        } else {
+          markUpType = WikiTextUtils.MathMarkUpType.LATEX;
+        }
+        MathTag tag = new MathTag(lineOf(pos), content, markUpType);
+        mathTags.add(tag);
+        if (needNewlines > 0) {
+          write(" ");
+        }
+        needSpace = true;
+        writeWord(tag.placeholder());
+        needSpace = true;
+        break;
+      case "ref":
+        if (!content.contains("<math")) {
+          return;
+        }
+        final List<MathTag> tags = WikiTextUtils.findMathTags(content);
+        content = WikiTextUtils.replaceAllFormulas(content, tags);
+        mathTags.addAll(tags);
+        write("(");
+        write(content);
+        write("}");
+        break;
+      default:
+    }
+  }
+
+  private void var(int pos, int bodyStart, int bodyEnd) {
+    final int textEnd = firstTextEnd(bodyStart, bodyEnd);
+    if (textEnd > bodyStart) {
+      handleLatexMathTag(pos, text.substring(bodyStart, textEnd).trim());
+    } else if (text.startsWith("[[", bodyStart)) {
+      final int end = matchLink(bodyStart, bodyEnd);
+      if (end > 0) {
+        final int bar = nextBar(bodyStart + 2, end - 2);
+        if (bar >= 0) {
+          final int titleEnd = firstTextEnd(bar + 1, end - 2);
+          if (titleEnd > bar + 1) {
+            handleLatexMathTag(pos, text.substring(bar + 1, titleEnd).trim());
+          }
+        }
+      }
+    }
+  }
+
+  private void handleLatexMathTag(int pos, String content) {
+    content = TextExtractorMapper.unescape(content);
+    content = MathConverter.wiki2Tex(content);
+    MathTag tag = new MathTag(lineOf(pos), content, WikiTextUtils.MathMarkUpType.MATH_TEMPLATE);
+    mathTags.add(tag);
+    needSpace = true;
+    writeWord(tag.placeholder());
+    needSpace = true;
+  }
+
+  private int template(int i, int to) {
+    final int end = matchBraces(i, to);
+    if (end < 0) {
+      return -1;
+    }
+    if (text.startsWith("{{{", i) && text.startsWith("}}}", end - 3)) {
+      // template parameter
+      return end;
+    }
+    final List<Integer> bars = bars(i + 2, end - 2);
+    final String name = text.substring(i + 2, bars.isEmpty() ? end - 2 : bars.get(0))
+        .trim().toLowerCase(Locale.ROOT);
+    templateDepth++;
+    try {
+      templateArguments(i, end, name, bars);
+    } finally {
+      templateDepth--;
+    }
+    return end;
+  }
+
+  private void templateArguments(int i, int end, String name, List<Integer> bars) {
+    switch (name) {
+      case "math":
+      case "mvar": {
+        if (bars.isEmpty()) {
+          return;
+        }
+        final int argEnd = bars.size() > 1 ? bars.get(1) : end - 2;
+        final int valueStart = argumentValueStart(bars.get(0) + 1, argEnd);
+        final int textEnd = firstTextEnd(valueStart, argEnd);
+        if (textEnd <= valueStart) {
+          // the value does not start with text
+          return;
+        }
+        final String content = text.substring(valueStart, textEnd).trim();
+        if (name.equals("math")) {
+          handleLatexMathTag(i, content);
+        } else {
+          MathTag tag = new MathTag(lineOf(i), MathConverter.wiki2Tex(content),
+              WikiTextUtils.MathMarkUpType.MVAR_TEMPLATE);
+          mathTags.add(tag);
+          needSpace = true;
+          writeWord(tag.placeholder());
+          needSpace = true;
+        }
+        break;
+      }
+      default:
+        for (int a = 0; a < bars.size(); a++) {
+          final int argEnd = a + 1 < bars.size() ? bars.get(a + 1) : end - 2;
+          final int valueStart = argumentValueStart(bars.get(a) + 1, argEnd);
+          if (!detectHiddenMath(valueStart, argEnd, false)) {
+            inline(valueStart, argEnd, RANGE);
+          }
+        }
+    }
+  }
+
+  /**
+   * @return the start of the value of a named template argument, or from for unnamed arguments
+   */
+  private int argumentValueStart(int from, int to) {
+    int i = from;
+    while (i < to) {
+      final char c = text.charAt(i);
+      if (c == '=') {
+        return i + 1;
+      }
+      final int end = constructEnd(i, to);
+      i = end > i ? end : i + 1;
+    }
+    return from;
+  }
+
+  private int link(int i, int to) {
+    final int end = matchLink(i, to);
+    if (end < 0) {
+      return -1;
+    }
+    final int innerEnd = end - 2;
+    final List<Integer> bars = bars(i + 2, innerEnd);
+    final String target = text.substring(i + 2, bars.isEmpty() ? innerEnd : bars.get(0));
+    if (target.trim().isEmpty() || target.indexOf('\n') >= 0) {
+      return -1;
+    }
+    if (isImage(target)) {
+      // the caption is the last argument that is not an image option
+      for (int a = bars.size() - 1; a >= 0; a--) {
+        final int argEnd = a + 1 < bars.size() ? bars.get(a + 1) : innerEnd;
+        if (!IMAGE_OPTION.matcher(text.substring(bars.get(a) + 1, argEnd)).matches()) {
+          inline(bars.get(a) + 1, argEnd, RANGE);
+          break;
+        }
+      }
+      return end;
+    }
+    internalLink(target, bars.isEmpty() ? innerEnd : bars.get(0) + 1, innerEnd);
+    int trail = end;
+    while (trail < to && text.charAt(trail) >= 'a' && text.charAt(trail) <= 'z') {
+      trail++;
+    }
+    return trail;
+  }
+
+  private static boolean isImage(String target) {
+    final String normalized = target.trim().toLowerCase(Locale.ROOT);
+    for (String namespace : IMAGE_NAMESPACES) {
+      if (normalized.startsWith(namespace)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void internalLink(String target, int titleFrom, int titleTo) {
+    String linkName = target.split("#")[0];
+    if (wl != null) {
+      String newName = wl.title2Data(linkName);
+      if (newName != null) {
+        write("LINK_" + newName);
+        return;
+      }
+    }
+    WikidataLink link = new WikidataLink(linkName);
+    write("LINK_" + link.getContentHash());
+    needSpace = true;
+    if (titleFrom < titleTo) {
+      StringBuilder tmp = this.line;
+      this.line = new StringBuilder();
+      inline(titleFrom, titleTo, RANGE);
+      link.setTitle(this.line.toString());
+      this.line = tmp;
+    }
+    links.add(link);
+  }
+
+  private int externalLink(int i, int to) {
+    boolean url = false;
+    for (String protocol : URL_PROTOCOLS) {
+      if (text.regionMatches(true, i + 1, protocol, 0, protocol.length())) {
+        url = true;
+        break;
+      }
+    }
+    if (!url) {
+      return -1;
+    }
+    final int lineEnd = lineEnd(i, to);
+    final int close = text.indexOf(']', i);
+    if (close < 0 || close >= lineEnd) {
+      return -1;
+    }
+    write('[');
+    write(extLinkNum++);
+    write(']');
+    return close + 1;
+  }
+
+  private int entity(int i, int to) {
+    int j = i + 1;
+    if (j < to && text.charAt(j) == '#') {
+      j++;
+      final boolean hex = j < to && (text.charAt(j) == 'x' || text.charAt(j) == 'X');
+      if (hex) {
+        j++;
+      }
+      final int digits = j;
+      while (j < to && Character.digit(text.charAt(j), hex ? 16 : 10) >= 0) {
+        j++;
+      }
+      if (j == digits || j >= to || text.charAt(j) != ';' || j - digits > 6) {
+        return -1;
+      }
+      final int codePoint = Integer.parseInt(text.substring(digits, j), hex ? 16 : 10);
+      if (!Character.isValidCodePoint(codePoint)) {
+        return -1;
+      }
+      write(Character.toChars(codePoint));
+      return j + 1;
+    }
+    while (j < to && Character.isLetterOrDigit(text.charAt(j))) {
+      j++;
+    }
+    if (j == i + 1 || j >= to || text.charAt(j) != ';') {
+      return -1;
+    }
+    final String entity = text.substring(i, j + 1);
+    final String resolved = EntityUnescaper.unescape(entity);
+    if (resolved.equals(entity)) {
+      return -1;
+    }
+    write(resolved);
+    return j + 1;
+  }
+
+  // =========================================================================
+  // Scanning helpers, they do not write any output
+
+  /**
+   * @return the end of a comment, template, link or tag extension that starts at i, or -1
+   */
+  private int constructEnd(int i, int to) {
+    final char c = text.charAt(i);
+    if (c == '<') {
+      if (text.startsWith("<!--", i)) {
+        final int end = text.indexOf("-->", i + 4);
+        return end < 0 || end + 3 > to ? to : end + 3;
+      }
+      final Tag tag = Tag.parse(text, i, to);
+      if (tag == null || tag.closing || !TAG_EXTENSIONS.contains(tag.name.toLowerCase(Locale.ROOT))) {
+        return -1;
+      }
+      if (tag.selfClosing) {
+        return tag.end;
+      }
+      final int close = indexOfIgnoreCase("</" + tag.name, tag.end, to);
+      final int closeEnd = close < 0 ? -1 : text.indexOf('>', close);
+      return closeEnd < 0 || closeEnd >= to ? -1 : closeEnd + 1;
+    }
+    if (c == '{' && text.startsWith("{{", i)) {
+      return matchBraces(i, to);
+    }
+    if (c == '[' && text.startsWith("[[", i)) {
+      return matchLink(i, to);
+    }
+    return -1;
+  }
+
+  /**
+   * Matches the braces of a template {@code {{...}}} or template parameter {@code {{{...}}}}.
+   *
+   * @return the position after the closing braces, or -1
+   */
+  private int matchBraces(int from, int to) {
+    final Deque<Integer> open = new ArrayDeque<>();
+    int i = from;
+    while (i < to) {
+      final char c = text.charAt(i);
+      if (c == '{') {
+        final int n = run('{', i, to);
+        int m = n;
+        while (m >= 2) {
+          final int size = m == 2 || m == 4 ? 2 : 3;
+          open.push(size);
+          m -= size;
+        }
+        i += n;
+      } else if (c == '}') {
+        final int n = run('}', i, to);
+        int m = n;
+        while (!open.isEmpty() && m >= open.peek()) {
+          m -= open.pop();
+          if (open.isEmpty()) {
+            return i + n - m;
+          }
+        }
+        i += n;
+      } else if (c == '<') {
+        final int end = constructEnd(i, to);
+        i = end > i ? end : i + 1;
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the position after the closing brackets of the link at from, or -1
+   */
+  private int matchLink(int from, int to) {
+    int depth = 0;
+    int i = from;
+    while (i < to) {
+      if (text.startsWith("[[", i)) {
+        depth++;
+        i += 2;
+      } else if (text.startsWith("]]", i)) {
+        depth--;
+        i += 2;
+        if (depth == 0) {
+          return i;
+        }
+      } else if (text.charAt(i) == '{' || text.charAt(i) == '<') {
+        final int end = constructEnd(i, to);
+        i = end > i ? end : i + 1;
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the positions of the argument separators between from and to
+   */
+  private List<Integer> bars(int from, int to) {
+    final List<Integer> bars = new ArrayList<>();
+    int i = from;
+    while (i < to) {
+      if (text.charAt(i) == '|') {
+        bars.add(i);
+        i++;
+        continue;
+      }
+      final int end = constructEnd(i, to);
+      i = end > i ? end : i + 1;
+    }
+    return bars;
+  }
+
+  private int nextBar(int from, int to) {
+    final List<Integer> bars = bars(from, to);
+    return bars.isEmpty() ? -1 : bars.get(0);
+  }
+
+  /**
+   * @return the end of the text at from up to the first markup, equivalent to the first text
+   * node of the Sweble AST
+   */
+  private int firstTextEnd(int from, int to) {
+    final boolean wikitext = templateDepth == 0;
+    int i = from;
+    while (i < to) {
+      final char c = text.charAt(i);
+      if (wikitext && c == '\'' && i + 1 < to && text.charAt(i + 1) == '\'') {
+        return i;
+      }
+      if (c == '<') {
+        if (text.startsWith("<!--", i)) {
+          return i;
+        }
+        final Tag tag = Tag.parse(text, i, to);
+        if (tag != null && (wikitext || TAG_EXTENSIONS.contains(tag.name.toLowerCase(Locale.ROOT)))) {
+          return i;
+        }
+      }
+      if ((c == '{' && text.startsWith("{{", i)) || (wikitext && c == '[' && text.startsWith("[[", i))) {
+        if (constructEnd(i, to) > i) {
+          return i;
+        }
+      }
+      if (wikitext && c == '&' && entityEnd(i, to) > i) {
+        return i;
+      }
+      i++;
+    }
+    return to;
+  }
+
+  private int entityEnd(int i, int to) {
+    int j = i + 1;
+    if (j < to && text.charAt(j) == '#') {
+      j++;
+    }
+    while (j < to && Character.isLetterOrDigit(text.charAt(j))) {
+      j++;
+    }
+    return j > i + 1 && j < to && text.charAt(j) == ';' ? j + 1 : -1;
+  }
+
+  private int run(char c, int from, int to) {
+    int i = from;
+    while (i < to && text.charAt(i) == c) {
+      i++;
+    }
+    return i - from;
+  }
+
+  private int lineEnd(int from, int to) {
+    final int eol = text.indexOf('\n', from);
+    return eol < 0 || eol > to ? to : eol;
+  }
+
+  private boolean isBlank(int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (!Character.isWhitespace(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOfIgnoreCase(String needle, int from, int to) {
+    final int last = to - needle.length();
+    for (int i = from; i <= last; i++) {
+      if (text.regionMatches(true, i, needle, 0, needle.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the 1-based line number of pos
+   */
+  private int lineOf(int pos) {
+    if (pos < lineCursor) {
+      lineCursor = 0;
+      lineNumber = 1;
+    }
+    for (; lineCursor < pos; lineCursor++) {
+      if (text.charAt(lineCursor) == '\n') {
+        lineNumber++;
+      }
+    }
+    return lineNumber;
+  }
+
+  // =========================================================================
+  // Output, the same as in MathConverter
+
+  private void writeText(int from, int to) {
+    if (from < to) {
+      write(text.substring(from, to));
+    }
+  }
+
+  private void newline(int num) {
+    if (pastBod) {
+      if (num > needNewlines) {
+        needNewlines = num;
+      }
+    }
+  }
+
+  private void wantSpace() {
+    if (pastBod) {
+      needSpace = true;
+    }
+  }
+
+  private void finishLine() {
+    sb.append(line.toString());
+    sb.append(" ");
+    line.setLength(0);
+  }
+
+  private void write(String s) {
+    if (s.isEmpty()) {
+      return;
+    }
+
+    if (Character.isSpaceChar(s.charAt(0))) {
+      wantSpace();
+    }
+
+    String[] words = WS.split(s);
+    for (int i = 0; i < words.length; ) {
+      writeWord(words[i]);
+      if (++i < words.length) {
+        wantSpace();
+      }
+    }
+
+    final char lastChar = s.charAt(s.length() - 1);
+    if (Character.isSpaceChar(lastChar) || lastChar == '\n') {
+      wantSpace();
+    }
+  }
+
+  private void write(char[] cs) {
+    write(String.valueOf(cs));
+  }
+
+  private void write(char ch) {
+    writeWord(String.valueOf(ch));
+  }
+
+  private void write(int num) {
+    writeWord(String.valueOf(num));
+  }
+
+  private void writeNewlines(int num) {
+    finishLine();
+    sb.append(Strings.repeat("\n", num));
+    needNewlines = 0;
+    needSpace = false;
+  }
+
+  private void writeWord(String s) {
+    int length = s.length();
+    if (length == 0) {
+      return;
+    }
+
+    if (needSpace && needNewlines <= 0) {
+      line.append(' ');
+    }
+
+    if (needNewlines > 0) {
+      writeNewlines(needNewlines);
+    }
+
+    needSpace = false;
+    pastBod = true;
+    line.append(s);
+  }
+
+  /**
+   * A start or end tag like {@code <math display="block">}, {@code </ref>} or {@code <br/>}.
+   */
+  private static final class Tag {
+    private final String name;
+    private final boolean closing;
+    private final boolean selfClosing;
+    /**
+     * position after the closing &gt;
+     */
+    private final int end;
+
+    private Tag(String name, boolean closing, boolean selfClosing, int end) {
+      this.name = name;
+      this.closing = closing;
+      this.selfClosing = selfClosing;
+      this.end = end;
+    }
+
+    private static Tag parse(String text, int from, int to) {
+      int i = from + 1;
+      final boolean closing = i < to && text.charAt(i) == '/';
+      if (closing) {
+        i++;
+      }
+      final int nameStart = i;
+      while (i < to && (Character.isLetterOrDigit(text.charAt(i)))) {
+        i++;
+      }
+      if (i == nameStart || i >= to || !Character.isLetter(text.charAt(nameStart))) {
+        return null;
+      }
+      final char next = text.charAt(i);
+      if (next != '>' && next != '/' && !Character.isWhitespace(next)) {
+        return null;
+      }
+      final int close = text.indexOf('>', i);
+      if (close < 0 || close >= to) {
+        return null;
+      }
+      final boolean selfClosing = text.charAt(close - 1) == '/';
+      return new Tag(text.substring(nameStart, i), closing, selfClosing, close + 1);
+    }
+  }
+}
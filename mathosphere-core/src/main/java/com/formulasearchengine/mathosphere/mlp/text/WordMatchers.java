@@ -0,0 +1,146 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.alexeygrigorev.rseq.XMatcher;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matchers for the words and POS tags of {@link Word}s.
+ * <p>
+ * Unlike the rseq {@code BeanMatchers}, the matchers access the properties directly instead of
+ * by reflection. POS tags are interned to small ids, so a matcher for a set of tags tests one bit,
+ * and a regular expression is evaluated once per distinct tag.
+ */
+public final class WordMatchers {
+
+  /**
+   * ids of the POS tags, tags are added when they are first seen
+   */
+  private static final Map<String, Integer> TAG_IDS = new ConcurrentHashMap<>();
+
+  private WordMatchers() {
+  }
+
+  /**
+   * @return the id of a POS tag, -1 for null
+   */
+  public static int tagId(String posTag) {
+    if (posTag == null) {
+      return -1;
+    }
+    final Integer id = TAG_IDS.get(posTag);
+    if (id != null) {
+      return id;
+    }
+    synchronized (TAG_IDS) {
+      return TAG_IDS.computeIfAbsent(posTag, tag -> TAG_IDS.size());
+    }
+  }
+
+  /**
+   * @return a new matcher that matches every word
+   */
+  public static XMatcher<Word> any() {
+    return new XMatcher<Word>() {
+      @Override
+      public boolean match(Word object) {
+        return true;
+      }
+    };
+  }
+
+  public static XMatcher<Word> word(String word) {
+    return new XMatcher<Word>() {
+      @Override
+      public boolean match(Word object) {
+        return Objects.equals(word, object.getWord());
+      }
+    };
+  }
+
+  public static XMatcher<Word> wordIn(Set<String> words) {
+    return new XMatcher<Word>() {
+      @Override
+      public boolean match(Word object) {
+        return words.contains(object.getWord());
+      }
+    };
+  }
+
+  public static XMatcher<Word> wordRegExp(String regexp) {
+    final Pattern pattern = Pattern.compile(regexp);
+    return new XMatcher<Word>() {
+      @Override
+      public boolean match(Word object) {
+        return object.getWord() != null && pattern.matcher(object.getWord()).matches();
+      }
+    };
+  }
+
+  public static XMatcher<Word> pos(String posTag) {
+    return posIn(posTag);
+  }
+
+  /**
+   * @param posTags POS tags, null matches the words without POS tag like the rseq
+   *                {@code BeanMatchers} do
+   */
+  public static XMatcher<Word> posIn(String... posTags) {
+    final BitSet ids = new BitSet();
+    boolean withNull = false;
+    for (String posTag : posTags) {
+      if (posTag == null) {
+        withNull = true;
+      } else {
+        ids.set(tagId(posTag));
+      }
+    }
+    final boolean matchesNull = withNull;
+    return new XMatcher<Word>() {
+      @Override
+      public boolean match(Word object) {
+        final int id = object.posTagId();
+        return id < 0 ? matchesNull : ids.get(id);
+      }
+    };
+  }
+
+  /**
+   * @param regexp regular expression that has to match the whole POS tag
+   */
+  public static XMatcher<Word> posRegExp(String regexp) {
+    final Pattern pattern = Pattern.compile(regexp);
+    return new XMatcher<Word>() {
+      /**
+       * results by tag id: 0 not evaluated yet, 1 matching, 2 not matching; copied on write
+       */
+      private volatile byte[] results = new byte[0];
+
+      @Override
+      public boolean match(Word object) {
+        final int id = object.posTagId();
+        if (id < 0) {
+          return false;
+        }
+        final byte[] known = results;
+        if (id < known.length && known[id] != 0) {
+          return known[id] == 1;
+        }
+        final boolean matches = pattern.matcher(object.getPosTag()).matches();
+        synchronized (this) {
+          final byte[] updated = Arrays.copyOf(results, Math.max(results.length, id + 1));
+          updated[id] = (byte) (matches ? 1 : 2);
+          results = updated;
+        }
+        return matches;
+      }
+    };
+  }
+}
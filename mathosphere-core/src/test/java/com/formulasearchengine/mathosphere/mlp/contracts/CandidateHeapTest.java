@@ -0,0 +1,55 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CandidateHeapTest {
+
+  @Test
+  public void testSameAsSorting() throws Exception {
+    final Random random = new Random(42);
+    for (int run = 0; run < 2000; run++) {
+      final int capacity = 1 + random.nextInt(10);
+      final int candidates = random.nextInt(30);
+      final CandidateHeap heap = new CandidateHeap(capacity);
+      final List<double[]> expected = new ArrayList<>();
+      for (int i = 0; i < candidates; i++) {
+        // few distinct scores, so that there are ties
+        final double score = random.nextInt(5) / 4d;
+        heap.add(score, i, random.nextInt(20));
+        expected.add(new double[]{score, i});
+      }
+      // stable sort from the highest score, then the first ones
+      expected.sort(Comparator.comparingDouble((double[] c) -> c[0]).reversed());
+      heap.sort();
+      assertEquals(Math.min(capacity, candidates), heap.size());
+      for (int i = 0; i < heap.size(); i++) {
+        assertEquals(expected.get(i)[0], heap.getScore(i), 0);
+        assertEquals((int) expected.get(i)[1], heap.getSentence(i));
+      }
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    final CandidateHeap heap = new CandidateHeap(2);
+    heap.add(0.5, 0, 1);
+    heap.add(0.7, 1, 2);
+    heap.add(0.6, 2, 3);
+    heap.sort();
+    assertEquals(1, heap.getSentence(0));
+    assertEquals(2, heap.getSentence(1));
+    assertEquals(3, heap.getPosition(1));
+    heap.clear();
+    assertEquals(0, heap.size());
+    heap.add(0.1, 5, 5);
+    assertEquals(1, heap.size());
+    assertEquals(5, heap.getSentence(0));
+  }
+}
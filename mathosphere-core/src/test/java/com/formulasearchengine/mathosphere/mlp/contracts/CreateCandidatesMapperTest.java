@@ -1,20 +1,32 @@
 package com.formulasearchengine.mathosphere.mlp.contracts;
 
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
+import com.google.common.primitives.Ints;
 
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
 import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.pojos.*;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierIndex;
+import com.formulasearchengine.mathosphere.mlp.text.PosTag;
 
 import org.junit.Test;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class CreateCandidatesMapperTest {
 
@@ -33,6 +45,198 @@ public class CreateCandidatesMapperTest {
     }
   }
 
+  /**
+   * Compares the candidates of the index with the ones of the previous scan over all sentences of
+   * each identifier, see {@link #scan}, on generated documents.
+   */
+  @Test
+  public void testSameAsScan() throws Exception {
+    final Random random = new Random(42);
+    for (double threshold : new double[]{0, config.getThreshold()}) {
+      final BaseConfig cfg = new BaseConfig(config.getModel(), config.getLanguage(), config.getAlpha(),
+          config.getBeta(), config.getGamma(), threshold, false);
+      final CreateCandidatesMapper candidatesMapper = new CreateCandidatesMapper(cfg);
+      for (int docNo = 0; docNo < 200; docNo++) {
+        final ParsedWikiDocument doc = generate(random);
+        final List<Relation> expected = scan(cfg, doc);
+        final List<Relation> actual = candidatesMapper.map(doc).getRelations();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          final Relation e = expected.get(i);
+          final Relation a = actual.get(i);
+          final String message = "relation " + i + " of document " + docNo;
+          assertEquals(message, e.getIdentifier(), a.getIdentifier());
+          assertEquals(message, e.getDefinition(), a.getDefinition());
+          assertEquals(message, e.getIdentifierPosition(), a.getIdentifierPosition());
+          assertEquals(message, e.getWordPosition(), a.getWordPosition());
+          assertEquals(message, e.getScore(), a.getScore(), 0);
+          assertSame(message, e.getSentence(), a.getSentence());
+        }
+      }
+    }
+  }
+
+  private static final String[] IDENTIFIERS = {"x", "E", "m", "\\alpha", "v_0"};
+
+  /**
+   * words and their POS tags, with candidates that only differ in case, short and excluded words
+   */
+  private static final String[][] WORDS = {
+      {"energy", "NN"}, {"Energy", "NNP"}, {"mass", "NN"}, {"masses", "NNS"}, {"speed of light", "NN+"},
+      {"kinetic energy", "NP"}, {"LINK_1", "LNK"}, {"particle", "NN"}, {"is", "VBZ"}, {"the", "DT"},
+      {"of", "IN"}, {"large", "JJ"}, {"ab", "NN"}, {"<b>", "NN"}, {"Particles", "NNPS"}, {",", ","}};
+
+  private static ParsedWikiDocument generate(Random random) {
+    final List<Sentence> sentences = new ArrayList<>();
+    final Multiset<String> identifiers = HashMultiset.create();
+    final int size = random.nextInt(12);
+    for (int s = 0; s < size; s++) {
+      final List<Word> words = new ArrayList<>();
+      final Set<String> sentenceIdentifiers = new HashSet<>();
+      final int length = random.nextInt(25);
+      for (int i = 0; i < length; i++) {
+        if (random.nextInt(5) == 0) {
+          final String identifier = IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+          words.add(new Word(identifier, PosTag.IDENTIFIER));
+          sentenceIdentifiers.add(identifier);
+        } else {
+          final String[] word = WORDS[random.nextInt(WORDS.length)];
+          words.add(new Word(word[0], word[1]));
+        }
+      }
+      if (random.nextInt(4) == 0) {
+        // an identifier of a formula of the sentence, which is not one of its words
+        sentenceIdentifiers.add(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)]);
+      }
+      identifiers.addAll(sentenceIdentifiers);
+      sentences.add(new Sentence(words, sentenceIdentifiers, new ArrayList<>()));
+    }
+    // an identifier without sentences
+    identifiers.add("y");
+    return new ParsedWikiDocument("generated", identifiers, new ArrayList<>(), sentences);
+  }
+
+  /**
+   * The candidate generation before the identifier index: for every identifier, the sentences of
+   * the document are scanned for the identifier, the identifier positions and the frequencies of
+   * the candidates. Without definition merging and without a maximal number of candidates.
+   */
+  static List<Relation> scan(BaseConfig config, ParsedWikiDocument doc) {
+    final List<Relation> relations = new ArrayList<>();
+    for (String identifier : doc.getIdentifiers().elementSet()) {
+      final List<Sentence> sentences = findSentencesWithIdentifier(doc.getSentences(), identifier);
+      final Multiset<String> frequencies = HashMultiset.create();
+      for (Sentence sentence : sentences) {
+        for (Word word : sentence.getWords()) {
+          if (isCandidate(word)) {
+            frequencies.add(word.getWord().toLowerCase());
+          }
+        }
+      }
+      if (frequencies.isEmpty()) {
+        continue;
+      }
+      final int maxFrequency = calculateMax(frequencies);
+      final List<Relation> candidates = new ArrayList<>();
+      for (int sentenceIdx = 0; sentenceIdx < sentences.size(); sentenceIdx++) {
+        final Sentence sentence = sentences.get(sentenceIdx);
+        final List<Word> words = sentence.getWords();
+        final List<Integer> positions = identifierPositions(words, identifier);
+        for (int wordIdx = 0; wordIdx < words.size(); wordIdx++) {
+          final Word word = words.get(wordIdx);
+          if (!isCandidate(word)) {
+            continue;
+          }
+          final int identifierPosition = closestIdentifierPosition(positions, wordIdx);
+          final int distance = Math.abs(identifierPosition - wordIdx);
+          final int freq = frequencies.count(word.getWord().toLowerCase());
+          final Relation relation = new Relation();
+          relation.setIdentifier(identifier);
+          relation.setIdentifierPosition(identifierPosition);
+          relation.setDefinition(word, doc);
+          relation.setWordPosition(wordIdx);
+          relation.setScore(score(config, distance, freq, maxFrequency, sentenceIdx));
+          relation.setSentence(sentence);
+          candidates.add(relation);
+        }
+      }
+      Collections.sort(candidates);
+      Collections.reverse(candidates);
+      for (Relation relation : candidates) {
+        if (relation.getScore() >= config.getThreshold()) {
+          relations.add(relation);
+        }
+      }
+    }
+    return relations;
+  }
+
+  private static double score(BaseConfig config, int distance, int frequency, int maxFrequency, int sentenceIdx) {
+    final double std1 = Math.sqrt(Math.pow(5d, 2d) / (2d * Math.log(2)));
+    final double dist = Math.exp(-distance * distance / (2 * std1 * std1));
+    final double std2 = Math.sqrt(Math.pow(3d, 2d) / (2d * Math.log(2)));
+    final double seq = Math.exp(-sentenceIdx * sentenceIdx / (2 * std2 * std2));
+    final double relativeFrequency = (double) frequency / (double) maxFrequency;
+    return (config.getAlpha() * dist + config.getBeta() * seq + config.getGamma() * relativeFrequency)
+        / (config.getAlpha() + config.getBeta() + config.getGamma());
+  }
+
+  private static boolean isCandidate(Word word) {
+    return word.getWord().length() >= 3 && !word.getWord().contains("<")
+        && word.getPosTag().matches("NN[PS]{0,2}|NP\\+?|NN\\+|LNK");
+  }
+
+  /**
+   * Find all occurrences of the identifier in the sentence. Like the other helpers of
+   * {@link #scan}, it is only the reference for the comparisons with the identifier index.
+   */
+  public static List<Integer> identifierPositions(List<Word> sentence, String identifier) {
+    List<Integer> result = Lists.newArrayList();
+    for (int wordIdx = 0; wordIdx < sentence.size(); wordIdx++) {
+      if (Objects.equals(identifier, sentence.get(wordIdx).getWord())) {
+        result.add(wordIdx);
+      }
+    }
+    return result;
+  }
+
+  private static int closestIdentifierPosition(List<Integer> positions, int wordIdx) {
+    if (positions.isEmpty()) {
+      return -1;
+    }
+    Iterator<Integer> it = positions.iterator();
+    int bestPos = it.next();
+    int bestDist = Math.abs(wordIdx - bestPos);
+    while (it.hasNext()) {
+      int pos = it.next();
+      int dist = Math.abs(wordIdx - pos);
+      if (dist < bestDist) {
+        bestDist = dist;
+        bestPos = pos;
+      }
+    }
+    return bestPos;
+  }
+
+  private static int calculateMax(Multiset<String> frequencies) {
+    Multiset.Entry<String> max = Collections.max(frequencies.entrySet(),
+        (e1, e2) -> Integer.compare(e1.getCount(), e2.getCount()));
+    return max.getCount();
+  }
+
+  /**
+   * Find all sentences with the given identifier.
+   */
+  public static List<Sentence> findSentencesWithIdentifier(List<Sentence> sentences, String identifier) {
+    List<Sentence> result = Lists.newArrayList();
+    for (Sentence sentence : sentences) {
+      if (sentence.contains(identifier)) {
+        result.add(sentence);
+      }
+    }
+    return result;
+  }
+
   public static ParsedWikiDocument read(String testFile) throws Exception {
     return read(testFile, 0);
   }
@@ -45,28 +249,32 @@ public class CreateCandidatesMapperTest {
 
   @Test
   public void calculateMaxFrequency() {
-    Multiset<String> set = HashMultiset.create(Arrays.asList("a", "b", "c", "a", "a", "c"));
-    int actual = CreateCandidatesMapper.calculateMax(set);
+    final Sentence sentence = new Sentence(Arrays.asList(w("x", PosTag.IDENTIFIER), w("a", "NN"), w("b", "NN"),
+        w("c", "NN"), w("a", "NN"), w("a", "NN"), w("c", "NN")), Collections.singleton("x"), new ArrayList<>());
+    final IdentifierIndex index = new IdentifierIndex(Collections.singletonList(sentence),
+        w -> !PosTag.IDENTIFIER.equals(w.getPosTag()));
+    final int[] frequencies = new int[index.getTermCount()];
+    int actual = CreateCandidatesMapper.countFrequencies(index, frequencies, index.getPostings("x"));
     assertEquals(3, actual);
   }
 
   @Test
   public void closestIdentifierPosition() {
-    List<Integer> positions = Arrays.asList(0, 10, 25);
+    int[] positions = {0, 10, 25};
     int actual = CreateCandidatesMapper.closestIdentifierPosition(positions, 4);
     assertEquals(0, actual);
   }
 
   @Test
   public void closestIdentifierPosition_oneElement() {
-    List<Integer> positions = Arrays.asList(10);
+    int[] positions = {10};
     int actual = CreateCandidatesMapper.closestIdentifierPosition(positions, 4);
     assertEquals(10, actual);
   }
 
   @Test
   public void closestIdentifierPosition_lastElement() {
-    List<Integer> positions = Arrays.asList(0, 10, 25);
+    int[] positions = {0, 10, 25};
     int actual = CreateCandidatesMapper.closestIdentifierPosition(positions, 20);
     assertEquals(25, actual);
   }
@@ -77,7 +285,7 @@ public class CreateCandidatesMapperTest {
         w("wave function", "LNK"), w(",", ","), w("i", "FW"), w("is", "VBZ"), w("the", "DT"),
         w("imaginary unit", "LNK"), w(",", ","), w("ħ", "NN"), w("is", "VBZ"), w("the", "DT"),
         w("reduced Planck constant", "LNK"));
-    List<Integer> identifierPositions = CreateCandidatesMapper.identifierPositions(sentence, "Ψ");
+    List<Integer> identifierPositions = indexedPositions(sentence, "Ψ");
     assertEquals(Arrays.asList(0), identifierPositions);
   }
 
@@ -87,7 +295,7 @@ public class CreateCandidatesMapperTest {
         w("wave function", "LNK"), w(",", ","), w("Ψ", "FW"), w("is", "VBZ"), w("the", "DT"),
         w("imaginary unit", "LNK"), w(",", ","), w("Ψ", "NN"), w("is", "VBZ"), w("the", "DT"),
         w("reduced Planck constant", "LNK"));
-    List<Integer> identifierPositions = CreateCandidatesMapper.identifierPositions(sentence, "Ψ");
+    List<Integer> identifierPositions = indexedPositions(sentence, "Ψ");
     assertEquals(Arrays.asList(0, 5, 10), identifierPositions);
   }
 
@@ -97,10 +305,20 @@ public class CreateCandidatesMapperTest {
         w("wave function", "LNK"), w(",", ","), w("i", "FW"), w("is", "VBZ"), w("the", "DT"),
         w("imaginary unit", "LNK"), w(",", ","), w("ħ", "NN"), w("is", "VBZ"), w("the", "DT"),
         w("reduced Planck constant", "LNK"));
-    List<Integer> identifierPositions = CreateCandidatesMapper.identifierPositions(sentence, "Ψ");
+    List<Integer> identifierPositions = indexedPositions(sentence, "Ψ");
     assertEquals(Collections.emptyList(), identifierPositions);
   }
 
+  /**
+   * @return the positions of the identifier that the index of a sentence with the identifier
+   * finds
+   */
+  private static List<Integer> indexedPositions(List<Word> words, String identifier) {
+    final Sentence sentence = new Sentence(words, Collections.singleton(identifier), new ArrayList<>());
+    final IdentifierIndex index = new IdentifierIndex(Collections.singletonList(sentence), w -> false);
+    return Ints.asList(index.getPostings(identifier).getPositions(0));
+  }
+
   public static Word w(String word, String tag) {
     return new Word(word, tag);
   }
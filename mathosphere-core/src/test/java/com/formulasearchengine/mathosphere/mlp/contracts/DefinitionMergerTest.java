@@ -0,0 +1,118 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares the hash based definition merging with the sort based one on random candidate lists.
+ */
+public class DefinitionMergerTest {
+
+  private static final String[] IDENTIFIERS = {"x", "y", "\\alpha"};
+
+  private static final String[] DEFINITIONS = {"energy", "Energy", "ENERGY", "mass", "Mass", "wave function",
+    "Wave Function", "İstanbul", "istanbul", "ıstanbul", "Σ", "σ", "ς", "K", "k", "K", "straße", "STRASSE",
+    "[[energy]]", "ϒ", "υ"};
+
+  @Test
+  public void testSameAsSortAndScan() throws Exception {
+    final Random random = new Random(42);
+    for (int run = 0; run < 5000; run++) {
+      final List<Relation> expected = randomCandidates(random);
+      final List<Relation> actual = new ArrayList<>();
+      for (Relation relation : expected) {
+        actual.add(copy(relation));
+      }
+      final List<Relation> originals = new ArrayList<>(actual);
+      reference(expected);
+      DefinitionMerger.merge(actual);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getIdentifier(), actual.get(i).getIdentifier());
+        assertEquals(expected.get(i).getDefinition(), actual.get(i).getDefinition());
+        assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0);
+        assertEquals(expected.get(i).getWordPosition(), actual.get(i).getWordPosition());
+        // the surviving candidates are the input instances
+        assertSame(originals.get(actual.get(i).getWordPosition()), actual.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testLargeMultiplicity() throws Exception {
+    final List<Relation> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      final Relation relation = new Relation("x", i % 2 == 0 ? "energy" : "Energy");
+      relation.setScore(1. / (i + 1));
+      relation.setWordPosition(i);
+      expected.add(relation);
+    }
+    final List<Relation> actual = new ArrayList<>();
+    for (Relation relation : expected) {
+      actual.add(copy(relation));
+    }
+    reference(expected);
+    DefinitionMerger.merge(actual);
+    assertEquals(1, actual.size());
+    assertEquals(expected.get(0).getScore(), actual.get(0).getScore(), 0);
+  }
+
+  private static List<Relation> randomCandidates(Random random) {
+    final int size = random.nextInt(40);
+    final List<Relation> candidates = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final Relation relation = new Relation(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)],
+        DEFINITIONS[random.nextInt(DEFINITIONS.length)]);
+      // few distinct scores, so that there are ties
+      relation.setScore(random.nextInt(8) / 7d);
+      relation.setWordPosition(i);
+      candidates.add(relation);
+    }
+    return candidates;
+  }
+
+  private static Relation copy(Relation relation) {
+    final Relation copy = new Relation(relation.getIdentifier(), relation.getDefinition());
+    copy.setScore(relation.getScore());
+    copy.setWordPosition(relation.getWordPosition());
+    return copy;
+  }
+
+  /**
+   * The definition merging as it was implemented by sorting the candidates by their definitions.
+   */
+  private static void reference(List<Relation> candidates) {
+    Collections.sort(candidates, Relation::compareNameScore);
+    final Iterator<Relation> iterator = candidates.iterator();
+    Relation lastLower = null;
+    Relation lastElement = null;
+    double decayFactor;
+    int multiplicity = 1;
+    while (iterator.hasNext()) {
+      final Relation relation = iterator.next();
+      Relation lower = new Relation(relation.getIdentifier(), relation.getDefinition().toLowerCase());
+      if (lastLower != null && lower.compareToName(lastLower) == 0) {
+        multiplicity++;
+        decayFactor = Math.pow(2, -1.3 * multiplicity);
+        lastElement.setScore(lastElement.getScore() + relation.getScore() * decayFactor);
+        iterator.remove();
+      } else {
+        multiplicity = 1;
+        relation.setScore(.722 * relation.getScore());
+        lastElement = relation;
+        lastLower = lower;
+      }
+    }
+    candidates.sort(Relation::compareTo);
+  }
+}
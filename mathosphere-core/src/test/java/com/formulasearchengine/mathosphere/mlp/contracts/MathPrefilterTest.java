@@ -0,0 +1,46 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MathPrefilterTest {
+
+  private static boolean containsMath(String page) {
+    final byte[] bytes = ("<page>" + page + "</page>").getBytes(StandardCharsets.UTF_8);
+    return MathPrefilter.containsMath(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void testMarkers() throws Exception {
+    assertTrue(containsMath("where &lt;math&gt;E=mc^2&lt;/math&gt; is"));
+    assertTrue(containsMath("where <math>E=mc^2</math> is"));
+    assertTrue(containsMath("where {{math|''E''}} is"));
+    assertTrue(containsMath("where {{Math|''E''}} is"));
+    assertTrue(containsMath("where {{mvar|E}} is"));
+    assertTrue(containsMath("water &lt;ce&gt;H2O&lt;/ce&gt;"));
+    assertTrue(containsMath("water <ce>H2O</ce>"));
+    assertTrue(containsMath("water &lt;chem&gt;H2O&lt;/chem&gt;"));
+    assertTrue(containsMath("&LT;MATH&GT;x&LT;/MATH&GT;"));
+  }
+
+  @Test
+  public void testNoMarkers() throws Exception {
+    assertFalse(containsMath("plain text with &lt;center&gt; and {{cite|math}} and &amp;lt;"));
+    assertFalse(containsMath("&lt;mat"));
+    assertFalse(containsMath(""));
+  }
+
+  @Test
+  public void testAccept() throws Exception {
+    final byte[] bytes = "no formula".getBytes(StandardCharsets.UTF_8);
+    assertTrue(new MathPrefilter(false).accept(bytes, 0, bytes.length));
+    assertFalse(new MathPrefilter(true).accept(bytes, 0, bytes.length));
+    final byte[] math = "xx<math>x</math>".getBytes(StandardCharsets.UTF_8);
+    assertTrue(new MathPrefilter(true).accept(math, 2, math.length - 2));
+    assertFalse(new MathPrefilter(true).accept(math, 3, math.length - 3));
+  }
+}
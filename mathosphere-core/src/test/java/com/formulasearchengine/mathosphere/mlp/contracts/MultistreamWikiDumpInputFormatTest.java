@@ -0,0 +1,118 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+import com.google.common.io.Files;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.flink.api.common.io.FileInputFormat;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.core.fs.FileInputSplit;
+import org.apache.flink.core.fs.Path;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultistreamWikiDumpInputFormatTest {
+
+  private static byte[] compress(String part) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new BZip2CompressorOutputStream(bytes)) {
+      out.write(part.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes the dump as multistream file with one stream per page like the Wikimedia dumps.
+   */
+  private static void writeMultistream(String dump, File target, File index) throws IOException {
+    List<String> parts = new ArrayList<>();
+    int pageStart = dump.indexOf("<page>");
+    parts.add(dump.substring(0, pageStart));
+    int pageEnd;
+    while ((pageEnd = dump.indexOf("</page>", pageStart)) >= 0) {
+      pageEnd += "</page>".length();
+      parts.add(dump.substring(pageStart, pageEnd));
+      pageStart = pageEnd;
+    }
+    parts.add(dump.substring(pageStart));
+    long offset = 0;
+    StringBuilder indexContent = new StringBuilder();
+    try (OutputStream out = new FileOutputStream(target)) {
+      for (int i = 0; i < parts.size(); i++) {
+        byte[] stream = compress(parts.get(i));
+        if (i > 0 && i < parts.size() - 1) {
+          indexContent.append(offset).append(':').append(i).append(":Page ").append(i).append('\n');
+        }
+        out.write(stream);
+        offset += stream.length;
+      }
+    }
+    Files.write(indexContent.toString().getBytes(StandardCharsets.UTF_8), index);
+  }
+
+  private static List<RawWikiDocument> readAll(FileInputFormat<RawWikiDocument> format,
+                                               int minNumSplits) throws Exception {
+    format.configure(new Configuration());
+    List<RawWikiDocument> docs = new ArrayList<>();
+    for (FileInputSplit split : format.createInputSplits(minNumSplits)) {
+      format.open(split);
+      while (!format.reachedEnd()) {
+        RawWikiDocument doc = format.nextRecord(new RawWikiDocument());
+        if (doc != null) {
+          docs.add(doc);
+        }
+      }
+      format.close();
+    }
+    return docs;
+  }
+
+  @Test
+  public void testSameAsPlainDump() throws Exception {
+    final File plain = new File(PatternMatchingRelationFinder.class.getResource("augmentendwikitext.xml").toURI());
+    final String dump = IOUtils.toString(plain.toURI(), StandardCharsets.UTF_8);
+    final File temp = Files.createTempDir();
+    final File multistream = new File(temp, "multistream.xml.bz2");
+    final File index = new File(temp, "multistream-index.txt");
+    writeMultistream(dump, multistream, index);
+
+    List<RawWikiDocument> expected = readAll(new WikiDumpInputFormat(new Path(plain.toURI())), 1);
+    for (int minNumSplits = 1; minNumSplits <= 3; minNumSplits++) {
+      List<RawWikiDocument> real = readAll(new MultistreamWikiDumpInputFormat(new Path(multistream.toURI()),
+          new Path(index.toURI()), 10), minNumSplits);
+      assertEquals(expected.size(), real.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).title, real.get(i).title);
+        assertEquals(expected.get(i).text, real.get(i).text);
+      }
+    }
+  }
+
+  @Test
+  public void testCreateInputSplits() throws Exception {
+    final File plain = new File(PatternMatchingRelationFinder.class.getResource("augmentendwikitext.xml").toURI());
+    final File temp = Files.createTempDir();
+    final File multistream = new File(temp, "multistream.xml.bz2");
+    final File index = new File(temp, "multistream-index.txt");
+    writeMultistream(IOUtils.toString(plain.toURI(), StandardCharsets.UTF_8), multistream, index);
+    MultistreamWikiDumpInputFormat format = new MultistreamWikiDumpInputFormat(new Path(multistream.toURI()),
+        new Path(index.toURI()), 1);
+    format.configure(new Configuration());
+    final FileInputSplit[] splits = format.createInputSplits(1);
+    assertEquals(2, splits.length);
+    assertEquals(splits[0].getStart() + splits[0].getLength(), splits[1].getStart());
+    assertEquals(multistream.length(), splits[1].getStart() + splits[1].getLength());
+  }
+}
@@ -0,0 +1,98 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
+import com.formulasearchengine.mathosphere.mlp.flink.ListCollector;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple5;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RevisionManifestTest {
+
+  private static final String FINGERPRINT = "0123456789abcdef0123456789abcdef";
+
+  private static RawWikiDocument doc(String title, String sha1) {
+    RawWikiDocument doc = new RawWikiDocument(title, 0, "text");
+    doc.pageId = 42;
+    doc.revisionId = 4711;
+    doc.sha1 = sha1;
+    return doc;
+  }
+
+  @Test
+  public void testManifestPath() throws Exception {
+    assertEquals("/tmp/out.manifest", RevisionManifest.manifestPath("/tmp/out"));
+    assertEquals("/tmp/out.manifest", RevisionManifest.manifestPath("/tmp/out/"));
+  }
+
+  @Test
+  public void testEntry() throws Exception {
+    final RevisionManifest.EntryMapper mapper = new RevisionManifest.EntryMapper(FINGERPRINT);
+    assertEquals(new Tuple5<>(42L, 4711L, "abc", "Title", FINGERPRINT), mapper.map(doc("Title", "abc")));
+    assertEquals(new Tuple5<>(42L, 4711L, "", "Title", FINGERPRINT), mapper.map(doc("Title", null)));
+  }
+
+  @Test
+  public void testConfigFingerprint() throws Exception {
+    final FlinkMlpCommandConfig config = new FlinkMlpCommandConfig("in", "out");
+    final String fingerprint = RevisionManifest.configFingerprint(config);
+    // the location of the run does not change the output
+    final FlinkMlpCommandConfig moved = new FlinkMlpCommandConfig("other/in", "other/out");
+    moved.setPreviousOutputDir("out");
+    assertEquals(fingerprint, RevisionManifest.configFingerprint(moved));
+    // the extraction options do
+    final FlinkMlpCommandConfig changed = new FlinkMlpCommandConfig("in", "out");
+    changed.setMaxCandidates(5);
+    assertNotEquals(fingerprint, RevisionManifest.configFingerprint(changed));
+  }
+
+  @Test
+  public void testPreviousOutputImpliesIncremental() throws Exception {
+    final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.from(
+        new String[] {"-in", "in", "-out", "out", "--previousOutputDir", "previous"});
+    assertTrue(config.isIncremental());
+  }
+
+  @Test
+  public void testChangedAndUnchanged() throws Exception {
+    final Tuple5<Long, Long, String, String, String> previous = new Tuple5<>(42L, 4700L, "abc", "Title", FINGERPRINT);
+    final Tuple5<Long, Long, String, String, String> otherConfig = new Tuple5<>(42L, 4700L, "abc", "Title", "");
+    final RevisionManifest.ChangedPageFilter changed = new RevisionManifest.ChangedPageFilter(FINGERPRINT);
+    final RevisionManifest.UnchangedPageFilter unchanged = new RevisionManifest.UnchangedPageFilter(FINGERPRINT);
+    final ListCollector<RawWikiDocument> changedOut = new ListCollector<>();
+    final ListCollector<RawWikiDocument> unchangedOut = new ListCollector<>();
+    for (RawWikiDocument doc : new RawWikiDocument[] {doc("Title", "abc"), doc("Title", "def"),
+        doc("Renamed", "abc"), doc("Title", null)}) {
+      changed.join(doc, previous, changedOut);
+      unchanged.join(doc, previous, unchangedOut);
+    }
+    changed.join(doc("New", "abc"), null, changedOut);
+    changed.join(doc("Title", "abc"), otherConfig, changedOut);
+    unchanged.join(doc("Title", "abc"), otherConfig, unchangedOut);
+    assertEquals(5, changedOut.getList().size());
+    assertEquals(1, unchangedOut.getList().size());
+    assertEquals("Title", unchangedOut.getList().get(0).title);
+  }
+
+  @Test
+  public void testMissingOutput() throws Exception {
+    final RevisionManifest.MissingOutputFilter missing = new RevisionManifest.MissingOutputFilter();
+    final ListCollector<RawWikiDocument> out = new ListCollector<>();
+    missing.join(doc("Title", "abc"), new Tuple2<>("Title", "{}"), out);
+    assertEquals(0, out.getList().size());
+    missing.join(doc("Lost", "abc"), null, out);
+    assertEquals(1, out.getList().size());
+    assertEquals("Lost", out.getList().get(0).title);
+  }
+
+  @Test
+  public void testOutputTitle() throws Exception {
+    final String json = "{\"title\":\"Gas constant\",\"relations\":[]}";
+    assertEquals(new Tuple2<>("Gas constant", json), new RevisionManifest.OutputTitleMapper().map(json));
+  }
+}
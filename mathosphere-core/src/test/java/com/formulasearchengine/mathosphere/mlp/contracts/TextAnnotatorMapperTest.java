@@ -1,20 +1,26 @@
 package com.formulasearchengine.mathosphere.mlp.contracts;
 
 import com.google.common.base.Throwables;
+import com.sun.net.httpserver.HttpServer;
 
 import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
 import com.formulasearchengine.mathosphere.mlp.flink.ListCollector;
 import com.formulasearchengine.mathosphere.mlp.pojos.*;
+import com.formulasearchengine.mathosphere.mlp.text.IdentifierCache;
 import com.formulasearchengine.mathosphere.mlp.text.PosTag;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtilsTest;
 
 import org.junit.Test;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -112,4 +118,39 @@ public class TextAnnotatorMapperTest {
     assertEquals(expected, sentence.getWords());
   }
 
+  @Test
+  public void testOneTexvcinfoRequestPerFormula() throws Exception {
+    // local stub of texvcinfo that reports the letter "x" as the only identifier
+    final AtomicInteger requests = new AtomicInteger();
+    final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/get/texvcinfo/tex/", exchange -> {
+      requests.incrementAndGet();
+      final byte[] body = "{\"identifiers\":[\"x\"]}".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    final String url = "http://localhost:" + server.getAddress().getPort() + "/texvcinfo";
+    final TextAnnotatorMapper textAnnotator = new TextAnnotatorMapper(FlinkMlpCommandConfig.from(new String[]{
+        "-in", "c:/tmp/mlp/input/", "-out", "c:/tmp/mlp/output/", "--tex", "--texvcinfo", url,
+        "--texvcinfoConcurrency", "2"}));
+    try {
+      IdentifierCache.getShared().clear();
+      textAnnotator.open(null);
+      final String text = "The energy <math>x^2</math> of <math>x+1</math> is <math>x^2</math>.";
+      ParsedWikiDocument result = textAnnotator.map(new RawWikiDocument("some doc", 1, text));
+      assertEquals(3, result.getFormulas().size());
+      assertEquals(3, result.getIdentifiers().count("x"));
+      assertEquals(2, requests.get());
+      result = textAnnotator.map(new RawWikiDocument("other doc", 1, "The value <math>x-1</math> is small."));
+      assertEquals(1, result.getIdentifiers().count("x"));
+      assertEquals(3, requests.get());
+    } finally {
+      textAnnotator.close();
+      server.stop(0);
+    }
+  }
+
 }
@@ -0,0 +1,78 @@
+package com.formulasearchengine.mathosphere.mlp.contracts;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.flink.ListCollector;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.core.fs.FileInputSplit;
+import org.apache.flink.core.fs.Path;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class WikiDumpInputFormatTest {
+
+  private static List<RawWikiDocument> readAll(String resource, int minNumSplits) throws Exception {
+    final File file = new File(PatternMatchingRelationFinder.class.getResource(resource).toURI());
+    WikiDumpInputFormat format = new WikiDumpInputFormat(new Path(file.toURI()));
+    format.configure(new Configuration());
+    List<RawWikiDocument> docs = new ArrayList<>();
+    for (FileInputSplit split : format.createInputSplits(minNumSplits)) {
+      format.open(split);
+      while (!format.reachedEnd()) {
+        RawWikiDocument doc = format.nextRecord(new RawWikiDocument());
+        if (doc != null) {
+          docs.add(doc);
+        }
+      }
+      format.close();
+    }
+    return docs;
+  }
+
+  private static List<RawWikiDocument> extractWithMapper(String resource) throws Exception {
+    String rawInput = IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream(resource), "UTF-8");
+    TextExtractorMapper textExtractor = new TextExtractorMapper();
+    ListCollector<RawWikiDocument> out = new ListCollector<>();
+    for (String page : rawInput.split("</page>")) {
+      textExtractor.flatMap(page, out);
+    }
+    return out.getList();
+  }
+
+  private static void assertSameDocuments(String resource, int minNumSplits) throws Exception {
+    List<RawWikiDocument> expected = extractWithMapper(resource);
+    List<RawWikiDocument> real = readAll(resource, minNumSplits);
+    assertEquals(expected.size(), real.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).title, real.get(i).title);
+      assertEquals(expected.get(i).namespace, real.get(i).namespace);
+      assertEquals(expected.get(i).text, real.get(i).text);
+    }
+  }
+
+  @Test
+  public void testSingleSplit() throws Exception {
+    assertSameDocuments("augmentendwikitext.xml", 1);
+  }
+
+  @Test
+  public void testManySplits() throws Exception {
+    assertSameDocuments("augmentendwikitext.xml", 7);
+  }
+
+  @Test
+  public void testGer() throws Exception {
+    final String expected = IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream("text/deText.txt"), "UTF-8");
+    List<RawWikiDocument> docs = readAll("dewikimath-20151213130534.xml", 3);
+    assertEquals(1, docs.size());
+    assertEquals("Clapeyron-Gleichung", docs.get(0).title);
+    assertEquals(expected, docs.get(0).text);
+  }
+}
@@ -0,0 +1,159 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyParseCacheTest {
+
+  /**
+   * "E is the energy": E <- energy -> is, the <- energy
+   */
+  private static final List<Word> SENTENCE = Lists.newArrayList(
+      new Word("E", "ID"), new Word("is", "VBZ"), new Word("the", "DT"), new Word("energy", "NN"));
+
+  private static final DependencyTree TREE = DependencyTree.of(new int[]{4, 4, 4, 0});
+
+  @Test
+  public void testPath() throws Exception {
+    assertArrayEquals(new int[]{1, 4}, TREE.getPath(1, 4));
+    assertArrayEquals(new int[]{4, 1}, TREE.getPath(4, 1));
+    assertArrayEquals(new int[]{1, 4, 3}, TREE.getPath(1, 3));
+    assertArrayEquals(new int[]{2}, TREE.getPath(2, 2));
+    DependencyTree deep = DependencyTree.of(new int[]{2, 0, 2, 3, 4, -1});
+    assertArrayEquals(new int[]{1, 2, 3, 4, 5}, deep.getPath(1, 5));
+    assertArrayEquals(new int[]{5, 4, 3}, deep.getPath(5, 3));
+    assertNull(deep.getPath(1, 6));
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    DependencyParseCache cache = new DependencyParseCache(10);
+    assertNull(cache.get(SENTENCE));
+    cache.put(SENTENCE, TREE);
+    assertEquals(TREE, cache.get(SENTENCE));
+    // the tags are part of the input of the parser
+    List<Word> retagged = Lists.newArrayList(SENTENCE);
+    retagged.set(1, new Word("is", "VB"));
+    assertNull(cache.get(retagged));
+    assertEquals(1, cache.getStats().hitCount());
+    assertEquals(2, cache.getStats().missCount());
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    final Path file = new File(Files.createTempDir(), "dependencies.cache").toPath();
+    DependencyParseCache cache = new DependencyParseCache(10);
+    cache.put(SENTENCE, TREE);
+    assertEquals(1, cache.save(file));
+
+    DependencyParseCache other = new DependencyParseCache(10);
+    List<Word> sentence = Lists.newArrayList(new Word("m", "ID"), new Word("mass", "NN"));
+    other.put(sentence, DependencyTree.of(new int[]{2, 0}));
+    // the trees in the file are kept
+    assertEquals(2, other.save(file));
+
+    DependencyParseCache loaded = new DependencyParseCache(10);
+    assertEquals(2, loaded.load(file));
+    assertEquals(TREE, loaded.get(SENTENCE));
+    assertArrayEquals(new int[]{1, 2}, loaded.get(sentence).getPath(1, 2));
+  }
+
+  /**
+   * The saved file holds the trees of the cache and the newest trees of the file, no more than
+   * the cache holds.
+   */
+  @Test
+  public void testSaveIsCapped() throws Exception {
+    final Path file = new File(Files.createTempDir(), "dependencies.cache").toPath();
+    final List<List<Word>> sentences = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      sentences.add(Lists.newArrayList(new Word("x" + i, "ID"), new Word("is", "VBZ")));
+    }
+    for (int i = 0; i < 3; i++) {
+      DependencyParseCache cache = new DependencyParseCache(10);
+      cache.put(sentences.get(i), DependencyTree.of(new int[]{2, 0}));
+      assertEquals(i + 1, cache.save(file));
+    }
+    DependencyParseCache small = new DependencyParseCache(2);
+    small.put(sentences.get(3), DependencyTree.of(new int[]{2, 0}));
+    assertEquals(2, small.save(file));
+
+    DependencyParseCache loaded = new DependencyParseCache(10);
+    assertEquals(2, loaded.load(file));
+    assertNull(loaded.get(sentences.get(0)));
+    assertNull(loaded.get(sentences.get(1)));
+    assertNotNull(loaded.get(sentences.get(2)));
+    assertNotNull(loaded.get(sentences.get(3)));
+  }
+
+  /**
+   * Tasks that save their caches to the same file at the same time keep the trees of each other.
+   */
+  @Test
+  public void testConcurrentSaves() throws Exception {
+    final Path file = new File(Files.createTempDir(), "dependencies.cache").toPath();
+    final List<List<Word>> sentences = new ArrayList<>();
+    final List<Thread> tasks = new ArrayList<>();
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    for (int task = 0; task < 8; task++) {
+      final List<Word> sentence = Lists.newArrayList(new Word("x" + task, "ID"), new Word("is", "VBZ"));
+      sentences.add(sentence);
+      final DependencyParseCache cache = new DependencyParseCache(10);
+      cache.put(sentence, DependencyTree.of(new int[]{2, 0}));
+      tasks.add(new Thread(() -> {
+        try {
+          cache.save(file);
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      }));
+    }
+    tasks.forEach(Thread::start);
+    for (Thread task : tasks) {
+      task.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+    assertTrue(DependencyParseCache.lockFile(file).toFile().exists());
+    DependencyParseCache loaded = new DependencyParseCache(10);
+    assertEquals(sentences.size(), loaded.load(file));
+    for (List<Word> sentence : sentences) {
+      assertNotNull(loaded.get(sentence));
+    }
+  }
+
+  @Test
+  public void testTruncatedRecord() throws Exception {
+    final Path file = new File(Files.createTempDir(), "dependencies.cache").toPath();
+    DependencyParseCache cache = new DependencyParseCache(10);
+    cache.put(SENTENCE, TREE);
+    cache.save(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(raf.length() - 2);
+    }
+    DependencyParseCache loaded = new DependencyParseCache(10);
+    assertEquals(0, loaded.load(file));
+    assertNull(loaded.get(SENTENCE));
+  }
+
+  @Test
+  public void testMissingFile() throws Exception {
+    final Path file = new File(Files.createTempDir(), "dependencies.cache").toPath();
+    assertEquals(0, new DependencyParseCache(10).load(file));
+  }
+}
@@ -0,0 +1,52 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
+import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapperTest;
+import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
+
+import org.junit.Test;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyTreeParserTest {
+
+  private static final Logger LOGGER = LogManager.getLogger(DependencyTreeParserTest.class.getName());
+
+  static final String MODEL = "edu/stanford/nlp/models/parser/nndep/english_UD.gz";
+
+  /**
+   * Parses the sentences of a test document on 4 threads, several times so that the threads parse
+   * at the same time, and compares the trees with the ones parsed on the calling thread.
+   */
+  @Test
+  public void testParallelSameAsSequential() throws Exception {
+    final List<Sentence> sentences = CreateCandidatesMapperTest
+        .read("com/formulasearchengine/mathosphere/mlp/augmentendwikitext.xml").getSentences();
+    assertTrue(sentences.size() > 10);
+    final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.test();
+    config.setDependencyCacheSize(0);
+    final Map<Sentence, DependencyTree> expected;
+    try (DependencyTreeParser sequential = DependencyTreeParser.create(config, MODEL)) {
+      expected = sequential.parseAll(sentences);
+      for (Sentence sentence : sentences) {
+        assertEquals(expected.get(sentence), sequential.parse(sentence));
+      }
+    }
+    config.setDependencyParserThreads(4);
+    try (DependencyTreeParser parallel = DependencyTreeParser.create(config, MODEL)) {
+      for (int round = 0; round < 3; round++) {
+        final Map<Sentence, DependencyTree> actual = parallel.parseAll(sentences);
+        for (Sentence sentence : sentences) {
+          assertEquals(sentence.toString(), expected.get(sentence), actual.get(sentence));
+        }
+      }
+      LOGGER.info("parsed {} sentences on 4 threads", parallel.getParsedSentences());
+    }
+  }
+}
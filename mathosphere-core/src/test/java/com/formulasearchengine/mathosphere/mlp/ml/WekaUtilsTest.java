@@ -0,0 +1,138 @@
+package com.formulasearchengine.mathosphere.mlp.ml;
+
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
+import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapperTest;
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
+import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import org.junit.Test;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.formulasearchengine.mathosphere.mlp.ml.WekaUtils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WekaUtilsTest {
+
+  private static final Logger LOGGER = LogManager.getLogger(WekaUtilsTest.class.getName());
+
+  private static final double EPSILON = 1e-12;
+
+  /**
+   * Compares the dependency features computed on the cached {@link DependencyTree} of the sentences with the ones
+   * computed on the {@link SemanticGraph} of a new parse of the sentence for every relation, as before the cache, for
+   * the candidates of the test documents. The relations without a path in the graph, where the previous extraction
+   * failed, must get the empty dependency features.
+   */
+  @Test
+  public void testDependencyFeaturesSameAsSemanticGraph() throws Exception {
+    final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.test();
+    final DependencyParser reference = DependencyParser.loadFromModelFile(DependencyTreeParserTest.MODEL);
+    final WekaUtils wekaUtils = new WekaUtils();
+    int compared = 0;
+    int sameWord = 0;
+    int noPath = 0;
+    try (DependencyTreeParser parser = DependencyTreeParser.create(config, DependencyTreeParserTest.MODEL)) {
+      for (int docNo = 0; docNo < 2; docNo++) {
+        final WikiDocumentOutput doc = new CreateCandidatesMapper(config).map(
+            CreateCandidatesMapperTest.read("com/formulasearchengine/mathosphere/mlp/augmentendwikitext.xml", docNo));
+        // the test documents are no gold entries and have no qId
+        final Instances actual = wekaUtils.addRelationsToInstances(parser, doc.getRelations(), doc.getTitle(),
+            "", wekaUtils.createInstances("actual"), doc.getMaxSentenceLength());
+        final Instances expected = wekaUtils.createInstances("expected");
+        for (int i = 0; i < doc.getRelations().size(); i++) {
+          final Relation relation = doc.getRelations().get(i);
+          final Instance instance = actual.instance(i);
+          final String message = "relation " + relation + " of document " + docNo;
+          final double[] values = new double[expected.numAttributes()];
+          if (addSemanticGraphFeatures(wekaUtils, reference, values, expected, relation, doc.getMaxSentenceLength())) {
+            expected.add(new DenseInstance(1.0, values));
+            final Instance e = expected.lastInstance();
+            for (String attribute : new String[]{GRAPH_DISTANCE, INCOMING_TO_IDENTIFIER, INCOMING_TO_DEFINIEN}) {
+              assertEquals(message, e.value(expected.attribute(attribute)), instance.value(actual.attribute(attribute)), EPSILON);
+            }
+            for (String attribute : new String[]{SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER,
+                SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_DEFINIEN}) {
+              assertEquals(message, e.stringValue(expected.attribute(attribute)), instance.stringValue(actual.attribute(attribute)));
+            }
+            compared++;
+          } else {
+            assertEquals(message, 0, instance.value(actual.attribute(GRAPH_DISTANCE)), 0);
+            assertEquals(message, "", instance.stringValue(actual.attribute(SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER)));
+            if (relation.getIdentifierPosition() == relation.getWordPosition()) {
+              sameWord++;
+            } else {
+              noPath++;
+            }
+          }
+        }
+      }
+    }
+    LOGGER.info("compared the dependency features of {} relations, {} relations with identifier and definiens in the "
+        + "same word, {} relations without a path", compared, sameWord, noPath);
+    assertTrue(compared > 100);
+  }
+
+  /**
+   * The dependency features as they were added before the {@link DependencyTree}, on the {@link SemanticGraph} of the
+   * sentence. The sentence is parsed for every relation, since {@link WekaUtils#replaceWord(int, List, String)}
+   * changes the nodes of the graph.
+   *
+   * @return false if the graph has no path between identifier and definiens, the previous extraction failed then.
+   */
+  private static boolean addSemanticGraphFeatures(WekaUtils wekaUtils, DependencyParser parser, double[] values,
+                                                  Instances instances, Relation relation, double maxSentenceLength) {
+    List<TaggedWord> taggedSentence = new ArrayList<>();
+    for (Word word : relation.getSentence().getWords()) {
+      taggedSentence.add(new TaggedWord(word.getWord(), word.getPosTag()));
+    }
+    GrammaticalStructure dependencyTree = parser.predict(taggedSentence);
+    SemanticGraph semanticGraph = new SemanticGraph(dependencyTree.typedDependencies());
+    IndexedWord identifier = semanticGraph.getNodeByIndexSafe(relation.getIdentifierPosition() + 1);
+    IndexedWord definiens = semanticGraph.getNodeByIndexSafe(relation.getWordPosition() + 1);
+    if (identifier == null || definiens == null || identifier.equals(definiens)) {
+      return false;
+    }
+    //shortest edge path for distance
+    List<SemanticGraphEdge> edgesOnPath = semanticGraph.getShortestUndirectedPathEdges(identifier, definiens);
+    if (edgesOnPath == null) {
+      return false;
+    }
+    int distance = edgesOnPath.size();
+    values[instances.attribute(GRAPH_DISTANCE).index()] = (double) distance / maxSentenceLength;
+    //shortest node path for dependencies
+    List<IndexedWord> fromIdentifier = semanticGraph.getShortestUndirectedPathNodes(identifier, definiens);
+    wekaUtils.removeUnwanted(fromIdentifier);
+    List<IndexedWord> fromDefinien = new ArrayList<>(fromIdentifier);
+    Collections.reverse(fromDefinien);
+    //we don't want the first, since that would be the identifier
+    wekaUtils.replaceWord(definiens.index(), fromIdentifier, DEFINIENS_TEXT);
+    wekaUtils.replaceWord(identifier.index(), fromDefinien, IDENTIFIER_TEXT);
+
+    List<Word> threeFromIdentifier = wekaUtils.getDependencyWithLengthOfThree(fromIdentifier);
+    wekaUtils.addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_IDENTIFIER, wekaUtils.wordListToSimpleString(threeFromIdentifier));
+
+    List<Word> threeFromDefinien = wekaUtils.getDependencyWithLengthOfThree(fromDefinien);
+    wekaUtils.addStringValue(values, instances, SURFACE_TEXT_AND_POS_TAG_OF_DEPENDENCY_WITH_LENGTH_3_FROM_DEFINIEN, wekaUtils.wordListToSimpleString(threeFromDefinien));
+
+    values[instances.attribute(INCOMING_TO_IDENTIFIER).index()] = edgesOnPath.get(0).getDependent().equals(identifier) ? 1 : 0;
+    values[instances.attribute(INCOMING_TO_DEFINIEN).index()] = edgesOnPath.get(edgesOnPath.size() - 1).getDependent().equals(definiens) ? 1 : 0;
+    return true;
+  }
+}
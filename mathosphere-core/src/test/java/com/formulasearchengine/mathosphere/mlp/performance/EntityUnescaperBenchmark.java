@@ -0,0 +1,70 @@
+package com.formulasearchengine.mathosphere.mlp.performance;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.text.EntityUnescaper;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.text.translate.AggregateTranslator;
+import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
+import org.apache.commons.lang3.text.translate.EntityArrays;
+import org.apache.commons.lang3.text.translate.LookupTranslator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link EntityUnescaper} with the former commons-lang translator on the escaped
+ * wikitext of dump pages. Run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityUnescaperBenchmark {
+
+  private static final CharSequenceTranslator TRANSLATOR = new AggregateTranslator(
+      new LookupTranslator(EntityArrays.ISO8859_1_UNESCAPE()),
+      new LookupTranslator(EntityArrays.BASIC_UNESCAPE()),
+      new LookupTranslator(EntityArrays.HTML40_EXTENDED_UNESCAPE()));
+
+  @Param({"augmentendwikitext.xml", "dewikimath-20151213130534.xml"})
+  public String dump;
+
+  private String text;
+
+  @Setup
+  public void setUp() throws Exception {
+    final String xml = IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream(dump), "UTF-8");
+    // the escaped wikitext of the first page, as it is stored in the dump
+    final int start = xml.indexOf('>', xml.indexOf("<text")) + 1;
+    text = xml.substring(start, xml.indexOf("</text>", start));
+  }
+
+  @Benchmark
+  public String aggregateTranslator() {
+    return TRANSLATOR.translate(text);
+  }
+
+  @Benchmark
+  public String entityUnescaper() {
+    return EntityUnescaper.unescape(text);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(EntityUnescaperBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,83 @@
+package com.formulasearchengine.mathosphere.mlp.performance;
+
+import com.google.common.collect.Multiset;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.text.MathMLIdentifierExtractor;
+import com.formulasearchengine.mathosphere.mlp.text.MathMLUtils;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the StAX based {@link MathMLIdentifierExtractor} with the DOM and XPath based
+ * {@link MathMLUtils#parseWithXpath} on the MathML of the formulas of the evaluation dataset.
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MathMLIdentifierExtractionBenchmark {
+
+  private static final Pattern MATH = Pattern.compile("<math[^>]*>(.*?)</math>", Pattern.DOTALL);
+
+  private static final int FORMULAS = 500;
+
+  private final List<String> formulas = new ArrayList<>();
+
+  @Setup
+  public void setUp() throws Exception {
+    final String dataset = StringEscapeUtils.unescapeHtml4(IOUtils.toString(
+        PatternMatchingRelationFinder.class.getResourceAsStream("gold/eval_dataset.xml"), "UTF-8"));
+    final Matcher matcher = MATH.matcher(dataset);
+    while (matcher.find() && formulas.size() < FORMULAS) {
+      try {
+        formulas.add(MathMLUtils.texToMathML(matcher.group(1)));
+      } catch (RuntimeException e) {
+        // formulas that SnuggleTeX can not convert are skipped
+      }
+    }
+  }
+
+  @Benchmark
+  public void domXpath(Blackhole blackhole) {
+    for (String mathML : formulas) {
+      final Multiset<String> identifiers = MathMLUtils.parseWithXpath(mathML, false, true);
+      blackhole.consume(identifiers);
+    }
+  }
+
+  @Benchmark
+  public void stax(Blackhole blackhole) throws Exception {
+    for (String mathML : formulas) {
+      final Multiset<String> identifiers = MathMLIdentifierExtractor.extract(mathML, false, true);
+      blackhole.consume(identifiers);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(MathMLIdentifierExtractionBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,109 @@
+package com.formulasearchengine.mathosphere.mlp.performance;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
+import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.TextAnnotatorMapper;
+import com.formulasearchengine.mathosphere.mlp.contracts.TextAnnotatorMapperTest;
+import com.formulasearchengine.mathosphere.mlp.pojos.RawWikiDocument;
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
+import com.formulasearchengine.mathosphere.mlp.pojos.WikiDocumentOutput;
+import com.formulasearchengine.mlp.evaluation.Evaluator;
+import com.formulasearchengine.mlp.evaluation.pojo.GoldEntry;
+import com.formulasearchengine.mlp.evaluation.pojo.IdentifierDefinition;
+import com.formulasearchengine.mlp.evaluation.pojo.ScoreSummary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the extraction quality of POS tagging only the sentences near formulas with tagging
+ * all sentences on the 100 pages of the evaluation dataset. The skipped sentences and both scores
+ * are logged.
+ */
+public class PosTaggingWindowEvaluationTest {
+
+  private static final Logger LOGGER = LogManager.getLogger(PosTaggingWindowEvaluationTest.class.getName());
+
+  private static final String GOLD = "com/formulasearchengine/mathosphere/mlp/gold/";
+
+  @Test
+  public void testWindowKeepsQuality() throws Exception {
+    evaluate(FlinkMlpCommandConfig.test(), FlinkMlpCommandConfig.test());
+  }
+
+  /**
+   * The same comparison with the TeX identifiers extracted in process, which does not depend on
+   * the conversion to MathML.
+   */
+  @Test
+  public void testWindowKeepsQualityWithLocalTexIdentifiers() throws Exception {
+    final FlinkMlpCommandConfig full = FlinkMlpCommandConfig.test();
+    final FlinkMlpCommandConfig windowed = FlinkMlpCommandConfig.test();
+    for (FlinkMlpCommandConfig config : new FlinkMlpCommandConfig[]{full, windowed}) {
+      config.setUseTeXIdentifiers(true);
+      config.setUseLocalTexIdentifiers(true);
+    }
+    evaluate(full, windowed);
+  }
+
+  private void evaluate(FlinkMlpCommandConfig full, FlinkMlpCommandConfig windowed) throws Exception {
+    final List<RawWikiDocument> pages = TextAnnotatorMapperTest.readWikiTextDocuments(GOLD + "eval_dataset.xml");
+    final Evaluator evaluator = new Evaluator();
+    final List<GoldEntry> gold = evaluator.readGoldEntries(new File(URLDecoder.decode(
+      getClass().getClassLoader().getResource(GOLD + "gold.json").getFile(), "UTF-8")));
+
+    windowed.setPosTaggingWindow(0);
+
+    final ScoreSummary expected = evaluator.evaluate(extract(full, pages), gold, true);
+    final TextAnnotatorMapper annotator = new TextAnnotatorMapper(windowed);
+    annotator.open(null);
+    final ScoreSummary actual;
+    try {
+      actual = evaluator.evaluate(extract(annotator, windowed, pages), gold, true);
+      LOGGER.info("skipped {} of the sentences, score of all sentences {}, of the window {}",
+        annotator.getPosTagger().getSkippedSentenceRatio(), expected, actual);
+      assertTrue(annotator.getPosTagger().getSkippedSentences() > 0);
+    } finally {
+      annotator.close();
+    }
+    assertEquals(expected, actual);
+  }
+
+  private static Multimap<String, IdentifierDefinition> extract(FlinkMlpCommandConfig config,
+                                                                List<RawWikiDocument> pages) throws Exception {
+    final TextAnnotatorMapper annotator = new TextAnnotatorMapper(config);
+    annotator.open(null);
+    try {
+      return extract(annotator, config, pages);
+    } finally {
+      annotator.close();
+    }
+  }
+
+  private static Multimap<String, IdentifierDefinition> extract(TextAnnotatorMapper annotator,
+                                                                FlinkMlpCommandConfig config,
+                                                                List<RawWikiDocument> pages) {
+    final CreateCandidatesMapper candidates = new CreateCandidatesMapper(config);
+    final Multimap<String, IdentifierDefinition> extractions = HashMultimap.create();
+    for (RawWikiDocument page : pages) {
+      final WikiDocumentOutput output = candidates.map(annotator.map(page));
+      final String title = output.getTitle().replaceAll("\\s", "_");
+      for (Relation relation : output.getRelations()) {
+        extractions.put(title, new IdentifierDefinition(relation.getIdentifier(),
+          relation.getDefinition().toLowerCase()));
+      }
+    }
+    return extractions;
+  }
+}
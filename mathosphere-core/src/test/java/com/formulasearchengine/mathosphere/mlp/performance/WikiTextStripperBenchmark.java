@@ -0,0 +1,64 @@
+package com.formulasearchengine.mathosphere.mlp.performance;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.text.MathConverter;
+import com.formulasearchengine.mathosphere.mlp.text.WikiTextStripper;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the {@link WikiTextStripper} with the Sweble based
+ * {@link MathConverter}. Hidden math is not detected, since that requires the texvcinfo service.
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WikiTextStripperBenchmark {
+
+  @Param({"text/legendre_wiki.txt", "titration_wiki.txt", "n20_wiki.txt"})
+  public String page;
+
+  private String text;
+
+  @Setup
+  public void setUp() throws Exception {
+    text = IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream(page), "UTF-8");
+  }
+
+  @Benchmark
+  public String mathConverter() throws Exception {
+    final MathConverter converter = new MathConverter(text);
+    converter.setSkipHiddenMath(true);
+    return converter.getStrippedOutput();
+  }
+
+  @Benchmark
+  public String wikiTextStripper() {
+    final WikiTextStripper stripper = new WikiTextStripper(text);
+    stripper.setSkipHiddenMath(true);
+    return stripper.getStrippedOutput();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(WikiTextStripperBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -2,13 +2,16 @@ package com.formulasearchengine.mathosphere.mlp.pojos;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
 import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils;
 import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
 import com.github.fge.jsonschema.main.JsonSchema;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -46,6 +49,17 @@ public class MathTagTest {
         assertEquals(lIds, schrödinger.getIdentifier(true, false));
     }
 
+    @Test
+    public void testGetIdentifiersIsModifiable() throws Exception {
+        final BaseConfig config = new BaseConfig();
+        final Multiset<String> identifiers = new MathTag(1, "x+y", WikiTextUtils.MathMarkUpType.LATEX).getIdentifiers(config);
+        assertTrue(identifiers instanceof HashMultiset);
+        identifiers.remove("x");
+        // the shared cache is not changed
+        assertEquals(ImmutableSet.of("x", "y"),
+                new MathTag(2, "x+y", WikiTextUtils.MathMarkUpType.LATEX).getIdentifiers(config).elementSet());
+    }
+
     @Test
     public void testGetJson() throws JsonProcessingException {
         MathTag tag = new MathTag(1, "a+b", WikiTextUtils.MathMarkUpType.LATEX);
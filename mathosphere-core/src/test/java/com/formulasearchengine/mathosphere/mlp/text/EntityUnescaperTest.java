@@ -0,0 +1,65 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.text.translate.AggregateTranslator;
+import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
+import org.apache.commons.lang3.text.translate.EntityArrays;
+import org.apache.commons.lang3.text.translate.LookupTranslator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EntityUnescaperTest {
+
+  private static final CharSequenceTranslator TRANSLATOR = new AggregateTranslator(
+      new LookupTranslator(EntityArrays.ISO8859_1_UNESCAPE()),
+      new LookupTranslator(EntityArrays.BASIC_UNESCAPE()),
+      new LookupTranslator(EntityArrays.HTML40_EXTENDED_UNESCAPE()));
+
+  private static void assertSameAsTranslator(String text) {
+    assertEquals(TRANSLATOR.translate(text), EntityUnescaper.unescape(text));
+  }
+
+  @Test
+  public void testNoEntity() throws Exception {
+    final String text = "E=mc^2 without entities";
+    assertSame(text, EntityUnescaper.unescape(text));
+    final String ampersand = "Tom & Jerry";
+    assertSame(ampersand, EntityUnescaper.unescape(ampersand));
+  }
+
+  @Test
+  public void testEntities() throws Exception {
+    assertEquals("<math>x</math>", EntityUnescaper.unescape("&lt;math&gt;x&lt;/math&gt;"));
+    assertEquals("&lt;", EntityUnescaper.unescape("&amp;lt;"));
+    assertEquals("ä²ϑθ", EntityUnescaper.unescape("&auml;&sup2;&thetasym;&theta;"));
+    assertSameAsTranslator("&thet; &; & &amp &ampx; &#160; &AMP; &Auml;&auml;");
+    assertSameAsTranslator("trailing &lt");
+  }
+
+  @Test
+  public void testAllEntities() throws Exception {
+    StringBuilder all = new StringBuilder();
+    for (String[][] set : new String[][][] {EntityArrays.ISO8859_1_UNESCAPE(), EntityArrays.BASIC_UNESCAPE(),
+        EntityArrays.HTML40_EXTENDED_UNESCAPE()}) {
+      for (String[] entity : set) {
+        all.append(entity[0]).append('x');
+      }
+    }
+    assertSameAsTranslator(all.toString());
+  }
+
+  @Test
+  public void testResources() throws Exception {
+    for (String resource : new String[] {"augmentendwikitext.xml", "dewikimath-20151213130534.xml", "escaped.txt",
+        "hamiltonian_esc.txt", "mean_esc.txt", "n20_esc.txt", "schodinger_esc.txt"}) {
+      final String text = IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream(resource), "UTF-8");
+      assertSameAsTranslator(text);
+      // the buffer is reused for the next call
+      assertSameAsTranslator(text.substring(0, text.length() / 2));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.sun.net.httpserver.HttpServer;
+
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
+import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.text.WikiTextUtils.MathMarkUpType;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdentifierCacheTest {
+
+  @Test
+  public void testSharedAcrossInstances() throws Exception {
+    final IdentifierCache cache = new IdentifierCache(1000);
+    final BaseConfig config = new BaseConfig();
+    final Multiset<String> first = cache.getIdentifiers(new MathTag(0, "x^2 + y^2", MathMarkUpType.LATEX), config);
+    final Multiset<String> second = cache.getIdentifiers(new MathTag(7, "x^2 + y^2", MathMarkUpType.LATEX), config);
+    assertEquals(HashMultiset.create(Lists.newArrayList("x", "y")), first);
+    assertSame(first, second);
+    assertEquals(1, cache.getStats().hitCount());
+    assertEquals(1, cache.getStats().missCount());
+  }
+
+  @Test
+  public void testNegativeResultsAreCached() throws Exception {
+    final IdentifierCache cache = new IdentifierCache(1000);
+    final BaseConfig config = new BaseConfig();
+    assertTrue(cache.getIdentifiers(new MathTag(0, "1+2", MathMarkUpType.LATEX), config).isEmpty());
+    assertTrue(cache.getIdentifiers(new MathTag(0, "1+2", MathMarkUpType.LATEX), config).isEmpty());
+    assertEquals(1, cache.getStats().hitCount());
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void testKeyContainsConfiguration() throws Exception {
+    final IdentifierCache cache = new IdentifierCache(1000);
+    final BaseConfig config = new BaseConfig();
+    cache.getIdentifiers(new MathTag(0, "\\alpha", MathMarkUpType.LATEX), config);
+    config.setUseTeXIdentifiers(true);
+    config.setUseLocalTexIdentifiers(true);
+    assertEquals(HashMultiset.create(Lists.newArrayList("\\alpha")),
+        cache.getIdentifiers(new MathTag(0, "\\alpha", MathMarkUpType.LATEX), config));
+    assertEquals(2, cache.getSize());
+  }
+
+  @Test
+  public void testMaximumWeight() throws Exception {
+    final IdentifierCache cache = new IdentifierCache(100);
+    final BaseConfig config = new BaseConfig();
+    for (int i = 0; i < 50; i++) {
+      cache.getIdentifiers(new MathTag(0, "x_" + i, MathMarkUpType.LATEX), config);
+    }
+    assertTrue(cache.getSize() < 50);
+  }
+
+  @Test
+  public void testKeyContainsTexvcinfoUrl() throws Exception {
+    final HttpServer first = startTexvcinfoStub("x");
+    final HttpServer second = startTexvcinfoStub("y");
+    try {
+      final IdentifierCache cache = new IdentifierCache(1000);
+      final BaseConfig config = new BaseConfig();
+      config.setUseTeXIdentifiers(true);
+      config.setTexvcinfoUrl(url(first));
+      assertEquals(HashMultiset.create(Lists.newArrayList("x")),
+          cache.getIdentifiers(new MathTag(0, "x+y", MathMarkUpType.LATEX), config));
+      config.setTexvcinfoUrl(url(second));
+      assertEquals(HashMultiset.create(Lists.newArrayList("y")),
+          cache.getIdentifiers(new MathTag(0, "x+y", MathMarkUpType.LATEX), config));
+      assertEquals(2, cache.getSize());
+    } finally {
+      first.stop(0);
+      second.stop(0);
+    }
+  }
+
+  @Test
+  public void testSharedIsInitializedOnce() throws Exception {
+    final IdentifierCache shared = IdentifierCache.getShared();
+    assertSame(shared, IdentifierCache.initShared(shared.getMaximumChars() + 1));
+    assertSame(shared, IdentifierCache.initShared(shared.getMaximumChars()));
+    assertSame(shared, IdentifierCache.getShared());
+  }
+
+  /**
+   * @return a local stub of texvcinfo that reports the given identifier for every formula
+   */
+  private static HttpServer startTexvcinfoStub(String identifier) throws Exception {
+    final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/get/texvcinfo/tex/", exchange -> {
+      final byte[] body = ("{\"identifiers\":[\"" + identifier + "\"]}").getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  private static String url(HttpServer server) {
+    return "http://localhost:" + server.getAddress().getPort() + "/texvcinfo";
+  }
+}
@@ -0,0 +1,71 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.primitives.Ints;
+
+import com.formulasearchengine.mathosphere.mlp.contracts.CreateCandidatesMapperTest;
+import com.formulasearchengine.mathosphere.mlp.pojos.ParsedWikiDocument;
+import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IdentifierIndexTest {
+
+  @Test
+  public void testSameAsScan() throws Exception {
+    final ParsedWikiDocument doc =
+        CreateCandidatesMapperTest.read("com/formulasearchengine/mathosphere/mlp/augmentendwikitext.xml");
+    final List<Sentence> sentences = doc.getSentences();
+    final IdentifierIndex index = new IdentifierIndex(sentences, w -> w.getWord().length() > 2);
+    for (String identifier : doc.getIdentifiers().elementSet()) {
+      final List<Sentence> expected = CreateCandidatesMapperTest.findSentencesWithIdentifier(sentences, identifier);
+      final IdentifierIndex.Postings postings = index.getPostings(identifier);
+      if (expected.isEmpty()) {
+        assertNull(postings);
+        continue;
+      }
+      assertEquals(expected.size(), postings.size());
+      for (int i = 0; i < postings.size(); i++) {
+        final Sentence sentence = index.getSentence(postings.getSentence(i));
+        assertSame(expected.get(i), sentence);
+        assertArrayEquals(Ints.toArray(CreateCandidatesMapperTest.identifierPositions(sentence.getWords(), identifier)),
+            postings.getPositions(i));
+      }
+    }
+  }
+
+  @Test
+  public void testCandidateTerms() throws Exception {
+    final List<Sentence> sentences = Arrays.asList(
+        sentence(Arrays.asList("x", "is", "the", "Energy"), "x"),
+        sentence(Arrays.asList("energy", "of", "x", "and", "x"), "x"));
+    final IdentifierIndex index = new IdentifierIndex(sentences, w -> w.getWord().length() > 2);
+    assertArrayEquals(new int[]{2, 3}, index.getCandidatePositions(0));
+    assertArrayEquals(new int[]{0, 1}, index.getCandidateTerms(0));
+    assertArrayEquals(new int[]{0, 3}, index.getCandidatePositions(1));
+    assertArrayEquals(new int[]{1, 2}, index.getCandidateTerms(1));
+    assertEquals(3, index.getTermCount());
+    final IdentifierIndex.Postings postings = index.getPostings("x");
+    assertEquals(2, postings.size());
+    assertArrayEquals(new int[]{0}, postings.getPositions(0));
+    assertArrayEquals(new int[]{2, 4}, postings.getPositions(1));
+  }
+
+  private static Sentence sentence(List<String> words, String identifier) {
+    final List<Word> result = new ArrayList<>();
+    for (String word : words) {
+      result.add(new Word(word, word.equals(identifier) ? PosTag.IDENTIFIER : PosTag.NOUN));
+    }
+    return new Sentence(result, Collections.singleton(identifier), new ArrayList<>());
+  }
+}
@@ -1,5 +1,9 @@
 package com.formulasearchengine.mathosphere.mlp.text;
 
+import com.alexeygrigorev.rseq.Match;
+import com.alexeygrigorev.rseq.Matcher;
+import com.alexeygrigorev.rseq.Pattern;
+import com.formulasearchengine.mathosphere.mlp.pojos.Relation;
 import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
 import org.junit.Assert;
@@ -7,6 +11,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import static com.formulasearchengine.mathosphere.mlp.ml.WekaUtils.LONGEST_SENTENCE_IN_ENGISH;
 
@@ -297,4 +304,86 @@ public class MachineLearningPatternMatcherTest {
     result = new MachineLearningPatternMatcher().match(s, MachineLearningPatternMatcher.IDENTIFIER, MachineLearningPatternMatcher.DEFINITION, 0, 1);
     Assert.assertArrayEquals(new double[]{1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, result, EPSILON);
   }
+
+  @Test
+  public void testCandidatesOfSentenceSameAsPatterns() {
+    String[] texts = {MachineLearningPatternMatcher.IDENTIFIER, MachineLearningPatternMatcher.DEFINITION, "x", "is", "let", "be", "denoted", "by", "denotes", "(", ")", ":"};
+    String[] tags = {"ID", "NN", "DT", "MATH", "-LRB-", "-RRB-", ",", ":"};
+    Random random = new Random(7);
+    for (int n = 0; n < 500; n++) {
+      for (int i = random.nextInt(15); i > 0; i--) {
+        words.add(new Word(texts[random.nextInt(texts.length)], tags[random.nextInt(tags.length)]));
+      }
+      Sentence s = new Sentence(words, null, null);
+      List<Relation> candidates = new ArrayList<>();
+      for (int i = 0; i < words.size(); i++) {
+        for (int j = 0; j < words.size(); j++) {
+          Relation candidate = new Relation(words.get(i).getWord(), words.get(j).getWord());
+          candidate.setIdentifierPosition(i);
+          candidate.setWordPosition(j);
+          candidates.add(candidate);
+        }
+      }
+      List<double[]> results = new MachineLearningPatternMatcher().match(s, candidates);
+      Assert.assertEquals(candidates.size(), results.size());
+      for (int k = 0; k < candidates.size(); k++) {
+        Relation candidate = candidates.get(k);
+        Assert.assertArrayEquals(words.toString(), matchPatterns(s, candidate.getIdentifier(), candidate.getDefinition(),
+          candidate.getIdentifierPosition(), candidate.getWordPosition()), results.get(k), EPSILON);
+      }
+      words.clear();
+    }
+  }
+
+  /**
+   * The features of a candidate with a pattern for each feature.
+   */
+  private static double[] matchPatterns(Sentence sentence, String identifierText, String definiens, int identifierPosition, int definiensPosition) {
+    Matcher<Word> identifier = WordMatchers.word(identifierText);
+    Matcher<Word> definition = WordMatchers.word(definiens);
+    Matcher<Word> isOrAre = MachineLearningPatternMatcher.isOrAre;
+    Matcher<Word> let = MachineLearningPatternMatcher.let;
+    Matcher<Word> be = MachineLearningPatternMatcher.be;
+    Matcher<Word> by = MachineLearningPatternMatcher.by;
+    Matcher<Word> denotes = MachineLearningPatternMatcher.denotes;
+    Matcher<Word> denoted = MachineLearningPatternMatcher.denoted;
+    Matcher<Word> the = MachineLearningPatternMatcher.the;
+    List<Pattern<Word>> patterns = Arrays.asList(
+      Pattern.create(identifier, definition),
+      Pattern.create(definition, identifier),
+      Pattern.create(identifier, isOrAre, definition),
+      Pattern.create(identifier, isOrAre, the, definition),
+      Pattern.create(let, identifier, be, denoted, by, definition),
+      Pattern.create(let, identifier, be, denoted, by, the, definition),
+      Pattern.create(definition, isOrAre, denoted, by, identifier),
+      Pattern.create(definition, isOrAre, denoted, by, the, identifier),
+      Pattern.create(identifier, denotes, definition),
+      Pattern.create(identifier, denotes, the, definition),
+      Pattern.create(WordMatchers.pos(":")),
+      Pattern.create(WordMatchers.pos(",")),
+      Pattern.create(WordMatchers.posRegExp("(ID|MATH)")),
+      Pattern.create(WordMatchers.word("(").or(WordMatchers.pos("-LRB-"))),
+      Pattern.create(WordMatchers.word(")").or(WordMatchers.pos("-RRB-")))
+    );
+    double[] result = new double[patterns.size()];
+    long[] between = new long[patterns.size()];
+    for (int i = 0; i < patterns.size(); i++) {
+      for (Match<Word> match : patterns.get(i).find(sentence.getWords())) {
+        int x = match.matchedFrom();
+        if (i < 10) {
+          result[i] = 1;
+        } else if ((identifierPosition < x && x < definiensPosition) || (definiensPosition < x && x < identifierPosition)) {
+          between[i]++;
+        }
+      }
+    }
+    for (int i = 10; i < 13; i++) {
+      result[i] = between[i] > 0 ? 1 : 0;
+    }
+    long parentheses = between[13] - between[14];
+    if (parentheses != 0 && identifierPosition != definiensPosition) {
+      result[(parentheses > 0) == (identifierPosition < definiensPosition) ? 13 : 14] = 1;
+    }
+    return result;
+  }
 }
@@ -1,16 +1,21 @@
 package com.formulasearchengine.mathosphere.mlp.text;
 
+import com.formulasearchengine.mathosphere.mlp.cli.BaseConfig;
 import com.formulasearchengine.mathosphere.mlp.contracts.TextExtractorMapper;
 import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by Moritz on 15.12.2015.
@@ -198,4 +203,63 @@ public class MathConverterTest {
         assertThat(real, containsString("\\mathit{d}"));
         assertThat(real, equalTo("_{a}, ^{b}, \\mathbf{c}, \\mathit{d}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOverSizeBudget() throws Exception {
+        String wikiText = "Let <math>x</math> be '''bold'''.";
+        final BaseConfig config = new BaseConfig().setMaxParseChars(10);
+        final long before = MathConverter.getPagesOverBudget();
+        final MathConverter mathConverter = new MathConverter(wikiText, "budget", config);
+        final String real = mathConverter.getStrippedOutput();
+        assertTrue(mathConverter.isOverBudget());
+        assertEquals(before + 1, MathConverter.getPagesOverBudget());
+        assertEquals(1, mathConverter.getMathTags().size());
+        assertThat(real, containsString("Let FORMULA_"));
+        assertFalse(real.contains("'''"));
+    }
+
+    @Test
+    public void testPostprocessTimeBudget() throws Exception {
+        String wikiText = IOUtils.toString(getClass().getResourceAsStream("legendre_wiki.txt"), "UTF-8");
+        // the postprocess step of the page alone takes far longer than a millisecond
+        final BaseConfig config = new BaseConfig().setParseTimeout(1);
+        final MathConverter mathConverter = new MathConverter(wikiText, "budget", config);
+        final String real = mathConverter.getStrippedOutput();
+        assertTrue(mathConverter.isOverBudget());
+        assertEquals(WikiTextUtils.findMathTags(wikiText).size(), mathConverter.getMathTags().size());
+        assertThat(real, containsString("FORMULA_"));
+    }
+
+    @Test
+    public void testNoBudgetByDefault() throws Exception {
+        final BaseConfig config = new BaseConfig();
+        assertEquals(0, config.getParseTimeout());
+        assertEquals(0, config.getMaxParseChars());
+    }
+
+    @Test
+    public void testWithinBudget() throws Exception {
+        String wikiText = IOUtils.toString(getClass().getResourceAsStream("legendre_wiki.txt"), "UTF-8");
+        final BaseConfig config = new BaseConfig().setMaxParseChars(0).setParseTimeout(0);
+        final MathConverter mathConverter = new MathConverter(wikiText, "budget", config);
+        mathConverter.getStrippedOutput();
+        assertFalse(mathConverter.isOverBudget());
+    }
+
+    @Test
+    public void testConcurrentConverters() throws Exception {
+        String wikiText = IOUtils.toString(getClass().getResourceAsStream("legendre_wiki.txt"), "UTF-8");
+        final String expected = new MathConverter(wikiText).getStrippedOutput();
+        final List<String> results = IntStream.range(0, 8).parallel()
+                .mapToObj(i -> {
+                    try {
+                        return new MathConverter(wikiText).getStrippedOutput();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }).collect(Collectors.toList());
+        for (String real : results) {
+            assertEquals(expected, real);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+
+import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the {@link MathMLIdentifierExtractor} with the DOM and XPath based
+ * {@link MathMLUtils#parseWithXpath}.
+ */
+public class MathMLIdentifierExtractorTest {
+
+  private static final Pattern MATH = Pattern.compile("<math[^>]*>(.*?)</math>", Pattern.DOTALL);
+
+  private static final int MAX_FORMULAS = 300;
+
+  private static String readResource(String file) throws Exception {
+    return IOUtils.toString(PatternMatchingRelationFinder.class.getResourceAsStream(file), "UTF-8");
+  }
+
+  private static void assertSameIdentifiers(String mathML) throws Exception {
+    for (boolean useTeX : new boolean[]{false, true}) {
+      for (boolean useBlacklist : new boolean[]{false, true}) {
+        assertEquals(mathML, MathMLUtils.parseWithXpath(mathML, useTeX, useBlacklist),
+            MathMLIdentifierExtractor.extract(mathML, useTeX, useBlacklist));
+      }
+    }
+  }
+
+  @Test
+  public void testSubscripts() throws Exception {
+    final String mathML = "<math xmlns=\"http://www.w3.org/1998/Math/MathML\"><mrow>"
+        + "<msub><mi>x</mi><mn>1</mn></msub><mo>+</mo>"
+        + "<msub><mi>y</mi><mrow><mi>i</mi><mo>+</mo><mn>1</mn></mrow></msub><mo>+</mo>"
+        + "<mi>z</mi><mo>+</mo><mn>2</mn></mrow></math>";
+    assertEquals(HashMultiset.create(Lists.newArrayList("x_1", "z")),
+        MathMLIdentifierExtractor.extract(mathML, false, false));
+    assertSameIdentifiers(mathML);
+  }
+
+  @Test
+  public void testNamespaces() throws Exception {
+    assertSameIdentifiers("<math><msub><mi>a</mi><mi>b</mi></msub><mi>c</mi></math>");
+    assertSameIdentifiers("<m:math xmlns:m=\"http://www.w3.org/1998/Math/MathML\">"
+        + "<m:mi>a</m:mi><m:msub><m:mi>b</m:mi><m:mn>2</m:mn></m:msub></m:math>");
+  }
+
+  @Test
+  public void testNestedSubscripts() throws Exception {
+    assertSameIdentifiers("<math><msub><msub><mi>a</mi><mi>b</mi></msub><mi>c</mi></msub>"
+        + "<mi>sin</mi><mi> d </mi></math>");
+  }
+
+  @Test
+  public void testResources() throws Exception {
+    assertSameIdentifiers(readResource("complex_msub.xml"));
+    assertSameIdentifiers(readResource("math-R_specific.xml"));
+  }
+
+  @Test(expected = XMLStreamException.class)
+  public void testNotWellFormed() throws Exception {
+    MathMLIdentifierExtractor.extract(readResource("math-xmlparsingerror.xml"), false, false);
+  }
+
+  @Test
+  public void testEvalDatasetFormulas() throws Exception {
+    final String dataset = StringEscapeUtils.unescapeHtml4(readResource("gold/eval_dataset.xml"));
+    final Matcher matcher = MATH.matcher(dataset);
+    final List<String> formulas = new ArrayList<>();
+    while (matcher.find() && formulas.size() < MAX_FORMULAS) {
+      try {
+        formulas.add(MathMLUtils.texToMathML(matcher.group(1)));
+      } catch (RuntimeException e) {
+        // formulas that SnuggleTeX can not convert are skipped
+      }
+    }
+    assertTrue(formulas.size() > MAX_FORMULAS / 2);
+    for (String mathML : formulas) {
+      assertSameIdentifiers(mathML);
+    }
+  }
+}
@@ -3,16 +3,20 @@ package com.formulasearchengine.mathosphere.mlp.text;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
 
 import com.formulasearchengine.mathosphere.mlp.PatternMatchingRelationFinder;
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -118,4 +122,66 @@ public class MathMLUtilsTest {
     assertFalse(MathMLUtils.isNumeric("x1"));
   }
 
+  @Test
+  public void texInfoCacheFromConfig() throws Exception {
+    final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.test();
+    config.setUseTeXIdentifiers(true);
+    assertNull(MathMLUtils.getTexInfoCache(config));
+    final String file = new File(Files.createTempDir(), "texvcinfo.cache").getPath();
+    config.setTexvcinfoCache(file);
+    try (TexInfoCache cache = MathMLUtils.getTexInfoCache(config)) {
+      assertSame(TexInfoCache.shared(file), cache);
+      config.setUseTeXIdentifiers(false);
+      assertNull(MathMLUtils.getTexInfoCache(config));
+    }
+  }
+
+  /**
+   * pieces of TeX strings that the patterns of {@link MathMLUtils#cleanTexString(String)} react to
+   */
+  private static final String[] TEX_TOKENS = {"\\text{", "\\textbf{", "\\mathbb{", "\\math:bb{", "\\mathit{",
+      "\\mathrm{", "\\operatorname{", "{", "}", "\\left", "\\right", "\\rangle", "\\langle", "\\rang", "|",
+      "\\dim_", "\\log_", "\\in", "\\int", "\\", "_", "^", "a", "x", "1", " ", "\n", "(", "="};
+
+  @Test
+  public void cleanTexString_sameAsRegexChain() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 200000; i++) {
+      final StringBuilder tex = new StringBuilder();
+      final int tokens = random.nextInt(12);
+      for (int j = 0; j < tokens; j++) {
+        tex.append(TEX_TOKENS[random.nextInt(TEX_TOKENS.length)]);
+      }
+      assertEquals(tex.toString(), cleanTexStringWithRegexChain(tex.toString()), MathMLUtils.cleanTexString(tex.toString()));
+    }
+  }
+
+  /**
+   * the implementation of {@link MathMLUtils#cleanTexString(String)} before it skipped the
+   * patterns that can not match
+   */
+  private static String cleanTexStringWithRegexChain(String tex) {
+    // strip text blocks
+    tex = tex.replaceAll("\\\\(text|math(:?bb|bf|cal|frak|it|sf|tt))\\{.*?\\}", "");
+    // strip arbitrary operators
+    tex = tex.replaceAll("\\\\operatorname\\{.*?\\}", "");
+    // strip some unparseble stuff
+    tex = tex.replaceAll("\\\\(rang|left|right|rangle|langle)|\\|", "");
+    // strip dim/log
+    tex = tex.replaceAll("\\\\(dim|log)_(\\w+)", "$1");
+    // strip "is element of" definitions
+    tex = tex.replaceAll("^(.*?)\\\\in", "$1");
+    // strip indices
+    tex = tex.replaceAll("^([^\\s\\\\\\{\\}])_[^\\s\\\\\\{\\}]$", "$1");
+    return tex;
+  }
+
+  @Test
+  public void texToMathMLCacheIsInitializedOnce() {
+    final TexToMathMLCache cache = MathMLUtils.getTexToMathMLCache();
+    assertSame(cache, MathMLUtils.initTexToMathMLCache(cache.getMaximumChars() + 1));
+    assertSame(cache, MathMLUtils.initTexToMathMLCache(cache.getMaximumChars()));
+    assertSame(cache, MathMLUtils.getTexToMathMLCache());
+  }
+
 }
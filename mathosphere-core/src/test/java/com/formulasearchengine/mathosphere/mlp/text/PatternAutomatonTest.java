@@ -0,0 +1,90 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.alexeygrigorev.rseq.Match;
+import com.alexeygrigorev.rseq.Matcher;
+import com.alexeygrigorev.rseq.Pattern;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PatternAutomatonTest {
+
+  private static final String[] WORDS = {"E", "m", "c", "is", "are", "let", "be", "by", "denotes", "denoted", "the", "energy"};
+
+  private static final String[] TAGS = {"ID", "NN", "NNS", "NNP", "DT", "VBZ", "IN", "LNK"};
+
+  @Test
+  public void sameMatchesAsPatterns() throws Exception {
+    Set<String> identifiers = Sets.newHashSet("E", "m", "c");
+    Matcher<Word> isOrAre = WordMatchers.word("is").or(WordMatchers.word("are"));
+    Matcher<Word> let = WordMatchers.word("let");
+    Matcher<Word> be = WordMatchers.word("be");
+    Matcher<Word> by = WordMatchers.word("by");
+    Matcher<Word> denotes = WordMatchers.word("denotes").or(WordMatchers.word("denote"));
+    Matcher<Word> denoted = WordMatchers.word("denoted");
+    Matcher<Word> the = WordMatchers.pos("DT");
+    Matcher<Word> identifier = WordMatchers.wordIn(identifiers);
+    Matcher<Word> definition = WordMatchers.posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)");
+
+    List<List<Matcher<Word>>> patterns = Arrays.asList(
+      Arrays.asList(definition, identifier),
+      Arrays.asList(identifier, definition),
+      Arrays.asList(identifier, isOrAre, definition),
+      Arrays.asList(identifier, isOrAre, the, definition),
+      Arrays.asList(let, identifier, be, definition),
+      Arrays.asList(let, identifier, be, the, definition),
+      Arrays.asList(definition, isOrAre, denoted, by, identifier),
+      Arrays.asList(identifier, denotes, definition),
+      Arrays.asList(identifier, denotes, the, definition),
+      Arrays.asList(identifier),
+      Arrays.asList(definition, definition)
+    );
+    PatternAutomaton.Builder builder = PatternAutomaton.builder();
+    List<Pattern<Word>> expectedPatterns = new ArrayList<>();
+    for (List<Matcher<Word>> pattern : patterns) {
+      builder.add(pattern.toArray(new Matcher[pattern.size()]));
+      expectedPatterns.add(Pattern.create(pattern.toArray(new Matcher[pattern.size()])));
+    }
+    PatternAutomaton automaton = builder.build();
+    assertEquals(patterns.size(), automaton.getPatternCount());
+    assertEquals(2, automaton.getOffset(6, denoted));
+
+    Random random = new Random(42);
+    for (int sentence = 0; sentence < 2000; sentence++) {
+      List<Word> words = new ArrayList<>();
+      int length = random.nextInt(20);
+      for (int i = 0; i < length; i++) {
+        words.add(new Word(WORDS[random.nextInt(WORDS.length)], TAGS[random.nextInt(TAGS.length)]));
+      }
+      List<String> expected = new ArrayList<>();
+      for (int p = 0; p < expectedPatterns.size(); p++) {
+        for (Match<Word> match : expectedPatterns.get(p).find(words)) {
+          expected.add(p + "@" + match.matchedFrom());
+        }
+      }
+      PatternAutomaton.Matches matches = automaton.find(words);
+      List<String> actual = new ArrayList<>();
+      for (int i = 0; i < matches.size(); i++) {
+        actual.add(matches.getPattern(i) + "@" + matches.getStart(i));
+      }
+      assertEquals(words.toString(), expected, actual);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooManyElements() throws Exception {
+    Matcher<Word> any = WordMatchers.wordRegExp(".*");
+    PatternAutomaton.Builder builder = PatternAutomaton.builder();
+    for (int i = 0; i < 13; i++) {
+      builder.add(any, any, any, any, any);
+    }
+  }
+}
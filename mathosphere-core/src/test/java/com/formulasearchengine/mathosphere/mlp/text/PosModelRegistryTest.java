@@ -0,0 +1,67 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.cli.FlinkMlpCommandConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PosModelRegistryTest {
+
+  private static final Logger LOGGER = LogManager.getLogger(PosModelRegistryTest.class.getName());
+
+  private static final int SLOTS = 8;
+
+  /**
+   * Measures the startup of the taggers of several task slots, only the first one loads the model.
+   */
+  @Test
+  public void testStartup() throws Exception {
+    final FlinkMlpCommandConfig cfg = FlinkMlpCommandConfig.test();
+    final String model = cfg.getModel();
+    final List<PosTagger> taggers = new ArrayList<>();
+    long start = System.nanoTime();
+    taggers.add(PosTagger.create(cfg));
+    final long first = System.nanoTime() - start;
+    final long loads = PosModelRegistry.getLoads();
+    start = System.nanoTime();
+    for (int i = 1; i < SLOTS; i++) {
+      taggers.add(PosTagger.create(cfg));
+    }
+    final long others = (System.nanoTime() - start) / (SLOTS - 1);
+    LOGGER.info("startup of the first tagger {} ms, of further taggers {} ms", first / 1000000, others / 1000000);
+    // all taggers hold a reference to the one loaded model, the timing is only logged
+    assertEquals(SLOTS, PosModelRegistry.getReferences(model));
+    assertEquals("further taggers load the model again", loads, PosModelRegistry.getLoads());
+    for (PosTagger tagger : taggers) {
+      assertSame(taggers.get(0).getPosAnnotator(), tagger.getPosAnnotator());
+    }
+    for (PosTagger tagger : taggers) {
+      tagger.close();
+    }
+    assertEquals(0, PosModelRegistry.getReferences(model));
+  }
+
+  @Test
+  public void testReferenceCounting() throws Exception {
+    final String model = FlinkMlpCommandConfig.test().getModel();
+    final PosModelRegistry.Handle first = PosModelRegistry.acquire(model);
+    final PosModelRegistry.Handle second = PosModelRegistry.acquire(model);
+    assertSame(first.getAnnotator(), second.getAnnotator());
+    first.close();
+    first.close();
+    assertEquals(1, PosModelRegistry.getReferences(model));
+    second.close();
+    assertEquals(0, PosModelRegistry.getReferences(model));
+    try (PosModelRegistry.Handle reloaded = PosModelRegistry.acquire(model)) {
+      assertNotSame(first.getAnnotator(), reloaded.getAnnotator());
+    }
+  }
+}
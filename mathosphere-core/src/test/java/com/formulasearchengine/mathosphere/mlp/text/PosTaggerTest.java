@@ -6,6 +6,7 @@ import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
 import com.formulasearchengine.mathosphere.mlp.pojos.Sentence;
 import com.formulasearchengine.mathosphere.mlp.pojos.Word;
 import org.apache.commons.io.IOUtils;
+import org.junit.Before;
 import org.junit.Test;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -13,15 +14,34 @@ import org.apache.logging.log4j.LogManager;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PosTaggerTest {
 
   private static final Logger LOGGER = LogManager.getLogger(PosTaggerTest.class.getName());
 
+  private FlinkMlpCommandConfig cfg;
+
+  /**
+   * formulas and plain text of hamiltonian_esc.txt
+   */
+  private List<MathTag> mathTags;
+
+  private String cleanText;
+
+  @Before
+  public void setUp() throws Exception {
+    cfg = FlinkMlpCommandConfig.test();
+    String text = readText("hamiltonian_esc.txt");
+    mathTags = WikiTextUtils.findMathTags(text);
+    cleanText = WikiTextUtils.extractPlainText(WikiTextUtils.replaceAllFormulas(text, mathTags));
+  }
+
   @Test
   public void annotation() throws Exception {
     FlinkMlpCommandConfig cfg = FlinkMlpCommandConfig.test();
@@ -46,6 +66,105 @@ public class PosTaggerTest {
     LOGGER.debug("full result: {}", result);
   }
 
+  @Test
+  public void parallelTagging_sameAsSequential() throws Exception {
+    try (PosTagger sequential = PosTagger.create(cfg)) {
+      List<Sentence> expected = sequential.process(cleanText, mathTags);
+      assertTrue(expected.size() > 2);
+      FlinkMlpCommandConfig parallelCfg = FlinkMlpCommandConfig.test();
+      parallelCfg.setPosTaggingBatchSize(2);
+      try (PosTagger parallel = PosTagger.create(parallelCfg)) {
+        assertEquals(expected.toString(), parallel.process(cleanText, mathTags).toString());
+      }
+      // the configuration of another tagger does not change the first one
+      FlinkMlpCommandConfig texCfg = FlinkMlpCommandConfig.test();
+      texCfg.setUseTeXIdentifiers(true);
+      try (PosTagger other = PosTagger.create(texCfg)) {
+        assertEquals(expected.toString(), sequential.process(cleanText, mathTags).toString());
+      }
+    }
+  }
+
+  @Test
+  public void windowedTagging_sameForSentencesWithIdentifiers() throws Exception {
+    FlinkMlpCommandConfig windowCfg = FlinkMlpCommandConfig.test();
+    windowCfg.setPosTaggingWindow(0);
+    try (PosTagger full = PosTagger.create(cfg); PosTagger windowed = PosTagger.create(windowCfg)) {
+      List<Sentence> expected = full.process(cleanText, mathTags);
+      List<Sentence> actual = windowed.process(cleanText, mathTags);
+      assertEquals(expected.size(), actual.size());
+      assertEquals(0, full.getSkippedSentences());
+      assertTrue(windowed.getSkippedSentences() > 0);
+      assertEquals(expected.size(), windowed.getTaggedSentences() + windowed.getSkippedSentences());
+      LOGGER.info("skipped {} of the sentences", windowed.getSkippedSentenceRatio());
+      boolean untagged = false;
+      for (int i = 0; i < expected.size(); i++) {
+        if (!expected.get(i).getIdentifiers().isEmpty() || !expected.get(i).getFormulas().isEmpty()) {
+          assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+        for (Word word : actual.get(i).getWords()) {
+          untagged |= PosTag.UNTAGGED.equals(word.getPosTag());
+        }
+      }
+      assertTrue("no sentence was skipped", untagged);
+    }
+  }
+
+  @Test
+  public void sentenceCache_sameAsTagging() throws Exception {
+    FlinkMlpCommandConfig cacheCfg = FlinkMlpCommandConfig.test();
+    cacheCfg.setSentenceCacheSize(1000);
+    try (PosTagger tagger = PosTagger.create(cfg); PosTagger cached = PosTagger.create(cacheCfg)) {
+      List<Sentence> expected = cached.process(cleanText, mathTags);
+      assertEquals(tagger.process(cleanText, mathTags).size(), expected.size());
+      // the second time every sentence is found in the cache
+      assertEquals(expected.toString(), cached.process(cleanText, mathTags).toString());
+      assertTrue(cached.getSentenceCache().getStats().hitCount() >= expected.size());
+    }
+  }
+
+  /**
+   * A sentence that is found in the cache with other formulas and links has the tags of a sentence
+   * that is not in the cache. Without the cache, the hashes of the placeholders are tagged and may
+   * change the tags of their neighbours, which is only logged.
+   */
+  @Test
+  public void sentenceCache_otherPlaceholders() throws Exception {
+    final String sentence = "The quantity %s of the %s is conserved in every closed system.";
+    final MathTag energy = new MathTag(0, "E", WikiTextUtils.MathMarkUpType.LATEX);
+    final MathTag mass = new MathTag(0, "m", WikiTextUtils.MathMarkUpType.LATEX);
+    final String first = String.format(sentence, energy.placeholder(), "LINK_" + energy.getContentHash());
+    final String second = String.format(sentence, mass.placeholder(), "LINK_" + mass.getContentHash());
+
+    FlinkMlpCommandConfig cacheCfg = FlinkMlpCommandConfig.test();
+    cacheCfg.setSentenceCacheSize(1000);
+    try (PosTagger tagger = PosTagger.create(cfg); PosTagger cached = PosTagger.create(cacheCfg);
+         PosTagger fresh = PosTagger.create(cacheCfg)) {
+      cached.annotate(first, new HashMap<>(), new HashSet<>());
+      List<List<Word>> hit = cached.annotate(second, new HashMap<>(), new HashSet<>());
+      assertEquals(1, cached.getSentenceCache().getStats().hitCount());
+      List<List<Word>> miss = fresh.annotate(second, new HashMap<>(), new HashSet<>());
+      assertEquals(0, fresh.getSentenceCache().getStats().hitCount());
+      assertEquals(miss, hit);
+
+      List<List<Word>> uncached = tagger.annotate(second, new HashMap<>(), new HashSet<>());
+      assertEquals(uncached.size(), hit.size());
+      int otherTags = 0;
+      for (int i = 0; i < hit.size(); i++) {
+        assertEquals(uncached.get(i).size(), hit.get(i).size());
+        for (int j = 0; j < hit.get(i).size(); j++) {
+          final Word expected = uncached.get(i).get(j);
+          final Word actual = hit.get(i).get(j);
+          assertEquals(expected.getWord(), actual.getWord());
+          if (!expected.getPosTag().equals(actual.getPosTag())) {
+            otherTags++;
+          }
+        }
+      }
+      LOGGER.info("{} words are tagged differently without the sentence cache: {} and {}", otherTags, uncached, hit);
+    }
+  }
+
   @Test
   public void joinLinks_withLinks() {
     List<Word> in = Arrays.asList(w("Since", "IN"), w("``", "``"), w("energy", "NN"), w("''", "''"),
@@ -0,0 +1,63 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SentenceCacheTest {
+
+  private static final String FORMULA_1 = "FORMULA_0123456789abcdef0123456789abcdef";
+
+  private static final String FORMULA_2 = "FORMULA_fedcba9876543210fedcba9876543210";
+
+  @Test
+  public void testPlaceholdersAreRebound() throws Exception {
+    final SentenceCache cache = new SentenceCache(10);
+    cache.put(Arrays.asList("where", FORMULA_1, "is", "the", "LINK_1"),
+        Arrays.asList(w("where", "WRB"), w(FORMULA_1, PosTag.MATH), w("is", "VBZ"), w("the", "DT"),
+            w("LINK_1", PosTag.LINK)));
+    final List<Word> words = cache.get(Arrays.asList("where", FORMULA_2, "is", "the", "LINK_2"));
+    assertEquals(Arrays.asList(w("where", "WRB"), w(FORMULA_2, PosTag.MATH), w("is", "VBZ"), w("the", "DT"),
+        w("LINK_2", PosTag.LINK)), words);
+    assertEquals(1, cache.getStats().hitCount());
+  }
+
+  @Test
+  public void testFormulaSuffixIsPartOfTheKey() throws Exception {
+    final SentenceCache cache = new SentenceCache(10);
+    cache.put(Arrays.asList("the", FORMULA_1 + "-axis"),
+        Arrays.asList(w("the", "DT"), w(FORMULA_1 + "-axis", PosTag.MATH)));
+    assertNull(cache.get(Arrays.asList("the", FORMULA_2)));
+    assertEquals(Arrays.asList(w("the", "DT"), w(FORMULA_2 + "-axis", PosTag.MATH)),
+        cache.get(Arrays.asList("the", FORMULA_2 + "-axis")));
+  }
+
+  @Test
+  public void testOtherWordsAreNotMasked() throws Exception {
+    final SentenceCache cache = new SentenceCache(10);
+    cache.put(Arrays.asList("x", "is", "small"), Arrays.asList(w("x", "NN"), w("is", "VBZ"), w("small", "JJ")));
+    assertNull(cache.get(Arrays.asList("y", "is", "small")));
+    assertNull(cache.get(Arrays.asList("x", "is")));
+    assertEquals(2, cache.getStats().missCount());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    final SentenceCache cache = new SentenceCache(2);
+    for (int i = 0; i < 5; i++) {
+      cache.put(Arrays.asList("sentence", Integer.toString(i)), Arrays.asList(w("sentence", "NN"), w("1", "CD")));
+    }
+    assertEquals(2, cache.getSize());
+    assertEquals(3, cache.getStats().evictionCount());
+  }
+
+  private static Word w(String word, String tag) {
+    return new Word(word, tag);
+  }
+}
@@ -0,0 +1,228 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.Test;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TexIdentifierExtractorTest {
+
+  private static final Logger LOGGER = LogManager.getLogger(TexIdentifierExtractorTest.class.getName());
+
+  private static final Pattern MATH = Pattern.compile("<math[^>]*>(.*?)</math>", Pattern.DOTALL);
+
+  @Test
+  public void testIdentifiers() throws Exception {
+    assertEquals(Lists.newArrayList("E", "m", "c"), TexIdentifierExtractor.getIdentifiers("E=mc^2"));
+    assertEquals(Lists.newArrayList("\\alpha", "x"), TexIdentifierExtractor.getIdentifiers("\\alpha(x)"));
+    assertEquals(Lists.newArrayList("d", "d", "x"), TexIdentifierExtractor.getIdentifiers("\\frac{d}{dx}"));
+    assertEquals(Lists.newArrayList(), TexIdentifierExtractor.getIdentifiers("\\sin(2\\cdot 3)"));
+  }
+
+  @Test
+  public void testSubscripts() throws Exception {
+    assertEquals(Lists.newArrayList("x_{i}"), TexIdentifierExtractor.getIdentifiers("x_i"));
+    assertEquals(Lists.newArrayList("r_{i,j}"), TexIdentifierExtractor.getIdentifiers("r_{ij}"));
+    assertEquals(Lists.newArrayList("\\theta_{k}"), TexIdentifierExtractor.getIdentifiers("\\theta_{k-1}"));
+    assertEquals(Lists.newArrayList("h"), TexIdentifierExtractor.getIdentifiers("h_{-2}"));
+    assertEquals(Lists.newArrayList("\\sigma", "y"), TexIdentifierExtractor.getIdentifiers("\\sigma_y^2"));
+    assertEquals(Lists.newArrayList("\\alpha_{2}"), TexIdentifierExtractor.getIdentifiers("{\\alpha}_2"));
+    assertEquals(Lists.newArrayList("B_{0}'"), TexIdentifierExtractor.getIdentifiers("B_{0}'"));
+  }
+
+  @Test
+  public void testCommands() throws Exception {
+    assertEquals(Lists.newArrayList("\\mathbf{m}_{1}"), TexIdentifierExtractor.getIdentifiers("\\mathbf{m}_1"));
+    assertEquals(Lists.newArrayList("\\vec{A}", "B"), TexIdentifierExtractor.getIdentifiers("\\vec{A} = B"));
+    assertEquals(Lists.newArrayList("\\text", "Ker", "k"), TexIdentifierExtractor.getIdentifiers("\\text{Ker}(k)"));
+    assertEquals(Lists.newArrayList("a", "b"),
+        TexIdentifierExtractor.getIdentifiers("\\begin{array}{cc} a & b \\end{array}"));
+  }
+
+  @Test
+  public void testExclusions() throws Exception {
+    final HashMultiset<String> expected = HashMultiset.create(Lists.newArrayList("x", "f"));
+    assertEquals(expected, MathMLUtils.extractIdentifiersFromTexLocally("\\operatorname{sgn}(x) + f(\\infty)"));
+  }
+
+  @Test
+  public void testIntegrals() throws Exception {
+    assertEquals(Lists.newArrayList("u", "v", "u", "v", "v", "u"),
+        TexIdentifierExtractor.getIdentifiers("\\int u\\,dv=uv-\\int v\\,du"));
+    assertEquals(Lists.newArrayList("X_{1}", "d", "X_{2}"),
+        TexIdentifierExtractor.getIdentifiers("\\int dX_1\\,dX_2"));
+    assertEquals(Lists.newArrayList("d", "y"), TexIdentifierExtractor.getIdentifiers("dy"));
+  }
+
+  /**
+   * Extracts the identifiers of every formula of the test resources and compares them with the
+   * recorded texvcinfo responses of identifier.json, where the formula has one.
+   */
+  @Test
+  public void testRecordedTexvcinfoResponses() throws Exception {
+    final Map<String, List<String>> recorded = recordedIdentifiers();
+    final Set<String> formulas = new HashSet<>();
+    final Path resources = Paths.get(getClass().getClassLoader().getResource("identifier.json").toURI()).getParent();
+    try (Stream<Path> files = Files.walk(resources)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        final String content = StringEscapeUtils.unescapeHtml4(
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        final Matcher matcher = MATH.matcher(content);
+        while (matcher.find()) {
+          formulas.add(matcher.group(1));
+        }
+      }
+    }
+    final List<String> failures = new ArrayList<>();
+    int compared = 0;
+    for (String tex : formulas) {
+      final List<String> actual = TexIdentifierExtractor.getIdentifiers(tex);
+      final List<String> expected = recorded.get(Hashing.md5().hashString(tex, StandardCharsets.UTF_8).toString());
+      if (expected != null) {
+        compared++;
+        if (!expected.equals(actual)) {
+          failures.add(tex + ": expected " + expected + " but was " + actual);
+        }
+      }
+    }
+    LOGGER.info("extracted the identifiers of {} formulas, {} of them have a recorded response", formulas.size(), compared);
+    assertTrue("no recorded formula found", compared > 0);
+    assertEquals(String.join("\n", failures), 0, failures.size());
+  }
+
+  /**
+   * Most recorded responses belong to formulas that are not part of the test resources. Their
+   * input is only recorded as texvc parse tree in tokens.json, so the formula is rebuilt from the
+   * tree where that is unambiguous, i.e. where the tree has no nodes with a list of children.
+   */
+  @Test
+  public void testRecordedTexvcinfoTokens() throws Exception {
+    final Map<String, List<String>> recorded = recordedIdentifiers();
+    final List<Map<String, Object>> entries;
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream("tokens.json")) {
+      entries = new ObjectMapper().readValue(in, new TypeReference<List<Map<String, Object>>>() {
+      });
+    }
+    final List<String> failures = new ArrayList<>();
+    int compared = 0;
+    for (Map<String, Object> entry : entries) {
+      @SuppressWarnings("unchecked")
+      final String tex = toTex((List<List<String>>) entry.get("tokens"));
+      final List<String> expected = recorded.get(entry.get("inputhash"));
+      if (tex == null || expected == null) {
+        continue;
+      }
+      compared++;
+      final List<String> actual = TexIdentifierExtractor.getIdentifiers(tex);
+      if (!expected.equals(actual)) {
+        failures.add(tex + ": expected " + expected + " but was " + actual);
+      }
+    }
+    LOGGER.info("compared {} of {} recorded responses by their texvc parse tree", compared, entries.size());
+    assertTrue("no formula could be rebuilt", compared > 0);
+    assertEquals(String.join("\n", failures), 0, failures.size());
+  }
+
+  private Map<String, List<String>> recordedIdentifiers() throws Exception {
+    final Map<String, List<String>> recorded = new HashMap<>();
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream("identifier.json")) {
+      final List<Map<String, Object>> entries =
+          new ObjectMapper().readValue(in, new TypeReference<List<Map<String, Object>>>() {
+          });
+      for (Map<String, Object> entry : entries) {
+        @SuppressWarnings("unchecked")
+        final List<String> identifiers = (List<String>) entry.get("texvcinfo");
+        recorded.put((String) entry.get("inputhash"), identifiers);
+      }
+    }
+    return recorded;
+  }
+
+  /**
+   * @param tokens the texvc parse tree in prefix order, as pairs of node type and value
+   * @return the formula, null if the tree can not be rebuilt
+   */
+  private static String toTex(List<List<String>> tokens) {
+    final StringBuilder tex = new StringBuilder();
+    final int[] pos = {0};
+    while (pos[0] < tokens.size()) {
+      final String node = toTex(tokens, pos);
+      if (node == null) {
+        return null;
+      }
+      tex.append(node);
+    }
+    return tex.toString();
+  }
+
+  private static String toTex(List<List<String>> tokens, int[] pos) {
+    if (pos[0] >= tokens.size()) {
+      return null;
+    }
+    final String type = tokens.get(pos[0]).get(0);
+    final String value = tokens.get(pos[0]++).get(1);
+    final int arguments;
+    switch (type) {
+      case "LITERAL":
+        return pos[0] < tokens.size() && tokens.get(pos[0]).get(0).equals("TEX_ONLY") ? tokens.get(pos[0]++).get(1) : null;
+      case "DQ":
+      case "UQ":
+      case "FUN2":
+        arguments = 2;
+        break;
+      case "FQ":
+        arguments = 3;
+        break;
+      case "FUN1":
+      case "FUN1nb":
+        arguments = 1;
+        break;
+      default:
+        // nodes with a list of children, the end of the list is not recorded
+        return null;
+    }
+    final List<String> args = new ArrayList<>();
+    for (int i = 0; i < arguments; i++) {
+      final String arg = toTex(tokens, pos);
+      if (arg == null) {
+        return null;
+      }
+      args.add(arg);
+    }
+    switch (type) {
+      case "DQ":
+        return args.get(0) + "_{" + args.get(1) + "}";
+      case "UQ":
+        return args.get(0) + "^{" + args.get(1) + "}";
+      case "FQ":
+        return args.get(0) + "_{" + args.get(1) + "}^{" + args.get(2) + "}";
+      default:
+        return value + "{" + String.join("}{", args) + "}";
+    }
+  }
+}
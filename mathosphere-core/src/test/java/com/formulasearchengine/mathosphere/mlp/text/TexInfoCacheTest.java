@@ -0,0 +1,93 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TexInfoCacheTest {
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    final Path file = new File(Files.createTempDir(), "texvcinfo.cache").toPath();
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      assertNull(cache.get("E=mc^2"));
+      cache.put("E=mc^2", Lists.newArrayList("E", "m", "c"));
+      cache.put("1+1", Collections.emptyList());
+      assertEquals(Lists.newArrayList("E", "m", "c"), cache.get("E=mc^2"));
+      assertEquals(Collections.emptyList(), cache.get("1+1"));
+      assertEquals(2, cache.getHits());
+      assertEquals(1, cache.getMisses());
+    }
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      assertEquals(Lists.newArrayList("E", "m", "c"), cache.get("E=mc^2"));
+      assertEquals(Collections.emptyList(), cache.get("1+1"));
+      assertNull(cache.get("x^2"));
+    }
+  }
+
+  @Test
+  public void testCachedIdentifiers() throws Exception {
+    final Path file = new File(Files.createTempDir(), "texvcinfo.cache").toPath();
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      cache.put("E=mc^2", Lists.newArrayList("E", "m", "c"));
+    }
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      final HashMultiset<String> expected = HashMultiset.create();
+      expected.addAll(Lists.newArrayList("E", "m", "c"));
+      // the url is never requested for a cached formula
+      assertEquals(expected, cache.getIdentifiers("E=mc^2", "http://localhost:1/texvcinfo"));
+      assertEquals(1, cache.getHits());
+    }
+  }
+
+  @Test
+  public void testTruncatedRecord() throws Exception {
+    final Path file = new File(Files.createTempDir(), "texvcinfo.cache").toPath();
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      cache.put("a+b", Lists.newArrayList("a", "b"));
+    }
+    final long complete = file.toFile().length();
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      // an incomplete record, as left by a crash while appending
+      raf.seek(complete);
+      raf.write(new byte[]{1, 2, 3, 4, 5, 6, 7});
+    }
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      assertEquals(complete, file.toFile().length());
+      assertEquals(Lists.newArrayList("a", "b"), cache.get("a+b"));
+      cache.put("c", Lists.newArrayList("c"));
+    }
+    try (TexInfoCache cache = new TexInfoCache(file)) {
+      assertEquals(Lists.newArrayList("a", "b"), cache.get("a+b"));
+      assertEquals(Lists.newArrayList("c"), cache.get("c"));
+    }
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    final File dir = Files.createTempDir();
+    final Path source = new File(dir, "texvcinfo.cache").toPath();
+    final Path target = new File(dir, "compacted.cache").toPath();
+    try (TexInfoCache cache = new TexInfoCache(source)) {
+      for (int i = 0; i < 1000; i++) {
+        cache.put("x_" + i, Lists.newArrayList("x_" + i));
+      }
+      cache.put("x_1", Lists.newArrayList("x"));
+    }
+    assertEquals(1000, TexInfoCache.compact(source, target));
+    try (TexInfoCache cache = new TexInfoCache(target)) {
+      assertEquals(Lists.newArrayList("x"), cache.get("x_1"));
+      assertEquals(Lists.newArrayList("x_999"), cache.get("x_999"));
+    }
+  }
+}
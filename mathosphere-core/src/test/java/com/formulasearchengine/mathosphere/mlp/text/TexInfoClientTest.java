@@ -0,0 +1,156 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the client against a local stub of texvcinfo that reports every letter of the TeX string
+ * as identifier.
+ */
+public class TexInfoClientTest {
+
+  private HttpServer server;
+
+  private String url;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicInteger running = new AtomicInteger();
+
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  private volatile CountDownLatch release = new CountDownLatch(0);
+
+  @Before
+  public void startServer() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/get/texvcinfo/tex/", exchange -> {
+      requests.incrementAndGet();
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      final String path = exchange.getRequestURI().getRawPath();
+      final String tex = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), "UTF-8");
+      final byte[] body;
+      if (tex.equals("invalid")) {
+        body = "{\"success\":false}".getBytes(StandardCharsets.UTF_8);
+      } else {
+        final List<String> identifiers = new ArrayList<>();
+        for (char c : tex.toCharArray()) {
+          if (Character.isLetter(c)) {
+            identifiers.add("\"" + c + "\"");
+          }
+        }
+        body = ("{\"identifiers\":[" + String.join(",", identifiers) + "]}").getBytes(StandardCharsets.UTF_8);
+      }
+      running.decrementAndGet();
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/texvcinfo";
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testResolve() throws Exception {
+    try (TexInfoClient client = new TexInfoClient(url, 4, null)) {
+      final Map<String, List<String>> identifiers = client.resolve(Lists.newArrayList("E=mc^2", "a+b", "E=mc^2", ""));
+      assertEquals(Lists.newArrayList("E", "m", "c"), identifiers.get("E=mc^2"));
+      assertEquals(Lists.newArrayList("a", "b"), identifiers.get("a+b"));
+      assertEquals(Lists.newArrayList(), identifiers.get(""));
+      assertEquals(2, requests.get());
+    }
+  }
+
+  @Test
+  public void testFailedRequest() throws Exception {
+    try (TexInfoClient client = new TexInfoClient(url, 1, null)) {
+      assertNull(client.getIdentifiers("invalid").join());
+      assertEquals(Lists.newArrayList("x"), client.getIdentifiers("x").join());
+    }
+  }
+
+  @Test
+  public void testCoalescing() throws Exception {
+    release = new CountDownLatch(1);
+    try (TexInfoClient client = new TexInfoClient(url, 2, null)) {
+      final List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(client.getIdentifiers("x^2"));
+      }
+      release.countDown();
+      for (CompletableFuture<List<String>> future : futures) {
+        assertEquals(Lists.newArrayList("x"), future.join());
+      }
+      assertEquals(1, requests.get());
+      assertEquals(1, client.getRequests());
+      assertEquals(9, client.getCoalesced());
+    }
+  }
+
+  @Test
+  public void testBoundedInFlight() throws Exception {
+    release = new CountDownLatch(1);
+    try (TexInfoClient client = new TexInfoClient(url, 2, null)) {
+      final List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+      for (char c = 'a'; c <= 'j'; c++) {
+        futures.add(client.getIdentifiers(String.valueOf(c)));
+      }
+      // give the client the chance to send more requests than allowed
+      Thread.sleep(200);
+      assertTrue(running.get() <= 2);
+      release.countDown();
+      for (CompletableFuture<List<String>> future : futures) {
+        future.join();
+      }
+      assertEquals(10, requests.get());
+      assertTrue(maxRunning.get() <= 2);
+    }
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    final File file = new File(Files.createTempDir(), "texvcinfo.cache");
+    try (TexInfoCache cache = new TexInfoCache(file.toPath());
+         TexInfoClient client = new TexInfoClient(url, 2, cache)) {
+      assertEquals(Lists.newArrayList("a", "b"), client.getIdentifiers("a+b").join());
+      assertEquals(Lists.newArrayList("a", "b"), client.getIdentifiers("a+b").join());
+      assertEquals(1, requests.get());
+      assertEquals(Lists.newArrayList("a", "b"), cache.get("a+b"));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TexToMathMLCacheTest {
+
+  @Test
+  public void testMemoization() throws Exception {
+    final TexToMathMLCache cache = new TexToMathMLCache(1000);
+    final AtomicInteger calls = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      assertEquals("<mi>x</mi>", cache.get("x", tex -> {
+        calls.incrementAndGet();
+        return "<mi>" + tex + "</mi>";
+      }));
+    }
+    assertEquals(1, calls.get());
+    assertEquals(1, cache.getConversions());
+    assertEquals(2.0 / 3, cache.getHitRatio(), 1e-9);
+    assertEquals(1, cache.getSize());
+    assertEquals(2 * 11 + TexToMathMLCache.ENTRY_OVERHEAD_BYTES, cache.getEstimatedBytes());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    final TexToMathMLCache cache = new TexToMathMLCache(100);
+    for (int i = 0; i < 100; i++) {
+      cache.get("x_" + i, tex -> "<mi>" + tex + "</mi>");
+    }
+    assertTrue(cache.getSize() < 100);
+    assertTrue(cache.getEstimatedBytes() <= 2 * 100 + TexToMathMLCache.ENTRY_OVERHEAD_BYTES * cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getEstimatedBytes());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    final TexToMathMLCache cache = new TexToMathMLCache(0);
+    cache.get("x", tex -> tex);
+    cache.get("x", tex -> tex);
+    assertEquals(2, cache.getConversions());
+  }
+
+  @Test
+  public void testFailedConversionIsNotMemoized() throws Exception {
+    final TexToMathMLCache cache = new TexToMathMLCache(1000);
+    try {
+      cache.get("\\frac{", tex -> {
+        throw new IllegalArgumentException("unbalanced");
+      });
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertEquals("unbalanced", expected.getMessage());
+    }
+    assertEquals("ok", cache.get("\\frac{", tex -> "ok"));
+    assertEquals(2, cache.getConversions());
+  }
+
+  @Test
+  public void testTexToMathML() throws Exception {
+    final long conversions = MathMLUtils.getTexToMathMLCache().getConversions();
+    final String mathML = MathMLUtils.texToMathML("\\alpha + \\beta_{x}");
+    assertEquals(mathML, MathMLUtils.texToMathML("\\alpha + \\beta_{x}"));
+    assertEquals(conversions + 1, MathMLUtils.getTexToMathMLCache().getConversions());
+    // the session is reset after every conversion
+    assertTrue(MathMLUtils.texToMathML("y").contains("y"));
+    assertFalse(MathMLUtils.texToMathML("y").contains("\u03b1"));
+  }
+}
@@ -0,0 +1,101 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.formulasearchengine.mathosphere.mlp.pojos.MathTag;
+import com.formulasearchengine.mathosphere.mlp.pojos.WikidataLink;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the {@link WikiTextStripper} with the {@link MathConverter}. The detection of hidden
+ * math is skipped, since it requires the texvcinfo service.
+ */
+public class WikiTextStripperTest {
+
+    private static final String[] SNIPPETS = {
+            "Word\n<math>x</math>\nend.",
+            "In [[mathematics]] and [[physics|Physik]], the '''Legendre transformation''' is a "
+                    + "[[real number|real]]-valued function.",
+            "==Definition==\nLet {{math|x}} be a {{mvar|y}}.\n===Sub===\nText <ref>see <math>z</math></ref> end.",
+            "* one <math>a</math>\n* two\n*three",
+            "a <!-- hidden --> b",
+            "see [http://example.com example] and more",
+            "The {{nowrap|value ''a''}} of <chem>H2O</chem> and <ce>CO2</ce>.",
+            "{{nowrap|a [[b]] &amp; <span>c</span> {{mvar|''d''}}}} and <foo>e</foo>",
+            "* item\nnext line\n{|\n!h1\n!h2\n|-\n| a || b\n|}"
+    };
+
+    private static WikiTextStripper stripper(String wikiText) {
+        final WikiTextStripper stripper = new WikiTextStripper(wikiText);
+        stripper.setSkipHiddenMath(true);
+        return stripper;
+    }
+
+    private static MathConverter converter(String wikiText) throws Exception {
+        final MathConverter converter = new MathConverter(wikiText);
+        converter.setSkipHiddenMath(true);
+        return converter;
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", text.trim().split("\\s+"));
+    }
+
+    private static List<String> formulas(List<MathTag> tags) {
+        return tags.stream().map(t -> t.getMarkUpType() + ":" + t.getContent()).collect(Collectors.toList());
+    }
+
+    private static List<String> links(List<WikidataLink> links) {
+        return links.stream().map(WikidataLink::getContent).collect(Collectors.toList());
+    }
+
+    /**
+     * Asserts that both converters produce the same text, up to whitespace, and the same formulas
+     * and links.
+     */
+    private static void assertSameOutput(String wikiText) throws Exception {
+        final MathConverter converter = converter(wikiText);
+        final String expected = converter.getStrippedOutput();
+        final WikiTextStripper stripper = stripper(wikiText);
+        final String real = stripper.getStrippedOutput();
+        assertEquals(normalize(expected), normalize(real));
+        assertEquals(formulas(converter.getMathTags()), formulas(stripper.getMathTags()));
+        assertEquals(links(converter.getLinks()), links(stripper.getLinks()));
+    }
+
+    @Test
+    public void testSnippets() throws Exception {
+        for (String snippet : SNIPPETS) {
+            final MathConverter converter = converter(snippet);
+            final WikiTextStripper stripper = stripper(snippet);
+            assertEquals(snippet, normalize(converter.getStrippedOutput()), normalize(stripper.getStrippedOutput()));
+            assertEquals(snippet, formulas(converter.getMathTags()), formulas(stripper.getMathTags()));
+            assertEquals(snippet, links(converter.getLinks()), links(stripper.getLinks()));
+        }
+    }
+
+    @Test
+    public void testSectionNumbers() throws Exception {
+        final String real = normalize(stripper("==A==\nx\n===B===\ny\n==C==\nz").getStrippedOutput());
+        assertEquals("1. A ---- x 1.1. B ------ y 2. C ---- z", real);
+    }
+
+    @Test
+    public void testLegendre() throws Exception {
+        assertSameOutput(IOUtils.toString(getClass().getResourceAsStream("legendre_wiki.txt"), "UTF-8"));
+    }
+
+    @Test
+    public void testTitration() throws Exception {
+        assertSameOutput(IOUtils.toString(getClass().getResourceAsStream("../titration_wiki.txt"), "UTF-8"));
+    }
+
+    @Test
+    public void testN20() throws Exception {
+        assertSameOutput(IOUtils.toString(getClass().getResourceAsStream("../n20_wiki.txt"), "UTF-8"));
+    }
+}
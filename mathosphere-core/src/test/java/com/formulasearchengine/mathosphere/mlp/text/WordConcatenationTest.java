@@ -0,0 +1,145 @@
+package com.formulasearchengine.mathosphere.mlp.text;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.alexeygrigorev.rseq.BeanMatchers;
+import com.alexeygrigorev.rseq.Matchers;
+import com.alexeygrigorev.rseq.Pattern;
+import com.alexeygrigorev.rseq.TransformerToElement;
+import com.alexeygrigorev.rseq.XMatcher;
+import com.formulasearchengine.mathosphere.mlp.pojos.Word;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the single pass concatenation and the matchers of {@link WordMatchers} with the rseq
+ * {@code BeanMatchers} based implementation on random sentences.
+ */
+public class WordConcatenationTest {
+
+  private static final String[] TAGS = {PosTag.QUOTE, PosTag.UNQUOTE, PosTag.NOUN, PosTag.NOUN_PLURAL,
+    PosTag.ADJECTIVE, PosTag.NOUN_SEQUENCE, "DT", "VBZ", "IN", PosTag.IDENTIFIER, PosTag.MATH};
+
+  private static final String[] WORDS = {"x", "y", "energy", "is", "the", "mass", "of"};
+
+  private static final Set<String> IDENTIFIERS = ImmutableSet.of("\\mathit{x}", "E");
+
+  @Test
+  public void testConcatenate() throws Exception {
+    final Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      final List<Word> sentence = randomSentence(random);
+      for (boolean links : new boolean[]{true, false}) {
+        assertEquals(sentence + " links: " + links, reference(sentence, IDENTIFIERS, links),
+          PosTagger.concatenate(sentence, IDENTIFIERS, links));
+      }
+    }
+  }
+
+  @Test
+  public void testMatchers() throws Exception {
+    final Random random = new Random(7);
+    final XMatcher<Word> word = BeanMatchers.eq(Word.class, "word", "is");
+    final XMatcher<Word> pos = BeanMatchers.eq(Word.class, "posTag", "NN");
+    final XMatcher<Word> posIn = BeanMatchers.in(Word.class, "posTag", ImmutableSet.of("NN", "NNS"));
+    final XMatcher<Word> posRegExp = BeanMatchers.regex(Word.class, "posTag", "(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)");
+    final XMatcher<Word> wordIn = BeanMatchers.in(Word.class, "word", ImmutableSet.of("x", "y"));
+    final XMatcher<Word> fastWord = WordMatchers.word("is");
+    final XMatcher<Word> fastPos = WordMatchers.pos("NN");
+    final XMatcher<Word> fastPosIn = WordMatchers.posIn("NN", "NNS");
+    final XMatcher<Word> fastPosRegExp = WordMatchers.posRegExp("(NN[PS]{0,2}|NP\\+?|NN\\+|LNK)");
+    final XMatcher<Word> fastWordIn = WordMatchers.wordIn(ImmutableSet.of("x", "y"));
+    for (int i = 0; i < 1000; i++) {
+      final Word w = randomWord(random);
+      assertEquals(w.toString(), word.match(w), fastWord.match(w));
+      assertEquals(w.toString(), pos.match(w), fastPos.match(w));
+      assertEquals(w.toString(), posIn.match(w), fastPosIn.match(w));
+      assertEquals(w.toString(), posRegExp.match(w), fastPosRegExp.match(w));
+      assertEquals(w.toString(), wordIn.match(w), fastWordIn.match(w));
+    }
+  }
+
+  @Test
+  public void testNullPosTag() throws Exception {
+    final Word untagged = new Word("x", null);
+    final Word tagged = new Word("x", "NN");
+    final XMatcher<Word> pos = BeanMatchers.eq(Word.class, "posTag", null);
+    final XMatcher<Word> posIn = BeanMatchers.in(Word.class, "posTag", Sets.newHashSet("NNS", null));
+    for (Word w : new Word[]{untagged, tagged}) {
+      assertEquals(w.toString(), pos.match(w), WordMatchers.pos(null).match(w));
+      assertEquals(w.toString(), posIn.match(w), WordMatchers.posIn("NNS", null).match(w));
+    }
+    assertFalse(WordMatchers.posIn("NNS").match(untagged));
+    assertEquals(-1, untagged.posTagId());
+    assertEquals(WordMatchers.tagId("NN"), tagged.posTagId());
+  }
+
+  private static List<Word> randomSentence(Random random) {
+    final int length = random.nextInt(15);
+    final List<Word> sentence = Lists.newArrayListWithCapacity(length);
+    for (int i = 0; i < length; i++) {
+      sentence.add(randomWord(random));
+    }
+    return sentence;
+  }
+
+  private static Word randomWord(Random random) {
+    return new Word(WORDS[random.nextInt(WORDS.length)], TAGS[random.nextInt(TAGS.length)]);
+  }
+
+  /**
+   * The concatenation as it was implemented with rseq patterns and bean matchers.
+   */
+  private static List<Word> reference(List<Word> sentence, Set<String> allIdentifiers, boolean links) {
+    List<Word> result = sentence;
+    if (links) {
+      Pattern<Word> linksPattern = Pattern.create(beanPos(PosTag.QUOTE), Matchers.<Word>anything().oneOrMore()
+        .captureAs("link"), beanPos(PosTag.UNQUOTE));
+      result = linksPattern.replaceToOne(result, new TransformerToElement<Word>() {
+        @Override
+        public Word transform(com.alexeygrigorev.rseq.Match<Word> match) {
+          List<Word> words = match.getCapturedGroup("link");
+          if (words.size() == 1 && allIdentifiers.contains("\\mathit{" + words.get(0).getWord() + "}")) {
+            return new Word(PosTagger.joinWords(words), PosTag.IDENTIFIER);
+          } else {
+            return new Word(PosTagger.joinWords(words), PosTag.LINK);
+          }
+        }
+      });
+    }
+    Pattern<Word> nounPattern = Pattern.create(BeanMatchers.in(Word.class, "posTag",
+      ImmutableSet.of(PosTag.NOUN, PosTag.NOUN_PLURAL)).oneOrMore());
+    result = nounPattern.replaceToOne(result, new TransformerToElement<Word>() {
+      @Override
+      public Word transform(com.alexeygrigorev.rseq.Match<Word> match) {
+        List<Word> words = match.getMatchedSubsequence();
+        if (words.size() == 1) {
+          return words.get(0);
+        }
+        return new Word(PosTagger.joinWords(words), PosTag.NOUN_SEQUENCE);
+      }
+    });
+    result = reference2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN, PosTag.NOUN_PHRASE);
+    result = reference2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN_PLURAL, PosTag.NOUN_PHRASE);
+    result = reference2Tags(result, PosTag.ADJECTIVE, PosTag.NOUN_SEQUENCE, PosTag.NOUN_SEQUENCE_PHRASE);
+    return result;
+  }
+
+  private static List<Word> reference2Tags(List<Word> in, String tag1, String tag2, String outputTag) {
+    Pattern<Word> pattern = Pattern.create(beanPos(tag1), beanPos(tag2));
+    return pattern.replaceToOne(in, m -> new Word(PosTagger.joinWords(m.getMatchedSubsequence()), outputTag));
+  }
+
+  private static XMatcher<Word> beanPos(String tag) {
+    return BeanMatchers.eq(Word.class, "posTag", tag);
+  }
+}
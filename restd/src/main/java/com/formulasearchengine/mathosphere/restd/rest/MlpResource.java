@@ -15,9 +15,20 @@ import restx.security.PermitAll;
 public class MlpResource {
 
 
-	private final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.test();
+	/**
+	 * number of sentences that are POS tagged together, long articles are tagged on all cores
+	 */
+	private static final int POS_TAGGING_BATCH_SIZE = 16;
+
+	private final FlinkMlpCommandConfig config = createConfig();
 	private final FlinkMlpRelationFinder finder = new FlinkMlpRelationFinder();
 
+	private static FlinkMlpCommandConfig createConfig() {
+		final FlinkMlpCommandConfig config = FlinkMlpCommandConfig.test();
+		config.setPosTaggingBatchSize(POS_TAGGING_BATCH_SIZE);
+		return config;
+	}
+
 	@POST("/AnalyzeWikiText")
 	@PermitAll
 	public WikiDocumentOutput AnalyeWikiText(WikiTextRequest input) {